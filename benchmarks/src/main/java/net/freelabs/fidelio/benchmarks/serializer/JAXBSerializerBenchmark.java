@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.benchmarks.serializer;
+
+import java.util.concurrent.TimeUnit;
+import javax.xml.bind.JAXBException;
+import net.freelabs.fidelio.core.schema.ContainerEnvironment;
+import net.freelabs.fidelio.core.schema.Docker;
+import net.freelabs.fidelio.core.schema.WebContainer;
+import net.freelabs.fidelio.core.serializer.JAXBSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>
+ * Benchmarks the serialization of containers with
+ * {@link JAXBSerializer JAXBSerializer}, that uses a marshaller per thread,
+ * against {@link SynchronizedJAXBSerializer SynchronizedJAXBSerializer}, that
+ * serializes one object at a time.
+ * <p>
+ * Run with 1, 2, 4 and 8 threads with:
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar net.freelabs.fidelio.benchmarks.serializer.JAXBSerializerBenchmark
+ * </pre> or for a single number of threads with:
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar JAXBSerializerBenchmark -t 4
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JAXBSerializerBenchmark {
+
+    /**
+     * The numbers of threads to run the benchmarks with.
+     */
+    private static final int[] THREADS = {1, 2, 4, 8};
+    /**
+     * The number of services the container requires.
+     */
+    private static final int REQUIRES = 5;
+    /**
+     * The number of volumes of the container.
+     */
+    private static final int VOLUMES = 10;
+    /**
+     * The container to serialize.
+     */
+    private WebContainer con;
+    /**
+     * The serialized container, to de-serialize.
+     */
+    private byte[] data;
+
+    @Setup
+    public void setUp() throws JAXBException {
+        con = createContainer();
+        data = JAXBSerializer.serialize(con);
+    }
+
+    /**
+     * @return a container with a typical description.
+     */
+    private static WebContainer createContainer() {
+        WebContainer container = new WebContainer();
+        container.setConSrvName("web");
+        for (int i = 0; i < REQUIRES; i++) {
+            container.getRequires().add("service" + i);
+        }
+        container.getIsRequiredFrom().add("proxy");
+        Docker docker = new Docker();
+        docker.setImage("httpd:2.4");
+        for (int i = 0; i < VOLUMES; i++) {
+            docker.getVolumes().add("/var/lib/web/volume" + i);
+        }
+        container.setDocker(docker);
+        ContainerEnvironment env = new ContainerEnvironment();
+        env.setHost_IP("10.0.0.2");
+        env.setHost_Port(8080);
+        container.setEnv(env);
+        return container;
+    }
+
+    @Benchmark
+    public byte[] marshal() throws JAXBException {
+        return JAXBSerializer.serialize(con);
+    }
+
+    @Benchmark
+    public byte[] marshalSynchronized() throws JAXBException {
+        return SynchronizedJAXBSerializer.serialize(con);
+    }
+
+    @Benchmark
+    public WebContainer unmarshal() throws JAXBException {
+        return JAXBSerializer.deserializeToWebContainer(data);
+    }
+
+    @Benchmark
+    public WebContainer unmarshalSynchronized() throws JAXBException {
+        return SynchronizedJAXBSerializer.deserializeToWebContainer(data);
+    }
+
+    /**
+     * Runs the benchmarks with every number of threads in {@link #THREADS
+     * THREADS}.
+     *
+     * @param args not used.
+     * @throws RunnerException if a benchmark fails.
+     */
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : THREADS) {
+            Options opt = new OptionsBuilder()
+                    .include(JAXBSerializerBenchmark.class.getName())
+                    .threads(threads)
+                    .build();
+            new Runner(opt).run();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.benchmarks.serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
+import net.freelabs.fidelio.core.schema.Container;
+import net.freelabs.fidelio.core.schema.ObjectFactory;
+import net.freelabs.fidelio.core.schema.WebContainer;
+import net.freelabs.fidelio.core.zookeeper.ZkConf;
+import net.freelabs.fidelio.core.zookeeper.ZkNamingServiceNode;
+
+/**
+ * <p>
+ * The previous implementation of
+ * {@link net.freelabs.fidelio.core.serializer.JAXBSerializer JAXBSerializer},
+ * kept as the baseline of the benchmarks.
+ * <p>
+ * All calls share one marshaller and one un-marshaller and run while holding
+ * the lock of the class.
+ */
+final class SynchronizedJAXBSerializer {
+
+    /**
+     * De-serializes objects.
+     */
+    private static final Unmarshaller UNMARSHALLER;
+    /**
+     * Serializes objects.
+     */
+    private static final Marshaller MARSHALLER;
+
+    static {
+        try {
+            JAXBContext jaxbContext = JAXBContext.newInstance(ObjectFactory.class, ZkConf.class, ZkNamingServiceNode.class);
+            MARSHALLER = jaxbContext.createMarshaller();
+            MARSHALLER.setProperty(Marshaller.JAXB_ENCODING, StandardCharsets.UTF_8.name());
+            MARSHALLER.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+            UNMARSHALLER = jaxbContext.createUnmarshaller();
+        } catch (JAXBException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    /**
+     * Private constructor, class has only static methods.
+     */
+    private SynchronizedJAXBSerializer() {
+    }
+
+    /**
+     * Serializes a {@link Container container} object to byte array.
+     *
+     * @param con the object to serialize.
+     * @return byte array of the object.
+     * @throws JAXBException in case of error.
+     */
+    static byte[] serialize(Container con) throws JAXBException {
+        JAXBElement<Container> jaxbElem = new JAXBElement<>(new QName(Container.class.getSimpleName()), Container.class, con);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        synchronized (SynchronizedJAXBSerializer.class) {
+            MARSHALLER.marshal(jaxbElem, baos);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * De-serializes a byte array to a {@link WebContainer WebContainer}
+     * instance.
+     *
+     * @param data byte array to de-serialize.
+     * @return an instance of {@link WebContainer WebContainer}.
+     * @throws JAXBException in case of error.
+     */
+    static WebContainer deserializeToWebContainer(byte[] data) throws JAXBException {
+        ByteArrayInputStream bais = new ByteArrayInputStream(data);
+        JAXBElement<WebContainer> jaxbElemUnmar;
+        synchronized (SynchronizedJAXBSerializer.class) {
+            jaxbElemUnmar = UNMARSHALLER.unmarshal(new StreamSource(bais), WebContainer.class);
+        }
+        return jaxbElemUnmar.getValue();
+    }
+}
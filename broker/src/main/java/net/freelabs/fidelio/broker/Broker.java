@@ -21,8 +21,11 @@ import net.freelabs.fidelio.broker.process.start.MainProcessData;
 import net.freelabs.fidelio.broker.process.start.StartResMapper;
 import net.freelabs.fidelio.broker.env.EnvironmentMapper;
 import net.freelabs.fidelio.broker.env.EnvironmentHandler;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -55,10 +58,14 @@ import net.freelabs.fidelio.core.schema.StartRes;
 import net.freelabs.fidelio.core.schema.StopRes;
 import net.freelabs.fidelio.core.schema.Tasks;
 import net.freelabs.fidelio.core.schema.WebContainer;
+import net.freelabs.fidelio.core.serializer.Codec;
+import net.freelabs.fidelio.core.serializer.Codecs;
 import net.freelabs.fidelio.core.serializer.JAXBSerializer;
+import net.freelabs.fidelio.core.zookeeper.AppStatusWriter;
 import net.freelabs.fidelio.core.zookeeper.ZkConnectionWatcher;
 import net.freelabs.fidelio.core.zookeeper.ZkNamingService;
 import net.freelabs.fidelio.core.zookeeper.ZkNamingServiceNode;
+import net.freelabs.fidelio.core.zookeeper.ZkRetryPolicy;
 import org.apache.zookeeper.AsyncCallback;
 import org.apache.zookeeper.AsyncCallback.DataCallback;
 import org.apache.zookeeper.AsyncCallback.StatCallback;
@@ -113,7 +120,12 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
     /**
      * The container associated with the broker. Holds the configuration.
      */
-    private Container container;
+    private volatile Container container;
+    /**
+     * The codec that the application was deployed with. Data written to
+     * zookeeper are serialized with it.
+     */
+    private volatile Codec codec = Codecs.XML;
     /**
      * The znode of the container service to the naming service.
      */
@@ -155,6 +167,15 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
      * Defines an action to execute when a dependent service shuts down.
      */
     private Executable execOnDependentSrvShutdown;
+    /**
+     * The path of the zNode with the status summary of the application.
+     */
+    private final String appStatusPath;
+    /**
+     * Applies the status of the service to the status summary of the
+     * application.
+     */
+    private AppStatusWriter appStatusWriter;
 
     /**
      * Constructor
@@ -180,6 +201,7 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
         conZkSrvNode = new ZkNamingServiceNode(zkContainerPath);
         // initialize the naming service object
         ns = new ZkNamingService(zkNamingService);
+        appStatusPath = AppStatusWriter.resolvePath(zkNamingService);
         // stores the context data of the particular thread for logging
         MDC.put("id", conSrvName);
     }
@@ -231,6 +253,27 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
         }
     }
 
+    /**
+     * Schedules a retry of an asynchronous operation that failed due to
+     * connection loss. If the retry budget of the operation is exhausted, the
+     * broker cannot go on: before the container description is received it
+     * terminates, afterwards it sets the container into ERROR state.
+     *
+     * @param key identifies the operation to the retry policy.
+     * @param op the operation to retry.
+     */
+    private void retryOrFail(String key, Runnable op) {
+        if (!retryPolicy.retryLater(key, op)) {
+            LOG.error("Gave up retrying {}. Zookeeper is unreachable.", key);
+            if (container == null) {
+                LOG.error("FAILED to start broker. Terminating.");
+                errExit();
+            } else {
+                lifecycleHandler.errorEvent();
+            }
+        }
+    }
+
     /**
      * Exits with error code -1.
      */
@@ -304,7 +347,7 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
         switch (KeeperException.Code.get(rc)) {
             case CONNECTIONLOSS:
                 LOG.warn("Connection loss was detected. Retrying...");
-                checkContainerNode(path, (byte[]) ctx);
+                retryOrFail("checkContainerNode:" + path, () -> checkContainerNode(path, (byte[]) ctx));
                 break;
             case NODEEXISTS:
                 LOG.error("Service zNode already exists: " + path);
@@ -333,7 +376,8 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
     private final StatCallback resetshutDownCallback = (int rc, String path, Object ctx, Stat stat) -> {
         switch (KeeperException.Code.get(rc)) {
             case CONNECTIONLOSS:
-                reSetShutDownWatch();
+                LOG.warn("Connection loss was detected. Retrying...");
+                retryOrFail("reSetShutDownWatch", () -> reSetShutDownWatch());
                 break;
             case NONODE:
                 LOG.info("Watch registered on: " + path);
@@ -379,7 +423,8 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
     private final StatCallback shutDownCallback = (int rc, String path, Object ctx, Stat stat) -> {
         switch (KeeperException.Code.get(rc)) {
             case CONNECTIONLOSS:
-                setShutDownWatch();
+                LOG.warn("Connection loss was detected. Retrying...");
+                retryOrFail("setShutDownWatch", () -> setShutDownWatch());
                 break;
             case NONODE:
                 LOG.info("Watch registered on: " + path);
@@ -423,7 +468,7 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
         switch (KeeperException.Code.get(rc)) {
             case CONNECTIONLOSS:
                 LOG.warn("Connection loss was detected. Retrying...");
-                checkContainerNode(path, (byte[]) ctx);
+                retryOrFail("checkContainerNode:" + path, () -> checkContainerNode(path, (byte[]) ctx));
                 break;
             case NODEEXISTS:
                 LOG.error("Node already exists: " + path);
@@ -452,7 +497,7 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
         switch (KeeperException.Code.get(rc)) {
             case CONNECTIONLOSS:
                 LOG.warn("Connection loss was detected. Retrying...");
-                checkContainerNode(path, (byte[]) ctx);
+                retryOrFail("checkContainerNode:" + path, () -> checkContainerNode(path, (byte[]) ctx));
                 break;
             case NONODE:
                 createZkNodeEphemeral(path, (byte[]) ctx);
@@ -488,7 +533,8 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
     private final AsyncCallback.StatCallback waitForConDescriptionCallback = (int rc, String path, Object ctx, Stat stat) -> {
         switch (KeeperException.Code.get(rc)) {
             case CONNECTIONLOSS:
-                waitForConDescription();
+                LOG.warn("Connection loss was detected. Retrying...");
+                retryOrFail("waitForConDescription", () -> waitForConDescription());
                 break;
             case NONODE:
                 LOG.info("Waiting for container description: " + path);
@@ -529,7 +575,7 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
         switch (KeeperException.Code.get(rc)) {
             case CONNECTIONLOSS:
                 LOG.warn("Connection loss was detected. Retrying...");
-                getConDescription();
+                retryOrFail("getConDescription", () -> getConDescription());
                 break;
             case NONODE:
                 LOG.error("Node does NOT EXIST: " + path);
@@ -557,6 +603,12 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
      * @param data a serialized {@link Container Container}.
      */
     private void processConDescription(byte[] data) {
+        // write data with the codec the application was deployed with
+        try {
+            codec = Codecs.codecOf(data);
+        } catch (IOException ex) {
+            LOG.error("Something went wrong: {}", ex.getMessage());
+        }
         // deserialize container 
         container = deserializeConType(data);
         /* initialize the services manager to manage services-dependencies
@@ -598,7 +650,8 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
     private final StatCallback setConZkNodeDataCallback = (int rc, String path, Object ctx, Stat stat) -> {
         switch (KeeperException.Code.get(rc)) {
             case CONNECTIONLOSS:
-                setZkConNodeData((byte[]) ctx);
+                LOG.warn("Connection loss was detected. Retrying...");
+                retryOrFail("setZkConNodeData", () -> setZkConNodeData((byte[]) ctx));
                 break;
             case NONODE:
                 LOG.error("Cannot set data to znode. ZNODE DOES NOT EXIST: " + path);
@@ -631,7 +684,7 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
         // set service status to NOT_INITIALIZED
         conZkSrvNode.setStatusNotInitialized();
         // serialize the node to byte array
-        byte[] data = ns.serializeZkSrvNode(path, conZkSrvNode);
+        byte[] data = ns.serializeZkSrvNode(path, conZkSrvNode, codec);
         // create the zNode of the service to the naming service
         createZkConSrvNode(path, data);
     }
@@ -655,7 +708,7 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
         switch (KeeperException.Code.get(rc)) {
             case CONNECTIONLOSS:
                 LOG.warn("Connection loss was detected. Retrying...");
-                checkContainerNode(path, (byte[]) ctx);
+                retryOrFail("checkContainerNode:" + path, () -> checkContainerNode(path, (byte[]) ctx));
                 break;
             case NODEEXISTS:
                 LOG.error("Service zNode already exists: " + path);
@@ -716,7 +769,7 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
         switch (KeeperException.Code.get(rc)) {
             case CONNECTIONLOSS:
                 LOG.warn("Connection loss was detected. Retrying...");
-                serviceExists(path);
+                retryOrFail("serviceExists:" + path, () -> serviceExists(path));
                 break;
             case NONODE:
                 LOG.warn("Service has NOT STARTED yet. Watch set to: " + path);
@@ -778,7 +831,7 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
         switch (KeeperException.Code.get(rc)) {
             case CONNECTIONLOSS:
                 LOG.warn("Connection loss was detected. Retrying...");
-                getZkSrvData(path);
+                retryOrFail("getZkSrvData:" + path, () -> getZkSrvData(path));
                 break;
             case NONODE:
                 LOG.error("CANNOT GET DATA from SERVICE. Service node DOES NOT EXIST: " + path);
@@ -833,7 +886,7 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
         switch (KeeperException.Code.get(rc)) {
             case CONNECTIONLOSS:
                 LOG.warn("Connection loss was detected. Retrying...");
-                getConData(path);
+                retryOrFail("getConData:" + path, () -> getConData(path));
                 break;
             case NONODE:
                 LOG.error("CANNOT GET DATA from CONTAINER. Container node DOES NOT EXIST: " + path);
@@ -861,12 +914,14 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
      */
     private void processConData(byte[] data, String zkConPath) {
         LOG.info("Processing container data: {}", zkConPath);
-        // deserialize container data 
-        Container srvCon = deserializeDependency(zkConPath, data);
+        // get the class of the container
+        Class<? extends Container> conClass = getContainerClass(zkConPath);
+        // deserialize only the name and environment of the container
+        Container srvCon = deserializeDependency(zkConPath, conClass, data);
         // get cotnainer name
         String conName = resolveConPath(zkConPath);
-        // save configuration to file named after the container
-        createConfFile(srvCon, conName);
+        // save configuration to file named after the container, as serialized
+        createConfFile(data, conClass, conName);
         // save container to service node
         srvMngr.setSrvNodeCon(zkConPath, srvCon);
         // set the service conf status of service-dependency to PROCESSED
@@ -1180,9 +1235,21 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
         updatableObj.updateStatus();
         LOG.info("Updating service status to {}: {}", conZkSrvNode.getStatus(), servicePath);
         // serialize data
-        byte[] updatedData = ns.serializeZkSrvNode(servicePath, conZkSrvNode);
+        byte[] updatedData = ns.serializeZkSrvNode(servicePath, conZkSrvNode, codec);
         // update service node data
         setZNodeData(servicePath, updatedData);
+        // update the status summary of the application
+        getAppStatusWriter().update(conSrvName, conZkSrvNode.getStatus());
+    }
+
+    /**
+     * @return the writer of the status summary of the application.
+     */
+    private synchronized AppStatusWriter getAppStatusWriter() {
+        if (appStatusWriter == null) {
+            appStatusWriter = new AppStatusWriter(zk, appStatusPath, retryPolicy);
+        }
+        return appStatusWriter;
     }
 
     /**
@@ -1199,7 +1266,8 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
     private final StatCallback setZNodeDataDataCallback = (int rc, String path, Object ctx, Stat stat) -> {
         switch (KeeperException.Code.get(rc)) {
             case CONNECTIONLOSS:
-                setZNodeData(path, (byte[]) ctx);
+                LOG.warn("Connection loss was detected. Retrying...");
+                retryOrFail("setZNodeData:" + path, () -> setZNodeData(path, (byte[]) ctx));
                 break;
             case NONODE:
                 LOG.error("Cannot set data to node. NODE DOES NOT EXITST: " + path);
@@ -1249,7 +1317,7 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
         switch (KeeperException.Code.get(rc)) {
             case CONNECTIONLOSS:
                 LOG.warn("Connection loss was detected. Retrying...");
-                getZkSrvUpdatedData(path);
+                retryOrFail("getZkSrvUpdatedData:" + path, () -> getZkSrvUpdatedData(path));
                 break;
             case NONODE:
                 LOG.error("CANNOT GET DATA from SERVICE. Service node DOES NOT EXIST: " + path);
@@ -1343,6 +1411,36 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
         }
     }
 
+    /**
+     * Creates a file with the configuration of a container, from the
+     * serialized container. The configuration is written as xml, without
+     * being de-serialized if the payload is xml based.
+     *
+     * @param data the serialized container.
+     * @param conClass the class of the container.
+     * @param fileName the name of the file to hold the data.
+     */
+    private void createConfFile(byte[] data, Class<? extends Container> conClass, String fileName) {
+        if (conClass == null) {
+            LOG.error("FAILED to create configuration file. Unknown container type: {}", fileName);
+            return;
+        }
+        // create the final file path
+        String path = brokerConf.brokerDir + File.separator + fileName;
+        // create new file
+        File newFile = new File(path);
+        // create parent directories if they do not exist
+        newFile.getParentFile().mkdirs();
+        // save data to file
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(newFile))) {
+            Codecs.writeContainerXml(data, conClass, out);
+            // log event
+            LOG.info("Created configuration file: {}", path);
+        } catch (IOException ex) {
+            LOG.error("FAILED to create configuration file: " + ex);
+        }
+    }
+
     /**
      * <p>
      * De-serializes the container associated with the broker.
@@ -1356,36 +1454,49 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
     protected abstract Container deserializeConType(byte[] data);
 
     /**
-     * De-serialiazes a container.
+     * Returns the class of a container, according to the container type.
+     *
+     * @param path the path of the container zNode.
+     * @return the class of the container or NULL if the type is unknown.
+     */
+    private Class<? extends Container> getContainerClass(String path) {
+        // get the type of the container
+        String type = getContainerType(path);
+        if (type.equalsIgnoreCase("WebContainer")) {
+            return WebContainer.class;
+        } else if (type.equalsIgnoreCase("BusinessContainer")) {
+            return BusinessContainer.class;
+        } else if (type.equalsIgnoreCase("DataContainer")) {
+            return DataContainer.class;
+        }
+        return null;
+    }
+
+    /**
+     * <p>
+     * De-serialiazes the service name and the environment of a container.
+     * <p>
+     * Only these are used from dependencies, the other sections are skipped.
      *
      * @param path the path of the container.
+     * @param conClass the class of the container.
      * @param data the data to deserialize.
-     * @return a {@link Container Container} object.
+     * @return a {@link Container Container} object with only the service name
+     * and the environment set.
      */
-    private Container deserializeDependency(String path, byte[] data) {
+    private Container deserializeDependency(String path, Class<? extends Container> conClass, byte[] data) {
         Container con = null;
-        // get the type of the container
-        String type = getContainerType(path);
-        // de-serialize the container according to the container type       
+        if (conClass == null) {
+            LOG.error("De-serialization of dependency {} FAILED. Unknown container type.", path);
+            return con;
+        }
         try {
-            if (type.equalsIgnoreCase("WebContainer")) {
-                WebContainer webCon = JAXBSerializer.deserializeToWebContainer(data);
-                con = webCon;
-            } else if (type.equalsIgnoreCase("BusinessContainer")) {
-                BusinessContainer businessCon = JAXBSerializer.deserializeToBusinessContainer(data);
-                con = businessCon;
-            } else if (type.equalsIgnoreCase("DataContainer")) {
-                DataContainer dataCon = JAXBSerializer.deserializeToDataContainer(data);
-                con = dataCon;
-            }
-
-            if (con != null) {
-                LOG.info("De-serialized dependency: {}. Printing: \n {}", resolveConPath(path),
-                        JAXBSerializer.deserializeToString(data));
-            } else {
-                LOG.error("De-serialization of dependency {} FAILED", path);
+            con = Codecs.decodeContainerEnv(data, conClass);
+            LOG.info("De-serialized dependency: {}", resolveConPath(path));
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Printing: \n {}", Codecs.toString(data));
             }
-        } catch (JAXBException ex) {
+        } catch (IOException ex) {
             LOG.error("De-serialization of dependency FAILED: " + ex);
         }
 
@@ -1401,9 +1512,9 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
     private byte[] serializeConf(Container con) {
         byte[] data = null;
         try {
-            data = JAXBSerializer.serialize(con);
+            data = Codecs.encode(codec, con);
             LOG.info("Configuration serialized SUCCESSFULLY!");
-        } catch (JAXBException ex) {
+        } catch (IOException ex) {
             LOG.error("Serialization FAILED: " + ex);
         }
         return data;
@@ -1528,7 +1639,7 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
         switch (KeeperException.Code.get(rc)) {
             case CONNECTIONLOSS:
                 LOG.warn("Connection loss was detected. Retrying...");
-                setWatchOnDependentSrv(path);
+                retryOrFail("setWatchOnDependentSrv:" + path, () -> setWatchOnDependentSrv(path));
                 break;
             case NONODE:
                 LOG.warn("Dependent service does not exist: " + path);
@@ -1572,6 +1683,7 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
      * @param version the data version of the zNode.
      */
     private void deleteNode(String path, int version) {
+        ZkRetryPolicy.Retry retry = retryPolicy.newRetry();
         while (true) {
             try {
                 zk.delete(path, version);
@@ -1585,6 +1697,9 @@ public abstract class Broker extends ZkConnectionWatcher implements Shutdown, Li
                 break;
             } catch (KeeperException.ConnectionLossException ex) {
                 LOG.warn("Connection loss was detected. Retrying...");
+                if (!retry.backoff()) {
+                    break;
+                }
             } catch (KeeperException.NoNodeException ex) {
                 LOG.info("Node already deleted: {}", path);
                 break;
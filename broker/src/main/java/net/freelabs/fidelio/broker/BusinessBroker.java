@@ -16,10 +16,10 @@
  */
 package net.freelabs.fidelio.broker;
 
-import javax.xml.bind.JAXBException;
+import java.io.IOException;
 import net.freelabs.fidelio.core.schema.BusinessContainer;
 import net.freelabs.fidelio.core.schema.Container;
-import net.freelabs.fidelio.core.serializer.JAXBSerializer;
+import net.freelabs.fidelio.core.serializer.Codecs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,10 +44,10 @@ public class BusinessBroker extends Broker {
     public Container deserializeConType(byte[] data) {
         BusinessContainer con = null;
         try {
-            con = JAXBSerializer.deserializeToBusinessContainer(data);
+            con = Codecs.decodeContainer(data, BusinessContainer.class);
             LOG.info("Configuration deserialized! Printing: \n {}",
-                    JAXBSerializer.deserializeToString(data));
-        } catch (JAXBException ex) {
+                    Codecs.toString(data));
+        } catch (IOException ex) {
             LOG.error("De-serialization FAILED: " + ex);
         }
         // initialize instance
@@ -16,10 +16,10 @@
  */
 package net.freelabs.fidelio.broker;
 
-import javax.xml.bind.JAXBException;
+import java.io.IOException;
 import net.freelabs.fidelio.core.schema.Container;
 import net.freelabs.fidelio.core.schema.DataContainer;
-import net.freelabs.fidelio.core.serializer.JAXBSerializer;
+import net.freelabs.fidelio.core.serializer.Codecs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,10 +57,10 @@ public class DataBroker extends Broker {
     public Container deserializeConType(byte[] data) {
         DataContainer con = null;
         try {
-            con = JAXBSerializer.deserializeToDataContainer(data);
+            con = Codecs.decodeContainer(data, DataContainer.class);
             LOG.info("Configuration deserialized! Printing: \n {}",
-                    JAXBSerializer.deserializeToString(data));
-        } catch (JAXBException ex) {
+                    Codecs.toString(data));
+        } catch (IOException ex) {
             LOG.error("De-serialization FAILED: " + ex);
         }
         // initialize instance var
@@ -16,15 +16,35 @@
  */
 package net.freelabs.fidelio.broker;
 
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import net.freelabs.fidelio.broker.process.Executable;
 import net.freelabs.fidelio.broker.services.ServiceManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- *
+ * <p>
  * Class that provides methods to manage the execution during different states
  * of the container life-cycle.
+ * <p>
+ * Events are queued and processed in order by a single event-loop thread, so
+ * that events signaled concurrently from zookeeper callbacks and worker
+ * threads are never interleaved or lost. The state machine is table-driven:
+ * every state has a table that maps an event to a {@link Rule Rule} that
+ * computes the next state. The executables of the life-cycle cycles hand off
+ * their work to other threads and must not block the event loop.
+ * <p>
+ * A SRV_UPDATED or SRV_INITIALIZED event that is already queued is not queued
+ * again, as processing it reads the latest status of all the services. The
+ * latency of every transition, from the time the event was signaled to the
+ * time the cycle of the next state was started, is recorded.
  */
 public class LifecycleHandler {
 
@@ -39,171 +59,276 @@ public class LifecycleHandler {
         BOOT, ERROR, SRV_INITIALIZED, SRV_NOT_INITIALIZED, SRV_NOT_RUNNING, SRV_UPDATED,
         SRV_DELETED, SRV_ADDED, SRV_NONE, CON_UPDATED, CON_INIT, SHUTDOWN
     };
+
     /**
-     * Holds configuration and state status for all required services.
+     * Computes the next state for an event.
      */
-    private ServiceManager srvMngr;
+    @FunctionalInterface
+    private interface Rule {
+
+        /**
+         * @return the next state, whose cycle is executed, or NULL to stay at
+         * the current state.
+         */
+        STATE next();
+    }
+
     /**
-     * Flag indicating if services are processed.
+     * An event and the time it was signaled.
      */
-    private boolean srvsProcessed;
+    private static final class Signal {
+
+        /**
+         * The event.
+         */
+        private final EVENT event;
+        /**
+         * The time (nanoseconds) the event was signaled.
+         */
+        private final long signaled;
+
+        /**
+         * Constructor.
+         *
+         * @param event the event.
+         */
+        private Signal(EVENT event) {
+            this.event = event;
+            this.signaled = System.nanoTime();
+        }
+    }
+
+    /**
+     * The latency of a transition.
+     */
+    public static final class TransitionStats {
+
+        /**
+         * The number of times the transition was made.
+         */
+        private long count;
+        /**
+         * The total latency (nanoseconds).
+         */
+        private long totalNanos;
+        /**
+         * The maximum latency (nanoseconds).
+         */
+        private long maxNanos;
+
+        /**
+         * Adds a latency sample.
+         *
+         * @param nanos the latency (nanoseconds).
+         */
+        private void add(long nanos) {
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        /**
+         * @return a copy of the statistics.
+         */
+        private TransitionStats copy() {
+            TransitionStats copy = new TransitionStats();
+            copy.count = count;
+            copy.totalNanos = totalNanos;
+            copy.maxNanos = maxNanos;
+            return copy;
+        }
+
+        /**
+         * @return the number of times the transition was made.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the average latency (microseconds).
+         */
+        public long getAvgMicros() {
+            return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalNanos / count);
+        }
+
+        /**
+         * @return the maximum latency (microseconds).
+         */
+        public long getMaxMicros() {
+            return TimeUnit.NANOSECONDS.toMicros(maxNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d, avg=%dus, max=%dus", count, getAvgMicros(), getMaxMicros());
+        }
+    }
+
     /**
-     * Indicates if the current life-cycle needs to be executed, or just stay at
-     * that state.
+     * The maximum number of queued events.
      */
-    private boolean execCycle;
+    private static final int QUEUE_CAPACITY = 1024;
     /**
-     * The current container life-cycle state.
+     * The queued events, signaled by any thread and processed by the event
+     * loop.
      */
-    private STATE curState;
+    private final BlockingQueue<Signal> events = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    /**
+     * Indicates that a SRV_UPDATED event is queued.
+     */
+    private final AtomicBoolean srvUpdatedQueued = new AtomicBoolean();
     /**
-     * The event that was triggered.
+     * Indicates that a SRV_INITIALIZED event is queued.
      */
-    private EVENT curEvent;
+    private final AtomicBoolean srvInitializedQueued = new AtomicBoolean();
+    /**
+     * Indicates that the event loop was started.
+     */
+    private final AtomicBoolean started = new AtomicBoolean();
+    /**
+     * The transition table, with the rules for every event, for every state.
+     */
+    private final Map<STATE, Map<EVENT, Rule>> table = new EnumMap<>(STATE.class);
+    /**
+     * Map with the latency of every transition made, with the transition as
+     * key.
+     */
+    private final Map<String, TransitionStats> transitionStats = new LinkedHashMap<>();
+    /**
+     * Holds configuration and state status for all required services. Set by
+     * a worker thread, read by the event loop.
+     */
+    private volatile ServiceManager srvMngr;
+    /**
+     * Flag indicating if services are processed.
+     */
+    private boolean srvsProcessed;
+    /**
+     * The current container life-cycle state. Accessed only by the event loop.
+     */
+    private STATE curState;
     /**
      * A Logger object.
      */
     private static final Logger LOG = LoggerFactory.getLogger(LifecycleHandler.class);
 
     /**
-     * Calculates the transition to the next life-cycle state, based on the
-     * current life-cycle state and other needed conditions.
-     */
-    private void transition() {
-        if (curEvent == EVENT.BOOT) {
-            LOG.debug("Current State: {}", curState.toString());
-            curState = STATE.BOOT;
-            LOG.debug("Next State: {}", curState.toString());
-        } else if (curEvent == EVENT.SHUTDOWN) {
-            LOG.debug("Current State: {}", curState.toString());
-            curState = STATE.SHUTDOWN;
-            execCycle = true;
-            LOG.debug("Next State: {}", curState.toString());
-        } else if (curEvent == EVENT.ERROR) {
-            LOG.debug("Current State: {}", curState.toString());
-            curState = STATE.ERROR;
-            execCycle = true;
-            LOG.debug("Next State: {}", curState.toString());
-        } else if (curState == STATE.BOOT && curEvent == EVENT.CON_INIT) {
-            LOG.debug("Current State: {}", curState.toString());
-            execCycle = true;
-            curState = STATE.INIT;
-            LOG.debug("Next State: {}", curState.toString());
-        } else if (curState == STATE.INIT
-                && (curEvent == EVENT.SRV_ADDED || curEvent == EVENT.SRV_INITIALIZED)) {
-            LOG.debug("Current State: {}", curState.toString());
-            if (srvsProcessed) {
-                // check if srvs are initialized
-                boolean initialized = srvMngr.areSrvInitialized();
-                if (initialized) {
-                    execCycle = true;
-                    curState = STATE.START;
-                } else {
-                    execCycle = false;
-                }
-            } else {
-                // check if srvs are processed
-                srvsProcessed = srvMngr.areSrvProcessed();
-                // check if srvs are initialized
-                boolean initialized = srvMngr.areSrvInitialized();
-                if (initialized) {
-                    execCycle = true;
-                    curState = STATE.START;
-                } else {
-                    execCycle = false;
-                }
-            }
-            LOG.debug("Next State: {}", curState.toString());
-        } else if (curState == STATE.INIT && curEvent == EVENT.SRV_NONE) {
-            LOG.debug("Current State: {}", curState.toString());
-            execCycle = true;
-            curState = STATE.START;
-            LOG.debug("Next State: {}", curState.toString());
-        } else if (curState == STATE.INIT && curEvent == EVENT.SRV_UPDATED) {
-            LOG.debug("Current State: {}", curState.toString());
-            // check if srvs are processed
-            srvsProcessed = srvMngr.areSrvProcessed();
-            if (srvsProcessed) {
-                // check if srvs are initialized
-                boolean initialized = srvMngr.areSrvInitialized();
-                if (initialized) {
-                    execCycle = true;
-                    curState = STATE.START;
-                } else {
-                    execCycle = false;
-                }
-            } else {
-                execCycle = false;
-            }
-            LOG.debug("Next State: {}", curState.toString());
-        } else if (curState == STATE.INIT
-                && (curEvent == EVENT.SRV_DELETED || curEvent == EVENT.SRV_NOT_RUNNING
-                || curEvent == EVENT.CON_UPDATED)) {
-            LOG.debug("Current State: {}", curState.toString());
-             execCycle = true;
-            curState = STATE.ERROR;
-            LOG.debug("Next State: {}", curState.toString());
-        } else if (curState == STATE.START
-                && (curEvent == EVENT.SRV_DELETED || curEvent == EVENT.SRV_NOT_RUNNING
-                || curEvent == EVENT.SRV_NOT_INITIALIZED)) {
-            LOG.debug("Current State: {}", curState.toString());
-             execCycle = true;
-            curState = STATE.ERROR;
-            LOG.debug("Next State: {}", curState.toString());
-        } else if (curState == STATE.START && curEvent == EVENT.SRV_UPDATED) {
-            LOG.debug("Current State: {}", curState.toString());
-            // check if srvs are processed
-            srvsProcessed = srvMngr.areSrvProcessed();
-            if (srvsProcessed) {
-                // check if srvs are initialized (an updated service is initialized)
-                boolean initialized = srvMngr.areSrvInitialized();
-                if (initialized) {
-                    execCycle = true;
-                    curState = STATE.UPDATE;
-                } else {
-                    execCycle = false;
-                }
-            } else {
-                execCycle = false;
-            }
-            LOG.debug("Next State: {}", curState.toString());
-        } else if (curState == STATE.START && curEvent == EVENT.CON_UPDATED) {
-            LOG.debug("Current State: {}", curState.toString());
-            execCycle = true;
-            curState = STATE.UPDATE;
-            LOG.debug("Next State: {}", curState.toString());
-        } else if (curState == STATE.UPDATE && (curEvent == EVENT.SRV_DELETED || curEvent == EVENT.SRV_NOT_RUNNING
-                || curEvent == EVENT.SRV_NOT_INITIALIZED)) {
-            LOG.debug("Current State: {}", curState.toString());
-            curState = STATE.ERROR;
-            LOG.debug("Next State: {}", curState.toString());
-        } else if (curState == STATE.UPDATE && curEvent == EVENT.SRV_UPDATED) {
-            LOG.debug("Current State: {}", curState.toString());
+     * Constructor.
+     */
+    public LifecycleHandler() {
+        initTable();
+    }
+
+    /**
+     * Creates the transition table.
+     */
+    private void initTable() {
+        for (STATE state : STATE.values()) {
+            Map<EVENT, Rule> rules = new EnumMap<>(EVENT.class);
+            // events that apply to every state
+            rules.put(EVENT.BOOT, () -> STATE.BOOT);
+            rules.put(EVENT.SHUTDOWN, () -> STATE.SHUTDOWN);
+            rules.put(EVENT.ERROR, () -> STATE.ERROR);
+            table.put(state, rules);
+        }
+
+        Map<EVENT, Rule> boot = table.get(STATE.BOOT);
+        boot.put(EVENT.CON_INIT, () -> STATE.INIT);
+
+        Map<EVENT, Rule> init = table.get(STATE.INIT);
+        init.put(EVENT.SRV_ADDED, this::startIfSrvsInitialized);
+        init.put(EVENT.SRV_INITIALIZED, this::startIfSrvsInitialized);
+        init.put(EVENT.SRV_NONE, () -> STATE.START);
+        init.put(EVENT.SRV_UPDATED, () -> srvsReady() ? STATE.START : null);
+        init.put(EVENT.SRV_DELETED, () -> STATE.ERROR);
+        init.put(EVENT.SRV_NOT_RUNNING, () -> STATE.ERROR);
+        init.put(EVENT.CON_UPDATED, () -> STATE.ERROR);
+
+        Map<EVENT, Rule> start = table.get(STATE.START);
+        start.put(EVENT.SRV_DELETED, () -> STATE.ERROR);
+        start.put(EVENT.SRV_NOT_RUNNING, () -> STATE.ERROR);
+        start.put(EVENT.SRV_NOT_INITIALIZED, () -> STATE.ERROR);
+        // an updated service is initialized
+        start.put(EVENT.SRV_UPDATED, () -> srvsReady() ? STATE.UPDATE : null);
+        start.put(EVENT.CON_UPDATED, () -> STATE.UPDATE);
+
+        Map<EVENT, Rule> update = table.get(STATE.UPDATE);
+        update.put(EVENT.SRV_DELETED, () -> STATE.ERROR);
+        update.put(EVENT.SRV_NOT_RUNNING, () -> STATE.ERROR);
+        update.put(EVENT.SRV_NOT_INITIALIZED, () -> STATE.ERROR);
+        update.put(EVENT.SRV_UPDATED, () -> srvsReady() ? STATE.UPDATE : null);
+        update.put(EVENT.CON_UPDATED, () -> STATE.UPDATE);
+    }
+
+    /**
+     * Rule for the INIT state: the services are checked if processed, once,
+     * and the start cycle is executed when all services are initialized.
+     *
+     * @return the START state if all services are initialized, else NULL.
+     */
+    private STATE startIfSrvsInitialized() {
+        if (!srvsProcessed) {
             // check if srvs are processed
             srvsProcessed = srvMngr.areSrvProcessed();
-            if (srvsProcessed) {
-                // check if srvs are initialized (an updated service is initialized)
-                boolean initialized = srvMngr.areSrvInitialized();
-                if (initialized) {
-                    execCycle = true;
-                    curState = STATE.UPDATE;
-                } else {
-                    execCycle = false;
-                }
-            } else {
-                execCycle = false;
-            }
-            LOG.debug("Next State: {}", curState.toString());
-        } else if (curState == STATE.UPDATE && curEvent == EVENT.CON_UPDATED) {
-            LOG.debug("Current State: {}", curState.toString());
-            execCycle = true;
-            curState = STATE.UPDATE;
-            LOG.debug("Next State: {}", curState.toString());
+        }
+        // check if srvs are initialized
+        return srvMngr.areSrvInitialized() ? STATE.START : null;
+    }
+
+    /**
+     * Checks again if the services are processed, as an updated service has
+     * to be processed again, and if they are initialized.
+     *
+     * @return true if all services are processed and initialized.
+     */
+    private boolean srvsReady() {
+        // check if srvs are processed
+        srvsProcessed = srvMngr.areSrvProcessed();
+        // check if srvs are initialized
+        return srvsProcessed && srvMngr.areSrvInitialized();
+    }
+
+    /**
+     * Processes an event: calculates the transition to the next life-cycle
+     * state and executes the cycle of the next state. Runs on the event loop.
+     *
+     * @param signal the event.
+     */
+    private void process(Signal signal) {
+        // allow the event to be queued again, before the services are read
+        if (signal.event == EVENT.SRV_UPDATED) {
+            srvUpdatedQueued.set(false);
+        } else if (signal.event == EVENT.SRV_INITIALIZED) {
+            srvInitializedQueued.set(false);
+        }
+        STATE prevState = curState;
+        Rule rule = table.get(curState).get(signal.event);
+        STATE next = rule == null ? null : rule.next();
+        if (next == null) {
+            LOG.debug("No transition from state {} on event {}.", curState, signal.event);
+            return;
+        }
+        LOG.debug("Current State: {}", curState);
+        curState = next;
+        LOG.debug("Next State: {}", curState);
+        action();
+        // record the latency of the transition
+        long latency = System.nanoTime() - signal.signaled;
+        String transition = prevState + " -" + signal.event + "-> " + next;
+        synchronized (transitionStats) {
+            transitionStats.computeIfAbsent(transition, (k) -> new TransitionStats()).add(latency);
+        }
+        LOG.debug("Transition {} took {} us.", transition, TimeUnit.NANOSECONDS.toMicros(latency));
+        if (next == STATE.SHUTDOWN || next == STATE.ERROR) {
+            getTransitionStats().entrySet().stream().forEach((entry) -> {
+                LOG.info("Transition latency {}: {}", entry.getKey(), entry.getValue());
+            });
         }
     }
 
     /**
-     * Executes an action based on the calculated container life-cycle state.
+     * Executes the cycle of the current container life-cycle state.
      */
     private void action() {
         switch (curState) {
@@ -211,40 +336,88 @@ public class LifecycleHandler {
                 execContainerBootCycle.execute();
                 break;
             case INIT:
-                if (execCycle) {
-                    execCycle = false;
-                    execContainerInitCycle.execute();
-                }
+                execContainerInitCycle.execute();
                 break;
             case START:
-                if (execCycle) {
-                    execCycle = false;
-                    execContainerStartLifeCycle.execute();
-                }
+                execContainerStartLifeCycle.execute();
                 break;
             case UPDATE:
-                if (execCycle) {
-                    execCycle = false;
-                    execContainerUpdateLifeCycle.execute();
-                }
+                execContainerUpdateLifeCycle.execute();
                 break;
             case SHUTDOWN:
-                if (execCycle) {
-                    execContainerShutdownLifeCycle.execute();
-                    execCycle = false;
-                }
+                execContainerShutdownLifeCycle.execute();
                 break;
             case ERROR:
-                if (execCycle) {
-                    execContainerErrorLifeCycle.execute();
-                    execCycle = false;
-                }
+                execContainerErrorLifeCycle.execute();
                 break;
             default:
                 LOG.error("An UNEXPECTED state has occured!");
                 break;
         }
     }
+
+    /**
+     * The event loop. Processes the queued events in order, until the thread
+     * is interrupted.
+     */
+    private void eventLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                process(events.take());
+            } catch (InterruptedException ex) {
+                // log the event
+                LOG.warn("Thread Interrupted. Stopping");
+                // set the interrupt status
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException ex) {
+                LOG.error("Something went wrong: {}", ex.getMessage());
+                LOG.trace("Something went wrong: ", ex);
+            }
+        }
+    }
+
+    /**
+     * Queues an event to be processed by the event loop. If the queue is full
+     * the calling thread waits for space, so that no event is lost.
+     *
+     * @param event the event.
+     */
+    private void signal(EVENT event) {
+        LOG.info("EVENT triggered: {}.", event);
+        // do not queue an event that is already queued
+        if ((event == EVENT.SRV_UPDATED && !srvUpdatedQueued.compareAndSet(false, true))
+                || (event == EVENT.SRV_INITIALIZED && !srvInitializedQueued.compareAndSet(false, true))) {
+            LOG.debug("Event {} already queued.", event);
+            return;
+        }
+        Signal signal = new Signal(event);
+        if (!events.offer(signal)) {
+            LOG.warn("Event queue is full. Waiting to queue event {}.", event);
+            try {
+                events.put(signal);
+            } catch (InterruptedException ex) {
+                // log the event
+                LOG.warn("Thread Interrupted. Stopping");
+                // set the interrupt status
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return map with the latency of every transition made, with the
+     * transition as key.
+     */
+    public Map<String, TransitionStats> getTransitionStats() {
+        Map<String, TransitionStats> copy = new LinkedHashMap<>();
+        synchronized (transitionStats) {
+            transitionStats.entrySet().stream().forEach((entry) -> {
+                copy.put(entry.getKey(), entry.getValue().copy());
+            });
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
     // ------- Executables for the different container life-cycle states ------- 
     /**
      * Executes code that will start the bootEvent cycle of the container
@@ -278,15 +451,22 @@ public class LifecycleHandler {
     private Executable execContainerErrorLifeCycle;
 
     // --------------------------- Events to interact --------------------------
-    public synchronized void bootEvent() {
+    /**
+     * Signals the boot event and starts the event loop. The executables must
+     * be set before.
+     */
+    public void bootEvent() {
         // check LifecycleHandler initialization
-        if (execContainerInitCycle != null && execContainerStartLifeCycle != null
+        if (execContainerBootCycle != null && execContainerInitCycle != null && execContainerStartLifeCycle != null
                 && execContainerShutdownLifeCycle != null && execContainerUpdateLifeCycle != null
                 && execContainerErrorLifeCycle != null) {
-            curEvent = EVENT.BOOT;
-            curState = STATE.BOOT;
-            transition();
-            action();
+            if (started.compareAndSet(false, true)) {
+                curState = STATE.BOOT;
+                Thread loop = new Thread(this::eventLoop, "Lifecycle-event-loop");
+                loop.setDaemon(true);
+                loop.start();
+            }
+            signal(EVENT.BOOT);
         } else {
             LOG.error("LifecycleHandler NOT INITIALIZED.");
         }
@@ -296,132 +476,77 @@ public class LifecycleHandler {
      * Signals a shutdown event.
      */
     public void shutdownEvent() {
-        LOG.info("EVENT triggered: SHUTDOWN.");
-        synchronized (this) {
-            curEvent = EVENT.SHUTDOWN;
-            transition();
-        }
-        action();
+        signal(EVENT.SHUTDOWN);
     }
 
     /**
      * Signals a service added event.
      */
     public void serviceAddedEvent() {
-        LOG.info("EVENT triggered: SRV_ADDED.");
-        synchronized (this) {
-            curEvent = EVENT.SRV_ADDED;
-            transition();
-        }
-        action();
+        signal(EVENT.SRV_ADDED);
     }
 
     /**
      * Signals a service delete event.
      */
     public void serviceDeletedEvent() {
-        LOG.info("EVENT triggered: SRV_DELETED.");
-        synchronized (this) {
-            curEvent = EVENT.SRV_DELETED;
-            transition();
-        }
-        action();
+        signal(EVENT.SRV_DELETED);
     }
 
     /**
      * Signals a service update event.
      */
     public void serviceUpdatedEvent() {
-        LOG.info("EVENT triggered: SRV_UPDATED.");
-        synchronized (this) {
-            curEvent = EVENT.SRV_UPDATED;
-            transition();
-        }
-        action();
+        signal(EVENT.SRV_UPDATED);
     }
 
     /**
      * Signals a service initialized event.
      */
     public void serviceInitializedEvent() {
-        LOG.info("EVENT triggered: SRV_INITIALIZED.");
-        synchronized (this) {
-            curEvent = EVENT.SRV_INITIALIZED;
-            transition();
-        }
-        action();
+        signal(EVENT.SRV_INITIALIZED);
     }
 
     /**
      * Signals a service not initialized event.
      */
     public void serviceNotInitializedEvent() {
-        LOG.info("EVENT triggered: SRV_NOT_INITIALIZED.");
-        synchronized (this) {
-            curEvent = EVENT.SRV_NOT_INITIALIZED;
-            transition();
-        }
-        action();
+        signal(EVENT.SRV_NOT_INITIALIZED);
     }
 
     /**
      * Signals a service not running event.
      */
     public void serviceNotRunnningEvent() {
-        LOG.info("EVENT triggered: SRV_NOT_RUNNING.");
-        synchronized (this) {
-            curEvent = EVENT.SRV_NOT_RUNNING;
-            transition();
-        }
-        action();
+        signal(EVENT.SRV_NOT_RUNNING);
     }
 
     /**
      * Signals a no service event.
      */
     public void serviceNoneEvent() {
-        LOG.info("EVENT triggered: SRV_NONE.");
-        synchronized (this) {
-            curEvent = EVENT.SRV_NONE;
-            transition();
-        }
-        action();
+        signal(EVENT.SRV_NONE);
     }
 
     /**
      * Signals an errorEvent event.
      */
     public void errorEvent() {
-        LOG.info("EVENT triggered: ERROR.");
-        synchronized (this) {
-            curEvent = EVENT.ERROR;
-            transition();
-        }
-        action();
+        signal(EVENT.ERROR);
     }
 
     /**
      * Signals a container update event.
      */
     public void containerUpdatedEvent() {
-        LOG.info("EVENT triggered: CON_UPDATED.");
-        synchronized (this) {
-            curEvent = EVENT.CON_UPDATED;
-            transition();
-        }
-        action();
+        signal(EVENT.CON_UPDATED);
     }
 
     /**
      * Signals a container start initialization event.
      */
     public void containerInitEvent() {
-        LOG.info("EVENT triggered: CON_INIT.");
-        synchronized (this) {
-            curEvent = EVENT.CON_INIT;
-            transition();
-        }
-        action();
+        signal(EVENT.CON_INIT);
     }
 
     // -------------------------------- Setters -------------------------------- 
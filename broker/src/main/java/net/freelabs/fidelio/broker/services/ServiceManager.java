@@ -17,9 +17,10 @@
 package net.freelabs.fidelio.broker.services;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import net.freelabs.fidelio.broker.services.ServiceNode.SRV_CONF_STATUS;
 import net.freelabs.fidelio.core.schema.Container;
 import net.freelabs.fidelio.core.zookeeper.ZkNamingServiceNode.SRV_STATE_STATUS;
@@ -35,6 +36,12 @@ import org.slf4j.LoggerFactory;
  * The container needs the configuration from the services in order to
  * initialize and also to ensure that the required services are initialized (not
  * just running) in order to start the main container process.
+ * <p>
+ * The number of services not yet processed and not yet initialized is kept
+ * with counters, updated on every status change of a service node, so that
+ * readiness is checked in constant time without locking. Every status change
+ * is applied atomically on the service node, with the counters. The names of
+ * the services waited for are computed only when requested.
  */
 public final class ServiceManager {
 
@@ -46,7 +53,15 @@ public final class ServiceManager {
     /**
      * The service nodes of the required services.
      */
-    private final Map<String, ServiceNode> srvNodes = new HashMap<>();
+    private final Map<String, ServiceNode> srvNodes = new ConcurrentHashMap<>();
+    /**
+     * The number of service nodes whose configuration is not processed.
+     */
+    private final AtomicInteger notProcessed = new AtomicInteger();
+    /**
+     * The number of service nodes that are not initialized.
+     */
+    private final AtomicInteger notInitialized = new AtomicInteger();
     /**
      * A Logger object.
      */
@@ -59,11 +74,10 @@ public final class ServiceManager {
     public ServiceManager(Map<String, String> srvsNamePath) {
         // create service nodes
         srvsNamePath.entrySet().stream().forEach((entry) -> {
-            ServiceNode srvNode = new ServiceNode(entry.getKey(), entry.getValue(), "");
             // add to list with paths
             services.add(entry.getValue());
             // add to service nodes 
-            srvNodes.put(entry.getValue(), srvNode);
+            createSrvNode(entry.getKey(), entry.getValue(), "");
         });
     }
 
@@ -75,8 +89,14 @@ public final class ServiceManager {
      * @param zkContPath the path of the container znode offering this service
      */
     public void createSrvNode(String srvName, String srvPath, String zkContPath) {
-        ServiceNode srvNode = new ServiceNode(srvName, srvPath, zkContPath);
-        srvNodes.put(srvPath, srvNode);
+        srvNodes.compute(srvPath, (path, oldNode) -> {
+            if (oldNode != null) {
+                count(oldNode, -1);
+            }
+            ServiceNode srvNode = new ServiceNode(srvName, srvPath, zkContPath);
+            count(srvNode, 1);
+            return srvNode;
+        });
     }
 
     /**
@@ -84,21 +104,52 @@ public final class ServiceManager {
      *
      * @param srvPath the zNode path of the service to the naming service.
      */
-    public synchronized void deleteSrvNode(String srvPath) {
-        srvNodes.remove(srvPath);
+    public void deleteSrvNode(String srvPath) {
+        srvNodes.computeIfPresent(srvPath, (path, srvNode) -> {
+            count(srvNode, -1);
+            return null;
+        });
     }
 
-    public synchronized boolean areSrvProcessed() {
-        StringBuilder waitingServices = new StringBuilder();
+    /**
+     * Adds or removes the statuses of a service node to the counters. Must be
+     * called while the service node is updated atomically.
+     *
+     * @param srvNode the service node.
+     * @param delta 1 to add the service node, -1 to remove it.
+     */
+    private void count(ServiceNode srvNode, int delta) {
+        if (isNotProcessed(srvNode.getSrvConfStatus())) {
+            notProcessed.addAndGet(delta);
+        }
+        if (isNotInitialized(srvNode.getSrvStateStatus())) {
+            notInitialized.addAndGet(delta);
+        }
+    }
 
-        srvNodes.entrySet().stream().map((entry) -> entry.getValue()).forEach((srvNode) -> {
-            SRV_CONF_STATUS srvConfStatus = srvNode.getSrvConfStatus();
-            if (srvConfStatus == SRV_CONF_STATUS.NOT_PROCESSED) {
-                waitingServices.append(srvNode.getServiceName()).append(" ");
-            }
-        });
+    /**
+     * @param srvConfStatus a service configuration status.
+     * @return true if the configuration is not processed.
+     */
+    private static boolean isNotProcessed(SRV_CONF_STATUS srvConfStatus) {
+        return srvConfStatus == SRV_CONF_STATUS.NOT_PROCESSED;
+    }
+
+    /**
+     * @param srvStateStatus a service state status.
+     * @return true if the service is not initialized. An updated service is
+     * initialized.
+     */
+    private static boolean isNotInitialized(SRV_STATE_STATUS srvStateStatus) {
+        return srvStateStatus != SRV_STATE_STATUS.INITIALIZED
+                && srvStateStatus != SRV_STATE_STATUS.UPDATED;
+    }
 
-        if (waitingServices.toString().isEmpty()) {
+    /**
+     * @return true if the configuration of all services is processed.
+     */
+    public boolean areSrvProcessed() {
+        if (notProcessed.get() == 0) {
             if (!srvNodes.isEmpty()) {
                 LOG.info("All required services PROCESSED.");
             } else {
@@ -106,23 +157,19 @@ public final class ServiceManager {
             }
             return true;
         } else {
-            LOG.info("Waiting to process services: {}", waitingServices);
+            LOG.info("Waiting to process {} service(s).", notProcessed.get());
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Waiting to process services: {}", getSrvsNotProcessed());
+            }
             return false;
         }
     }
 
-    public synchronized boolean areSrvInitialized() {
-        StringBuilder waitingServices = new StringBuilder();
-
-        srvNodes.entrySet().stream().map((entry) -> entry.getValue()).forEach((srvNode) -> {
-            SRV_STATE_STATUS srvStateStatus = srvNode.getSrvStateStatus();
-            if (srvStateStatus != SRV_STATE_STATUS.INITIALIZED
-                    && srvStateStatus != SRV_STATE_STATUS.UPDATED) {
-                waitingServices.append(srvNode.getServiceName()).append(" ");
-            }
-        });
-
-        if (waitingServices.toString().isEmpty()) {
+    /**
+     * @return true if all services are initialized.
+     */
+    public boolean areSrvInitialized() {
+        if (notInitialized.get() == 0) {
             if (!srvNodes.isEmpty()) {
                 LOG.info("All required services INITIALIZED.");
             } else {
@@ -130,21 +177,86 @@ public final class ServiceManager {
             }
             return true;
         } else {
-            LOG.info("Waiting for services to initialize: {}", waitingServices);
+            LOG.info("Waiting for {} service(s) to initialize.", notInitialized.get());
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Waiting for services to initialize: {}", getSrvsNotInitialized());
+            }
             return false;
         }
     }
 
+    /**
+     * @return the names of the services whose configuration is not processed.
+     */
+    public List<String> getSrvsNotProcessed() {
+        List<String> waiting = new ArrayList<>();
+        srvNodes.values().stream().filter((srvNode) -> isNotProcessed(srvNode.getSrvConfStatus())).forEach((srvNode) -> {
+            waiting.add(srvNode.getServiceName());
+        });
+        return waiting;
+    }
+
+    /**
+     * @return the names of the services that are not initialized.
+     */
+    public List<String> getSrvsNotInitialized() {
+        List<String> waiting = new ArrayList<>();
+        srvNodes.values().stream().filter((srvNode) -> isNotInitialized(srvNode.getSrvStateStatus())).forEach((srvNode) -> {
+            waiting.add(srvNode.getServiceName());
+        });
+        return waiting;
+    }
+
+    /**
+     * Sets the configuration status of a service and updates the counters.
+     *
+     * @param srvPath the zNode path of the service to the naming service
+     * namespace.
+     * @param srvConfStatus the new configuration status.
+     */
+    private void updateSrvConfStatus(String srvPath, SRV_CONF_STATUS srvConfStatus) {
+        ServiceNode srvNode = srvNodes.computeIfPresent(srvPath, (path, node) -> {
+            count(node, -1);
+            node.setSrvConfStatus(srvConfStatus);
+            count(node, 1);
+            return node;
+        });
+        if (srvNode == null) {
+            LOG.warn("Service {} is NOT a required service.", srvPath);
+        } else {
+            LOG.info("Configuration of service {} {}.", srvNode.getServiceName(), srvConfStatus.toString());
+        }
+    }
+
+    /**
+     * Sets the state status of a service and updates the counters.
+     *
+     * @param srvPath the zNode path of the service to the naming service
+     * namespace.
+     * @param srvStateStatus the new state status.
+     */
+    private void updateSrvStateStatus(String srvPath, SRV_STATE_STATUS srvStateStatus) {
+        ServiceNode srvNode = srvNodes.computeIfPresent(srvPath, (path, node) -> {
+            count(node, -1);
+            node.setSrvStateStatus(srvStateStatus);
+            count(node, 1);
+            return node;
+        });
+        if (srvNode == null) {
+            LOG.warn("Service {} is NOT a required service.", srvPath);
+        } else {
+            LOG.info("Status of service {} is {}.", srvNode.getServiceName(), srvStateStatus.toString());
+        }
+    }
+
     /**
      * Sets the service configuration status to PROCESSED.
      *
      * @param srvPath the zNode path of the service to the naming service
      * namespace.
      */
-    public synchronized void setSrvConfStatusProc(String srvPath) {
-        ServiceNode srvNode = srvNodes.get(srvPath);
-        srvNode.setSrvConfStatus(SRV_CONF_STATUS.PROCESSED);
-        LOG.info("Configuration of service {} PROCESSED.", srvNode.getServiceName());
+    public void setSrvConfStatusProc(String srvPath) {
+        updateSrvConfStatus(srvPath, SRV_CONF_STATUS.PROCESSED);
     }
 
     /**
@@ -153,10 +265,8 @@ public final class ServiceManager {
      * @param srvPath the zNode path of the service to the naming service
      * namespace.
      */
-    public synchronized void setSrvConfStatusNotProc(String srvPath) {
-        ServiceNode srvNode = srvNodes.get(srvPath);
-        srvNode.setSrvConfStatus(SRV_CONF_STATUS.NOT_PROCESSED);
-        LOG.info("Configuration of service {} NOT_PROCESSED.", srvNode.getServiceName());
+    public void setSrvConfStatusNotProc(String srvPath) {
+        updateSrvConfStatus(srvPath, SRV_CONF_STATUS.NOT_PROCESSED);
     }
 
     /**
@@ -166,10 +276,8 @@ public final class ServiceManager {
      * namespace.
      * @param newSrvStateStatus the updated service state status.
      */
-    public synchronized void setSrvStateStatus(String srvPath, SRV_STATE_STATUS newSrvStateStatus) {
-        ServiceNode srvNode = srvNodes.get(srvPath);
-        srvNode.setSrvStateStatus(newSrvStateStatus);
-        LOG.info("Status of service {} is {}.", srvNode.getServiceName(), newSrvStateStatus.toString());
+    public void setSrvStateStatus(String srvPath, SRV_STATE_STATUS newSrvStateStatus) {
+        updateSrvStateStatus(srvPath, newSrvStateStatus);
     }
 
     /**
@@ -178,10 +286,8 @@ public final class ServiceManager {
      * @param srvPath the zNode path of the service to the naming service
      * namespace.
      */
-    public synchronized void setSrvStateStatusInit(String srvPath) {
-        ServiceNode srvNode = srvNodes.get(srvPath);
-        srvNode.setSrvStateStatus(SRV_STATE_STATUS.INITIALIZED);
-        LOG.info("Status of service {} is {}.", srvNode.getServiceName(), SRV_STATE_STATUS.INITIALIZED.toString());
+    public void setSrvStateStatusInit(String srvPath) {
+        updateSrvStateStatus(srvPath, SRV_STATE_STATUS.INITIALIZED);
     }
 
     /**
@@ -190,10 +296,8 @@ public final class ServiceManager {
      * @param srvPath the zNode path of the service to the naming service
      * namespace.
      */
-    public synchronized void setSrvStateStatusNotRun(String srvPath) {
-        ServiceNode srvNode = srvNodes.get(srvPath);
-        srvNode.setSrvStateStatus(SRV_STATE_STATUS.NOT_RUNNING);
-        LOG.info("Status of service {} is {}.", srvNode.getServiceName(), SRV_STATE_STATUS.NOT_RUNNING.toString());
+    public void setSrvStateStatusNotRun(String srvPath) {
+        updateSrvStateStatus(srvPath, SRV_STATE_STATUS.NOT_RUNNING);
     }
 
     /**
@@ -202,10 +306,8 @@ public final class ServiceManager {
      * @param srvPath the zNode path of the service to the naming service
      * namespace.
      */
-    public synchronized void setSrvStateStatusNotInit(String srvPath) {
-        ServiceNode srvNode = srvNodes.get(srvPath);
-        srvNode.setSrvStateStatus(SRV_STATE_STATUS.NOT_INITIALIZED);
-        LOG.info("Status of service {} is {}.", srvNode.getServiceName(), SRV_STATE_STATUS.NOT_INITIALIZED.toString());
+    public void setSrvStateStatusNotInit(String srvPath) {
+        updateSrvStateStatus(srvPath, SRV_STATE_STATUS.NOT_INITIALIZED);
     }
 
     public void getSrvConfStatus(String srvPath) {
@@ -224,7 +326,7 @@ public final class ServiceManager {
         srvNodes.get(srvPath).setZkConPath(zkConPath);
     }
 
-    public synchronized boolean hasServices() {
+    public boolean hasServices() {
         return !srvNodes.isEmpty();
     }
 
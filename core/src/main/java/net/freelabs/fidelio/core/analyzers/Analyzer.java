@@ -16,7 +16,11 @@
  */
 package net.freelabs.fidelio.core.analyzers;
 
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import net.freelabs.fidelio.core.schema.Container;
 
 /**
@@ -45,9 +49,10 @@ public class Analyzer {
     }
 
     /**
-     * Analyzes declared container dependencies for circular dependencies.
+     * Analyzes declared container dependencies for circular dependencies and
+     * dependencies on undefined services.
      *
-     * @return true if a circular dependency is found.
+     * @return true if a circular or an undefined dependency is found.
      */
     public boolean detectCircularDependencies() {
         // create dependency analyzer
@@ -68,17 +73,37 @@ public class Analyzer {
         return nameAnalyzer.detectDuplicateNames();
     }
 
+    /**
+     * Validates the application description in a single pass and reports all
+     * the errors found.
+     *
+     * @param existingContainers the names and ids of the containers existing
+     * on the docker host, or NULL to skip the check of the shared volumes.
+     * @return true if an error is found.
+     * @see DescriptorValidator
+     */
+    public boolean detectDescriptorErrors(Set<String> existingContainers) {
+        // create validator
+        DescriptorValidator validator = new DescriptorValidator(containers, existingContainers);
+        // check all restrictions
+        return validator.detectErrors();
+    }
+
     /**
      * Finds for every container which services depend on it and adds them to 
      * {@link Container#isRequiredFrom isRequiredFrom} list.
      */
     public void populateIsRequiredFromLists() {
-        for (Container con : containers) {
-            // get a container service
-            String conSrvName = con.getConSrvName();
-            // iterate through all other containers
-            for (Container otherCon : containers) {
-                if (otherCon.getRequires().contains(conSrvName)) {
+        // index the containers by service name
+        Map<String, Container> index = new HashMap<>(containers.size() * 2);
+        containers.stream().forEach((con) -> {
+            index.putIfAbsent(con.getConSrvName(), con);
+        });
+        // add every container to the lists of its dependencies
+        for (Container otherCon : containers) {
+            for (String dep : new LinkedHashSet<>(otherCon.getRequires())) {
+                Container con = index.get(dep);
+                if (con != null) {
                     con.getIsRequiredFrom().add(otherCon.getConSrvName());
                 }
             }
@@ -16,8 +16,9 @@
  */
 package net.freelabs.fidelio.core.analyzers;
 
-import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import net.freelabs.fidelio.core.schema.Container;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,26 +48,23 @@ public class ContainerNameAnalyzer {
     }
 
     /**
-     * Detects duplicate container names.
+     * Detects duplicate container names. All duplicates are logged.
      *
      * @return true if a duplicate container name is found.
      */
     public boolean detectDuplicateNames() {
         // indicates if duplicate container name is found
         boolean found = false;
-        // list to hold all the container names
-        List<String> nameList = new ArrayList<>();
-        // add container names to list and check for repeating names
+        // set to hold all the container names
+        Set<String> nameSet = new HashSet<>(containers.size() * 2);
+        // add container names to set and check for repeating names
         for (Container con : containers) {
             // get the container name
             String name = con.getConSrvName();
-            // check if name is already in name list
-            if (nameList.contains(name)) {
+            // check if name is already in name set
+            if (!nameSet.add(name)) {
                 LOG.error("DUPLICATE container name found: {}", name);
                 found = true;
-                break;
-            } else {
-                nameList.add(name);
             }
         }
         return found;
@@ -16,8 +16,6 @@
  */
 package net.freelabs.fidelio.core.analyzers;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import net.freelabs.fidelio.core.schema.Container;
@@ -27,7 +25,7 @@ import org.slf4j.LoggerFactory;
 /**
  *
  * Class that provides methods to analyze container dependencies in order to
- * detect circular dependencies.
+ * detect circular dependencies and dependencies on undefined services.
  */
 public class DependencyAnalyzer {
 
@@ -51,72 +49,27 @@ public class DependencyAnalyzer {
 
     /**
      * <p>
-     * Analyzes declared container dependencies for circular dependencies.
+     * Analyzes declared container dependencies for circular dependencies and
+     * dependencies on services that are not declared.
      * <p>
-     * Calls recursive method {@link #detectCircular(net.freelabs.fidelio.core.generated.Container, java.util.List, java.util.Map)
-     * detectCircular}.
+     * All problems are logged, not only the first one. Every cycle is
+     * reported with the services that form it. Uses a {@link DependencyGraph
+     * DependencyGraph} and runs in linear time.
      *
-     * @return true if a circular dependency is found.
+     * @return true if a circular or an undefined dependency is found.
      */
     public boolean analyzeDependencies() {
-        boolean found = false;
-        // create map with the dependency lists of all contaienrs
-        Map<String, List<String>> conDepMap = new HashMap<>();
-
-        containers.stream().forEach((con) -> {
-            String key = con.getConSrvName();
-            List<String> value = con.getRequires();
-            conDepMap.put(key, value);
+        DependencyGraph graph = new DependencyGraph(containers);
+        // check for dependencies on services not declared
+        Map<String, List<String>> undefined = graph.getUndefinedDependencies();
+        undefined.entrySet().stream().forEach((entry) -> {
+            LOG.error("Container \'{}\' requires UNDEFINED service(s): {}", entry.getKey(), entry.getValue());
         });
-        // iterate through containers
-        for (Container con : containers) {
-            // if container has no dependencies skip it
-            if (!con.getRequires().isEmpty()) {
-                found = detectCircular(con.getConSrvName(), new ArrayList<>(), conDepMap);
-                if (found) {
-                    break;
-                }
-            }
-        }
-        return found;
-    }
-
-    /**
-     * Detects circular dependencies. Recursive method.
-     *
-     * @param src the container to check if it is declared as a circular
-     * dependency.
-     * @param depChain the list of dependencies forming a chain in which every
-     * dependency must appear only once.
-     * @param conDepMap map with the dependency lists of all containers.
-     * @return true if a circular dependency is found.
-     */
-    private boolean detectCircular(String src, List<String> depChain, Map<String, List<String>> conDepMap) {
-        // indicates if a circular dependency was found
-        boolean found = false;
-        // get dependency list of container
-        List<String> dependencies = conDepMap.get(src);
-        // check conditions
-        if (depChain.contains(src)) {
-            // container already exists in the dependency chain
-            LOG.error("Container \'{}\' is declared as a CIRCULAR DEPENDENCY in application description.", src);
-            found = true;
-        } else {
-            // add container to the list of depending nodes that were visited
-            // and must appear only once
-            depChain.add(src);
-            // get dependency list of dependency and recurse
-            for (String dep : dependencies) {
-                // recurse
-                List<String> depChainCopy = new ArrayList<>();
-                depChainCopy.addAll(depChain);
-                found = detectCircular(dep, depChainCopy, conDepMap);
-                // if found circular dependency stop
-                if (found) {
-                    break;
-                }
-            }
-        }
-        return found;
+        // check for circular dependencies
+        List<List<String>> cycles = graph.findCycles();
+        cycles.stream().forEach((cycle) -> {
+            LOG.error("CIRCULAR DEPENDENCY found in application description between services: {}", cycle);
+        });
+        return !undefined.isEmpty() || !cycles.isEmpty();
     }
 }
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.analyzers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import net.freelabs.fidelio.core.schema.Container;
+
+/**
+ * <p>
+ * Class that holds the dependency graph of the containers declared in an
+ * application description.
+ * <p>
+ * Services are indexed once and the dependencies are stored as arrays of
+ * indexes. Dependencies on services that are not declared are not part of
+ * the graph and are reported separately. If a service name is declared more
+ * than once, the first declaration is used.
+ * <p>
+ * Cycles are found as the strongly connected components of the graph, with
+ * an iterative version of Tarjan's algorithm that runs in O(V+E) and does not
+ * depend on the depth of the graph.
+ */
+public final class DependencyGraph {
+
+    /**
+     * The service names, indexed by service.
+     */
+    private final String[] names;
+    /**
+     * The dependencies of every service, as indexes, indexed by service.
+     */
+    private final int[][] deps;
+    /**
+     * Map with the dependencies on services that are not declared, with the
+     * dependent service name as key, in declaration order.
+     */
+    private final Map<String, List<String>> undefined = new LinkedHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param containers list of containers declared in application description.
+     */
+    public DependencyGraph(List<Container> containers) {
+        // index the services
+        Map<String, Integer> index = new HashMap<>(containers.size() * 2);
+        List<Container> declared = new ArrayList<>(containers.size());
+        for (Container con : containers) {
+            if (index.putIfAbsent(con.getConSrvName(), declared.size()) == null) {
+                declared.add(con);
+            }
+        }
+        names = new String[declared.size()];
+        deps = new int[declared.size()][];
+        // resolve the dependencies to indexes
+        for (int v = 0; v < names.length; v++) {
+            Container con = declared.get(v);
+            names[v] = con.getConSrvName();
+            List<String> requires = con.getRequires();
+            int[] resolved = new int[requires.size()];
+            int count = 0;
+            for (String dep : requires) {
+                Integer w = index.get(dep);
+                if (w != null) {
+                    resolved[count++] = w;
+                } else {
+                    undefined.computeIfAbsent(names[v], (k) -> new ArrayList<>()).add(dep);
+                }
+            }
+            deps[v] = count == resolved.length ? resolved : Arrays.copyOf(resolved, count);
+        }
+    }
+
+    /**
+     * @return map with the dependencies on services that are not declared,
+     * with the dependent service name as key. Empty if all dependencies are
+     * declared.
+     */
+    public Map<String, List<String>> getUndefinedDependencies() {
+        return Collections.unmodifiableMap(undefined);
+    }
+
+    /**
+     * <p>
+     * Finds all the cycles of the graph.
+     * <p>
+     * Every cycle is a strongly connected component with more than one
+     * service, or a single service that depends on itself. The services of a
+     * cycle are listed in declaration order.
+     *
+     * @return list with the services of every cycle. Empty if there are no
+     * cycles.
+     */
+    public List<List<String>> findCycles() {
+        int n = names.length;
+        // the discovery order of every service, -1 if not visited
+        int[] order = new int[n];
+        Arrays.fill(order, -1);
+        // the lowest discovery order reachable from every service
+        int[] low = new int[n];
+        // the next dependency to visit of every service on the call stack
+        int[] next = new int[n];
+        boolean[] onStack = new boolean[n];
+        // the stack of the services of the components being built
+        int[] stack = new int[n];
+        int stackSize = 0;
+        // the call stack of the depth first search
+        int[] callStack = new int[n];
+        int counter = 0;
+        List<List<String>> cycles = new ArrayList<>();
+
+        for (int root = 0; root < n; root++) {
+            if (order[root] != -1) {
+                continue;
+            }
+            int depth = 0;
+            callStack[depth++] = root;
+            order[root] = low[root] = counter++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+
+            while (depth > 0) {
+                int v = callStack[depth - 1];
+                if (next[v] < deps[v].length) {
+                    int w = deps[v][next[v]++];
+                    if (order[w] == -1) {
+                        // visit the dependency
+                        order[w] = low[w] = counter++;
+                        stack[stackSize++] = w;
+                        onStack[w] = true;
+                        callStack[depth++] = w;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], order[w]);
+                    }
+                    continue;
+                }
+                // all dependencies visited, return to the caller
+                depth--;
+                if (depth > 0) {
+                    int caller = callStack[depth - 1];
+                    low[caller] = Math.min(low[caller], low[v]);
+                }
+                if (low[v] == order[v]) {
+                    // v is the root of a component, pop it
+                    int start = stackSize;
+                    do {
+                        start--;
+                        onStack[stack[start]] = false;
+                    } while (stack[start] != v);
+                    int size = stackSize - start;
+                    if (size > 1 || dependsOnItself(v)) {
+                        int[] members = Arrays.copyOfRange(stack, start, stackSize);
+                        Arrays.sort(members);
+                        List<String> cycle = new ArrayList<>(size);
+                        for (int member : members) {
+                            cycle.add(names[member]);
+                        }
+                        cycles.add(cycle);
+                    }
+                    stackSize = start;
+                }
+            }
+        }
+        return cycles;
+    }
+
+    /**
+     * @param v the index of a service.
+     * @return true if the service depends on itself.
+     */
+    private boolean dependsOnItself(int v) {
+        for (int w : deps[v]) {
+            if (w == v) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
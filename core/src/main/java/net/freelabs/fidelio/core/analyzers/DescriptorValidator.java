@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.analyzers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import net.freelabs.fidelio.core.schema.Container;
+import net.freelabs.fidelio.core.schema.PublishPort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Class that validates an application description before any resource is
+ * created for the application.
+ * <p>
+ * The containers are visited once and the names, the published host ports
+ * and the shared volumes are indexed with hash tables, so that every check
+ * costs constant time per declaration. The dependencies are checked with a
+ * {@link DependencyGraph DependencyGraph}. All errors are collected and
+ * reported together, instead of stopping at the first one.
+ * <p>
+ * Checks:
+ * <ul>
+ * <li>service names are unique.</li>
+ * <li>required services are declared and there are no circular
+ * dependencies.</li>
+ * <li>no two published ports bind the same host port and protocol on the
+ * same host address. An empty address or 0.0.0.0 binds all addresses.</li>
+ * <li>containers to share volumes from exist on the docker host. Services
+ * of the application cannot be used, as they are created after the
+ * check with a deployment suffix in their names.</li>
+ * </ul>
+ */
+public final class DescriptorValidator {
+
+    /**
+     * A Logger object.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(DescriptorValidator.class);
+    /**
+     * The host address that binds all addresses.
+     */
+    private static final String ANY_ADDRESS = "0.0.0.0";
+    /**
+     * List of containers declared in application description.
+     */
+    private final List<Container> containers;
+    /**
+     * The names and ids of the containers existing on the docker host, or
+     * NULL to skip the check of the shared volumes.
+     */
+    private final Set<String> existingContainers;
+    /**
+     * The errors found.
+     */
+    private final List<String> errors = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param containers list of containers declared in application
+     * description.
+     * @param existingContainers the names and ids of the containers existing
+     * on the docker host, or NULL to skip the check of the shared volumes.
+     */
+    public DescriptorValidator(List<Container> containers, Set<String> existingContainers) {
+        this.containers = containers;
+        this.existingContainers = existingContainers;
+    }
+
+    /**
+     * Validates the application description and logs all the errors found.
+     *
+     * @return true if an error is found.
+     */
+    public boolean detectErrors() {
+        errors.clear();
+        // the declared service names
+        Set<String> names = new HashSet<>(containers.size() * 2);
+        // the published host ports, with the protocol and port as key
+        Map<String, List<PortBinding>> hostPorts = new HashMap<>();
+        // the containers to share volumes from, with the service as value
+        Map<String, String> volumesFrom = new HashMap<>();
+
+        for (Container con : containers) {
+            String name = con.getConSrvName();
+            if (name == null || name.trim().isEmpty()) {
+                errors.add("Container with EMPTY service name found.");
+            } else if (!names.add(name)) {
+                errors.add(String.format("DUPLICATE container name found: %s", name));
+            }
+            if (con.getDocker() == null) {
+                continue;
+            }
+            for (PublishPort port : con.getDocker().getPublishPort()) {
+                // a port without host port is published to a random port
+                if (port.getHostPort() != null) {
+                    checkHostPort(hostPorts, new PortBinding(name, port));
+                }
+            }
+            for (String source : con.getDocker().getVolumesFrom()) {
+                volumesFrom.putIfAbsent(stripAccessMode(source), name);
+            }
+        }
+
+        // check containers to share volumes from
+        volumesFrom.entrySet().stream().forEach((entry) -> {
+            String source = entry.getKey();
+            if (names.contains(source)) {
+                errors.add(String.format("Container '%s' shares volumes from service '%s' of the application."
+                        + " Only existing containers can be used.", entry.getValue(), source));
+            } else if (existingContainers != null && !existingContainers.contains(source)) {
+                errors.add(String.format("Container '%s' shares volumes from UNKNOWN container '%s'.", entry.getValue(), source));
+            }
+        });
+
+        // check dependencies
+        DependencyGraph graph = new DependencyGraph(containers);
+        graph.getUndefinedDependencies().entrySet().stream().forEach((entry) -> {
+            errors.add(String.format("Container '%s' requires UNDEFINED service(s): %s", entry.getKey(), entry.getValue()));
+        });
+        graph.findCycles().stream().forEach((cycle) -> {
+            errors.add(String.format("CIRCULAR DEPENDENCY found between services: %s", cycle));
+        });
+
+        if (!errors.isEmpty()) {
+            LOG.error("Application description is NOT valid. Found {} error(s):", errors.size());
+            errors.stream().forEach((error) -> {
+                LOG.error(error);
+            });
+        }
+        return !errors.isEmpty();
+    }
+
+    /**
+     * @return the errors found by the last validation.
+     */
+    public List<String> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * Indexes a published host port and records an error if it is already
+     * bound by another declaration.
+     *
+     * @param hostPorts the published host ports, with the protocol and port
+     * as key.
+     * @param binding the published host port to check.
+     */
+    private void checkHostPort(Map<String, List<PortBinding>> hostPorts, PortBinding binding) {
+        String key = binding.protocol + "/" + binding.port;
+        List<PortBinding> bound = hostPorts.computeIfAbsent(key, (k) -> new ArrayList<>(1));
+        for (PortBinding other : bound) {
+            if (other.overlaps(binding)) {
+                errors.add(String.format("Host port %s is published by both '%s' and '%s'.", key, other.srvName, binding.srvName));
+                return;
+            }
+        }
+        bound.add(binding);
+    }
+
+    /**
+     * @param source a container to share volumes from, with an optional
+     * access mode suffix.
+     * @return the container name or id without the access mode.
+     */
+    private static String stripAccessMode(String source) {
+        if (source.endsWith(":ro") || source.endsWith(":rw")) {
+            return source.substring(0, source.length() - 3);
+        }
+        return source;
+    }
+
+    /**
+     * A host port published by a service.
+     */
+    private static final class PortBinding {
+
+        /**
+         * The service that publishes the port.
+         */
+        private final String srvName;
+        /**
+         * The host address, NULL for all addresses.
+         */
+        private final String hostIp;
+        /**
+         * The host port.
+         */
+        private final int port;
+        /**
+         * The protocol.
+         */
+        private final String protocol;
+
+        /**
+         * Constructor.
+         *
+         * @param srvName the service that publishes the port.
+         * @param publishPort the declaration of the published port.
+         */
+        private PortBinding(String srvName, PublishPort publishPort) {
+            this.srvName = srvName;
+            String ip = publishPort.getHostIp() == null ? "" : publishPort.getHostIp().trim();
+            this.hostIp = ip.isEmpty() || ip.equals(ANY_ADDRESS) ? null : ip;
+            this.port = publishPort.getHostPort();
+            this.protocol = publishPort.getProtocol().value();
+        }
+
+        /**
+         * @param other a binding of the same host port and protocol.
+         * @return true if the bindings cannot both be made.
+         */
+        private boolean overlaps(PortBinding other) {
+            return hostIp == null || other.hostIp == null || hostIp.equals(other.hostIp);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.boot;
+
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * <p>
+ * Appender that collects the log of the commands executed by the
+ * {@link Daemon Daemon}, so that it is sent to the clients.
+ * <p>
+ * The thread that executes a command puts the id of the request in the MDC
+ * under {@link #REQUEST_KEY REQUEST_KEY}, and the threads it starts inherit
+ * it. Threads that are shared by the commands keep the id of the request
+ * that started them, so their log may be sent to that client only. The lines
+ * of every request are queued and sent by the daemon, so that a slow client
+ * never blocks logging. Lines that do not fit in the queue are dropped.
+ */
+final class CommandOutput extends AppenderSkeleton {
+
+    /**
+     * The MDC key with the id of the request that a log event belongs to.
+     */
+    static final String REQUEST_KEY = "request";
+    /**
+     * The maximum number of lines queued for a request.
+     */
+    private static final int QUEUE_SIZE = 10000;
+    /**
+     * Map with the lines queued for every request, with the request id as
+     * key.
+     */
+    private final Map<String, BlockingQueue<String>> queues = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     */
+    CommandOutput() {
+        setLayout(new PatternLayout("%-5p - %m%n"));
+    }
+
+    /**
+     * Starts collecting the log of a request.
+     *
+     * @param requestId the id of the request.
+     * @return the queue with the lines of the request, prefixed with
+     * {@link Daemon#OUT_PREFIX OUT_PREFIX} or {@link Daemon#ERR_PREFIX
+     * ERR_PREFIX}.
+     */
+    BlockingQueue<String> open(String requestId) {
+        BlockingQueue<String> queue = new LinkedBlockingQueue<>(QUEUE_SIZE);
+        queues.put(requestId, queue);
+        return queue;
+    }
+
+    /**
+     * Stops collecting the log of a request.
+     *
+     * @param requestId the id of the request.
+     */
+    void close(String requestId) {
+        queues.remove(requestId);
+    }
+
+    @Override
+    protected void append(LoggingEvent event) {
+        Object requestId = event.getMDC(REQUEST_KEY);
+        BlockingQueue<String> queue = requestId == null ? null : queues.get(requestId.toString());
+        if (queue == null) {
+            return;
+        }
+        // warnings and errors go to the error stream of the client
+        String prefix = event.getLevel().isGreaterOrEqual(Level.WARN) ? Daemon.ERR_PREFIX : Daemon.OUT_PREFIX;
+        for (String line : layout.format(event).split("\r?\n")) {
+            queue.offer(prefix + line);
+        }
+        String[] trace = event.getThrowableStrRep();
+        if (trace != null) {
+            for (String line : trace) {
+                queue.offer(prefix + line);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        queues.clear();
+    }
+
+    @Override
+    public boolean requiresLayout() {
+        return true;
+    }
+}
@@ -0,0 +1,441 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.boot;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import net.freelabs.fidelio.core.cmd.CommandExitException;
+import net.freelabs.fidelio.core.docker.DockerInitializer;
+import net.freelabs.fidelio.core.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+/**
+ * <p>
+ * Class that runs the program as a long-running process, executing the
+ * commands sent by fidelio clients.
+ * <p>
+ * The daemon listens to a port on the loopback interface. Every connection
+ * carries one command, as it would be typed in the command line, and the
+ * working directory of the client. The command is executed with the same
+ * logic as in the command line. Its log is sent back to the client while it
+ * runs, followed by the exit code.
+ * <p>
+ * The JVM, the loaded classes and the docker clients are kept between
+ * commands. A failed command does not terminate the daemon.
+ * <p>
+ * Only the user that runs the daemon can send commands. On start, the daemon
+ * writes a random token to a file that only this user can read, in a
+ * private directory under the home directory of the user. Every request must
+ * carry the token.
+ * <p>
+ * Protocol, one UTF-8 line per item. Request: {@link #PROTOCOL PROTOCOL},
+ * token, working directory, number of arguments, arguments. Response: the log
+ * lines of the command, every one prefixed with {@link #OUT_PREFIX OUT_PREFIX}
+ * or {@link #ERR_PREFIX ERR_PREFIX}, and a last line with
+ * {@link #EXIT_PREFIX EXIT_PREFIX} and the exit code.
+ */
+public final class Daemon {
+
+    /**
+     * A Logger object.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(Daemon.class);
+    /**
+     * The protocol version, first line of every request.
+     */
+    static final String PROTOCOL = "FIDELIO/3";
+    /**
+     * The prefix of a response line for the output stream of the client.
+     */
+    static final String OUT_PREFIX = "OUT ";
+    /**
+     * The prefix of a response line for the error stream of the client.
+     */
+    static final String ERR_PREFIX = "ERR ";
+    /**
+     * The prefix of the last response line, with the exit code.
+     */
+    static final String EXIT_PREFIX = "EXIT ";
+    /**
+     * The name of the directory of the token files, under the per-user
+     * directory of the program.
+     */
+    private static final String TOKEN_DIR_NAME = "daemon";
+    /**
+     * The size (bytes) of the token.
+     */
+    private static final int TOKEN_SIZE = 32;
+    /**
+     * The maximum number of commands executed at the same time.
+     */
+    private static final int WORKERS = 4;
+    /**
+     * The maximum number of arguments of a command.
+     */
+    private static final int MAX_ARGS = 256;
+    /**
+     * The time (milliseconds) to wait for a client to send its request.
+     */
+    private static final int REQUEST_TIMEOUT = 10000;
+    /**
+     * The time (seconds) to wait for running commands on shutdown.
+     */
+    private static final long SHUTDOWN_TIMEOUT = 60;
+    /**
+     * The port to listen to.
+     */
+    private final int port;
+    /**
+     * Executes the commands.
+     */
+    private final ExecutorService workers;
+    /**
+     * The server socket.
+     */
+    private ServerSocket server;
+    /**
+     * The token that every request must carry.
+     */
+    private byte[] token;
+    /**
+     * Collects the log of the commands for the clients.
+     */
+    private final CommandOutput output;
+    /**
+     * The id of the last request.
+     */
+    private final AtomicLong requests;
+
+    /**
+     * Constructor.
+     *
+     * @param port the loopback port to listen to.
+     */
+    public Daemon(int port) {
+        this.port = port;
+        workers = Executors.newFixedThreadPool(WORKERS);
+        output = new CommandOutput();
+        requests = new AtomicLong();
+    }
+
+    /**
+     * <p>
+     * Runs the daemon until the process is terminated.
+     * <p>
+     * Method blocks.
+     *
+     * @return false if the daemon could not start.
+     */
+    public boolean run() {
+        try {
+            server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        } catch (IOException ex) {
+            LOG.error("FAILED to listen to port {}. Something went wrong: {}", port, ex.getMessage());
+            return false;
+        }
+        // only clients that can read the token file are served
+        if (!createToken()) {
+            try {
+                server.close();
+            } catch (IOException ex) {
+                LOG.warn("Something went wrong: {}", ex.getMessage());
+            }
+            return false;
+        }
+        // send the log of the commands to the clients
+        org.apache.log4j.Logger.getRootLogger().addAppender(output);
+        // release resources when process is terminated
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "Daemon-Shutdown"));
+        LOG.info("[Daemon Started] - listening to {}:{}", server.getInetAddress().getHostAddress(), port);
+
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                workers.execute(() -> {
+                    handle(socket);
+                });
+            } catch (RejectedExecutionException ex) {
+                LOG.warn("Daemon is shutting down. Request rejected.");
+            } catch (SocketException ex) {
+                // server socket closed on shutdown
+                LOG.debug("Daemon socket closed.");
+            } catch (IOException ex) {
+                LOG.error("Something went wrong: {}", ex.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a command from a client, executes it and sends its log and exit
+     * code.
+     *
+     * @param socket the client connection.
+     */
+    private void handle(Socket socket) {
+        try (Socket client = socket;
+                BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+                Writer out = new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8)) {
+            client.setSoTimeout(REQUEST_TIMEOUT);
+            // read request
+            String[] args = readRequest(in, token);
+            if (args == null) {
+                out.write(EXIT_PREFIX + "-1\n");
+                out.flush();
+                return;
+            }
+            String workDir = args[0];
+            String[] cmdArgs = new String[args.length - 1];
+            System.arraycopy(args, 1, cmdArgs, 0, cmdArgs.length);
+            LOG.info("Executing command: {}", String.join(" ", cmdArgs));
+            long start = System.nanoTime();
+            // send the log of the command while it runs
+            String requestId = String.valueOf(requests.incrementAndGet());
+            BlockingQueue<String> lines = output.open(requestId);
+            Thread relay = new Thread(() -> relay(lines, out), "Daemon-Output-" + requestId);
+            relay.setDaemon(true);
+            relay.start();
+            int status;
+            MDC.put(CommandOutput.REQUEST_KEY, requestId);
+            try {
+                // execute command
+                status = execute(cmdArgs, workDir);
+            } finally {
+                MDC.remove(CommandOutput.REQUEST_KEY);
+                output.close(requestId);
+            }
+            LOG.info("Command completed with code {} in {} ms.", status,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            // send exit code, after the log
+            try {
+                lines.put(EXIT_PREFIX + status);
+                relay.join();
+            } catch (InterruptedException ex) {
+                // log the event
+                LOG.warn("Thread Interrupted. Stopping");
+                // set the interrupt status
+                Thread.currentThread().interrupt();
+            }
+        } catch (IOException ex) {
+            LOG.error("Something went wrong: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Sends the lines of a response to a client, until the line with the exit
+     * code. If the client is gone, the lines are discarded.
+     *
+     * @param lines the lines of the response.
+     * @param out the output stream of the client connection.
+     */
+    private static void relay(BlockingQueue<String> lines, Writer out) {
+        boolean connected = true;
+        try {
+            String line;
+            do {
+                line = lines.take();
+                if (connected) {
+                    try {
+                        out.write(line + "\n");
+                        if (lines.isEmpty()) {
+                            out.flush();
+                        }
+                    } catch (IOException ex) {
+                        LOG.warn("Client disconnected. Command output discarded.");
+                        connected = false;
+                    }
+                }
+            } while (!line.startsWith(EXIT_PREFIX));
+            if (connected) {
+                out.flush();
+            }
+        } catch (InterruptedException ex) {
+            // log the event
+            LOG.warn("Thread Interrupted. Stopping");
+            // set the interrupt status
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            LOG.warn("Client disconnected. Command output discarded.");
+        }
+    }
+
+    /**
+     * Executes a command. A failed command must not terminate the daemon.
+     *
+     * @param args the arguments of the command.
+     * @param workDir the working directory of the client.
+     * @return the exit code of the command.
+     */
+    private static int execute(String[] args, String workDir) {
+        try {
+            return Main.run(args, workDir, true);
+        } catch (CommandExitException ex) {
+            return ex.getStatus();
+        } catch (RuntimeException ex) {
+            LOG.error("Something went wrong: {}", ex.getMessage());
+            LOG.trace("Something went wrong: ", ex);
+            return -1;
+        }
+    }
+
+    /**
+     * Reads a request.
+     *
+     * @param in the input stream of the client connection.
+     * @param token the token that the request must carry.
+     * @return an array with the working directory of the client followed by
+     * the arguments of the command, or NULL if the request is invalid.
+     * @throws IOException if the request cannot be read.
+     */
+    private static String[] readRequest(BufferedReader in, byte[] token) throws IOException {
+        String protocol = in.readLine();
+        if (!PROTOCOL.equals(protocol)) {
+            LOG.error("Invalid request. Unsupported protocol: {}", protocol);
+            return null;
+        }
+        String reqToken = in.readLine();
+        // compare in constant time
+        if (reqToken == null || !MessageDigest.isEqual(token, reqToken.getBytes(StandardCharsets.US_ASCII))) {
+            LOG.warn("Rejected request with invalid token.");
+            return null;
+        }
+        String workDir = in.readLine();
+        int argsNum;
+        try {
+            argsNum = Integer.parseInt(String.valueOf(in.readLine()));
+        } catch (NumberFormatException ex) {
+            LOG.error("Invalid request. Number of arguments expected.");
+            return null;
+        }
+        if (workDir == null || argsNum < 0 || argsNum > MAX_ARGS) {
+            LOG.error("Invalid request.");
+            return null;
+        }
+        String[] args = new String[argsNum + 1];
+        args[0] = workDir;
+        for (int i = 1; i <= argsNum; i++) {
+            args[i] = in.readLine();
+            if (args[i] == null) {
+                LOG.error("Invalid request. Missing arguments.");
+                return null;
+            }
+        }
+        return args;
+    }
+
+    /**
+     * Generates a random token and writes it to the {@link #getTokenFile(int)
+     * token file}, readable only by the current user.
+     *
+     * @return true if operation completed successfully.
+     */
+    private boolean createToken() {
+        byte[] random = new byte[TOKEN_SIZE];
+        new SecureRandom().nextBytes(random);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : random) {
+            hex.append(String.format("%02x", b));
+        }
+        token = hex.toString().getBytes(StandardCharsets.US_ASCII);
+
+        Path file = getTokenFile(port);
+        if (!Utils.createPrivateDir(file.getParent())) {
+            LOG.error("FAILED to create token file {}.", file);
+            return false;
+        }
+        try {
+            // temp files are created readable only by the owner
+            Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                Files.write(tmp, token);
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            return true;
+        } catch (IOException ex) {
+            LOG.error("FAILED to create token file {}. Something went wrong: {}", file, ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @param port the loopback port of the daemon.
+     * @return the file with the token of the daemon listening to the port.
+     */
+    static Path getTokenFile(int port) {
+        return Utils.getUserDir(TOKEN_DIR_NAME).resolve(port + ".token");
+    }
+
+    /**
+     * Stops accepting commands, waits for running commands and releases
+     * resources.
+     */
+    public void shutdown() {
+        LOG.info("Shutting down daemon...");
+        try {
+            // no more clients can authenticate
+            if (token != null) {
+                Files.deleteIfExists(getTokenFile(port));
+            }
+        } catch (IOException ex) {
+            LOG.warn("Something went wrong: {}", ex.getMessage());
+        }
+        try {
+            if (server != null) {
+                server.close();
+            }
+        } catch (IOException ex) {
+            LOG.warn("Something went wrong: {}", ex.getMessage());
+        }
+        workers.shutdown();
+        org.apache.log4j.Logger.getRootLogger().removeAppender(output);
+        try {
+            if (!workers.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                LOG.warn("Commands still running. Stopping.");
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            // log the event
+            LOG.warn("Thread Interrupted. Stopping");
+            // set the interrupt status
+            Thread.currentThread().interrupt();
+        }
+        DockerInitializer.closeSharedClients();
+    }
+}
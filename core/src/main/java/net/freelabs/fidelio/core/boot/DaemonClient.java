@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.boot;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Class that sends a command to a running {@link Daemon Daemon}, prints its
+ * log and waits for its exit code. Requests carry the token of the daemon, that only the user
+ * running the daemon can read.
+ */
+final class DaemonClient {
+
+    /**
+     * The time (milliseconds) to wait for a connection to the daemon.
+     */
+    private static final int CONNECT_TIMEOUT = 500;
+
+    /**
+     * Private constructor. Class has only static methods.
+     */
+    private DaemonClient() {
+    }
+
+    /**
+     * <p>
+     * Sends a command to the daemon listening to a loopback port.
+     * <p>
+     * Method blocks until the command completes. The log of the command is
+     * printed to the standard output and error streams while it runs.
+     *
+     * @param port the loopback port of the daemon.
+     * @param args the command line arguments.
+     * @return the exit code of the command, or NULL if no daemon of the
+     * current user is listening to the port.
+     */
+    static Integer send(int port, String[] args) {
+        String token;
+        try {
+            token = new String(Files.readAllBytes(Daemon.getTokenFile(port)), StandardCharsets.US_ASCII).trim();
+        } catch (IOException | SecurityException ex) {
+            // no daemon started by the current user
+            return null;
+        }
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            // send request, relative paths are resolved to the working dir
+            out.write(Daemon.PROTOCOL + "\n");
+            out.write(token + "\n");
+            out.write(System.getProperty("user.dir") + "\n");
+            out.write(args.length + "\n");
+            for (String arg : args) {
+                out.write(arg.replace('\n', ' ') + "\n");
+            }
+            out.flush();
+            // print the log of the command until the exit code
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith(Daemon.OUT_PREFIX)) {
+                    System.out.println(line.substring(Daemon.OUT_PREFIX.length()));
+                } else if (line.startsWith(Daemon.ERR_PREFIX)) {
+                    System.err.println(line.substring(Daemon.ERR_PREFIX.length()));
+                } else if (line.startsWith(Daemon.EXIT_PREFIX)) {
+                    return Integer.parseInt(line.substring(Daemon.EXIT_PREFIX.length()).trim());
+                }
+            }
+            System.err.println("ERROR: Connection to fidelio daemon closed before the command completed.");
+            return -1;
+        } catch (ConnectException | SocketTimeoutException ex) {
+            // no daemon running
+            return null;
+        } catch (IOException | NumberFormatException ex) {
+            System.err.println("ERROR: FAILED to execute command with fidelio daemon: " + ex.getMessage());
+            return -1;
+        }
+    }
+}
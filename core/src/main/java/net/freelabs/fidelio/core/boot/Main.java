@@ -24,9 +24,13 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Paths;
 import java.util.Properties;
 import net.freelabs.fidelio.core.boot.cl.CliOptions;
 import net.freelabs.fidelio.core.boot.cl.CliOptions.StartCmdOpt;
+import net.freelabs.fidelio.core.cmd.CommandExitException;
+import net.freelabs.fidelio.core.cmd.StatusCmd;
+import net.freelabs.fidelio.core.cmd.StartCmd;
 import org.apache.log4j.PropertyConfigurator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,6 +45,10 @@ public final class Main {
      * A Logger object.
      */
     private static final Logger LOG = LoggerFactory.getLogger(Main.class);
+    /**
+     * The name of the daemon command.
+     */
+    private static final String DAEMON_CMD = "daemon";
 
     /**
      * Main.
@@ -56,10 +64,35 @@ public final class Main {
         */
         //-------------------------------------------------------------------- 
 
+        // execute command
+        int status = run(args, null, false);
+        if (status != 0) {
+            errExit();
+        }
+    }
+
+    /**
+     * <p>
+     * Parses command line arguments and executes the command.
+     * <p>
+     * From the command line, application commands are forwarded to the
+     * {@link Daemon Daemon}, if one is running, and are executed by this
+     * process otherwise. In the daemon, commands are always executed by the
+     * daemon process.
+     *
+     * @param args command line arguments.
+     * @param workDir the working directory to resolve relative paths against,
+     * or NULL to use the working directory of the process.
+     * @param inDaemon true if called by the daemon.
+     * @return the exit code of the command, 0 if successful.
+     * @throws CommandExitException if a command executed in the daemon
+     * fails.
+     */
+    static int run(String[] args, String workDir, boolean inDaemon) {
         // create object that holds program's configuration
         ProgramConf pConf = new ProgramConf();
         // create commnad handler to execute commands
-        CommandHandler cmdExec = new CommandHandler(pConf);
+        CommandHandler cmdExec = new CommandHandler(pConf, inDaemon);
         // create object with supported command line parameters and commands
         CliOptions opts = new CliOptions();
         // create the command line parser, initialize with cli options-cmds defined
@@ -74,16 +107,21 @@ public final class Main {
         CliOptions.StopCmdOpt stopCmdOpt = opts.new StopCmdOpt();
         CliOptions.RestartCmdOpt restartCmdOpt = opts.new RestartCmdOpt();
         CliOptions.DeleteCmdOpt deleteCmdOpt = opts.new DeleteCmdOpt();
+        CliOptions.StatusCmdOpt statusCmdOpt = opts.new StatusCmdOpt();
+        CliOptions.DaemonCmdOpt daemonCmdOpt = opts.new DaemonCmdOpt();
         // get command names
         String start = cmdExec.getStartCmd().getCmdName();
         String stop = cmdExec.getStopCmd().getCmdName();
         String restart = cmdExec.getRestartCmd().getCmdName();
         String delete = cmdExec.getDeleteCmd().getCmdName();
+        String statusCmd = cmdExec.getStatusCmd().getCmdName();
         // add commands defined to parser
         cl.addCommand(start, startCmdOpt);
         cl.addCommand(stop, stopCmdOpt);
         cl.addCommand(restart, restartCmdOpt);
         cl.addCommand(delete, deleteCmdOpt);
+        cl.addCommand(statusCmd, statusCmdOpt);
+        cl.addCommand(DAEMON_CMD, daemonCmdOpt);
 
         // parse cli arguments
         try {
@@ -95,24 +133,27 @@ public final class Main {
             // show error msg
             System.err.print(e.getMessage() + ". See \'fidelio --help\'.\n");
             // exit
-            errExit();
+            return -1;
         }
         // get the command, if any, entered by the user
         String parsedCmd = cl.getParsedCommand();
+        // resolve paths relative to the working directory
+        opts.setConf(resolvePath(workDir, opts.getConf()));
+        opts.setLog4j(resolvePath(workDir, opts.getLog4j()));
 
         if (opts.getDockerOptions() != null) {
             // parse docker and options
             boolean parsed = opts.parseDockerOpts();
             if (!parsed) {
                 // print usage
-                errExit();
+                return -1;
             }
         }
         if (opts.getZkOptions() != null) {
             boolean parsed = opts.parseZkOpts();
             if (!parsed) {
                 // print usage
-                errExit();
+                return -1;
             }
         }
 
@@ -126,24 +167,38 @@ public final class Main {
             // program version
             System.out.println("Maestro  v" + ProgramConf.getVERSION());
             error = false;
+        } else if (parsedCmd == null) {
+            System.err.println("ERROR: No command specified. See \'fidelio --help\'.");
         } else if (parsedCmd.equals(start)) {
             // start command
             if (startCmdOpt.isHelp()) {
                 cl.usage(start);
             } else if (programConfExists(pConf, opts)) {
                 // load cli options
-                loadProgramCliOpts(pConf, opts);
+                loadProgramCliOpts(pConf, opts, workDir);
                 // load start cli options
-                loadStartCmdOpts(pConf, startCmdOpt);
+                loadStartCmdOpts(pConf, startCmdOpt, workDir);
                 // load unset options from file, if any
                 if (loadFromFileUnsetOpts(pConf, opts)) {
-                    // load log4j properties
-                    if (loadLod4jProperties(pConf.getLog4jPropertiesPath())) {
+                    // forward command to the daemon, if running. Waiting
+                    // runs in this process, so that it never blocks the daemon
+                    Integer wait = startCmdOpt.getWait();
+                    boolean waiting = wait != null && wait > 0 && !inDaemon;
+                    Integer status = waiting ? null : forwardToDaemon(pConf, args, inDaemon);
+                    if (status != null) {
+                        return status;
+                    }
+                    // load log4j properties, the daemon loads them once
+                    if (inDaemon || loadLod4jProperties(pConf.getLog4jPropertiesPath())) {
                         // check if program configuration is complete
                         if (pConf.isConfInitForStart()) {
                             error = false;
                             // execute START command
-                            cmdExec.exec_start();
+                            if (waiting) {
+                                cmdExec.exec_start(StartCmd.WAIT_ARG, String.valueOf(wait));
+                            } else {
+                                cmdExec.exec_start();
+                            }
                         } else {
                             LOG.error("Program configuration NOT initialized. Check the .properties file and/or user input.");
                         }
@@ -156,11 +211,16 @@ public final class Main {
                 cl.usage(stop);
             } else if (programConfExists(pConf, opts)) {
                 // load cli options
-                loadProgramCliOpts(pConf, opts);
+                loadProgramCliOpts(pConf, opts, workDir);
                 // load unset options from file, if any
                 if (loadFromFileUnsetOpts(pConf, opts)) {
-                    // load log4j properties
-                    if (loadLod4jProperties(pConf.getLog4jPropertiesPath())) {
+                    // forward command to the daemon, if running
+                    Integer status = forwardToDaemon(pConf, args, inDaemon);
+                    if (status != null) {
+                        return status;
+                    }
+                    // load log4j properties, the daemon loads them once
+                    if (inDaemon || loadLod4jProperties(pConf.getLog4jPropertiesPath())) {
                         // check if program configuration is complete
                         if (pConf.isConfInitForOtherCommands()) {
                             error = false;
@@ -178,11 +238,16 @@ public final class Main {
                 cl.usage(restart);
             } else if (programConfExists(pConf, opts)) {
                 // load cli options
-                loadProgramCliOpts(pConf, opts);
+                loadProgramCliOpts(pConf, opts, workDir);
                 // load unset options from file, if any
                 if (loadFromFileUnsetOpts(pConf, opts)) {
-                    // load log4j properties
-                    if (loadLod4jProperties(pConf.getLog4jPropertiesPath())) {
+                    // forward command to the daemon, if running
+                    Integer status = forwardToDaemon(pConf, args, inDaemon);
+                    if (status != null) {
+                        return status;
+                    }
+                    // load log4j properties, the daemon loads them once
+                    if (inDaemon || loadLod4jProperties(pConf.getLog4jPropertiesPath())) {
                         // check if program configuration is complete
                         if (pConf.isConfInitForOtherCommands()) {
                             error = false;
@@ -200,11 +265,16 @@ public final class Main {
                 cl.usage(delete);
             } else if (programConfExists(pConf, opts)) {
                 // load cli options
-                loadProgramCliOpts(pConf, opts);
+                loadProgramCliOpts(pConf, opts, workDir);
                 // load unset options from file, if any
                 if (loadFromFileUnsetOpts(pConf, opts)) {
-                    // load log4j properties
-                    if (loadLod4jProperties(pConf.getLog4jPropertiesPath())) {
+                    // forward command to the daemon, if running
+                    Integer status = forwardToDaemon(pConf, args, inDaemon);
+                    if (status != null) {
+                        return status;
+                    }
+                    // load log4j properties, the daemon loads them once
+                    if (inDaemon || loadLod4jProperties(pConf.getLog4jPropertiesPath())) {
                         // check if program configuration is complete
                         if (pConf.isConfInitForOtherCommands()) {
                             error = false;
@@ -216,11 +286,93 @@ public final class Main {
                     }
                 }
             }
+        } else if (parsedCmd.equals(statusCmd)) {
+            // status command
+            if (statusCmdOpt.isHelp()) {
+                cl.usage(statusCmd);
+            } else if (programConfExists(pConf, opts)) {
+                // load cli options
+                loadProgramCliOpts(pConf, opts, workDir);
+                // load unset options from file, if any
+                if (loadFromFileUnsetOpts(pConf, opts)) {
+                    // not forwarded to the daemon, the output is shown here
+                    if (inDaemon || loadLod4jProperties(pConf.getLog4jPropertiesPath())) {
+                        // check if program configuration is complete
+                        if (pConf.isConfInitForOtherCommands()) {
+                            error = false;
+                            String appId = statusCmdOpt.getArgs().get(0);
+                            // execute STATUS command, watching never blocks the daemon
+                            if (statusCmdOpt.isWatch() && !inDaemon) {
+                                cmdExec.exec_status(appId, StatusCmd.WATCH_ARG);
+                            } else {
+                                cmdExec.exec_status(appId);
+                            }
+                        } else {
+                            LOG.error("Program configuration NOT initialized. Check the .properties file and/or user input.");
+                        }
+                    }
+                }
+            }
+        } else if (parsedCmd.equals(DAEMON_CMD)) {
+            // daemon command
+            if (daemonCmdOpt.isHelp()) {
+                cl.usage(DAEMON_CMD);
+            } else if (inDaemon) {
+                LOG.error("Daemon is already running.");
+            } else if (programConfExists(pConf, opts)) {
+                // load cli options
+                loadProgramCliOpts(pConf, opts, workDir);
+                // load unset options from file, if any
+                if (loadFromFileUnsetOpts(pConf, opts)) {
+                    // load log4j properties
+                    if (loadLod4jProperties(pConf.getLog4jPropertiesPath())) {
+                        // run daemon, blocks until process is terminated
+                        Daemon daemon = new Daemon(pConf.getDaemonPort());
+                        error = !daemon.run();
+                    }
+                }
+            }
         }
 
-        if (error) {
-            errExit();
+        return error ? -1 : 0;
+    }
+
+    /**
+     * Forwards a command to the {@link Daemon Daemon}, if one is running.
+     *
+     * @param pConf the program's configuration.
+     * @param args command line arguments.
+     * @param inDaemon true if called by the daemon.
+     * @return the exit code of the command executed by the daemon, or NULL if
+     * the command must be executed by this process.
+     */
+    private static Integer forwardToDaemon(ProgramConf pConf, String[] args, boolean inDaemon) {
+        if (inDaemon) {
+            return null;
+        }
+        Integer status = DaemonClient.send(pConf.getDaemonPort(), args);
+        if (status != null) {
+            if (status == 0) {
+                System.out.println("Command completed by fidelio daemon.");
+            } else {
+                System.err.println("ERROR: Command FAILED by fidelio daemon.");
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Resolves a path against a working directory.
+     *
+     * @param workDir the working directory, or NULL to leave the path as is.
+     * @param path the path.
+     * @return the resolved path. Absolute paths are not changed.
+     */
+    private static String resolvePath(String workDir, String path) {
+        if (workDir == null || path == null || path.isEmpty()) {
+            return path;
         }
+        return Paths.get(workDir).resolve(path).toString();
     }
 
     private static boolean programConfExists(ProgramConf pConf, CliOptions opts) {
@@ -251,15 +403,15 @@ public final class Main {
         return loaded;
     }
 
-    private static void loadProgramCliOpts(ProgramConf pConf, CliOptions opts) {
+    private static void loadProgramCliOpts(ProgramConf pConf, CliOptions opts, String workDir) {
         // set (if specified) cli options before commands
         pConf.setZkHosts(opts.getZkHosts());
         pConf.setZkSessionTimeout(opts.getZkTimeout());
         // docker
         pConf.setDockerHost(opts.getDockerHost());
         pConf.setDockerTlsVerify(opts.getDockerTls());
-        pConf.setDockerCertPath(opts.getDockerCertPath());
-        pConf.setDockerConfigPath(opts.getDockerConfigPath());
+        pConf.setDockerCertPath(resolvePath(workDir, opts.getDockerCertPath()));
+        pConf.setDockerConfigPath(resolvePath(workDir, opts.getDockerConfigPath()));
         pConf.setDockerApiVersion(opts.getDockerApiVer());
         pConf.setDockerRegistryUrl(opts.getDockerRegUrl());
         pConf.setDockerRegistryUser(opts.getDockerRegUser());
@@ -269,10 +421,10 @@ public final class Main {
         pConf.setLog4jPropertiesPath(opts.getLog4j());
     }
 
-    private static void loadStartCmdOpts(ProgramConf pConf, StartCmdOpt startCmdOpt) {
+    private static void loadStartCmdOpts(ProgramConf pConf, StartCmdOpt startCmdOpt, String workDir) {
         // xml
-        pConf.setXmlSchemaPath(startCmdOpt.getSchema());
-        pConf.setXmlFilePath(startCmdOpt.getXml());
+        pConf.setXmlSchemaPath(resolvePath(workDir, startCmdOpt.getSchema()));
+        pConf.setXmlFilePath(resolvePath(workDir, startCmdOpt.getXml()));
     }
 
     /**
@@ -40,6 +40,7 @@ public final class ProgramConf {
     // zookeeper conf
     private String zkHosts;
     private int zkSessionTimeout;
+    private String zkCodec;
     // xml conf
     private String xmlSchemaPath;
     private String xmlFilePath;
@@ -55,10 +56,20 @@ public final class ProgramConf {
     private String dockerRegistryMail;
     // log4j conf
     private String log4jPropertiesPath;
+    // broker conf
+    private int brokerParallelism;
+    private int stopGracePeriod;
+    private String copyCacheDir;
+    private String descriptorCacheDir;
+    private String startupHistoryFile;
+    // daemon conf
+    private int daemonPort;
     // program general conf
     private static final String PROPERTIES_FILE_NAME = "fidelio.properties";
     private static final String PROGRAM_NAME = "fidelio";
     private static final String VERSION = "0.1.0";
+    private static final int DEFAULT_DAEMON_PORT = 2190;
+    private static final String DEFAULT_ZK_CODEC = "xml";
 
     public boolean isProgramPropertiesInRunningDir() {
         try {
@@ -118,6 +129,9 @@ public final class ProgramConf {
             if (zkSessionTimeout == 0) {
                 zkSessionTimeout = Integer.parseInt(prop.getProperty("zk.session.timeout"));
             }
+            if (zkCodec == null) {
+                zkCodec = prop.getProperty("zk.codec");
+            }
             if (xmlSchemaPath == null) {
                 xmlSchemaPath = prop.getProperty("xml.schema.path");
             }
@@ -151,6 +165,24 @@ public final class ProgramConf {
             if (log4jPropertiesPath == null) {
                 log4jPropertiesPath = prop.getProperty("log4j.properties.path");
             }
+            if (brokerParallelism == 0) {
+                brokerParallelism = parseOptionalInt(prop.getProperty("broker.parallelism"));
+            }
+            if (stopGracePeriod == 0) {
+                stopGracePeriod = parseOptionalInt(prop.getProperty("docker.stop.grace.period"));
+            }
+            if (copyCacheDir == null) {
+                copyCacheDir = prop.getProperty("copy.cache.dir");
+            }
+            if (descriptorCacheDir == null) {
+                descriptorCacheDir = prop.getProperty("descriptor.cache.dir");
+            }
+            if (startupHistoryFile == null) {
+                startupHistoryFile = prop.getProperty("startup.history.file");
+            }
+            if (daemonPort == 0) {
+                daemonPort = parseOptionalInt(prop.getProperty("daemon.port"));
+            }
         } catch (IOException ex) {
             System.err.println("ERROR: FAILED to load file: "
                     + ex.getMessage());
@@ -188,6 +220,7 @@ public final class ProgramConf {
             // get the properties 
             zkHosts = prop.getProperty("zk.hosts");
             zkSessionTimeout = Integer.parseInt(prop.getProperty("zk.session.timeout"));
+            zkCodec = prop.getProperty("zk.codec");
             xmlSchemaPath = prop.getProperty("xml.schema.path");
             dockerHost = prop.getProperty("docker.host");
             dockerTlsVerify = Boolean.parseBoolean(prop.getProperty("docker.tls.verify"));
@@ -199,6 +232,12 @@ public final class ProgramConf {
             dockerRegistryPass = prop.getProperty("docker.registry.password");
             dockerRegistryMail = prop.getProperty("docker.registry.email");
             log4jPropertiesPath = prop.getProperty("log4j.properties.path");
+            brokerParallelism = parseOptionalInt(prop.getProperty("broker.parallelism"));
+            stopGracePeriod = parseOptionalInt(prop.getProperty("docker.stop.grace.period"));
+            copyCacheDir = prop.getProperty("copy.cache.dir");
+            descriptorCacheDir = prop.getProperty("descriptor.cache.dir");
+            startupHistoryFile = prop.getProperty("startup.history.file");
+            daemonPort = parseOptionalInt(prop.getProperty("daemon.port"));
         } catch (IOException ex) {
             System.err.println("ERROR: FAILED to load file: "
                     + ex.getMessage());
@@ -207,6 +246,24 @@ public final class ProgramConf {
         return loaded;
     }
 
+    /**
+     * Parses the value of an optional integer property.
+     *
+     * @param value the value of the property.
+     * @return the parsed value or 0 if the property is not set or invalid.
+     */
+    private static int parseOptionalInt(String value) {
+        int parsed = 0;
+        if (value != null && !value.trim().isEmpty()) {
+            try {
+                parsed = Integer.parseInt(value.trim());
+            } catch (NumberFormatException ex) {
+                System.err.println("ERROR: Invalid integer value: " + value);
+            }
+        }
+        return parsed;
+    }
+
     /**
      * Check if program's configuration fields where all initialized for start.
      *
@@ -427,4 +484,87 @@ public final class ProgramConf {
     public void setLog4jPropertiesPath(String log4jPropertiesPath) {
         this.log4jPropertiesPath = log4jPropertiesPath;
     }
+
+    /**
+     * @return the maximum number of Brokers to run at the same time, or 0 if
+     * not set.
+     */
+    public int getBrokerParallelism() {
+        return brokerParallelism;
+    }
+
+    public void setBrokerParallelism(int brokerParallelism) {
+        this.brokerParallelism = brokerParallelism;
+    }
+
+    /**
+     * @return the time (seconds) a container is given to stop before it is
+     * killed, or 0 if not set.
+     */
+    public int getStopGracePeriod() {
+        return stopGracePeriod;
+    }
+
+    public void setStopGracePeriod(int stopGracePeriod) {
+        this.stopGracePeriod = stopGracePeriod;
+    }
+
+    /**
+     * @return the directory to cache the archives of data copied to
+     * containers, or NULL if not set.
+     */
+    public String getCopyCacheDir() {
+        return copyCacheDir;
+    }
+
+    public void setCopyCacheDir(String copyCacheDir) {
+        this.copyCacheDir = copyCacheDir;
+    }
+
+    /**
+     * @return the directory to cache the parsed application descriptions, or
+     * NULL if not set.
+     */
+    public String getDescriptorCacheDir() {
+        return descriptorCacheDir;
+    }
+
+    public void setDescriptorCacheDir(String descriptorCacheDir) {
+        this.descriptorCacheDir = descriptorCacheDir;
+    }
+
+    /**
+     * @return the file to keep the startup timings of services, or NULL if
+     * not set.
+     */
+    public String getStartupHistoryFile() {
+        return startupHistoryFile;
+    }
+
+    public void setStartupHistoryFile(String startupHistoryFile) {
+        this.startupHistoryFile = startupHistoryFile;
+    }
+
+    /**
+     * @return the loopback port the daemon listens to for commands.
+     */
+    public int getDaemonPort() {
+        return daemonPort > 0 ? daemonPort : DEFAULT_DAEMON_PORT;
+    }
+
+    public void setDaemonPort(int daemonPort) {
+        this.daemonPort = daemonPort;
+    }
+
+    /**
+     * @return the name of the codec that the data stored to zookeeper are
+     * serialized with.
+     */
+    public String getZkCodec() {
+        return zkCodec == null || zkCodec.trim().isEmpty() ? DEFAULT_ZK_CODEC : zkCodec.trim();
+    }
+
+    public void setZkCodec(String zkCodec) {
+        this.zkCodec = zkCodec;
+    }
 }
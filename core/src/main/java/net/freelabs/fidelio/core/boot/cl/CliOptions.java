@@ -100,6 +100,9 @@ public class CliOptions {
         @Parameter(names = {"-x", "--xmlFile"}, description = "<app xml file> Path to application description xml file.", required = true)
         private String xml;
 
+        @Parameter(names = {"-w", "--wait"}, description = "<seconds> Wait for the services to initialize, up to the given seconds.", required = false)
+        private Integer wait;
+
         // Getters
         public boolean isHelp() {
             if (help == null) {
@@ -108,6 +111,10 @@ public class CliOptions {
             return this.help;
         }
 
+        public Integer getWait() {
+            return wait;
+        }
+
         public String getSchema() {
             return schema;
         }
@@ -186,6 +193,55 @@ public class CliOptions {
         }
     }
 
+    // status command
+    @Parameters(commandDescription = "Show the status of the services of a deployed application.")
+    public class StatusCmdOpt {
+
+        @Parameter(names = {"-h", "--help"}, description = "Help for status command.", help = true)
+        private Boolean help;
+
+        @Parameter(names = {"-w", "--watch"}, description = "Keep running and show the status changes as they occur.")
+        private Boolean watch;
+
+        @Parameter(description = "<app id> The id of the deployed application.", required = true)
+        private List<String> args;
+
+        // Getters
+        public boolean isHelp() {
+            if (help == null) {
+                help = false;
+            }
+            return this.help;
+        }
+
+        public boolean isWatch() {
+            if (watch == null) {
+                watch = false;
+            }
+            return this.watch;
+        }
+
+        public List<String> getArgs() {
+            return args;
+        }
+    }
+
+    // daemon command
+    @Parameters(commandDescription = "Run in the background and execute the commands sent by fidelio clients.")
+    public class DaemonCmdOpt {
+
+        @Parameter(names = {"-h", "--help"}, description = "Help for daemon command.", help = true)
+        private Boolean help;
+
+        // Getters
+        public boolean isHelp() {
+            if (help == null) {
+                help = false;
+            }
+            return this.help;
+        }
+    }
+
     // --------------------------- Processing ---------------------------
     public boolean parseZkOpts() {
         boolean parsedOptions = true;
@@ -32,13 +32,27 @@ import com.github.dockerjava.api.model.Ports.Binding;
 import com.github.dockerjava.api.model.Volume;
 import com.github.dockerjava.api.model.VolumesFrom;
 import com.github.dockerjava.core.command.PullImageResultCallback;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CountDownLatch;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
-import javax.xml.bind.JAXBException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import net.freelabs.fidelio.core.schema.BindMnt;
 import net.freelabs.fidelio.core.schema.Container;
 import net.freelabs.fidelio.core.schema.Copy;
@@ -46,8 +60,11 @@ import net.freelabs.fidelio.core.schema.Docker;
 import net.freelabs.fidelio.core.schema.ExposePort;
 import net.freelabs.fidelio.core.schema.Protocol;
 import net.freelabs.fidelio.core.schema.PublishPort;
+import net.freelabs.fidelio.core.docker.DockerStateSnapshot;
+import net.freelabs.fidelio.core.docker.TarCache;
+import net.freelabs.fidelio.core.handlers.ContainerHandler;
 import net.freelabs.fidelio.core.handlers.NetworkHandler;
-import net.freelabs.fidelio.core.serializer.JAXBSerializer;
+import net.freelabs.fidelio.core.serializer.Codecs;
 import net.freelabs.fidelio.core.zookeeper.ZkConf;
 import net.freelabs.fidelio.core.zookeeper.ZkMaster;
 import net.freelabs.fidelio.core.zookeeper.ZkNode;
@@ -90,10 +107,10 @@ public abstract class Broker implements ContainerLifecycle {
      */
     protected final ZkNode zNode;
     /**
-     * A CountDownLatch with a count of one, representing the number of events
-     * that need to occur before it releases all	waiting threads.
+     * Completes when the zookeeper callbacks have finished processing the
+     * configuration node of the container.
      */
-    private final CountDownLatch shutdownSignal;
+    private final CompletableFuture<Void> shutdownSignal;
     /**
      * Number of times to try and execute code passed to {@link
      * #runAndRetry(net.freelabs.fidelio.core.broker.CoreBroker.RunCmd, int) runAndRetry}.
@@ -103,6 +120,16 @@ public abstract class Broker implements ContainerLifecycle {
      * Max attempts to pull an image from docker hub.
      */
     private static final int PULL_ATTEMPTS = 3;
+    /**
+     * The number of attempts to create a container when the docker daemon
+     * returns an error.
+     */
+    private static final int CREATE_ATTEMPTS = 5;
+    /**
+     * The delay (milliseconds) before the second attempt to create a
+     * container, doubled for every next attempt.
+     */
+    private static final long CREATE_RETRY_DELAY = 500;
     /**
      * The arguments used with the boot command to boot the container.
      */
@@ -140,6 +167,67 @@ public abstract class Broker implements ContainerLifecycle {
      * Time unit for the timeout value set to wait for services.
      */
     private static final TimeUnit SERVICES_TIMEOUT_UNIT = TimeUnit.MINUTES;
+    /**
+     * Time allowed to the create stage, including any image pull.
+     */
+    private static final long CREATE_STAGE_TIMEOUT = 10;
+    /**
+     * Time allowed to the copy stage.
+     */
+    private static final long COPY_STAGE_TIMEOUT = 5;
+    /**
+     * Time allowed to the start, restart and inspect stages.
+     */
+    private static final long START_STAGE_TIMEOUT = 2;
+    /**
+     * Time allowed to zookeeper to process the configuration node.
+     */
+    private static final long PUBLISH_STAGE_TIMEOUT = 2;
+    /**
+     * Time unit for the timeout values of the stages.
+     */
+    private static final TimeUnit STAGE_TIMEOUT_UNIT = TimeUnit.MINUTES;
+    /**
+     * Time to wait for canceled stages to stop running.
+     */
+    static final long STAGES_STOP_TIMEOUT = 2;
+    /**
+     * Time unit for the time to wait for canceled stages.
+     */
+    static final TimeUnit STAGES_STOP_TIMEOUT_UNIT = TimeUnit.MINUTES;
+    /**
+     * The latency (milliseconds) of every stage run by the Broker.
+     */
+    private final Map<String, Long> stageLatency;
+    /**
+     * The stages whose code is running, including stages that timed out.
+     */
+    private final Set<Stages.Task<?>> runningStages;
+    /**
+     * The time (nanoseconds) the stages of the task of the Broker may run in
+     * total.
+     */
+    private volatile long taskTimeout = Long.MAX_VALUE;
+    /**
+     * The time (nanoseconds) the stages of the task of the Broker have run.
+     */
+    private final AtomicLong taskRunTime;
+    /**
+     * Indicates that the Broker was canceled and must not start new stages.
+     */
+    private volatile boolean canceled;
+    /**
+     * Provides the state of the application containers.
+     */
+    private DockerStateSnapshot stateSnapshot;
+    /**
+     * Runs operations on application containers in parallel.
+     */
+    private ContainerOpsEngine opsEngine;
+    /**
+     * Provides the archives of host paths copied to containers.
+     */
+    private TarCache tarCache;
 
     /**
      * Handles errors.
@@ -161,7 +249,11 @@ public abstract class Broker implements ContainerLifecycle {
         this.docker = dockerClient;
         this.zkMaster = zkMaster;
         this.netHandler = netHandler;
-        shutdownSignal = new CountDownLatch(1);
+        shutdownSignal = new CompletableFuture<>();
+        stageLatency = Collections.synchronizedMap(new LinkedHashMap<>());
+        runningStages = ConcurrentHashMap.newKeySet();
+        taskRunTime = new AtomicLong();
+        stateSnapshot = new DockerStateSnapshot(dockerClient, zkConf.getSuffix(), zkConf.getDeplCons().values());
         if (con != null) {
             zNode = zkConf.getContainers().get(con.getConSrvName());
         } else {
@@ -174,39 +266,58 @@ public abstract class Broker implements ContainerLifecycle {
      * creates the container configuration, starts the container and runs the
      * postStart state where it updates the znode data for the container and
      * finally creates the configuration node to zookeeper.
+     * <p>
+     * Method blocks. The stages run on the calling thread.
      *
      * @return true if there were no errors during execution.
      */
     public boolean onStart() {
-        boolean success = false;
-        String cid;
-        // create configration to initialize parameters
-        createContainerEnv();
+        return await(onStartAsync(Runnable::run));
+    }
+
+    /**
+     * <p>
+     * Runs the start state for the Broker asynchronously, as a pipeline of
+     * stages: create, copy, start, inspect and publish.
+     * <p>
+     * Every stage is bounded by a timeout and its latency is recorded. No
+     * thread is blocked while waiting for zookeeper to process the
+     * configuration node of the container.
+     *
+     * @param executor the executor to run the blocking stages.
+     * @return a future that completes with true if there were no errors during
+     * execution.
+     */
+    public CompletableFuture<Boolean> onStartAsync(Executor executor) {
         // create a processor for declared docker configuration
         DockerConfProcessor dcp = new DockerConfProcessor(con.getDocker());
-        // create container instance
-        CreateContainerResponse container = createContainer(dcp);
-        // check if container was created 
-        if (container != null) {
-            // copy data, if any, to container
-            boolean copied = copyToContainer(dcp, container.getId());
-            if (copied) {
-                // start the created container instance
-                cid = startContainer(container, con.getConSrvName());
-                // check for errors
-                if (cid != null) {
-                    // get container IP
-                    success = onPostStart(cid);
-                } else {
-                    LOG.error("FAILED to start container.");
-                }
+        // create configration to initialize parameters and container instance
+        CompletableFuture<CreateContainerResponse> created = runStage("create", () -> {
+            createContainerEnv();
+            return createContainer(dcp);
+        }, executor, CREATE_STAGE_TIMEOUT);
+        // copy data, if any, to container
+        CompletableFuture<CreateContainerResponse> copied = thenStage(created, "copy", (container) -> {
+            return copyToContainer(dcp, container.getId()) ? container : null;
+        }, executor, COPY_STAGE_TIMEOUT);
+        // start the created container instance
+        CompletableFuture<String> started = thenStage(copied, "start", (container) -> {
+            String cid = startContainer(container, con.getConSrvName());
+            if (cid == null) {
+                LOG.error("FAILED to start container.");
             }
-        }
-        return success;
+            return cid;
+        }, executor, START_STAGE_TIMEOUT);
+        // run post start state
+        return started.thenCompose((cid) -> {
+            return cid == null ? CompletableFuture.completedFuture(false) : onPostStartAsync(cid, executor);
+        }).exceptionally(this::stageFailed);
     }
 
     /**
-     * Copies data from local host paths to container paths.
+     * Copies data from local host paths to container paths. The archive of
+     * every host path is taken from the {@link TarCache TarCache}, so that it
+     * is built once for all the containers it is copied to.
      *
      * @param cid the container id.
      * @return true if operation completed successfully.
@@ -220,12 +331,18 @@ public abstract class Broker implements ContainerLifecycle {
                 String hostPath = entry.getHostPath();
                 String containerPath = entry.getContainerPath();
                 boolean withDirChildrenOnly = !entry.isWithRootDir();
-
-                try {
+                // get the archive of the host path
+                InputStream archive = getTarCache().openArchive(hostPath, withDirChildrenOnly);
+                if (archive == null) {
+                    LOG.error("FAILED to copy {} to container.", hostPath);
+                    success = false;
+                    break;
+                }
+                // stream the archive to the container
+                try (InputStream in = archive) {
                     docker.copyArchiveToContainerCmd(cid)
-                            .withDirChildrenOnly(withDirChildrenOnly)
                             .withRemotePath(containerPath)
-                            .withHostResource(hostPath)
+                            .withTarInputStream(in)
                             .exec();
                 } catch (Exception ex) {
                     LOG.error("Something went wrong: {}", ex.getMessage());
@@ -265,53 +382,337 @@ public abstract class Broker implements ContainerLifecycle {
     /**
      * Runs the postStart state for the Broker. In the postStart state, the
      * Broker takes any action necessary after the container has started.
+     * <p>
+     * Method blocks. The stages run on the calling thread.
      *
      * @param cid the container identifier, id or name.
      * @return true if operations completed without errors.
      */
     public boolean onPostStart(String cid) {
-        boolean success = false;
-        String IP = getContainerIP(cid);
-        // update container ip
-        updateIP(IP);
-
-        try {
-            LOG.info("Updating zookeeper configuration for service {}...", zNode.getName());
-            // update zNode configuration
-            zNode.setData(JAXBSerializer.serialize(con));
-            // log the event
+        return await(onPostStartAsync(cid, Runnable::run));
+    }
 
-            LOG.debug(JAXBSerializer.deserializeToString(zNode.getData()));
-            // create zk configuration node
-            createNode(zNode.getConfNodePath(), zNode.getData());
-            // Sets the thread to wait until it's time to shutdown
-            waitForShutdown();
-            success = !zkError;
-        } catch (JAXBException ex) {
-            LOG.error("FAILED to update container IP. {}", ex);
-        }
-        return success;
+    /**
+     * Runs the postStart state for the Broker asynchronously. The container IP
+     * is updated in the zNode data and the configuration node is created to
+     * zookeeper.
+     *
+     * @param cid the container identifier, id or name.
+     * @param executor the executor to run the blocking stages.
+     * @return a future that completes with true if operations completed
+     * without errors.
+     */
+    public CompletableFuture<Boolean> onPostStartAsync(String cid, Executor executor) {
+        // update container ip and zNode configuration
+        CompletableFuture<byte[]> updated = runStage("inspect", () -> {
+            String IP = getContainerIP(cid);
+            // update container ip
+            updateIP(IP);
+            try {
+                LOG.info("Updating zookeeper configuration for service {}...", zNode.getName());
+                // update zNode configuration, with the codec of the application
+                zNode.setData(Codecs.encode(Codecs.codecOf(zNode.getData()), con));
+                // log the event
+                LOG.debug(Codecs.toString(zNode.getData()));
+                return zNode.getData();
+            } catch (IOException ex) {
+                LOG.error("FAILED to update container IP. {}", ex);
+                return null;
+            }
+        }, executor, START_STAGE_TIMEOUT);
+        // create zk configuration node
+        return updated.thenCompose((data) -> {
+            if (data == null) {
+                return CompletableFuture.completedFuture(false);
+            }
+            long remaining = taskTimeout - taskRunTime.get();
+            if (remaining <= 0) {
+                return taskTimedOut("publish");
+            }
+            long start = System.nanoTime();
+            createNode(zNode.getConfNodePath(), data);
+            // completes when the zookeeper callbacks signal shutdown
+            long timeout = Math.min(STAGE_TIMEOUT_UNIT.toNanos(PUBLISH_STAGE_TIMEOUT), remaining);
+            return Stages.within(shutdownSignal, "publish", timeout, TimeUnit.NANOSECONDS).whenComplete((v, ex) -> {
+                taskRunTime.addAndGet(System.nanoTime() - start);
+            }).thenApply((v) -> {
+                recordLatency("publish", start);
+                return !zkError;
+            });
+        }).exceptionally(this::stageFailed);
     }
 
     /**
      * Runs the restart state for the Broker.Restarts a container then the
      * postStart state is run where the zookeeper configuration is updated.
+     * <p>
+     * Method blocks. The stages run on the calling thread.
      *
      * @return true if resatrt of container succeeded.
      */
     public boolean onRestart() {
-        boolean success = false;
+        return await(onRestartAsync(Runnable::run));
+    }
+
+    /**
+     * Runs the restart state for the Broker asynchronously.
+     *
+     * @param executor the executor to run the blocking stages.
+     * @return a future that completes with true if resatrt of container
+     * succeeded.
+     */
+    public CompletableFuture<Boolean> onRestartAsync(Executor executor) {
         // restart the container with the deployed name
         String deplName = zkConf.getDeplCons().get(con.getConSrvName());
-        boolean restarted = restartContainer(deplName, con.getConSrvName());
+        CompletableFuture<Boolean> restarted = runStage("restart", () -> {
+            return restartContainer(deplName, con.getConSrvName());
+        }, executor, START_STAGE_TIMEOUT);
+        // run post start state
+        return restarted.thenCompose((ok) -> {
+            return ok ? onPostStartAsync(deplName, executor) : CompletableFuture.completedFuture(false);
+        }).exceptionally(this::stageFailed);
+    }
 
-        if (restarted) {
-            // run post start state
-            success = onPostStart(deplName);
+    /**
+     * Runs a stage asynchronously, bounded by a timeout and by the time left
+     * to the task of the Broker. Both count from the moment the stage starts
+     * running. The latency of the stage, from the moment it starts running to
+     * its completion, is recorded, so that the time spent waiting for a thread
+     * of the executor is not. A stage that times out is interrupted and is tracked until its
+     * code stops running, see {@link #awaitStages(long, TimeUnit)
+     * awaitStages}.
+     *
+     * @param <T> the result type of the stage.
+     * @param name the name of the stage.
+     * @param stage the code of the stage.
+     * @param executor the executor to run the stage.
+     * @param timeout the time (minutes) the stage is allowed to run.
+     * @return a future that completes with the result of the stage.
+     */
+    private <T> CompletableFuture<T> runStage(String name, Supplier<T> stage, Executor executor, long timeout) {
+        if (canceled) {
+            CompletableFuture<T> skipped = new CompletableFuture<>();
+            skipped.completeExceptionally(new CancellationException("Stage " + name + " canceled."));
+            return skipped;
+        }
+        long remaining = taskTimeout - taskRunTime.get();
+        if (remaining <= 0) {
+            return taskTimedOut(name);
+        }
+        Stages.Task<T> task = new Stages.Task<>(name, stage);
+        runningStages.add(task);
+        task.settled().whenComplete((res, ex) -> {
+            runningStages.remove(task);
+        });
+        // canceled while the stage was added
+        if (canceled) {
+            task.cancel();
+        }
+        long bound = Math.min(STAGE_TIMEOUT_UNIT.toNanos(timeout), remaining);
+        return Stages.runWithin(task, executor, bound, TimeUnit.NANOSECONDS).whenComplete((res, ex) -> {
+            // only the time the stage ran is charged to the task and recorded
+            Long started = task.started().getNow(null);
+            if (started != null) {
+                taskRunTime.addAndGet(System.nanoTime() - started);
+                recordLatency(name, started);
+            }
+        });
+    }
+
+    /**
+     * Bounds the time the stages of the task of the Broker may run in total.
+     * The time stages wait for a thread of the executor is not counted.
+     *
+     * @param timeout the time the stages may run.
+     * @param unit the time unit of the timeout argument.
+     */
+    void setTaskTimeout(long timeout, TimeUnit unit) {
+        taskTimeout = unit.toNanos(timeout);
+    }
+
+    /**
+     * @param <T> the result type of the stage.
+     * @param name the name of the stage that was not started.
+     * @return a future that completes exceptionally because the task of the
+     * Broker has no time left.
+     */
+    private <T> CompletableFuture<T> taskTimedOut(String name) {
+        CompletableFuture<T> timedOut = new CompletableFuture<>();
+        timedOut.completeExceptionally(new TimeoutException("Task of service " + con.getConSrvName()
+                + " timed out before stage " + name + "."));
+        return timedOut;
+    }
+
+    /**
+     * Cancels the Broker. Stages that have not started are skipped and
+     * running stages are interrupted.
+     */
+    public void cancel() {
+        canceled = true;
+        runningStages.forEach(Stages.Task::cancel);
+    }
+
+    /**
+     * <p>
+     * Waits for the code of the stages still running to stop, including the
+     * stages that timed out or were canceled. Until then, a stage may still
+     * create or start the container of the Broker.
+     * <p>
+     * Method blocks.
+     *
+     * @param timeout the time to wait.
+     * @param unit the time unit of the timeout argument.
+     * @return true if no stage is running.
+     */
+    public boolean awaitStages(long timeout, TimeUnit unit) {
+        CompletableFuture<?>[] running = runningStages.stream()
+                .map(Stages.Task::settled)
+                .toArray(CompletableFuture<?>[]::new);
+        boolean stopped = false;
+        try {
+            // failed stages have stopped too
+            CompletableFuture.allOf(running).handle((res, ex) -> null).get(timeout, unit);
+            stopped = true;
+        } catch (InterruptedException ex) {
+            // log the event
+            LOG.warn("Thread Interrupted. Stopping");
+            // set the interrupt status
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ex) {
+            LOG.warn("Stages of service {} still running: {}", con.getConSrvName(),
+                    runningStages.stream().map(Stages.Task::getName).collect(Collectors.toList()));
+        }
+        return stopped;
+    }
+
+    /**
+     * Runs a stage after the previous stage completes. The stage is skipped if
+     * the previous stage failed, i.e. returned NULL.
+     *
+     * @param <T> the result type of the previous stage.
+     * @param <U> the result type of the stage.
+     * @param prev the previous stage.
+     * @param name the name of the stage.
+     * @param stage the code of the stage.
+     * @param executor the executor to run the stage.
+     * @param timeout the time (minutes) the stage is allowed to run.
+     * @return a future that completes with the result of the stage or NULL if
+     * it was skipped.
+     */
+    private <T, U> CompletableFuture<U> thenStage(CompletableFuture<T> prev, String name, Function<T, U> stage, Executor executor, long timeout) {
+        return prev.thenCompose((res) -> {
+            return res == null ? CompletableFuture.<U>completedFuture(null) : runStage(name, () -> stage.apply(res), executor, timeout);
+        });
+    }
+
+    /**
+     * Records the latency of a stage.
+     *
+     * @param name the name of the stage.
+     * @param start the start time of the stage, in nanoseconds.
+     */
+    private void recordLatency(String name, long start) {
+        stageLatency.put(name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Handles a stage that failed with an exception or timed out.
+     *
+     * @param ex the exception.
+     * @return false.
+     */
+    private Boolean stageFailed(Throwable ex) {
+        Throwable cause = (ex instanceof CompletionException && ex.getCause() != null) ? ex.getCause() : ex;
+        LOG.error("FAILED to run Broker for service {}. Something went wrong: {}", con.getConSrvName(), cause.getMessage());
+        LOG.trace("Something went wrong: ", cause);
+        return false;
+    }
+
+    /**
+     * Waits for a state run asynchronously to complete.
+     *
+     * @param state the state.
+     * @return the result of the state or false in case of error.
+     */
+    private boolean await(CompletableFuture<Boolean> state) {
+        boolean success = false;
+        try {
+            success = state.get();
+        } catch (InterruptedException ex) {
+            // log the event
+            LOG.warn("Thread Interrupted. Stopping");
+            // set the interrupt status
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            LOG.error("Something went wrong: {}", ex.getMessage());
+            LOG.trace("Something went wrong: ", ex);
         }
         return success;
     }
 
+    /**
+     * Sets the provider of the state of the application containers, to share
+     * it with other callers.
+     *
+     * @param stateSnapshot provides the state of the application containers.
+     */
+    public void setStateSnapshot(DockerStateSnapshot stateSnapshot) {
+        this.stateSnapshot = stateSnapshot;
+    }
+
+    /**
+     * Sets the engine that runs operations on application containers.
+     *
+     * @param opsEngine runs operations on application containers.
+     */
+    public void setOpsEngine(ContainerOpsEngine opsEngine) {
+        this.opsEngine = opsEngine;
+    }
+
+    /**
+     * Sets the cache of archives copied to containers, to share it with other
+     * Brokers.
+     *
+     * @param tarCache provides the archives of host paths copied to
+     * containers.
+     */
+    public void setTarCache(TarCache tarCache) {
+        this.tarCache = tarCache;
+    }
+
+    /**
+     * @return the cache of archives copied to containers. If not set, a cache
+     * in the default directory is created.
+     */
+    private synchronized TarCache getTarCache() {
+        if (tarCache == null) {
+            tarCache = new TarCache(null);
+        }
+        return tarCache;
+    }
+
+    /**
+     * @return the engine that runs operations on application containers. If
+     * not set, an engine with the default configuration is created.
+     */
+    private synchronized ContainerOpsEngine getOpsEngine() {
+        if (opsEngine == null) {
+            ContainerHandler handler = new ContainerHandler(zkConf.getWebApp().getContainers());
+            opsEngine = new ContainerOpsEngine(handler.listContainers(), 0, 0);
+        }
+        return opsEngine;
+    }
+
+    /**
+     * @return the latency (milliseconds) of every stage run by the Broker, in
+     * order of execution.
+     */
+    public Map<String, Long> getStageLatency() {
+        synchronized (stageLatency) {
+            return new LinkedHashMap<>(stageLatency);
+        }
+    }
+
     /**
      * Runs the stop state for the Broker. In the stop state, services are
      * queried first to determine if they are running. Then, shutdown is
@@ -373,21 +774,21 @@ public abstract class Broker implements ContainerLifecycle {
     private boolean areContainersRunning(Map<String, String> deplCons) {
         // map with found running containers if any
         boolean running = false;
+        // get the state of all containers
+        Map<String, Boolean> states = stateSnapshot.getStates();
+        if (states == null) {
+            return false;
+        }
         // iterate and check running state
         for (Map.Entry<String, String> entry : deplCons.entrySet()) {
             String defName = entry.getKey();
             String deplname = entry.getValue();
-            try {
-                InspectContainerResponse inspResp = docker.inspectContainerCmd(deplname).exec();
-                // if container running add to map
-                if (inspResp.getState().getRunning()) {
-                    running = true;
-                    break;
-                }
-            } catch (NotFoundException ex) {
+            Boolean conRunning = states.get(deplname);
+            if (conRunning == null) {
                 LOG.error("Container for service {} does not exist.", defName);
-            } catch (DockerException ex) {
-                LOG.error("FAILED to get container state for service {}. Something went wrong: {}", defName, ex);
+            } else if (conRunning) {
+                running = true;
+                break;
             }
         }
         return running;
@@ -401,28 +802,34 @@ public abstract class Broker implements ContainerLifecycle {
      */
     private boolean stopRunningCons(Map<String, String> runningCons) {
         boolean success = true;
-        // iterate and check running state
+        // get the state of all containers
         LOG.info("Querying state of containers...");
+        Map<String, Boolean> states = stateSnapshot.getStates();
+        if (states == null) {
+            return false;
+        }
+        // iterate and check running state
+        Map<String, String> toStop = new LinkedHashMap<>();
         for (Map.Entry<String, String> entry : runningCons.entrySet()) {
             String defName = entry.getKey();
             String deplname = entry.getValue();
-            try {
-                InspectContainerResponse inspResp = docker.inspectContainerCmd(deplname).exec();
-                // if container running stop
-                if (inspResp.getState().getRunning()) {
-                    LOG.warn("Container for service {} is still running. Forcing stop...", defName);
-                    success = stopContainer(deplname, defName) && success;
-                } else {
-                    LOG.info("Container for service {} has stopped.", defName);
-                }
-            } catch (NotFoundException ex) {
+            Boolean conRunning = states.get(deplname);
+            // if container running stop
+            if (conRunning == null) {
                 LOG.error("Container for service {} does not exist.", defName);
                 success = false;
-            } catch (DockerException ex) {
-                LOG.error("FAILED to stop container for service {}. Something went wrong: {}", defName, ex.getMessage());
-                success = false;
+            } else if (conRunning) {
+                LOG.warn("Container for service {} is still running. Forcing stop...", defName);
+                toStop.put(defName, deplname);
+            } else {
+                LOG.info("Container for service {} has stopped.", defName);
             }
         }
+        // stop running containers in parallel, dependents first
+        Map<String, Boolean> results = getOpsEngine().run(toStop, "stop", this::stopContainer);
+        success = !results.containsValue(false) && success;
+        // containers changed state
+        stateSnapshot.invalidate();
         return success;
     }
 
@@ -473,7 +880,10 @@ public abstract class Broker implements ContainerLifecycle {
             switch (KeeperException.Code.get(rc)) {
                 case CONNECTIONLOSS:
                     LOG.warn("Connection loss was detected. Retrying...");
-                    checkNode(path, (byte[]) ctx);
+                    if (!zkMaster.getRetryPolicy().retryLater("checkNode:" + path, () -> checkNode(path, (byte[]) ctx))) {
+                        zkError = true;
+                        shutdown();
+                    }
                     break;
                 case NODEEXISTS:
                     LOG.warn("Node already exists. Overwriting: " + path);
@@ -512,7 +922,10 @@ public abstract class Broker implements ContainerLifecycle {
             switch (KeeperException.Code.get(rc)) {
                 case CONNECTIONLOSS:
                     LOG.warn("Connection loss was detected. Retrying...");
-                    checkNode(path, (byte[]) ctx);
+                    if (!zkMaster.getRetryPolicy().retryLater("checkNode:" + path, () -> checkNode(path, (byte[]) ctx))) {
+                        zkError = true;
+                        shutdown();
+                    }
                     break;
                 case NONODE:
                     createNode(path, (byte[]) ctx);
@@ -542,20 +955,22 @@ public abstract class Broker implements ContainerLifecycle {
 
     public void waitForShutdown() {
         try {
-            shutdownSignal.await();
+            shutdownSignal.get();
         } catch (InterruptedException ex) {
             // log the event
             LOG.warn("Thread Interrupted. Stopping");
             // set the interrupt status
             Thread.currentThread().interrupt();
             LOG.info("Initiating Broker shutdown.");
+        } catch (ExecutionException ex) {
+            LOG.error("Something went wrong: {}", ex.getMessage());
         }
     }
 
     public void shutdown() {
         LOG.debug("Initiating Broker shutdown.");
-        // release latch to finish execution
-        shutdownSignal.countDown();
+        // complete signal to finish execution
+        shutdownSignal.complete(null);
     }
 
     @Override
@@ -609,7 +1024,10 @@ public abstract class Broker implements ContainerLifecycle {
 
         // set container configuration
         CreateContainerResponse container = null;
-        while (container == null) {
+        int attempts = 0;
+        boolean pulled = false;
+        // a canceled or timed-out stage is interrupted
+        while (container == null && !canceled && !Thread.currentThread().isInterrupted()) {
             try {
                 container = docker.createContainerCmd(conImg)
                         .withNetworkMode(netName)
@@ -625,12 +1043,18 @@ public abstract class Broker implements ContainerLifecycle {
                         .withCmd(conCmd)
                         .withEnv(conEnvArr)
                         .withPrivileged(privileged)
+                        .withLabels(Collections.singletonMap(DockerStateSnapshot.APP_LABEL, zkConf.getSuffix()))
                         .exec();
             } catch (ConflictException ex) {
                 // container with this name already exists
                 LOG.error("Something went wrong {}", ex.getMessage());
                 break;
             } catch (NotFoundException ex) {
+                if (pulled) {
+                    LOG.error("FAILED to create container. Image {} not found after pull.", conImg);
+                    break;
+                }
+                pulled = true;
                 // image not found locally
                 LOG.warn("Image {} does not exist locally. Pulling from docker hub...", conImg);
                 // pull image from docker hub
@@ -645,9 +1069,26 @@ public abstract class Broker implements ContainerLifecycle {
                     break;
                 }
             } catch (DockerException ex) {
-                LOG.error("FAILED to create container. Something went wrong: {}", ex.getMessage());
+                attempts++;
+                if (attempts >= CREATE_ATTEMPTS) {
+                    LOG.error("FAILED to create container after {} attempts. Something went wrong: {}", attempts, ex.getMessage());
+                    break;
+                }
+                long delay = CREATE_RETRY_DELAY << (attempts - 1);
+                LOG.warn("FAILED to create container. Retrying in {} ms. Something went wrong: {}", delay, ex.getMessage());
+                try {
+                    TimeUnit.MILLISECONDS.sleep(delay);
+                } catch (InterruptedException e) {
+                    // log the event
+                    LOG.warn("Thread Interrupted. Stopping");
+                    // set the interrupt status
+                    Thread.currentThread().interrupt();
+                }
             }
         }
+        if (container == null && (canceled || Thread.currentThread().isInterrupted())) {
+            LOG.warn("Creation of container for service {} canceled.", con.getConSrvName());
+        }
         return container;
     }
 
@@ -679,7 +1120,9 @@ public abstract class Broker implements ContainerLifecycle {
     public boolean stopContainer(String con, String srv) {
         boolean success = false;
         try {
-            docker.stopContainerCmd(con).exec();
+            docker.stopContainerCmd(con)
+                    .withTimeout(getOpsEngine().getGracePeriod())
+                    .exec();
             // confirm stop
             InspectContainerResponse inspResp = docker.inspectContainerCmd(con).exec();
             if (inspResp.getState().getRunning()) {
@@ -17,21 +17,26 @@
 package net.freelabs.fidelio.core.broker;
 
 import com.github.dockerjava.api.DockerClient;
-import com.github.dockerjava.api.command.InspectContainerResponse;
-import com.github.dockerjava.api.exception.DockerException;
 import com.github.dockerjava.api.exception.NotFoundException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
-import java.util.function.Predicate;
 import static net.freelabs.fidelio.core.broker.Broker.LOG;
+import net.freelabs.fidelio.core.boot.ProgramConf;
+import net.freelabs.fidelio.core.docker.DockerStateSnapshot;
+import net.freelabs.fidelio.core.docker.TarCache;
+import net.freelabs.fidelio.core.schema.BusinessContainer;
 import net.freelabs.fidelio.core.schema.Container;
+import net.freelabs.fidelio.core.schema.DataContainer;
+import net.freelabs.fidelio.core.schema.WebContainer;
 import net.freelabs.fidelio.core.handlers.ContainerHandler;
 import net.freelabs.fidelio.core.handlers.NetworkHandler;
 import net.freelabs.fidelio.core.zookeeper.ZkConf;
@@ -49,9 +54,40 @@ public final class BrokerInit {
      */
     private final ExecutorService executor;
     /**
-     * A list of results from Brokers execution.
+     * The startup timings of the services from previous deployments.
      */
-    private final List<Future<Boolean>> execResults;
+    private final StartupHistory history;
+    /**
+     * The mode of the last start of the services.
+     */
+    private StartupHistory.Mode mode;
+    /**
+     * Map with the time (nanoseconds) the Broker of every service completed
+     * its task, with the service name as key.
+     */
+    private final Map<String, Long> taskCompleted;
+    /**
+     * Map with the time (milliseconds) every service took to initialize after
+     * its Broker completed, with the service name as key.
+     */
+    private final Map<String, Long> initLatency;
+    /**
+     * The Brokers created to run the containers.
+     */
+    private final List<Broker> brokers;
+    /**
+     * Provides the state of the application containers.
+     */
+    private final DockerStateSnapshot stateSnapshot;
+    /**
+     * Runs stop and delete operations on containers in parallel.
+     */
+    private final ContainerOpsEngine opsEngine;
+    /**
+     * Provides the archives of host paths copied to containers, shared by all
+     * Brokers.
+     */
+    private final TarCache tarCache;
     /**
      * The handler to get container configuration from applications description.
      */
@@ -73,8 +109,8 @@ public final class BrokerInit {
      */
     private final NetworkHandler netHandler;
     /**
-     * The total time (minutes) a Broker may run a task, before operation times
-     * out.
+     * The time (minutes) the stages of the Broker of a service may run, not
+     * counting the time they wait for a thread, before the task times out.
      */
     private static final long TASK_TIMEOUT = 15;
 
@@ -86,53 +122,192 @@ public final class BrokerInit {
      * @param docker a docker client.
      * @param master the zookeeper master process.
      * @param netHandler handles interaction with application networks.
+     * @param pConf the program's configuration.
      */
-    public BrokerInit(ContainerHandler handler, ZkConf zkConf, DockerClient docker, ZkMaster master, NetworkHandler netHandler) {
+    public BrokerInit(ContainerHandler handler, ZkConf zkConf, DockerClient docker, ZkMaster master, NetworkHandler netHandler, ProgramConf pConf) {
         this.handler = handler;
         this.zkConf = zkConf;
         this.docker = docker;
         this.master = master;
         this.netHandler = netHandler;
-        // create as many threads as containers
+        brokers = Collections.synchronizedList(new ArrayList<>());
+        taskCompleted = new ConcurrentHashMap<>();
+        initLatency = new ConcurrentHashMap<>();
+        stateSnapshot = new DockerStateSnapshot(docker, zkConf.getSuffix(), zkConf.getDeplCons().values());
+        int parallelism = pConf.getBrokerParallelism();
+        // run stop and delete with the same number of workers as start
+        ContainerHandler appHandler = new ContainerHandler(zkConf.getWebApp().getContainers());
+        opsEngine = new ContainerOpsEngine(appHandler.listContainers(), parallelism, pConf.getStopGracePeriod());
+        tarCache = new TarCache(pConf.getCopyCacheDir());
+        // threads run the blocking stages only, as many as allowed, but no more than containers
         if (handler == null) {
             executor = null;
+            history = null;
         } else {
-            executor = Executors.newFixedThreadPool(handler.getNumOfCons());
+            int maxThreads = parallelism > 0 ? parallelism : BrokerScheduler.DEFAULT_PARALLELISM;
+            executor = Executors.newFixedThreadPool(Math.max(1, Math.min(maxThreads, handler.getNumOfCons())));
+            history = new StartupHistory(pConf.getStartupHistoryFile());
         }
-        execResults = new ArrayList<>();
     }
 
     public boolean runStart() {
         LOG.info("Starting application deployment...");
-        // execute Brokers for data containers
-        handler.listDataContainers().stream().forEach((con) -> {
-            Broker broker = new DataBroker(zkConf, con, docker, master, netHandler);
-            String logMsg = String.format("Starting handler for %s service...", con.getConSrvName());
-            runBroker(broker, Broker::onStart, logMsg, con.getConSrvName());
-        });
-        // execute Brokers for business containers
-        handler.listBusinessContainers().stream().forEach((con) -> {
-            Broker broker = new BusinessBroker(zkConf, con, docker, master, netHandler);
-            String logMsg = String.format("Starting handler for %s service...", con.getConSrvName());
-            runBroker(broker, Broker::onStart, logMsg, con.getConSrvName());
-        });
-        // execute Brokers for web containers
-        handler.listWebContainers().stream().forEach((con) -> {
-            Broker broker = new WebBroker(zkConf, con, docker, master, netHandler);
-            String logMsg = String.format("Starting handler for %s service...", con.getConSrvName());
-            runBroker(broker, Broker::onStart, logMsg, con.getConSrvName());
-        });
-        // do not allow new tasks wait for running to finish
+        mode = StartupHistory.Mode.START;
+        // execute Brokers in dependency order, critical path first
+        boolean success = createScheduler().run((con) -> {
+            LOG.info("Starting handler for {} service...", con.getConSrvName());
+            return createBroker(con);
+        }, (broker) -> trackTask(broker, broker.onStartAsync(executor)), TASK_TIMEOUT, TimeUnit.MINUTES);
+        // log the latency of every stage
+        logStageLatency();
+        // do not allow new tasks
         executor.shutdown();
-        // await execution termination and return true if successful
-        boolean success = awaitExecution();
         // shutdown executor normally or force shutdown in case of error
         shutdownExecutor();
         return success;
     }
 
+    /**
+     * Creates a scheduler that orders the containers by the expected start
+     * time of their dependency chains, as recorded for the current
+     * {@link #mode mode}.
+     *
+     * @return a scheduler for the containers.
+     */
+    private BrokerScheduler createScheduler() {
+        Map<String, Long> durations = new HashMap<>();
+        handler.listContainers().stream().forEach((con) -> {
+            Long duration = history.expectedDuration(con, mode);
+            if (duration != null) {
+                durations.put(con.getConSrvName(), duration);
+            }
+        });
+        return new BrokerScheduler(handler.listContainers(), durations);
+    }
+
+    /**
+     * Records the time the task of a {@link Broker Broker} completes
+     * successfully.
+     *
+     * @param broker the Broker.
+     * @param task the task run by the Broker.
+     * @return the task.
+     */
+    private CompletableFuture<Boolean> trackTask(Broker broker, CompletableFuture<Boolean> task) {
+        return task.whenComplete((success, ex) -> {
+            if (ex == null && success) {
+                taskCompleted.put(broker.con.getConSrvName(), System.nanoTime());
+            }
+        });
+    }
+
+    /**
+     * Records the time a service took to initialize, after its {@link Broker
+     * Broker} completed. Called when the service is initialized. Must not
+     * block.
+     *
+     * @param srvPath the zNode path of the service.
+     */
+    public void recordInitialized(String srvPath) {
+        String srvName = srvPath.substring(srvPath.lastIndexOf('/') + 1);
+        Long completed = taskCompleted.get(srvName);
+        if (completed != null) {
+            initLatency.putIfAbsent(srvName, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - completed));
+        }
+    }
+
+    /**
+     * Records the latency of the stages run by every {@link Broker Broker} and
+     * the initialization of the services that were seen initialized to the
+     * {@link StartupHistory startup history} and saves it. Services whose
+     * Broker failed are not recorded.
+     */
+    public void saveStartupHistory() {
+        if (history == null || mode == null) {
+            return;
+        }
+        Map<String, Map<String, Long>> latency = getStageLatency();
+        for (Container con : handler.listContainers()) {
+            String srvName = con.getConSrvName();
+            if (!taskCompleted.containsKey(srvName) || !latency.containsKey(srvName)) {
+                continue;
+            }
+            Map<String, Long> phases = new LinkedHashMap<>(latency.get(srvName));
+            Long init = initLatency.get(srvName);
+            if (init != null) {
+                phases.put(StartupHistory.INIT_PHASE, init);
+            }
+            history.record(con, mode, phases);
+        }
+        history.save();
+    }
+
+    /**
+     * Creates a {@link Broker Broker} of the type that corresponds to the type
+     * of the container.
+     *
+     * @param con the container which will be bound to the broker.
+     * @return a Broker for the container.
+     */
+    private Broker createBroker(Container con) {
+        Broker broker;
+        if (con instanceof DataContainer) {
+            broker = new DataBroker(zkConf, (DataContainer) con, docker, master, netHandler);
+        } else if (con instanceof BusinessContainer) {
+            broker = new BusinessBroker(zkConf, (BusinessContainer) con, docker, master, netHandler);
+        } else {
+            broker = new WebBroker(zkConf, (WebContainer) con, docker, master, netHandler);
+        }
+        // share the archives of copied host paths
+        broker.setTarCache(tarCache);
+        // keep broker to collect stage latency
+        brokers.add(broker);
+        return broker;
+    }
+
+    /**
+     * Logs the latency of the stages run by every {@link Broker Broker}.
+     */
+    private void logStageLatency() {
+        getStageLatency().entrySet().stream().forEach((entry) -> {
+            LOG.info("Stage latency (ms) for service {}: {}", entry.getKey(), entry.getValue());
+        });
+    }
+
+    /**
+     * @return map with the latency (milliseconds) of every stage run, with the
+     * service name as key.
+     */
+    public Map<String, Map<String, Long>> getStageLatency() {
+        Map<String, Map<String, Long>> latency = new LinkedHashMap<>();
+        synchronized (brokers) {
+            brokers.stream().forEach((broker) -> {
+                latency.put(broker.con.getConSrvName(), broker.getStageLatency());
+            });
+        }
+        return latency;
+    }
+
+    /**
+     * Removes the containers of a failed start. The stages of the Brokers are
+     * canceled first and are waited to stop running, so that no container is
+     * created or started after it is removed.
+     */
     public void cleanupFromFailedStart() {
         boolean removed = false;
+        // stages that timed out may still create or start containers
+        List<Broker> started;
+        synchronized (brokers) {
+            started = new ArrayList<>(brokers);
+        }
+        started.stream().forEach(Broker::cancel);
+        long deadline = System.nanoTime() + Broker.STAGES_STOP_TIMEOUT_UNIT.toNanos(Broker.STAGES_STOP_TIMEOUT);
+        for (Broker broker : started) {
+            long remaining = Math.max(0, deadline - System.nanoTime());
+            if (!broker.awaitStages(remaining, TimeUnit.NANOSECONDS)) {
+                LOG.warn("Container for service {} may be created after cleanup.", broker.con.getConSrvName());
+            }
+        }
 
         for (Container con : handler.listContainers()) {
             String conSrvName = con.getConSrvName();
@@ -158,25 +333,15 @@ public final class BrokerInit {
         }
     }
 
-    private void runBroker(Broker cb, Predicate<Broker> pred, String logMsg, String conName) {
-        if (!logMsg.isEmpty()) {
-            LOG.info(logMsg);
-        }
-        Future<Boolean> res = executor.submit(() -> {
-            Thread.currentThread().setName(conName + "-Broker-" + "Thread");
-            return pred.test(cb);
-        });
-
-        // add future object to list to check for execution result 
-        execResults.add(res);
-    }
-
     public boolean runStop() {
         boolean success = true;
         if (!isStopped()) {
             LOG.info("Stopping application...");
             // create a broker of any type
             Broker broker = new DataBroker(zkConf, null, docker, master, netHandler);
+            // share the state of containers
+            broker.setStateSnapshot(stateSnapshot);
+            broker.setOpsEngine(opsEngine);
             // runStop services and containers
             success = broker.onStop();
         }
@@ -212,25 +377,13 @@ public final class BrokerInit {
         if (success) {
             // re-start application
             LOG.info("Restarting application...");
-            // run Brokers with restart for data containers
-            handler.listDataContainers().stream().forEach((con) -> {
-                Broker broker = new DataBroker(zkConf, con, docker, master, netHandler);
-                runBroker(broker, Broker::onRestart, "", con.getConSrvName());
-            });
-            // run Brokers with restart Brokers for business containers
-            handler.listBusinessContainers().stream().forEach((con) -> {
-                Broker broker = new BusinessBroker(zkConf, con, docker, master, netHandler);
-                runBroker(broker, Broker::onRestart, "", con.getConSrvName());
-            });
-            // run Brokers with restart Brokers for web containers
-            handler.listWebContainers().stream().forEach((con) -> {
-                Broker broker = new WebBroker(zkConf, con, docker, master, netHandler);
-                runBroker(broker, Broker::onRestart, "", con.getConSrvName());
-            });
-            // do not allow new tasks wait for running to finish
+            mode = StartupHistory.Mode.RESTART;
+            // run Brokers with restart in dependency order, critical path first
+            success = createScheduler().run(this::createBroker, (broker) -> trackTask(broker, broker.onRestartAsync(executor)), TASK_TIMEOUT, TimeUnit.MINUTES);
+            // log the latency of every stage
+            logStageLatency();
+            // do not allow new tasks
             executor.shutdown();
-            // await execution termination and return true if successful
-            success = awaitExecution();
             // shutdown executor normally or force shutdown in case of error
             shutdownExecutor();
         }
@@ -250,32 +403,14 @@ public final class BrokerInit {
     }
 
     /**
-     * Checks if any containers are running. If a running container is found
-     * then an one element list is returned. If no containers are running then
-     * an empty list is returned. In case of error NULL is returned.
+     * Checks if any containers are running. The state of all containers is
+     * queried with a single request to the docker daemon.
      *
-     * @return a list with one element of a container is found running, empty if
-     * no running containers found and NULL in case of any error.
+     * @return a list with the running containers, empty if no running
+     * containers found and NULL in case of any error.
      */
     private List<String> checkContainersRunning() {
-        List<String> deplConNames = new ArrayList<>(zkConf.getDeplCons().values());
-        List<String> runningContainers = new ArrayList<>();
-
-        for (String deplConName : deplConNames) {
-            try {
-                InspectContainerResponse inspResp = docker.inspectContainerCmd(deplConName).exec();
-                // if container running add to list
-                if (inspResp.getState().getRunning()) {
-                    runningContainers.add(deplConName);
-                }
-            } catch (NotFoundException ex) {
-                // catch exception and check if other containers are running
-            } catch (DockerException ex) {
-                runningContainers = null;
-                break;
-            }
-        }
-        return runningContainers;
+        return stateSnapshot.getRunning();
     }
 
     public void runUpdate() {
@@ -286,15 +421,12 @@ public final class BrokerInit {
         boolean success = true;
         // create a broker of any type
         Broker broker = new DataBroker(zkConf, null, docker, master, netHandler);
-        // delete containers
+        // delete containers in parallel, dependents first
         LOG.info("Removing containers...");
-        Map<String, String> deplCons = zkConf.getDeplCons();
-        for (Map.Entry<String, String> entry : deplCons.entrySet()) {
-            String defName = entry.getKey();
-            String deplname = entry.getValue();
-            // delete all but maintain success outcome in case of error
-            success = broker.deleteContainer(deplname, defName) && success;
-        }
+        Map<String, Boolean> results = opsEngine.run(zkConf.getDeplCons(), "delete", broker::deleteContainer);
+        // delete all but maintain success outcome in case of error
+        success = !results.containsValue(false);
+        stateSnapshot.invalidate();
         if (!success) {
             LOG.warn("Could not remove all containers.");
         }
@@ -302,48 +434,6 @@ public final class BrokerInit {
         return success;
     }
 
-    /**
-     * <p>
-     * Waits the execution of tasks from {@link Broker Broker} instances to
-     * complete and gets the returned results.
-     * <p>
-     * Method blocks.
-     *
-     * @return true if all executed tasks of {@link Broker Broker} instances
-     * competed without errors.
-     */
-    private boolean awaitExecution() {
-        boolean success = true;
-        for (Future<Boolean> future : execResults) {
-            try {
-                boolean execRes = future.get(TASK_TIMEOUT, TimeUnit.MINUTES);
-                success = execRes && success;
-                // check result and exit if task failed
-                if (!success) {
-                    break;
-                }
-            } catch (InterruptedException ex) {
-                // log the event
-                LOG.warn("Thread Interrupted. Stopping");
-                // set the interrupt status
-                Thread.currentThread().interrupt();
-                success = false;
-                break;
-            } catch (ExecutionException ex) {
-                LOG.error("Something went wrong: {}", ex.getMessage());
-                LOG.trace("Something went wrong: ", ex);
-                success = false;
-                break;
-            } catch (TimeoutException ex) {
-                LOG.error("Task timed out.");
-                success = false;
-                break;
-            }
-        }
-
-        return success;
-    }
-
     /**
      * Shuts down the executor service. If any tasks are still running, they are
      * canceled.
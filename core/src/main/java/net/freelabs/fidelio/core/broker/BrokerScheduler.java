@@ -0,0 +1,382 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.broker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import net.freelabs.fidelio.core.schema.Container;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Class that schedules the execution of {@link Broker Broker} tasks according
+ * to the dependencies declared between containers.
+ * <p>
+ * A container is handed to a Broker only after all the containers it requires
+ * have completed their task. Containers that become ready together form a
+ * wave, which is ordered by the length of the longest chain of containers
+ * depending on them, so that the critical path is started first. The length
+ * of a chain is the sum of the expected start times of its containers, as
+ * recorded by previous deployments. Containers without recorded times count
+ * as the average recorded time, or as one unit if there are no recorded
+ * times, so that without history chains are ordered by their size. The number
+ * of Brokers running blocking stages at the same time is bounded by the size
+ * of the executor the tasks run on.
+ * <p>
+ * Every task is bounded by its own timeout, that counts only the time its
+ * stages run and not the time they wait for a thread of the executor, so
+ * that tasks queued behind a wide wave do not time out. Scheduling as a whole
+ * is bounded by the time the tasks would take if the Brokers ran one after the
+ * other. When scheduling stops, the launched Brokers are canceled and waited
+ * for, so that no Broker acts on containers once the scheduler returns.
+ */
+public final class BrokerScheduler {
+
+    /**
+     * A Logger object.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(BrokerScheduler.class);
+    /**
+     * The default number of Brokers that may run at the same time.
+     */
+    public static final int DEFAULT_PARALLELISM = 8;
+    /**
+     * Map with the containers to schedule, with their service name as key.
+     */
+    private final Map<String, Container> containers;
+    /**
+     * Map with the service names of the containers that depend on a container.
+     */
+    private final Map<String, List<String>> dependents;
+    /**
+     * Map with the number of required containers that have not yet completed
+     * their task, for every container.
+     */
+    private final Map<String, Integer> pendingDeps;
+    /**
+     * Map with the length of the longest chain of dependent containers, for
+     * every container.
+     */
+    private final Map<String, Long> chainLength;
+    /**
+     * Map with the expected start time (milliseconds) of every container.
+     */
+    private final Map<String, Long> weights;
+
+    /**
+     * Constructor. Chains are ordered by their size.
+     *
+     * @param conList the containers to schedule.
+     */
+    public BrokerScheduler(List<Container> conList) {
+        this(conList, Collections.emptyMap());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param conList the containers to schedule.
+     * @param durations map with the expected start time (milliseconds) of
+     * the containers with recorded times, with their service name as key.
+     */
+    public BrokerScheduler(List<Container> conList, Map<String, Long> durations) {
+        containers = new LinkedHashMap<>();
+        dependents = new HashMap<>();
+        pendingDeps = new HashMap<>();
+        chainLength = new HashMap<>();
+        // index containers
+        conList.stream().forEach((con) -> {
+            containers.put(con.getConSrvName(), con);
+            dependents.put(con.getConSrvName(), new ArrayList<>());
+        });
+        // create the dependency graph
+        containers.values().stream().forEach((con) -> {
+            int deps = 0;
+            for (String dep : con.getRequires()) {
+                if (dependents.containsKey(dep)) {
+                    dependents.get(dep).add(con.getConSrvName());
+                    deps++;
+                } else {
+                    LOG.warn("Service {} requires undeclared service {}. Ignoring dependency.", con.getConSrvName(), dep);
+                }
+            }
+            pendingDeps.put(con.getConSrvName(), deps);
+        });
+        // weigh every container with its expected start time
+        weights = new HashMap<>();
+        long known = containers.keySet().stream().filter(durations::containsKey).count();
+        long average = known == 0 ? 1 : Math.max(1, containers.keySet().stream()
+                .filter(durations::containsKey).mapToLong(durations::get).sum() / known);
+        containers.keySet().stream().forEach((name) -> {
+            weights.put(name, Math.max(1, durations.getOrDefault(name, average)));
+        });
+        // compute critical path length for every container
+        containers.keySet().stream().forEach((name) -> {
+            computeChainLength(name, new HashMap<>());
+        });
+        if (known > 0) {
+            LOG.info("Critical path (estimated {} ms): {}", getCriticalPathLength(), getCriticalPath());
+        }
+    }
+
+    /**
+     * Computes the length of the longest chain of containers that depend on a
+     * container. Recursive method.
+     *
+     * @param name the service name of the container.
+     * @param visiting map with the containers of the current chain, used to
+     * stop on circular dependencies.
+     * @return the length of the longest chain of dependent containers.
+     */
+    private long computeChainLength(String name, Map<String, Boolean> visiting) {
+        Long length = chainLength.get(name);
+        if (length != null) {
+            return length;
+        }
+        if (visiting.containsKey(name)) {
+            // circular dependency, reported when scheduling
+            return 0;
+        }
+        visiting.put(name, Boolean.TRUE);
+        long max = 0;
+        for (String dependent : dependents.get(name)) {
+            max = Math.max(max, computeChainLength(dependent, visiting));
+        }
+        visiting.remove(name);
+        chainLength.put(name, max + weights.get(name));
+        return max + weights.get(name);
+    }
+
+    /**
+     * @return the service names of the containers on the longest chain, in
+     * start order.
+     */
+    public List<String> getCriticalPath() {
+        List<String> path = new ArrayList<>();
+        // start from the longest chain of the containers without dependencies
+        String next = pendingDeps.entrySet().stream()
+                .filter((entry) -> (entry.getValue() == 0))
+                .map(Map.Entry::getKey)
+                .max(Comparator.comparing(chainLength::get))
+                .orElse(null);
+        while (next != null && !path.contains(next)) {
+            path.add(next);
+            // follow the dependent on the longest chain
+            next = dependents.get(next).stream()
+                    .max(Comparator.comparing(chainLength::get))
+                    .orElse(null);
+        }
+        return path;
+    }
+
+    /**
+     * @return the length of the longest chain, the expected time
+     * (milliseconds) to start it if times are recorded.
+     */
+    public long getCriticalPathLength() {
+        return chainLength.values().stream().mapToLong(Long::longValue).max().orElse(0);
+    }
+
+    /**
+     * <p>
+     * Runs a task for every container, in dependency order.
+     * <p>
+     * Tasks run asynchronously: a task is launched as soon as the tasks of all
+     * the containers it requires have completed, and no thread is held by the
+     * scheduler while tasks run. Scheduling stops on the first task that
+     * fails, completes exceptionally or times out. Then, the launched Brokers
+     * are {@link Broker#cancel() canceled} and the method returns after their
+     * tasks and stages have stopped.
+     * <p>
+     * Method blocks.
+     *
+     * @param brokerFactory creates the {@link Broker Broker} for a container.
+     * @param task the task to run on every Broker. Returns a future that
+     * completes with true if the task was successful.
+     * @param timeout the time the stages of every task may run.
+     * @param unit the time unit of the timeout argument.
+     * @return true if the tasks for all the containers completed without
+     * errors.
+     */
+    public boolean run(Function<Container, Broker> brokerFactory, Function<Broker, CompletableFuture<Boolean>> task, long timeout, TimeUnit unit) {
+        if (containers.isEmpty()) {
+            return true;
+        }
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        Map<String, AtomicInteger> pending = new HashMap<>();
+        pendingDeps.entrySet().stream().forEach((entry) -> {
+            pending.put(entry.getKey(), new AtomicInteger(entry.getValue()));
+        });
+        AtomicInteger remaining = new AtomicInteger(containers.size());
+        AtomicInteger running = new AtomicInteger();
+        Map<Broker, CompletableFuture<Boolean>> launched = new LinkedHashMap<>();
+        // the first wave holds the containers without dependencies
+        List<String> wave = new ArrayList<>();
+        pendingDeps.entrySet().stream().filter((entry) -> (entry.getValue() == 0)).forEach((entry) -> {
+            wave.add(entry.getKey());
+        });
+        if (wave.isEmpty()) {
+            LOG.error("Could not schedule any service. Check for circular dependencies.");
+            return false;
+        }
+        launchWave(wave, brokerFactory, task, timeout, unit, pending, remaining, running, launched, result);
+
+        boolean success = false;
+        try {
+            // stages that do not react to the interrupt may hold all threads
+            success = result.get(unit.toNanos(timeout) * containers.size(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex) {
+            // log the event
+            LOG.warn("Thread Interrupted. Stopping");
+            // set the interrupt status
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            LOG.error("Something went wrong: {}", ex.getMessage());
+            LOG.trace("Something went wrong: ", ex);
+        } catch (TimeoutException ex) {
+            LOG.error("Services were not started in time.");
+        }
+        if (!success) {
+            stopLaunched(launched, result);
+        }
+        return success;
+    }
+
+    /**
+     * Stops scheduling, cancels the launched {@link Broker Brokers} and waits
+     * for their tasks and stages to stop.
+     *
+     * @param launched the launched Brokers and their tasks.
+     * @param result completes when scheduling stops.
+     */
+    private void stopLaunched(Map<Broker, CompletableFuture<Boolean>> launched, CompletableFuture<Boolean> result) {
+        Map<Broker, CompletableFuture<Boolean>> stopped;
+        synchronized (launched) {
+            // stop launching new tasks
+            result.complete(false);
+            stopped = new LinkedHashMap<>(launched);
+        }
+        stopped.keySet().stream().forEach(Broker::cancel);
+        // canceled tasks complete once their running stage reacts to the interrupt
+        long deadline = System.nanoTime() + Broker.STAGES_STOP_TIMEOUT_UNIT.toNanos(Broker.STAGES_STOP_TIMEOUT);
+        CompletableFuture<?>[] tasks = stopped.values().toArray(new CompletableFuture<?>[0]);
+        try {
+            CompletableFuture.allOf(tasks).handle((res, ex) -> null).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex) {
+            // log the event
+            LOG.warn("Thread Interrupted. Stopping");
+            // set the interrupt status
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ex) {
+            LOG.warn("Some service handlers did not stop in time.");
+        }
+        // stages that timed out may still be running
+        for (Broker broker : stopped.keySet()) {
+            broker.awaitStages(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Launches a wave of containers, starting with the container that has the
+     * longest chain of dependent containers. When the task of a container
+     * completes, the containers depending on it that have no more pending
+     * dependencies are launched as the next wave.
+     *
+     * @param wave the service names of the containers that are ready to run.
+     * @param brokerFactory creates the {@link Broker Broker} for a container.
+     * @param task the task to run on every Broker.
+     * @param timeout the time the stages of every task may run.
+     * @param unit the time unit of the timeout argument.
+     * @param pending the number of pending dependencies for every container.
+     * @param remaining the number of containers whose task has not completed.
+     * @param running the number of tasks running.
+     * @param launched the launched Brokers and their tasks.
+     * @param result completes when all tasks completed or one failed.
+     */
+    private void launchWave(List<String> wave, Function<Container, Broker> brokerFactory, Function<Broker, CompletableFuture<Boolean>> task,
+            long timeout, TimeUnit unit, Map<String, AtomicInteger> pending, AtomicInteger remaining, AtomicInteger running,
+            Map<Broker, CompletableFuture<Boolean>> launched, CompletableFuture<Boolean> result) {
+        // critical path first
+        wave.sort(Comparator.comparing((String name) -> chainLength.get(name)).reversed());
+        running.addAndGet(wave.size());
+
+        for (String srvName : wave) {
+            LOG.debug("Scheduling handler for {} service.", srvName);
+            CompletableFuture<Boolean> res;
+            synchronized (launched) {
+                // check if scheduling was stopped
+                if (result.isDone()) {
+                    return;
+                }
+                Broker broker = null;
+                try {
+                    broker = brokerFactory.apply(containers.get(srvName));
+                    // counts from the moment a stage runs, not from the launch
+                    broker.setTaskTimeout(timeout, unit);
+                    res = task.apply(broker);
+                } catch (RuntimeException ex) {
+                    res = new CompletableFuture<>();
+                    res.completeExceptionally(ex);
+                }
+                if (broker != null) {
+                    launched.put(broker, res);
+                }
+            }
+
+            res.whenComplete((success, ex) -> {
+                // check result and stop if task failed
+                if (ex != null) {
+                    LOG.error("Something went wrong: {}", ex.getMessage());
+                    result.complete(false);
+                    return;
+                } else if (!success) {
+                    result.complete(false);
+                    return;
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    result.complete(true);
+                    return;
+                }
+                // release the containers that depended on the completed container
+                List<String> nextWave = new ArrayList<>();
+                for (String dependent : dependents.get(srvName)) {
+                    if (pending.get(dependent).decrementAndGet() == 0) {
+                        nextWave.add(dependent);
+                    }
+                }
+                launchWave(nextWave, brokerFactory, task, timeout, unit, pending, remaining, running, launched, result);
+                // nothing left to run while containers remain
+                if (running.decrementAndGet() == 0) {
+                    LOG.error("Could not schedule all services. Check for circular dependencies.");
+                    result.complete(false);
+                }
+            });
+        }
+    }
+}
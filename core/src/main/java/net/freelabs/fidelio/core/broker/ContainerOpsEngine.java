@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.broker;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+import net.freelabs.fidelio.core.schema.Container;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Class that runs an operation, like stop or delete, on the containers of an
+ * application in parallel.
+ * <p>
+ * The number of operations running at the same time is bounded by the number
+ * of workers. The operations run in reverse dependency order: the container of
+ * a service is processed only after the containers of all the services that
+ * require it have been processed, so that a provider is never stopped before
+ * its dependents.
+ * <p>
+ * A failed operation does not stop the rest. The results are aggregated per
+ * service.
+ */
+public final class ContainerOpsEngine {
+
+    /**
+     * A Logger object.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ContainerOpsEngine.class);
+    /**
+     * The default number of workers.
+     */
+    public static final int DEFAULT_WORKERS = 8;
+    /**
+     * The default time (seconds) a container is given to stop before it is
+     * killed.
+     */
+    public static final int DEFAULT_GRACE_PERIOD = 10;
+    /**
+     * The time (minutes), on top of the grace period, to wait for an
+     * operation to complete.
+     */
+    private static final long OP_TIMEOUT = 2;
+    /**
+     * Map with the services required by every service.
+     */
+    private final Map<String, List<String>> requires;
+    /**
+     * The number of operations running at the same time.
+     */
+    private final int workers;
+    /**
+     * The time (seconds) a container is given to stop before it is killed.
+     */
+    private final int gracePeriod;
+
+    /**
+     * Constructor.
+     *
+     * @param containers the containers of the application.
+     * @param workers the number of operations running at the same time. If not
+     * positive, {@link #DEFAULT_WORKERS DEFAULT_WORKERS} is used.
+     * @param gracePeriod the time (seconds) a container is given to stop
+     * before it is killed. If not positive, {@link #DEFAULT_GRACE_PERIOD
+     * DEFAULT_GRACE_PERIOD} is used.
+     */
+    public ContainerOpsEngine(List<Container> containers, int workers, int gracePeriod) {
+        this.workers = workers > 0 ? workers : DEFAULT_WORKERS;
+        this.gracePeriod = gracePeriod > 0 ? gracePeriod : DEFAULT_GRACE_PERIOD;
+        requires = new HashMap<>();
+        containers.stream().forEach((con) -> {
+            requires.put(con.getConSrvName(), con.getRequires());
+        });
+    }
+
+    /**
+     * <p>
+     * Runs an operation on containers, in reverse dependency order.
+     * <p>
+     * Method blocks.
+     *
+     * @param deplCons map with the defined-deployed container names of the
+     * containers to process.
+     * @param opName the name of the operation, used for logging.
+     * @param op the operation. Accepts the deployed and the defined name of a
+     * container and returns true if successful.
+     * @return map with the result of the operation for every service, with the
+     * service name as key.
+     */
+    public Map<String, Boolean> run(Map<String, String> deplCons, String opName, BiPredicate<String, String> op) {
+        Map<String, Boolean> results = new LinkedHashMap<>();
+        if (deplCons.isEmpty()) {
+            return results;
+        }
+        // count the dependents of every service among the processed services
+        Map<String, Integer> pending = new HashMap<>();
+        deplCons.keySet().stream().forEach((srv) -> {
+            pending.put(srv, 0);
+        });
+        deplCons.keySet().stream().forEach((srv) -> {
+            for (String dep : requires.getOrDefault(srv, new ArrayList<>())) {
+                if (pending.containsKey(dep)) {
+                    pending.merge(dep, 1, Integer::sum);
+                }
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(workers, deplCons.size()));
+        CompletionService<String> ecs = new ExecutorCompletionService<>(executor);
+        Set<String> running = new HashSet<>();
+        // the services without dependents are processed first
+        pending.entrySet().stream().filter((entry) -> (entry.getValue() == 0)).forEach((entry) -> {
+            submit(ecs, running, deplCons, entry.getKey(), op, results);
+        });
+
+        long timeout = TimeUnit.SECONDS.toMillis(gracePeriod) + TimeUnit.MINUTES.toMillis(OP_TIMEOUT);
+        while (!running.isEmpty()) {
+            try {
+                Future<String> res = ecs.poll(timeout, TimeUnit.MILLISECONDS);
+                if (res == null) {
+                    LOG.error("Operation {} timed out.", opName);
+                    break;
+                }
+                String srv = res.get();
+                running.remove(srv);
+                // release the services required by the processed service
+                for (String dep : requires.getOrDefault(srv, new ArrayList<>())) {
+                    if (pending.containsKey(dep) && pending.merge(dep, -1, Integer::sum) == 0) {
+                        submit(ecs, running, deplCons, dep, op, results);
+                    }
+                }
+            } catch (InterruptedException ex) {
+                // log the event
+                LOG.warn("Thread Interrupted. Stopping");
+                // set the interrupt status
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException ex) {
+                // operations do not throw, see submit
+                LOG.error("Something went wrong: {}", ex.getMessage());
+                break;
+            }
+        }
+        executor.shutdownNow();
+
+        Map<String, Boolean> aggregated;
+        synchronized (results) {
+            // services never processed, due to timeout or circular dependencies
+            deplCons.keySet().stream().filter((srv) -> (!results.containsKey(srv))).forEach((srv) -> {
+                LOG.error("Operation {} did NOT complete for service {}.", opName, srv);
+                results.put(srv, false);
+            });
+            aggregated = new LinkedHashMap<>(results);
+        }
+        logResults(opName, aggregated);
+        return aggregated;
+    }
+
+    /**
+     * Submits an operation on the container of a service.
+     *
+     * @param ecs the completion service to submit the operation.
+     * @param running the services with running operations.
+     * @param deplCons map with the defined-deployed container names.
+     * @param srv the service name.
+     * @param op the operation.
+     * @param results map to store the result of the operation.
+     */
+    private void submit(CompletionService<String> ecs, Set<String> running, Map<String, String> deplCons,
+            String srv, BiPredicate<String, String> op, Map<String, Boolean> results) {
+        ecs.submit(() -> {
+            boolean success;
+            try {
+                success = op.test(deplCons.get(srv), srv);
+            } catch (RuntimeException ex) {
+                LOG.error("Something went wrong: {}", ex.getMessage());
+                success = false;
+            }
+            synchronized (results) {
+                results.put(srv, success);
+            }
+            return srv;
+        });
+        running.add(srv);
+    }
+
+    /**
+     * Logs the aggregated results of an operation.
+     *
+     * @param opName the name of the operation.
+     * @param results the result of the operation for every service.
+     */
+    private static void logResults(String opName, Map<String, Boolean> results) {
+        List<String> failed = new ArrayList<>();
+        results.entrySet().stream().filter((entry) -> (!entry.getValue())).forEach((entry) -> {
+            failed.add(entry.getKey());
+        });
+        if (failed.isEmpty()) {
+            LOG.info("Operation {} completed for all {} containers.", opName, results.size());
+        } else {
+            LOG.warn("Operation {} completed for {} of {} containers. Failed services: {}", opName,
+                    results.size() - failed.size(), results.size(), failed);
+        }
+    }
+
+    /**
+     * @return the time (seconds) a container is given to stop before it is
+     * killed.
+     */
+    public int getGracePeriod() {
+        return gracePeriod;
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.broker;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Class that provides helper methods for the asynchronous stages run by a
+ * {@link Broker Broker}.
+ */
+final class Stages {
+
+    /**
+     * Single daemon thread that fires stage timeouts.
+     */
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor((r) -> {
+        Thread t = new Thread(r, "Broker-Stage-Timer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Private constructor, class provides only static methods.
+     */
+    private Stages() {
+    }
+
+    /**
+     * Bounds the time a stage may take to complete. If the stage does not
+     * complete in time, the returned future completes exceptionally with a
+     * {@link TimeoutException TimeoutException}.
+     *
+     * @param <T> the result type of the stage.
+     * @param stage the stage.
+     * @param name the name of the stage.
+     * @param timeout the time to wait for the stage to complete.
+     * @param unit the time unit of the timeout argument.
+     * @return a future that completes with the stage or the timeout, whichever
+     * comes first.
+     */
+    static <T> CompletableFuture<T> within(CompletableFuture<T> stage, String name, long timeout, TimeUnit unit) {
+        return within(stage, CompletableFuture.completedFuture(null), name, timeout, unit, null);
+    }
+
+    /**
+     * Runs a {@link Task Task} on an executor, bounded by a timeout. The
+     * timeout starts when the task starts running, not when it is submitted,
+     * so that the time spent waiting for a thread of the executor is not
+     * counted. If the task does not complete in time, it is
+     * {@link Task#cancel() canceled} and the returned future completes
+     * exceptionally with a {@link TimeoutException TimeoutException}. The
+     * task may still be running when the returned future completes, until it
+     * reacts to the interrupt. Use {@link Task#settled() settled()} to wait
+     * for it.
+     *
+     * @param <T> the result type of the task.
+     * @param task the task.
+     * @param executor the executor to run the task.
+     * @param timeout the time the task may run.
+     * @param unit the time unit of the timeout argument.
+     * @return a future that completes with the result of the task or the
+     * timeout, whichever comes first.
+     */
+    static <T> CompletableFuture<T> runWithin(Task<T> task, Executor executor, long timeout, TimeUnit unit) {
+        CompletableFuture<T> bounded = within(task.settled(), task.started(), task.getName(), timeout, unit, task::cancel);
+        task.submit(executor);
+        return bounded;
+    }
+
+    /**
+     * Bounds the time a stage may take to complete, from the moment it
+     * starts.
+     *
+     * @param <T> the result type of the stage.
+     * @param stage the stage.
+     * @param started completes when the stage starts. The timeout starts
+     * then.
+     * @param name the name of the stage.
+     * @param timeout the time to wait for the stage to complete.
+     * @param unit the time unit of the timeout argument.
+     * @param onTimeout runs if the stage times out, or NULL.
+     * @return a future that completes with the stage or the timeout, whichever
+     * comes first.
+     */
+    private static <T> CompletableFuture<T> within(CompletableFuture<T> stage, CompletableFuture<?> started, String name, long timeout, TimeUnit unit, Runnable onTimeout) {
+        CompletableFuture<T> bounded = new CompletableFuture<>();
+        started.thenRun(() -> {
+            ScheduledFuture<?> timer = TIMER.schedule(() -> {
+                if (bounded.completeExceptionally(new TimeoutException("Stage " + name + " timed out.")) && onTimeout != null) {
+                    onTimeout.run();
+                }
+            }, timeout, unit);
+            bounded.whenComplete((res, ex) -> {
+                timer.cancel(false);
+            });
+        });
+
+        stage.whenComplete((res, ex) -> {
+            if (ex != null) {
+                bounded.completeExceptionally(ex);
+            } else {
+                bounded.complete(res);
+            }
+        });
+        return bounded;
+    }
+
+    /**
+     * <p>
+     * The code of a stage that can be canceled.
+     * <p>
+     * A canceled task that has not started does not run. A canceled task that
+     * is running is interrupted. Only the interrupt sent by the task is
+     * cleared from the thread when the task stops, so that a thread of a pool
+     * or a caller thread is not left interrupted.
+     *
+     * @param <T> the result type of the task.
+     */
+    static final class Task<T> implements Runnable {
+
+        /**
+         * The name of the stage.
+         */
+        private final String name;
+        /**
+         * The code of the stage.
+         */
+        private final Supplier<T> code;
+        /**
+         * Completes when the code of the stage stops running, or when the
+         * task is canceled before it starts.
+         */
+        private final CompletableFuture<T> settled = new CompletableFuture<>();
+        /**
+         * Completes with the time (nanoseconds) the code of the stage starts
+         * running.
+         */
+        private final CompletableFuture<Long> started = new CompletableFuture<>();
+        /**
+         * The thread running the code, NULL if the code is not running.
+         */
+        private Thread runner;
+        /**
+         * Indicates that the task was canceled.
+         */
+        private boolean canceled;
+        /**
+         * Indicates that the runner was interrupted by the task.
+         */
+        private boolean interrupted;
+
+        /**
+         * Constructor.
+         *
+         * @param name the name of the stage.
+         * @param code the code of the stage.
+         */
+        Task(String name, Supplier<T> code) {
+            this.name = name;
+            this.code = code;
+        }
+
+        /**
+         * Submits the task to an executor. If the executor rejects the task,
+         * the task completes exceptionally.
+         *
+         * @param executor the executor to run the task.
+         */
+        void submit(Executor executor) {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException ex) {
+                settled.completeExceptionally(ex);
+            }
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (canceled) {
+                    settled.completeExceptionally(new CancellationException("Stage " + name + " canceled."));
+                    return;
+                }
+                runner = Thread.currentThread();
+            }
+            started.complete(System.nanoTime());
+            try {
+                settled.complete(code.get());
+            } catch (Throwable ex) {
+                settled.completeExceptionally(ex);
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                    if (interrupted) {
+                        // clear the interrupt sent by cancel()
+                        Thread.interrupted();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Cancels the task. The task does not run if it has not started, or
+         * the thread running it is interrupted.
+         */
+        synchronized void cancel() {
+            canceled = true;
+            if (runner != null && !interrupted) {
+                interrupted = true;
+                runner.interrupt();
+            } else if (runner == null) {
+                settled.completeExceptionally(new CancellationException("Stage " + name + " canceled."));
+            }
+        }
+
+        /**
+         * @return a future that completes with the result of the task, when
+         * its code stops running or it is canceled before it starts.
+         */
+        CompletableFuture<T> settled() {
+            return settled;
+        }
+
+        /**
+         * @return a future that completes with the time (nanoseconds) the
+         * code of the task starts running. Never completes if the task is
+         * canceled before it starts.
+         */
+        CompletableFuture<Long> started() {
+            return started;
+        }
+
+        /**
+         * @return the name of the stage.
+         */
+        String getName() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.broker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import net.freelabs.fidelio.core.schema.Container;
+import net.freelabs.fidelio.core.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Class that keeps the startup timings of services from previous
+ * deployments, to estimate how long a service takes to start.
+ * <p>
+ * The latency of every phase run to start a service is recorded for every
+ * service and mode (start or restart). Services are identified by their name
+ * and image, as every deployment of an application has a new id. A new
+ * recording is averaged with the previous one, so that a single slow run
+ * does not dominate the estimate.
+ * <p>
+ * The Broker stages are recorded for every start and restart, from the moment
+ * a stage runs, so that the time spent waiting for a thread is not recorded.
+ * The {@link #INIT_PHASE initialization} of a service in the container is
+ * observed through zookeeper, so it is recorded only for the services that
+ * initialize while the command is connected: the services that initialize
+ * before the containers are deployed, or before the wait of
+ * {@code start --wait} ends. A restart records only the Broker stages. A
+ * phase without a new recording keeps its previous latency.
+ * <p>
+ * The timings are stored to a local history file, by default under the
+ * per-user directory of the program. The directory of the file must be owned
+ * by the current user and not writable by others, or the timings are not
+ * kept. A history file that is not owned by the current user, or that cannot
+ * be read, is ignored. Entries not updated for {@link #MAX_AGE_DAYS
+ * MAX_AGE_DAYS} days are dropped.
+ * <p>
+ * Class is thread-safe.
+ */
+public final class StartupHistory {
+
+    /**
+     * A Logger object.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(StartupHistory.class);
+    /**
+     * The name of the default history file, under the per-user directory of
+     * the program.
+     */
+    private static final String DEFAULT_FILE_NAME = "startup-history";
+    /**
+     * The version of the file format.
+     */
+    private static final byte VERSION = 1;
+    /**
+     * The number of days an entry that is not updated is kept.
+     */
+    private static final long MAX_AGE_DAYS = 30;
+    /**
+     * The phase of the initialization of a service in the container.
+     */
+    public static final String INIT_PHASE = "init";
+    /**
+     * The history file, NULL if the timings are not kept.
+     */
+    private final Path file;
+    /**
+     * Map with the latency (milliseconds) of every phase, with the service
+     * key as key.
+     */
+    private final Map<String, Map<String, Long>> timings = new HashMap<>();
+    /**
+     * Map with the time (milliseconds since epoch) every entry was updated,
+     * with the service key as key.
+     */
+    private final Map<String, Long> updated = new HashMap<>();
+
+    /**
+     * The mode a service is started with.
+     */
+    public enum Mode {
+        START, RESTART
+    }
+
+    /**
+     * Constructor. Loads the history file, if it exists.
+     *
+     * @param file the history file. If NULL or empty, a file under the
+     * per-user directory of the program is used.
+     */
+    public StartupHistory(String file) {
+        Path path;
+        if (file == null || file.trim().isEmpty()) {
+            path = Utils.getUserDir(DEFAULT_FILE_NAME);
+        } else {
+            path = Paths.get(file.trim()).toAbsolutePath();
+        }
+        if (Utils.createPrivateDir(path.getParent())) {
+            this.file = path;
+            load();
+        } else {
+            LOG.warn("Startup history directory {} cannot be trusted. Startup timings will not be kept.", path.getParent());
+            this.file = null;
+        }
+    }
+
+    /**
+     * @param con a container.
+     * @param mode the mode the container is started with.
+     * @return the key of the service in the history.
+     */
+    private static String key(Container con, Mode mode) {
+        String image = con.getDocker() == null ? "" : con.getDocker().getImage();
+        return mode.name() + ":" + con.getConSrvName() + "@" + image;
+    }
+
+    /**
+     * Returns the expected time a service takes to start, the sum of the
+     * latency of all its recorded phases. For a restart without history, the
+     * start history is used.
+     *
+     * @param con the container of the service.
+     * @param mode the mode the container is started with.
+     * @return the expected time (milliseconds) or NULL if there is no history
+     * for the service.
+     */
+    public synchronized Long expectedDuration(Container con, Mode mode) {
+        Map<String, Long> phases = timings.get(key(con, mode));
+        if (phases == null && mode == Mode.RESTART) {
+            phases = timings.get(key(con, Mode.START));
+        }
+        if (phases == null) {
+            return null;
+        }
+        return phases.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * Records the latency of phases run to start a service. The latency of a
+     * phase with previous history is averaged with the previous latency.
+     *
+     * @param con the container of the service.
+     * @param mode the mode the container was started with.
+     * @param phases map with the latency (milliseconds) of every phase, with
+     * the name of the phase as key.
+     */
+    public synchronized void record(Container con, Mode mode, Map<String, Long> phases) {
+        if (phases.isEmpty()) {
+            return;
+        }
+        String key = key(con, mode);
+        Map<String, Long> previous = timings.computeIfAbsent(key, (k) -> new LinkedHashMap<>());
+        phases.entrySet().stream().forEach((entry) -> {
+            previous.merge(entry.getKey(), entry.getValue(), (old, latest) -> (old + latest) / 2);
+        });
+        updated.put(key, System.currentTimeMillis());
+    }
+
+    /**
+     * Stores the history to the history file. Errors are logged.
+     */
+    public synchronized void save() {
+        if (file == null) {
+            return;
+        }
+        long oldest = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(MAX_AGE_DAYS);
+        updated.entrySet().removeIf((entry) -> {
+            boolean expired = entry.getValue() < oldest;
+            if (expired) {
+                timings.remove(entry.getKey());
+            }
+            return expired;
+        });
+        try {
+            Path dir = file.getParent();
+            // write under a temp name, readable only by the owner, so that a
+            // partial history is never read
+            Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                    out.writeByte(VERSION);
+                    out.writeInt(timings.size());
+                    for (Map.Entry<String, Map<String, Long>> entry : timings.entrySet()) {
+                        out.writeUTF(entry.getKey());
+                        out.writeLong(updated.get(entry.getKey()));
+                        out.writeInt(entry.getValue().size());
+                        for (Map.Entry<String, Long> phase : entry.getValue().entrySet()) {
+                            out.writeUTF(phase.getKey());
+                            out.writeLong(phase.getValue());
+                        }
+                    }
+                }
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            LOG.debug("Saved startup history to {}.", file);
+        } catch (IOException ex) {
+            LOG.warn("FAILED to save startup history. Something went wrong: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Loads the history file, if it exists.
+     */
+    private void load() {
+        if (Files.notExists(file, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        if (!Utils.isPrivateFile(file)) {
+            LOG.warn("Ignoring startup history {} that cannot be trusted.", file);
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported startup history version: " + version);
+            }
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                String key = in.readUTF();
+                long time = in.readLong();
+                int count = in.readInt();
+                Map<String, Long> phases = new LinkedHashMap<>();
+                for (int j = 0; j < count; j++) {
+                    String phase = in.readUTF();
+                    phases.put(phase, in.readLong());
+                }
+                timings.put(key, phases);
+                updated.put(key, time);
+            }
+        } catch (IOException ex) {
+            LOG.warn("Ignoring unreadable startup history {}: {}", file, ex.getMessage());
+            timings.clear();
+            updated.clear();
+        }
+    }
+}
@@ -28,6 +28,11 @@ abstract class Command {
      * The name of the user command.
      */
     protected String cmdName;
+    /**
+     * Indicates if the command runs in the daemon, where the program must not
+     * exit when the command fails.
+     */
+    private boolean inDaemon;
 
     /**
      * Constructor.
@@ -43,11 +48,58 @@ abstract class Command {
      */
     protected abstract void exec(ProgramConf pConf, String... args);
 
+    /**
+     * Executes the user command. In the daemon, the resources held by the
+     * command are released when it completes, whether it succeeded or not,
+     * since they are not released by the exit of the program.
+     *
+     * @param pConf the program's configuration.
+     * @param args the arguments of the command.
+     */
+    final void run(ProgramConf pConf, String... args) {
+        try {
+            exec(pConf, args);
+        } finally {
+            if (inDaemon) {
+                releaseResources();
+            }
+        }
+    }
+
+    /**
+     * Releases the resources held by the command, like zookeeper sessions and
+     * threads. Must be safe to call more than once and at any point of the
+     * execution of the command.
+     */
+    protected void releaseResources() {
+    }
+
     /**
      * Exits program with error exit code and exit message.
      */
     protected abstract void errExit();
 
+    /**
+     * Exits program with an exit code. In the daemon, the command is aborted
+     * instead, by throwing a {@link CommandExitException CommandExitException}
+     * with the exit code.
+     *
+     * @param status the exit code.
+     */
+    protected void exit(int status) {
+        if (inDaemon) {
+            throw new CommandExitException(status);
+        }
+        System.exit(status);
+    }
+
+    /**
+     * @param inDaemon true if the command runs in the daemon.
+     */
+    void setInDaemon(boolean inDaemon) {
+        this.inDaemon = inDaemon;
+    }
+
     /**
      *
      * @return the name of the command.
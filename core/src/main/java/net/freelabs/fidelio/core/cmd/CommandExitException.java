@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.cmd;
+
+/**
+ * Exception thrown by a command that runs in the daemon, instead of exiting
+ * the program. Carries the exit code of the command.
+ */
+public final class CommandExitException extends RuntimeException {
+
+    /**
+     * The exit code of the command.
+     */
+    private final int status;
+
+    /**
+     * Constructor.
+     *
+     * @param status the exit code of the command.
+     */
+    public CommandExitException(int status) {
+        super("Command exited with code " + status);
+        this.status = status;
+    }
+
+    /**
+     * @return the exit code of the command.
+     */
+    public int getStatus() {
+        return status;
+    }
+}
@@ -47,6 +47,10 @@ public final class CommandHandler implements Commandable {
      * Delete command.
      */
     private final DeleteCmd deleteCmd;
+    /**
+     * Status command.
+     */
+    private final StatusCmd statusCmd;
     /**
      * List with names of the supported commands.
      */
@@ -58,12 +62,30 @@ public final class CommandHandler implements Commandable {
      * @param pConf
      */
     public CommandHandler(ProgramConf pConf) {
+        this(pConf, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param pConf the program's configuration.
+     * @param inDaemon true if commands run in the daemon. Then, a failed
+     * command throws a {@link CommandExitException CommandExitException}
+     * instead of exiting the program.
+     */
+    public CommandHandler(ProgramConf pConf, boolean inDaemon) {
         this.pConf = pConf;
         // initialize commands
         startCmd = new StartCmd("start");
         stopCmd = new StopCmd("stop");
         restartCmd = new RestartCmd("restart");
         deleteCmd = new DeleteCmd("delete");
+        statusCmd = new StatusCmd("status");
+        startCmd.setInDaemon(inDaemon);
+        stopCmd.setInDaemon(inDaemon);
+        restartCmd.setInDaemon(inDaemon);
+        deleteCmd.setInDaemon(inDaemon);
+        statusCmd.setInDaemon(inDaemon);
 
         // create list
         cmdNames = new ArrayList<>();
@@ -72,27 +94,33 @@ public final class CommandHandler implements Commandable {
         cmdNames.add(stopCmd.getCmdName());
         cmdNames.add(restartCmd.getCmdName());
         cmdNames.add(deleteCmd.getCmdName());
+        cmdNames.add(statusCmd.getCmdName());
 
     }
 
     @Override
     public void exec_start(String... args) {
-        startCmd.exec(pConf);
+        startCmd.run(pConf, args);
     }
 
     @Override
     public void exec_stop(String... args) {
-        stopCmd.exec(pConf, args);
+        stopCmd.run(pConf, args);
     }
 
     @Override
     public void exec_restart(String... args) {
-        restartCmd.exec(pConf, args);
+        restartCmd.run(pConf, args);
     }
 
     @Override
     public void exec_delete(String... args) {
-        deleteCmd.exec(pConf, args);
+        deleteCmd.run(pConf, args);
+    }
+
+    @Override
+    public void exec_status(String... args) {
+        statusCmd.run(pConf, args);
     }
 
     /**
@@ -134,4 +162,12 @@ public final class CommandHandler implements Commandable {
     public DeleteCmd getDeleteCmd() {
         return deleteCmd;
     }
+
+    /**
+     *
+     * @return the status Command object.
+     */
+    public StatusCmd getStatusCmd() {
+        return statusCmd;
+    }
 }
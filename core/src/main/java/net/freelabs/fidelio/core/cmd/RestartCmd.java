@@ -17,13 +17,14 @@
 package net.freelabs.fidelio.core.cmd;
 
 import com.github.dockerjava.api.DockerClient;
-import javax.xml.bind.JAXBException;
+import java.io.IOException;
 import net.freelabs.fidelio.core.boot.ProgramConf;
 import net.freelabs.fidelio.core.broker.BrokerInit;
 import net.freelabs.fidelio.core.docker.DockerInitializer;
 import net.freelabs.fidelio.core.handlers.ContainerHandler;
-import net.freelabs.fidelio.core.serializer.JAXBSerializer;
+import net.freelabs.fidelio.core.serializer.Codecs;
 import net.freelabs.fidelio.core.zookeeper.ZkConf;
+import net.freelabs.fidelio.core.zookeeper.ZkConfStore;
 import net.freelabs.fidelio.core.zookeeper.ZkMaster;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -83,13 +84,16 @@ public final class RestartCmd extends Command {
                     // initialize docker client
                     initDockerClient(pConf.getDockerConf());
                     // create and initialize Broker initializer to act on containers
-                    BrokerInit brokerInit = runBrokerInit();
+                    BrokerInit brokerInit = runBrokerInit(pConf);
                     // restart application
                     success = brokerInit.runRestart();
                     // check if operation succeeded
                     if (!success) {
                         // error occurred so stop any runnin services and containers
                         brokerInit.runStop();
+                    } else {
+                        // keep the restart timings for the next restarts
+                        brokerInit.saveStartupHistory();
                     }
                 }
             } else {
@@ -111,13 +115,14 @@ public final class RestartCmd extends Command {
      * Creates and initializes the {@link BrokerInit Broker Initializer} that
      * will handle interaction with containers.
      *
+     * @param pConf program's configuration.
      * @return an initialized instance of {@link BrokerInit BrokerInit}.
      */
-    private BrokerInit runBrokerInit() {
+    private BrokerInit runBrokerInit(ProgramConf pConf) {
         // create container handler
         ContainerHandler handler = new ContainerHandler(zkConf.getWebApp().getContainers());
         // create and initialize the Broker Initializer
-        return new BrokerInit(handler, zkConf, docker, master, null);
+        return new BrokerInit(handler, zkConf, docker, master, null, pConf);
     }
 
     /**
@@ -130,15 +135,15 @@ public final class RestartCmd extends Command {
     private boolean downloadZkConf() {
         LOG.info("Fetching application configuration...");
         boolean downloaded = false;
-        byte[] data = master.nodeData(zkConf.getZkConf().getPath(), null);
+        byte[] data = ZkConfStore.load(master, zkConf.getZkConf().getPath());
         // check for errors
         if (data != null) {
             try {
-                zkConf = JAXBSerializer.deserializeToZkConf(data);
-                String dataStr = JAXBSerializer.deserializeToString(data);
+                zkConf = Codecs.decodeZkConf(data);
+                String dataStr = Codecs.toString(data);
                 LOG.debug("Downloaded application configuration. Printing. {}", dataStr);
                 downloaded = true;
-            } catch (JAXBException ex) {
+            } catch (IOException ex) {
                 LOG.error("Something went wrong: ", ex);
             }
         } else {
@@ -169,8 +174,14 @@ public final class RestartCmd extends Command {
      */
     private void initDockerClient(String[] dockerConf) {
         // create a docker client 
-        DockerInitializer appDocker = new DockerInitializer(dockerConf);
-        docker = appDocker.getDockerClient();
+        docker = DockerInitializer.getSharedClient(dockerConf);
+    }
+
+    @Override
+    protected void releaseResources() {
+        if (master != null) {
+            master.shutdownMaster();
+        }
     }
 
     /**
@@ -179,7 +190,7 @@ public final class RestartCmd extends Command {
     @Override
     protected void errExit() {
         LOG.error("Restart of {} FAILED. Exiting...", appID);
-        System.exit(1);
+        exit(1);
     }
 
 }
@@ -17,22 +17,37 @@
 package net.freelabs.fidelio.core.cmd;
 
 import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.exception.DockerException;
 import java.io.IOException;
-import javax.xml.bind.JAXBException;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import net.freelabs.fidelio.core.broker.Broker;
 import net.freelabs.fidelio.core.analyzers.Analyzer;
 import net.freelabs.fidelio.core.boot.ProgramConf;
 import net.freelabs.fidelio.core.broker.BrokerInit;
+import net.freelabs.fidelio.core.xml.DescriptorCache;
 import net.freelabs.fidelio.core.xml.XmlProcessor;
 import net.freelabs.fidelio.core.docker.DockerInitializer;
+import net.freelabs.fidelio.core.docker.ImagePuller;
 import net.freelabs.fidelio.core.schema.Container;
 import net.freelabs.fidelio.core.schema.WebApp;
 import net.freelabs.fidelio.core.handlers.ContainerHandler;
 import net.freelabs.fidelio.core.handlers.NetworkHandler;
-import net.freelabs.fidelio.core.serializer.JAXBSerializer;
+import net.freelabs.fidelio.core.serializer.Codec;
+import net.freelabs.fidelio.core.serializer.Codecs;
 import net.freelabs.fidelio.core.utils.Utils;
+import net.freelabs.fidelio.core.zookeeper.AppStatus;
+import net.freelabs.fidelio.core.zookeeper.ServiceStatusRegistry;
 import net.freelabs.fidelio.core.zookeeper.ZkConf;
+import net.freelabs.fidelio.core.zookeeper.ZkConfStore;
 import net.freelabs.fidelio.core.zookeeper.ZkMaster;
+import net.freelabs.fidelio.core.zookeeper.ZkNamingServiceNode.SRV_STATE_STATUS;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,6 +68,23 @@ public final class StartCmd extends Command {
      * A Logger object.
      */
     private static final Logger LOG = LoggerFactory.getLogger(StartCmd.class);
+    /**
+     * The maximum number of images pulled at the same time.
+     */
+    private static final int PULL_PARALLELISM = 4;
+    /**
+     * The argument that enables waiting for the services to initialize,
+     * followed by the maximum time (seconds) to wait.
+     */
+    public static final String WAIT_ARG = "--wait";
+    /**
+     * The length of a short container id.
+     */
+    private static final int SHORT_ID_LENGTH = 12;
+    /**
+     * The statuses of an initialized service.
+     */
+    private static final Set<SRV_STATE_STATUS> READY_STATUSES = EnumSet.of(SRV_STATE_STATUS.INITIALIZED, SRV_STATE_STATUS.UPDATED);
 
     /**
      * Constructor.
@@ -66,34 +98,66 @@ public final class StartCmd extends Command {
     @Override
     public void exec(ProgramConf pConf, String... args) {
         try {
-            // unmarshall xml file into a top-level object
-            WebApp webApp = unmarshalXml(pConf.getXmlSchemaPath(), pConf.getXmlFilePath());
-            if (webApp == null){
+            // select the codec of the data stored to zookeeper
+            Codec codec = Codecs.forName(pConf.getZkCodec());
+            if (codec == null) {
+                LOG.error("Unknown codec: {}. Supported: xml, json, binary.", pConf.getZkCodec());
                 errExit();
             }
+            // create a docker client customized for the app
+            DockerClient docker = DockerInitializer.getSharedClient(pConf.getDockerConf());
+            // look for the parsed application description in the cache
+            DescriptorCache cache = new DescriptorCache(pConf.getDescriptorCacheDir());
+            String key = cache.computeKey(pConf.getXmlSchemaPath(), pConf.getXmlFilePath(), codec.getName());
+            DescriptorCache.Entry cached = key == null ? null : cache.load(key);
+            WebApp webApp;
+            if (cached != null) {
+                LOG.info("Using cached application description.");
+                webApp = cached.getWebApp();
+            } else {
+                // unmarshall xml file into a top-level object
+                webApp = unmarshalXml(pConf.getXmlSchemaPath(), pConf.getXmlFilePath());
+                if (webApp == null) {
+                    errExit();
+                }
+            }
             // create a handler to query for container information
             ContainerHandler handler = createConHandler(webApp);
-            // analyze restrictions and check if apply on schema
-            analyze(handler);
+            // analyze restrictions and check if apply on schema, before any
+            // resource is created
+            analyze(handler, docker);
+            Map<String, byte[]> conData;
+            if (cached != null) {
+                conData = cached.getConData();
+            } else {
+                // populate isRequiredFrom lists
+                new Analyzer(handler.listContainers()).populateIsRequiredFromLists();
+                // serialize the container descriptions
+                conData = serializeContainers(handler, codec);
+                if (key != null) {
+                    cache.store(key, webApp, conData);
+                }
+            }
             // create zk configuration
-            ZkConf zkConf = createZkConf(webApp, pConf.getZkHosts(), pConf.getZkSessionTimeout(), handler, pConf);
+            ZkConf zkConf = createZkConf(webApp, pConf.getZkHosts(), pConf.getZkSessionTimeout(), handler, conData, codec, pConf);
+            // make sure all images exist before any container is created
+            pullImages(handler, docker);
             // initialize zk and start master process
             initZk(zkConf);
-            // create a docker client customized for the app
-            DockerInitializer dockerInit = new DockerInitializer(pConf.getDockerConf());
-            DockerClient docker = dockerInit.getDockerClient();
             // creaet application network handler
             NetworkHandler netHandler = new NetworkHandler(docker);
             // create network for application
             boolean netCreated = netHandler.createNetwork(zkConf.getAppDefaultNetName());
             if (netCreated) {
                 // launch the CoreBrokers to boot containers, wait to finish
-                runBrokerInit(handler, zkConf, docker, netHandler);
+                runBrokerInit(handler, zkConf, docker, netHandler, getWaitSecs(args));
             } else {
                 //cleanup
                 master.cleanZkNamespace();
                 errExit();
             }
+        } catch (CommandExitException ex) {
+            throw ex;
         } catch (Exception ex) {
             exitProgram(ex);
         }
@@ -106,6 +170,9 @@ public final class StartCmd extends Command {
      * The method blocks.
      */
     private void shutdownMaster() {
+        if (master == null) {
+            return;
+        }
         // shutdown 
         master.shutdownMaster();
         try {
@@ -120,41 +187,93 @@ public final class StartCmd extends Command {
 
     /**
      * <p>
-     * Analyzes the restrictions that must apply on the schema and applies any 
-     * necessary processing.
+     * Analyzes the restrictions that must apply on the schema. All the
+     * errors are reported and the program exits if any is found.
      * <p>
      * No circular dependencies are allowed.
      * <p>
+     * No dependencies on undefined services are allowed.
+     * <p>
      * No duplicate container names are allowed.
      * <p>
-     * Populates {@link Container#isRequiredFrom isRequiredFrom} list for every 
-     * container.
+     * No host port can be published twice.
+     * <p>
+     * Volumes can only be shared from containers existing on the docker host.
      *
      * @param handler object to query for containers.
+     * @param docker a docker client.
      */
-    private void analyze(ContainerHandler handler) {
+    private void analyze(ContainerHandler handler, DockerClient docker) {
         // create analyzer to check restrictions on schema
         Analyzer analyzer = new Analyzer(handler.listContainers());
 
-        // analyze dependencies
-        LOG.info("Checking service dependencies...");
-        // search for circular dependencies
-        boolean found = analyzer.detectCircularDependencies();
-        // if circular dependencies found exit
+        LOG.info("Checking application description...");
+        // the containers to share volumes from, if any are declared
+        Set<String> existing = null;
+        boolean sharesVolumes = handler.listContainers().stream()
+                .anyMatch((con) -> con.getDocker() != null && !con.getDocker().getVolumesFrom().isEmpty());
+        if (sharesVolumes) {
+            existing = listExistingContainers(docker);
+        }
+        // check all restrictions
+        boolean found = analyzer.detectDescriptorErrors(existing);
+        // if errors found exit
         if (found) {
             errExit();
         }
+    }
 
-        // analyze container names 
-        LOG.info("Checking service names...");
-        found = analyzer.detectDuplicateNames();
-        // if duplicate contianer names found exit
-        if (found) {
+    /**
+     * Lists the containers existing on the docker host.
+     *
+     * @param docker a docker client.
+     * @return the names and ids of the existing containers, or NULL in case
+     * of error.
+     */
+    private Set<String> listExistingContainers(DockerClient docker) {
+        try {
+            Set<String> existing = new HashSet<>();
+            for (com.github.dockerjava.api.model.Container con : docker.listContainersCmd().withShowAll(true).exec()) {
+                existing.add(con.getId());
+                existing.add(con.getId().substring(0, Math.min(SHORT_ID_LENGTH, con.getId().length())));
+                if (con.getNames() != null) {
+                    for (String name : con.getNames()) {
+                        // names are returned with a leading slash
+                        existing.add(name.startsWith("/") ? name.substring(1) : name);
+                    }
+                }
+            }
+            return existing;
+        } catch (DockerException ex) {
+            LOG.warn("FAILED to list existing containers, shared volumes not checked: {}", ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * <p>
+     * Pulls the images of the application that do not exist on the docker
+     * host.
+     * <p>
+     * Every distinct image is checked once and missing images are pulled in
+     * parallel. The program exits if any image cannot be pulled.
+     *
+     * @param handler object to query for containers.
+     * @param docker a docker client.
+     */
+    private void pullImages(ContainerHandler handler, DockerClient docker) {
+        LOG.info("Checking service images...");
+        // collect the images of all containers
+        List<String> images = handler.listContainers().stream()
+                .map((con) -> con.getDocker().getImage())
+                .collect(Collectors.toList());
+        // pull missing images
+        ImagePuller puller = new ImagePuller(docker, PULL_PARALLELISM);
+        boolean pulled = puller.pullMissing(images);
+        // if an image could not be pulled exit
+        if (!pulled) {
             errExit();
         }
-        
-        // populate isRequiredFrom lists
-        analyzer.populateIsRequiredFromLists();
     }
 
     /**
@@ -172,15 +291,26 @@ public final class StartCmd extends Command {
      * @param zkConf the zk configuration.
      * @param docker a docker client.
      * @param netHandler handles interaction with application networks.
+     * @param waitSecs the maximum time (seconds) to wait for the services to
+     * initialize after the containers are deployed, or 0 not to wait.
      * @throws IOException if connection to zk cannot be established.
      * @throws InterruptedException if thread is interrupted.
      */
-    public void runBrokerInit(ContainerHandler handler, ZkConf zkConf, DockerClient docker, NetworkHandler netHandler) throws IOException, InterruptedException {
+    public void runBrokerInit(ContainerHandler handler, ZkConf zkConf, DockerClient docker, NetworkHandler netHandler, long waitSecs) throws IOException, InterruptedException {
         /*  Get a Container from the container handler. The Container can be of 
             any type. Create the Broker and initialize it. The Broker will 
             connect to zk and then start execution on a new thread.
          */
-        BrokerInit brokerInit = new BrokerInit(handler, zkConf, docker, master, netHandler);
+        BrokerInit brokerInit = new BrokerInit(handler, zkConf, docker, master, netHandler, zkConf.getpConf());
+        // report services as they initialize
+        ServiceStatusRegistry registry = master.getSrvRegistry();
+        ServiceStatusRegistry.StatusListener listener = (srvPath, oldStatus, newStatus) -> {
+            if (READY_STATUSES.contains(newStatus) && !READY_STATUSES.contains(oldStatus)) {
+                brokerInit.recordInitialized(srvPath);
+                LOG.info("Service initialized: {} ({}/{})", srvPath, registry.countIn(READY_STATUSES), registry.size());
+            }
+        };
+        registry.addListener(listener);
         // run the Broker initializer that will initialize start and execute Brokers
         boolean success = brokerInit.runStart();
         // check if operation was successful 
@@ -195,12 +325,59 @@ public final class StartCmd extends Command {
             shutdownMaster();
             errExit();
         } else {
+            LOG.info("[Application Deployed] - id: {}", master.getDeployedID());
+            // wait for services to initialize, if requested
+            if (waitSecs > 0) {
+                waitServicesReady(registry, waitSecs);
+            }
+            registry.removeListener(listener);
+            // keep the startup timings for the next deployments
+            brokerInit.saveStartupHistory();
             // shutdown master
             shutdownMaster();
-            LOG.info("[Application Deployed] - id: {}", master.getDeployedID());
         }
     }
 
+    /**
+     * <p>
+     * Waits for the application services to initialize and reports the
+     * services that did not.
+     * <p>
+     * The method blocks until all services initialize or the timeout
+     * elapses.
+     *
+     * @param registry the status of the application services.
+     * @param timeout the maximum time (seconds) to wait.
+     */
+    private void waitServicesReady(ServiceStatusRegistry registry, long timeout) {
+        LOG.info("Waiting for services to initialize...");
+        boolean ready = registry.awaitAll(READY_STATUSES, timeout, TimeUnit.SECONDS);
+        if (ready) {
+            LOG.info("[Application Ready] - all {} services initialized.", registry.size());
+        } else {
+            LOG.warn("Services NOT initialized within {} seconds: {}", timeout, registry.listNotIn(READY_STATUSES));
+        }
+    }
+
+    /**
+     * @param args the arguments of the command.
+     * @return the time (seconds) to wait for the services to initialize, set
+     * with the {@link #WAIT_ARG WAIT_ARG} argument, or 0 not to wait.
+     */
+    private static long getWaitSecs(String... args) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (WAIT_ARG.equals(args[i])) {
+                try {
+                    return Long.parseLong(args[i + 1]);
+                } catch (NumberFormatException ex) {
+                    LOG.error("Invalid time to wait for services: {}", args[i + 1]);
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+
     /**
      * Unmarshals an xml file.
      *
@@ -234,6 +411,26 @@ public final class StartCmd extends Command {
 
     }
 
+    /**
+     * Serializes the description of every container.
+     *
+     * @param handler object to query for containers.
+     * @param codec the codec to serialize with.
+     * @return map with the serialized description of every container, with
+     * the service name as key, in declaration order.
+     * @throws IOException if serialization of a Container object fails.
+     */
+    private Map<String, byte[]> serializeContainers(ContainerHandler handler, Codec codec) throws IOException {
+        Map<String, byte[]> conData = new LinkedHashMap<>();
+        for (Container con : handler.listContainers()) {
+            // generate the payload from container
+            byte[] data = Codecs.encode(codec, con);
+            LOG.debug("Serialized container description of service {}: {}", con.getConSrvName(), Codecs.toString(data));
+            conData.put(con.getConSrvName(), data);
+        }
+        return conData;
+    }
+
     /**
      * <p>
      * Creates all the necessary zookeeper configuration for the program to
@@ -253,13 +450,16 @@ public final class StartCmd extends Command {
      * @param timeout the client session timeout.
      * @param handler a Container handler object to query for container
      * information.
+     * @param conData map with the serialized description of every container,
+     * with the service name as key.
+     * @param codec the codec to serialize the configuration with.
      * @param pConf the program's configuration.
      * @return a {@link net.freelabs.fidelio.zookeeper.ZkConfig ZkConf} object
      * that holds all the configuration for zookeeper.
-     * @throws javax.xml.bind.JAXBException if serialization of Container object
-     * fails.
+     * @throws IOException if serialization or compression of the
+     * configuration fails.
      */
-    public ZkConf createZkConf(WebApp webApp, String hosts, int timeout, ContainerHandler handler, ProgramConf pConf) throws JAXBException {
+    public ZkConf createZkConf(WebApp webApp, String hosts, int timeout, ContainerHandler handler, Map<String, byte[]> conData, Codec codec, ProgramConf pConf) throws IOException {
         LOG.info("Creating application configuration for zookeeper...");
         /*
          Create a zookeeper configuration object. This object holds all the
@@ -303,9 +503,8 @@ public final class StartCmd extends Command {
          serialized Container object.
          */
         for (Container con : handler.listContainers()) {
-            // generate JSON from container and return the generated JSON as a byte array
-            byte[] data = JAXBSerializer.serialize(con);
-            LOG.debug("Serialized container description of service {}: {}", con.getConSrvName(), JAXBSerializer.deserializeToString(data));
+            // get the serialized container
+            byte[] data = conData.get(con.getConSrvName());
             // get the name for the child node
             String name = con.getConSrvName();
             // get the container type
@@ -321,10 +520,13 @@ public final class StartCmd extends Command {
         // initialize  deployed container names
         zkConf.initDeplCons(handler.listContainerNames());
 
-        // initialize zkConf node with data
-        byte[] data = JAXBSerializer.serialize(zkConf);
-        zkConf.getZkConf().setData(data);
-        // LOG.debug("Serialized zkConf: {}", JAXBSerializer.deserializeToString(data));
+        // initialize status summary, all services not running
+        zkConf.getAppStatus().setData(AppStatus.initial(zkConf.getContainers().keySet()).encode());
+
+        // initialize zkConf node and its chunks with compressed data
+        byte[] data = Codecs.encode(codec, zkConf);
+        ZkConfStore.store(zkConf, data);
+        // LOG.debug("Serialized zkConf: {}", Codecs.toString(data));
         return zkConf;
     }
 
@@ -371,6 +573,11 @@ public final class StartCmd extends Command {
         errExit();
     }
 
+    @Override
+    protected void releaseResources() {
+        shutdownMaster();
+    }
+
     /**
      * Terminates the program due to some error.
      */
@@ -378,6 +585,6 @@ public final class StartCmd extends Command {
     protected void errExit() {
         // log 
         LOG.error("FAILED to deploy application.");
-        System.exit(-1);
+        exit(-1);
     }
 }
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.cmd;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import net.freelabs.fidelio.core.boot.ProgramConf;
+import net.freelabs.fidelio.core.zookeeper.AppStatus;
+import net.freelabs.fidelio.core.zookeeper.ZkConf;
+import net.freelabs.fidelio.core.zookeeper.ZkMaster;
+import net.freelabs.fidelio.core.zookeeper.ZkNamingServiceNode.SRV_STATE_STATUS;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import static org.apache.zookeeper.Watcher.Event.EventType.NodeDataChanged;
+import static org.apache.zookeeper.Watcher.Event.EventType.NodeDeleted;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Class that shows the status of the services of a deployed application.
+ * <p>
+ * The status of all services is read from the status summary zNode of the
+ * application with a single request. With the {@link #WATCH_ARG WATCH_ARG}
+ * argument, a watch is left on the zNode and changes are shown as they occur,
+ * until the application is deleted or the program is terminated.
+ */
+public final class StatusCmd extends Command {
+
+    /**
+     * The argument that enables watching for changes.
+     */
+    public static final String WATCH_ARG = "--watch";
+    /**
+     * The master zookeeper process.
+     */
+    private ZkMaster master;
+    /**
+     * The zookeeper configuration for the deployed application.
+     */
+    private ZkConf zkConf;
+    /**
+     * The deployed application ID.
+     */
+    private String appID;
+    /**
+     * Released when the status zNode changes.
+     */
+    private final Semaphore changed = new Semaphore(0);
+    /**
+     * Indicates that the status zNode was deleted.
+     */
+    private volatile boolean deleted;
+    /**
+     * A Logger object.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(StatusCmd.class);
+
+    /**
+     * Constructor.
+     *
+     * @param cmdName the name of the command.
+     */
+    public StatusCmd(String cmdName) {
+        super(cmdName);
+    }
+
+    @Override
+    protected void exec(ProgramConf pConf, String... args) {
+        boolean success = false;
+        boolean watch = Arrays.asList(args).contains(WATCH_ARG);
+        // initialization
+        init(pConf, args);
+        // connect to zk
+        master.connectToZk();
+        // if no connection errors
+        if (!master.isMasterError()) {
+            // check if node with appID exists
+            if (master.nodeExists(zkConf.getRoot().getPath())) {
+                success = showStatus(watch);
+            } else {
+                LOG.error("Application with id {} does NOT exist.", appID);
+            }
+        }
+
+        master.shutdownMaster();
+
+        if (!success) {
+            errExit();
+        }
+    }
+
+    /**
+     * <p>
+     * Shows the status of the services and, if requested, the changes.
+     * <p>
+     * The method blocks while watching.
+     *
+     * @param watch true to watch for changes.
+     * @return true if operation completed without errors.
+     */
+    private boolean showStatus(boolean watch) {
+        AppStatus current = readStatus(watch);
+        if (current == null) {
+            return false;
+        }
+        printStatus(current);
+
+        while (watch) {
+            try {
+                // wait for a change
+                changed.acquire();
+                changed.drainPermits();
+            } catch (InterruptedException ex) {
+                // log the event
+                LOG.warn("Thread Interrupted. Stopping");
+                // set the interrupt status
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (deleted) {
+                LOG.info("[Application Deleted] - id: {}", appID);
+                break;
+            }
+            // read the new status and re-set watch
+            AppStatus next = readStatus(true);
+            if (next == null) {
+                return false;
+            }
+            printChanges(current, next);
+            current = next;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the status summary of the application.
+     *
+     * @param watch true to leave a watch on the status zNode.
+     * @return the status summary or NULL in case of error.
+     */
+    private AppStatus readStatus(boolean watch) {
+        byte[] data = master.watchNodeData(zkConf.getAppStatus().getPath(), watch ? statusWatcher : null);
+        if (data == null) {
+            LOG.error("Status of application with id {} is NOT available.", appID);
+            return null;
+        }
+        try {
+            return AppStatus.decode(data);
+        } catch (IOException ex) {
+            LOG.error("Something went wrong: {}", ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Watcher to be used with {@link #readStatus(boolean) readStatus} method.
+     */
+    private final Watcher statusWatcher = (WatchedEvent event) -> {
+        if (event.getType() == NodeDataChanged) {
+            changed.release();
+        } else if (event.getType() == NodeDeleted) {
+            deleted = true;
+            changed.release();
+        }
+    };
+
+    /**
+     * Prints the status of all services.
+     *
+     * @param appStatus the status summary of the application.
+     */
+    private void printStatus(AppStatus appStatus) {
+        Map<SRV_STATE_STATUS, Integer> counts = new EnumMap<>(SRV_STATE_STATUS.class);
+        appStatus.getServices().values().stream().forEach((entry) -> {
+            counts.merge(entry.getStatus(), 1, Integer::sum);
+        });
+        LOG.info("[Application Status] - id: {}, services: {}, updated: {}", appID,
+                appStatus.getServices().size(), Instant.ofEpochMilli(appStatus.getUpdated()));
+        LOG.info("Services per status: {}", counts);
+        appStatus.getServices().entrySet().stream().forEach((entry) -> {
+            LOG.info(formatEntry(entry.getKey(), entry.getValue()));
+        });
+    }
+
+    /**
+     * Prints the services whose status changed.
+     *
+     * @param previous the previous status summary.
+     * @param current the current status summary.
+     */
+    private void printChanges(AppStatus previous, AppStatus current) {
+        current.getServices().entrySet().stream().forEach((entry) -> {
+            AppStatus.Entry old = previous.getServices().get(entry.getKey());
+            if (old == null || old.getStatus() != entry.getValue().getStatus()) {
+                LOG.info(formatEntry(entry.getKey(), entry.getValue()));
+            }
+        });
+    }
+
+    /**
+     * @param srvName the name of a service.
+     * @param entry the status of the service.
+     * @return a line with the name, the status and the time it was set.
+     */
+    private static String formatEntry(String srvName, AppStatus.Entry entry) {
+        return String.format("  %-30s %-16s since %s", srvName, entry.getStatus(), Instant.ofEpochMilli(entry.getSince()));
+    }
+
+    /**
+     * Initializes necessary parameters.
+     *
+     * @param pConf program's configuration.
+     * @param args arguments defined in command line.
+     */
+    private void init(ProgramConf pConf, String... args) {
+        // the application to query
+        appID = args[0];
+        // initialize object with the application namespace
+        zkConf = new ZkConf(appID, pConf.getZkHosts(), pConf.getZkSessionTimeout());
+        // initialize master to connect to zookeeper
+        master = new ZkMaster(zkConf);
+    }
+
+    @Override
+    protected void releaseResources() {
+        if (master != null) {
+            master.shutdownMaster();
+        }
+    }
+
+    /**
+     * Exits program with error code (1), exit due to error.
+     */
+    @Override
+    protected void errExit() {
+        LOG.error("FAILED to get status of application with id {}.", appID);
+        exit(1);
+    }
+}
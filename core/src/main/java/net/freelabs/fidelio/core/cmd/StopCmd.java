@@ -17,12 +17,13 @@
 package net.freelabs.fidelio.core.cmd;
 
 import com.github.dockerjava.api.DockerClient;
-import javax.xml.bind.JAXBException;
+import java.io.IOException;
 import net.freelabs.fidelio.core.boot.ProgramConf;
 import net.freelabs.fidelio.core.broker.BrokerInit;
 import net.freelabs.fidelio.core.docker.DockerInitializer;
-import net.freelabs.fidelio.core.serializer.JAXBSerializer;
+import net.freelabs.fidelio.core.serializer.Codecs;
 import net.freelabs.fidelio.core.zookeeper.ZkConf;
+import net.freelabs.fidelio.core.zookeeper.ZkConfStore;
 import net.freelabs.fidelio.core.zookeeper.ZkMaster;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -88,7 +89,7 @@ public final class StopCmd extends Command {
                     // initialize docker client
                     initDockerClient(pConf.getDockerConf());
                     // create and run Initializer to process stop command 
-                    stopped = runBrokerInit();
+                    stopped = runBrokerInit(pConf);
                 }
             } else {
                 errMsg = String.format("Application %s does NOT exist.", appID);
@@ -110,9 +111,9 @@ public final class StopCmd extends Command {
         }
     }
 
-    private boolean runBrokerInit() {
+    private boolean runBrokerInit(ProgramConf pConf) {
         // create and initialize the Broker Initializer
-        BrokerInit brokerInit = new BrokerInit(null, zkConf, docker, master, null);
+        BrokerInit brokerInit = new BrokerInit(null, zkConf, docker, master, null, pConf);
         // run Initializer to act on contaienrs
         return brokerInit.runStop();
     }
@@ -124,8 +125,7 @@ public final class StopCmd extends Command {
      */
     private void initDockerClient(String[] dockerConf) {
         // create a docker client 
-        DockerInitializer appDocker = new DockerInitializer(dockerConf);
-        docker = appDocker.getDockerClient();
+        docker = DockerInitializer.getSharedClient(dockerConf);
     }
 
     /**
@@ -153,15 +153,15 @@ public final class StopCmd extends Command {
     private boolean downloadZkConf() {
         LOG.info("Fetching application configuration...");
         boolean downloaded = false;
-        byte[] data = master.nodeData(zkConf.getZkConf().getPath(), null);
+        byte[] data = ZkConfStore.load(master, zkConf.getZkConf().getPath());
         // check for errors
         if (data != null) {
             try {
-                zkConf = JAXBSerializer.deserializeToZkConf(data);
-                String dataStr = JAXBSerializer.deserializeToString(data);
+                zkConf = Codecs.decodeZkConf(data);
+                String dataStr = Codecs.toString(data);
                 LOG.debug("Downloaded application configuration. Printing. {}", dataStr);
                 downloaded = true;
-            } catch (JAXBException ex) {
+            } catch (IOException ex) {
                 LOG.error("Something went wrong: ", ex);
             }
         } else {
@@ -170,11 +170,18 @@ public final class StopCmd extends Command {
         return downloaded;
     }
 
+    @Override
+    protected void releaseResources() {
+        if (master != null) {
+            master.shutdownMaster();
+        }
+    }
+
     /**
      * Exit with error code (1).
      */
     @Override
     protected void errExit() {
-        System.exit(1);
+        exit(1);
     }
 }
@@ -20,6 +20,11 @@ import com.github.dockerjava.api.DockerClient;
 import com.github.dockerjava.api.model.Info;
 import com.github.dockerjava.core.DockerClientBuilder;
 import com.github.dockerjava.core.DockerClientConfig;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,6 +43,11 @@ public final class DockerInitializer {
      * A Logger object.
      */
     private static final Logger LOG = LoggerFactory.getLogger(DockerInitializer.class);
+    /**
+     * Docker clients shared by all commands run in the same process, with the
+     * initialization parameters as key.
+     */
+    private static final Map<List<String>, DockerClient> SHARED_CLIENTS = new ConcurrentHashMap<>();
 
     /**
      * Constructor.
@@ -81,6 +91,38 @@ public final class DockerInitializer {
         return client;
     }
 
+    /**
+     * Returns a docker client shared by all commands run in the same process.
+     * A client is created the first time it is requested with a set of
+     * initialization parameters and reused afterwards, so that a long-running
+     * process does not set up a new connection for every command.
+     *
+     * @param dockerArgs the initialization parameters of the docker client,
+     * see {@link #DockerInitializer(java.lang.String...) DockerInitializer}.
+     * @return the docker client object.
+     */
+    public static DockerClient getSharedClient(String... dockerArgs) {
+        List<String> key = Arrays.asList(dockerArgs.clone());
+        return SHARED_CLIENTS.computeIfAbsent(key, (args) -> {
+            LOG.debug("Creating docker client for host {}.", dockerArgs[0]);
+            return new DockerInitializer(dockerArgs).getDockerClient();
+        });
+    }
+
+    /**
+     * Closes all shared docker clients.
+     */
+    public static void closeSharedClients() {
+        SHARED_CLIENTS.values().stream().forEach((client) -> {
+            try {
+                client.close();
+            } catch (IOException ex) {
+                LOG.warn("FAILED to close docker client: {}", ex.getMessage());
+            }
+        });
+        SHARED_CLIENTS.clear();
+    }
+
     /**
      * Prints info of the docker client.
      */
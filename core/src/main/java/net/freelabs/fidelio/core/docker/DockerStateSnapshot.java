@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.exception.DockerException;
+import com.github.dockerjava.api.model.Container;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Class that provides the state of the containers of an application.
+ * <p>
+ * The state of the containers is fetched with two list requests to the docker
+ * daemon, one for the running containers and one for all containers, instead
+ * of inspecting every container. The containers of an application carry the
+ * {@link #APP_LABEL APP_LABEL} label, with the application id as value, and
+ * both requests are filtered by it, so that only the containers of the
+ * application are listed. Containers deployed by older versions carry no
+ * label; if no container carries the label, all the containers of the docker
+ * host are listed and matched by their deployed name. The result is cached
+ * for a short time, so that consecutive queries share the same requests.
+ */
+public final class DockerStateSnapshot {
+
+    /**
+     * A Logger object.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(DockerStateSnapshot.class);
+    /**
+     * The label of the containers of an application. Its value is the
+     * application id.
+     */
+    public static final String APP_LABEL = "net.freelabs.fidelio.app";
+    /**
+     * The default time (milliseconds) a snapshot is valid.
+     */
+    public static final long DEFAULT_TTL = 2000;
+    /**
+     * The docker client that will communicate with the docker daemon.
+     */
+    private final DockerClient docker;
+    /**
+     * The label filter that matches the containers of the application.
+     */
+    private final Map<String, String> appLabel;
+    /**
+     * The deployed names of the containers of the application.
+     */
+    private final Set<String> deplCons;
+    /**
+     * The time (nanoseconds) a snapshot is valid.
+     */
+    private final long ttlNanos;
+    /**
+     * Map with the running state of every existing container of the
+     * application, with the deployed name as key.
+     */
+    private Map<String, Boolean> states;
+    /**
+     * The time (nanoseconds) the snapshot was taken.
+     */
+    private long takenAt;
+
+    /**
+     * Constructor.
+     *
+     * @param docker the docker client that will communicate with the docker
+     * daemon.
+     * @param appId the id of the application.
+     * @param deplCons the deployed names of the containers of the application.
+     * @param ttl the time a snapshot is valid.
+     * @param unit the time unit of the ttl argument.
+     */
+    public DockerStateSnapshot(DockerClient docker, String appId, Collection<String> deplCons, long ttl, TimeUnit unit) {
+        this.docker = docker;
+        this.appLabel = Collections.singletonMap(APP_LABEL, appId);
+        this.deplCons = new HashSet<>(deplCons);
+        this.ttlNanos = unit.toNanos(ttl);
+    }
+
+    /**
+     * Constructor. The snapshot is valid for {@link #DEFAULT_TTL DEFAULT_TTL}
+     * milliseconds.
+     *
+     * @param docker the docker client that will communicate with the docker
+     * daemon.
+     * @param appId the id of the application.
+     * @param deplCons the deployed names of the containers of the application.
+     */
+    public DockerStateSnapshot(DockerClient docker, String appId, Collection<String> deplCons) {
+        this(docker, appId, deplCons, DEFAULT_TTL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the running state of the existing containers of the application.
+     * A new snapshot is taken if the cached one has expired.
+     *
+     * @return map with the running state of every existing container, with
+     * the deployed name as key. Containers that do not exist are not included.
+     * NULL in case of error.
+     */
+    public synchronized Map<String, Boolean> getStates() {
+        if (states == null || System.nanoTime() - takenAt > ttlNanos) {
+            states = takeSnapshot();
+            takenAt = System.nanoTime();
+        }
+        return states == null ? null : new HashMap<>(states);
+    }
+
+    /**
+     * @return a list with the deployed names of the running containers of the
+     * application, or NULL in case of error.
+     */
+    public List<String> getRunning() {
+        Map<String, Boolean> current = getStates();
+        if (current == null) {
+            return null;
+        }
+        List<String> running = new ArrayList<>();
+        current.entrySet().stream().filter((entry) -> (entry.getValue())).forEach((entry) -> {
+            running.add(entry.getKey());
+        });
+        return running;
+    }
+
+    /**
+     * Discards the cached snapshot. Must be called after an operation that
+     * changes the state of containers.
+     */
+    public synchronized void invalidate() {
+        states = null;
+    }
+
+    /**
+     * <p>
+     * Lists the running containers of the application and then all its
+     * containers, and keeps the ones with a deployed name of the application.
+     * The running containers are taken from their own list instead of parsing
+     * the human readable status of every container.
+     * <p>
+     * The two lists are not taken atomically. The running containers are
+     * listed first, so that the state of a container is its state at the first
+     * request. A container created between the requests is reported as not
+     * running and a container removed between them is not reported.
+     *
+     * @return map with the running state of every existing container, or NULL
+     * in case of error.
+     */
+    private Map<String, Boolean> takeSnapshot() {
+        Map<String, Boolean> snapshot = new HashMap<>();
+        try {
+            // without showAll only the containers that are up are listed
+            Set<String> running = listIds(docker.listContainersCmd().withLabelFilter(appLabel).exec());
+            List<Container> containers = docker.listContainersCmd()
+                    .withShowAll(true)
+                    .withLabelFilter(appLabel)
+                    .exec();
+            if (containers.isEmpty()) {
+                // containers deployed by older versions carry no label
+                running = listIds(docker.listContainersCmd().exec());
+                containers = docker.listContainersCmd()
+                        .withShowAll(true)
+                        .exec();
+            }
+            for (Container container : containers) {
+                if (container.getNames() == null) {
+                    continue;
+                }
+                for (String name : container.getNames()) {
+                    // names are returned with a leading slash
+                    String conName = name.startsWith("/") ? name.substring(1) : name;
+                    if (deplCons.contains(conName)) {
+                        snapshot.put(conName, running.contains(container.getId()));
+                        break;
+                    }
+                }
+            }
+        } catch (DockerException ex) {
+            LOG.error("FAILED to get state of containers. Something went wrong: {}", ex.getMessage());
+            snapshot = null;
+        }
+        return snapshot;
+    }
+
+    /**
+     * @param containers a list of containers.
+     * @return the ids of the containers.
+     */
+    private static Set<String> listIds(List<Container> containers) {
+        Set<String> ids = new HashSet<>();
+        containers.stream().forEach((container) -> {
+            ids.add(container.getId());
+        });
+        return ids;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.exception.DockerException;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.core.command.PullImageResultCallback;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Class that makes sure the images of an application exist on the docker host
+ * before any container is created.
+ * <p>
+ * Every image is checked once, no matter how many containers use it. Missing
+ * images are pulled in parallel, with a bounded number of concurrent pulls.
+ */
+public final class ImagePuller {
+
+    /**
+     * A Logger object.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ImagePuller.class);
+    /**
+     * The docker client that will communicate with the docker daemon.
+     */
+    private final DockerClient docker;
+    /**
+     * The maximum number of images pulled at the same time.
+     */
+    private final int parallelism;
+    /**
+     * Number of times to try to pull an image.
+     */
+    private static final int PULL_ATTEMPTS = 3;
+    /**
+     * The total time (minutes) to wait for all images to be pulled.
+     */
+    private static final long PULL_TIMEOUT = 30;
+
+    /**
+     * Constructor.
+     *
+     * @param docker the docker client that will communicate with the docker
+     * daemon.
+     * @param parallelism the maximum number of images pulled at the same time.
+     */
+    public ImagePuller(DockerClient docker, int parallelism) {
+        this.docker = docker;
+        this.parallelism = parallelism > 0 ? parallelism : 1;
+    }
+
+    /**
+     * <p>
+     * Pulls the images that do not exist on the docker host.
+     * <p>
+     * Stops on the first image that cannot be pulled and cancels the rest.
+     * <p>
+     * Method blocks.
+     *
+     * @param images the images of the application. May contain duplicates.
+     * @return true if all images exist on the docker host.
+     */
+    public boolean pullMissing(Collection<String> images) {
+        // remove duplicates
+        Set<String> distinct = new LinkedHashSet<>(images);
+        // find images not present on the host
+        List<String> missing = new ArrayList<>();
+        for (String img : distinct) {
+            Boolean exists = imageExists(img);
+            if (exists == null) {
+                return false;
+            } else if (!exists) {
+                missing.add(img);
+            }
+        }
+
+        if (missing.isEmpty()) {
+            LOG.info("All {} images exist locally.", distinct.size());
+            return true;
+        }
+
+        LOG.info("Pulling {} of {} images...", missing.size(), distinct.size());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, missing.size()));
+        CompletionService<String> ecs = new ExecutorCompletionService<>(executor);
+        missing.stream().forEach((img) -> {
+            ecs.submit(() -> pullAndRetry(img) ? img : null);
+        });
+        // do not allow new tasks
+        executor.shutdown();
+
+        boolean success = true;
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(PULL_TIMEOUT);
+        for (int pulled = 1; pulled <= missing.size(); pulled++) {
+            try {
+                Future<String> res = ecs.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (res == null) {
+                    LOG.error("Pulling images timed out.");
+                    success = false;
+                    break;
+                }
+                String img = res.get();
+                // check result and exit if pull failed
+                if (img == null) {
+                    success = false;
+                    break;
+                }
+                LOG.info("Image {} pulled successfully ({}/{}).", img, pulled, missing.size());
+            } catch (InterruptedException ex) {
+                // log the event
+                LOG.warn("Thread Interrupted. Stopping");
+                // set the interrupt status
+                Thread.currentThread().interrupt();
+                success = false;
+                break;
+            } catch (ExecutionException ex) {
+                LOG.error("Something went wrong: {}", ex.getMessage());
+                LOG.trace("Something went wrong: ", ex);
+                success = false;
+                break;
+            }
+        }
+        // cancel any pulls still running
+        executor.shutdownNow();
+        return success;
+    }
+
+    /**
+     * Checks if an image exists on the docker host.
+     *
+     * @param img the image.
+     * @return true if the image exists, false if not and NULL in case of
+     * error.
+     */
+    private Boolean imageExists(String img) {
+        Boolean exists = null;
+        try {
+            docker.inspectImageCmd(img).exec();
+            exists = true;
+        } catch (NotFoundException ex) {
+            exists = false;
+        } catch (DockerException ex) {
+            LOG.error("FAILED to inspect image {}. Something went wrong: {}", img, ex.getMessage());
+        }
+        return exists;
+    }
+
+    /**
+     * Pulls an image, retrying on errors.
+     *
+     * @param img the image to pull.
+     * @return true if the image was pulled.
+     */
+    private boolean pullAndRetry(String img) {
+        boolean success = false;
+        int attempts = PULL_ATTEMPTS;
+
+        while (attempts > 0 && !Thread.currentThread().isInterrupted()) {
+            try {
+                LOG.info("Pulling image {}...", img);
+                docker.pullImageCmd(img)
+                        .exec(new PullImageResultCallback())
+                        .awaitSuccess();
+                success = true;
+                break;
+            } catch (NotFoundException ex) {
+                LOG.error("Image {} does NOT exist.", img);
+                break;
+            } catch (Exception ex) {
+                LOG.warn("{}. Retrying.", ex.getMessage());
+            }
+            attempts--;
+        }
+        if (!success) {
+            LOG.error("FAILED to pull image {}.", img);
+        }
+        return success;
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.docker;
+
+import com.github.dockerjava.core.util.CompressArchiveUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import net.freelabs.fidelio.core.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Class that provides the tar archives of host paths copied to containers.
+ * <p>
+ * Every archive is built once and stored on disk, keyed by a hash of the
+ * content of the host path. Copies of the same host path to many containers
+ * share one archive, and unchanged host paths are not archived again on the
+ * next deployment. Archives not used for {@link #MAX_AGE_DAYS MAX_AGE_DAYS}
+ * days are removed.
+ * <p>
+ * Archives are only taken from a directory that is owned by the current user
+ * and that no other user can write to. If the cache directory is not such a
+ * directory, archives are built in a new private temp directory and are not
+ * reused by later runs.
+ * <p>
+ * Class is thread-safe. Concurrent requests for the same host path wait for
+ * the same archive to be built.
+ */
+public final class TarCache {
+
+    /**
+     * A Logger object.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(TarCache.class);
+    /**
+     * The name of the default cache directory, under the per-user directory of
+     * the program.
+     */
+    private static final String DEFAULT_DIR_NAME = "copy-cache";
+    /**
+     * The extension of cached archives.
+     */
+    private static final String ARCHIVE_EXT = ".tar.gz";
+    /**
+     * The number of days an unused archive is kept.
+     */
+    private static final long MAX_AGE_DAYS = 7;
+    /**
+     * The size of the buffer to read files while hashing.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * The directory of the cached archives.
+     */
+    private final Path cacheDir;
+    /**
+     * Map with the archives requested during this run, with the host path and
+     * the archiving mode as key.
+     */
+    private final Map<String, CompletableFuture<Path>> archives = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param cacheDir the directory of the cached archives. If NULL or empty,
+     * a directory under the per-user directory of the program is used.
+     */
+    public TarCache(String cacheDir) {
+        Path dir;
+        if (cacheDir == null || cacheDir.trim().isEmpty()) {
+            dir = Utils.getUserDir(DEFAULT_DIR_NAME);
+        } else {
+            dir = Paths.get(cacheDir.trim());
+        }
+        if (Utils.createPrivateDir(dir)) {
+            this.cacheDir = dir;
+            removeExpired();
+        } else {
+            LOG.warn("Archive cache directory {} cannot be trusted. Archives will not be cached.", dir);
+            this.cacheDir = createTempDir();
+        }
+    }
+
+    /**
+     * Creates a new temp directory, that only the current user can access, to
+     * build the archives of this run.
+     *
+     * @return the path of the directory or NULL in case of error.
+     */
+    private static Path createTempDir() {
+        try {
+            return Files.createTempDirectory("fidelio-copy-");
+        } catch (IOException ex) {
+            LOG.error("FAILED to create temp directory. Something went wrong: {}", ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * <p>
+     * Returns the tar archive of a host path, building it if there is no
+     * cached archive for the current content of the path.
+     * <p>
+     * Method blocks.
+     *
+     * @param hostPath the host path to archive.
+     * @param dirChildrenOnly if true, only the children of a host directory
+     * are archived, not the directory itself.
+     * @return the path to the archive or NULL in case of error.
+     */
+    public Path getArchive(String hostPath, boolean dirChildrenOnly) {
+        String key = hostPath + (dirChildrenOnly ? ":children" : ":root");
+        CompletableFuture<Path> archive = new CompletableFuture<>();
+        CompletableFuture<Path> existing = archives.putIfAbsent(key, archive);
+        if (existing != null) {
+            // archive is built, or being built, by another copy
+            return existing.join();
+        }
+        Path path = buildArchive(Paths.get(hostPath), dirChildrenOnly);
+        archive.complete(path);
+        if (path == null) {
+            // allow a later copy to try again
+            archives.remove(key, archive);
+        }
+        return path;
+    }
+
+    /**
+     * Opens a stream to the tar archive of a host path.
+     *
+     * @param hostPath the host path to archive.
+     * @param dirChildrenOnly if true, only the children of a host directory
+     * are archived.
+     * @return an input stream to the archive or NULL in case of error. The
+     * caller must close the stream.
+     */
+    public InputStream openArchive(String hostPath, boolean dirChildrenOnly) {
+        Path archive = getArchive(hostPath, dirChildrenOnly);
+        if (archive == null) {
+            return null;
+        }
+        try {
+            return Files.newInputStream(archive);
+        } catch (IOException ex) {
+            LOG.error("FAILED to open archive {}. Something went wrong: {}", archive, ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Hashes a host path and builds its archive, unless an archive for the
+     * same content is already cached on disk.
+     *
+     * @param hostPath the host path to archive.
+     * @param dirChildrenOnly if true, only the children of a host directory
+     * are archived.
+     * @return the path to the archive or NULL in case of error.
+     */
+    private Path buildArchive(Path hostPath, boolean dirChildrenOnly) {
+        if (cacheDir == null) {
+            LOG.error("FAILED to archive {}. There is no directory to store the archive.", hostPath);
+            return null;
+        }
+        try {
+            String hash = hashContent(hostPath, dirChildrenOnly);
+            Path archive = cacheDir.resolve(hash + ARCHIVE_EXT);
+            if (Files.exists(archive)) {
+                LOG.debug("Using cached archive for {}.", hostPath);
+                // mark as recently used
+                Files.setLastModifiedTime(archive, FileTime.fromMillis(System.currentTimeMillis()));
+                return archive;
+            }
+            // build under a temp name, so that a partial archive is never used
+            Path tmp = Files.createTempFile(cacheDir, hash, ".tmp");
+            try {
+                CompressArchiveUtil.tar(hostPath, tmp, true, dirChildrenOnly);
+                Files.move(tmp, archive, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            LOG.debug("Created archive for {}.", hostPath);
+            return archive;
+        } catch (IOException ex) {
+            LOG.error("FAILED to archive {}. Something went wrong: {}", hostPath, ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Computes a hash of the content of a host path. The relative path, the
+     * permissions and the content of every file, or the target of every
+     * symbolic link, are hashed in sorted order, so that the hash changes
+     * whenever anything that ends up in the archive changes.
+     *
+     * @param hostPath the host path.
+     * @param dirChildrenOnly the archiving mode, part of the hash.
+     * @return the hash as a hex string.
+     * @throws IOException if a file cannot be read.
+     */
+    private static String hashContent(Path hostPath, boolean dirChildrenOnly) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+        Path root = hostPath.toAbsolutePath().normalize();
+        digest.update((root.getFileName() + (dirChildrenOnly ? ":children" : ":root")).getBytes(StandardCharsets.UTF_8));
+
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk.sorted().collect(Collectors.toList());
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (Path file : files) {
+            String relPath = root.relativize(file).toString();
+            digest.update((relPath + (Files.isDirectory(file) ? "/" : "") + "\0").getBytes(StandardCharsets.UTF_8));
+            digest.update((getPermissions(file) + "\0").getBytes(StandardCharsets.UTF_8));
+            if (Files.isSymbolicLink(file)) {
+                digest.update(("->" + Files.readSymbolicLink(file) + "\0").getBytes(StandardCharsets.UTF_8));
+            }
+            if (Files.isRegularFile(file)) {
+                try (InputStream in = Files.newInputStream(file)) {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        digest.update(buffer, 0, read);
+                    }
+                }
+                digest.update((byte) 0);
+            }
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @param file a file.
+     * @return the POSIX permissions of the file, or its executable flag on
+     * file systems without POSIX permissions.
+     * @throws IOException if the attributes of the file cannot be read.
+     */
+    private static String getPermissions(Path file) throws IOException {
+        try {
+            return PosixFilePermissions.toString(Files.getPosixFilePermissions(file, LinkOption.NOFOLLOW_LINKS));
+        } catch (UnsupportedOperationException ex) {
+            return Files.isExecutable(file) ? "x" : "-";
+        }
+    }
+
+    /**
+     * Removes cached archives that were not used for {@link #MAX_AGE_DAYS
+     * MAX_AGE_DAYS} days.
+     */
+    private void removeExpired() {
+        if (!Files.isDirectory(cacheDir)) {
+            return;
+        }
+        long oldest = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(MAX_AGE_DAYS);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(cacheDir, "*" + ARCHIVE_EXT)) {
+            for (Path archive : stream) {
+                if (Files.getLastModifiedTime(archive).toMillis() < oldest) {
+                    Files.deleteIfExists(archive);
+                    LOG.debug("Removed expired archive {}.", archive);
+                }
+            }
+        } catch (IOException ex) {
+            LOG.warn("FAILED to clean archive cache. Something went wrong: {}", ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.serializer;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.namespace.QName;
+import net.freelabs.fidelio.core.schema.Container;
+import net.freelabs.fidelio.core.zookeeper.ZkConf;
+import net.freelabs.fidelio.core.zookeeper.ZkNamingServiceNode;
+
+/**
+ * <p>
+ * Codec that serializes objects to compact binary payloads.
+ * <p>
+ * Service nodes, which are written and read most often, are encoded with the
+ * {@link ServiceNodeCodec ServiceNodeCodec} format. Containers and the
+ * application configuration are encoded as compact xml, compressed with
+ * DEFLATE, so that the format follows the xml schema.
+ */
+final class BinaryCodec implements Codec {
+
+    /**
+     * The id of the codec.
+     */
+    static final byte ID = 3;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "binary";
+    }
+
+    @Override
+    public void encode(Container con, OutputStream out) throws IOException {
+        deflate(new JAXBElement<>(new QName(Container.class.getSimpleName()), Container.class, con), out);
+    }
+
+    @Override
+    public void encode(ZkConf zkConf, OutputStream out) throws IOException {
+        deflate(new JAXBElement<>(new QName(ZkConf.class.getSimpleName()), ZkConf.class, zkConf), out);
+    }
+
+    @Override
+    public void encode(ZkNamingServiceNode node, OutputStream out) throws IOException {
+        ServiceNodeCodec.write(node, out);
+    }
+
+    @Override
+    public <T extends Container> T decodeContainer(InputStream in, Class<T> type) throws IOException {
+        return inflate(in, type);
+    }
+
+    @Override
+    public <T extends Container> T decodeContainerEnv(InputStream in, Class<T> type) throws IOException {
+        try (InflaterInputStream iis = new InflaterInputStream(in)) {
+            return XmlCodec.unmarshalEnv(iis, type);
+        }
+    }
+
+    @Override
+    public void writeContainerXml(InputStream in, Class<? extends Container> type, OutputStream out) throws IOException {
+        // compressed xml
+        try (InflaterInputStream iis = new InflaterInputStream(in)) {
+            XmlCodec.copy(iis, out);
+        }
+    }
+
+    @Override
+    public ZkConf decodeZkConf(InputStream in) throws IOException {
+        return inflate(in, ZkConf.class);
+    }
+
+    @Override
+    public ZkNamingServiceNode decodeServiceNode(InputStream in) throws IOException {
+        return ServiceNodeCodec.read(in);
+    }
+
+    @Override
+    public String toText(InputStream in) throws IOException {
+        InputStream bin = in.markSupported() ? in : new BufferedInputStream(in);
+        bin.mark(1);
+        int first = bin.read();
+        bin.reset();
+        if ((byte) first == ServiceNodeCodec.MAGIC) {
+            ZkNamingServiceNode node = ServiceNodeCodec.read(bin);
+            return "status=" + node.getStatus() + ", zkContainerPath=" + node.getZkContainerPath();
+        }
+        try (InflaterInputStream iis = new InflaterInputStream(bin)) {
+            return XmlCodec.readText(iis);
+        }
+    }
+
+    /**
+     * Serializes an element to compact xml and compresses it.
+     *
+     * @param jaxbElem the element to serialize.
+     * @param out the stream to write to. It is not closed.
+     * @throws IOException in case of error.
+     */
+    private static void deflate(JAXBElement<?> jaxbElem, OutputStream out) throws IOException {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            DeflaterOutputStream dos = new DeflaterOutputStream(out, deflater);
+            JAXBSerializer.marshal(jaxbElem, dos, false);
+            dos.finish();
+        } catch (JAXBException ex) {
+            throw new IOException("binary serialization FAILED: " + ex, ex);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompresses and de-serializes compact xml.
+     *
+     * @param <T> the type of the object.
+     * @param in the stream to read from.
+     * @param type the class of the object.
+     * @return the object.
+     * @throws IOException in case of error.
+     */
+    private static <T> T inflate(InputStream in, Class<T> type) throws IOException {
+        try (InflaterInputStream iis = new InflaterInputStream(in)) {
+            return JAXBSerializer.unmarshal(iis, type);
+        } catch (JAXBException ex) {
+            throw new IOException("binary de-serialization FAILED: " + ex, ex);
+        }
+    }
+}
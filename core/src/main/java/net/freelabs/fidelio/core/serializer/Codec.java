@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.serializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import net.freelabs.fidelio.core.schema.Container;
+import net.freelabs.fidelio.core.zookeeper.ZkConf;
+import net.freelabs.fidelio.core.zookeeper.ZkNamingServiceNode;
+
+/**
+ * <p>
+ * Interface for the formats that the objects stored to zookeeper are
+ * serialized with.
+ * <p>
+ * A codec writes and reads only the body of a payload. The format tag, which
+ * identifies the codec of a payload, is handled by {@link Codecs Codecs}.
+ * Implementations must be thread-safe.
+ */
+public interface Codec {
+
+    /**
+     * @return the id of the codec, stored to the format tag of the payloads.
+     * Part of the format, must never change.
+     */
+    public byte getId();
+
+    /**
+     * @return the name of the codec, used in the program's configuration.
+     */
+    public String getName();
+
+    /**
+     * Serializes a {@link Container Container}.
+     *
+     * @param con the object to serialize.
+     * @param out the stream to write to. It is not closed.
+     * @throws IOException in case of error.
+     */
+    public void encode(Container con, OutputStream out) throws IOException;
+
+    /**
+     * Serializes a {@link ZkConf ZkConf}.
+     *
+     * @param zkConf the object to serialize.
+     * @param out the stream to write to. It is not closed.
+     * @throws IOException in case of error.
+     */
+    public void encode(ZkConf zkConf, OutputStream out) throws IOException;
+
+    /**
+     * Serializes a {@link ZkNamingServiceNode ZkNamingServiceNode}.
+     *
+     * @param node the object to serialize.
+     * @param out the stream to write to. It is not closed.
+     * @throws IOException in case of error.
+     */
+    public void encode(ZkNamingServiceNode node, OutputStream out) throws IOException;
+
+    /**
+     * De-serializes a {@link Container Container}.
+     *
+     * @param <T> the type of the container.
+     * @param in the stream to read from.
+     * @param type the class of the container.
+     * @return the container.
+     * @throws IOException in case of error.
+     */
+    public <T extends Container> T decodeContainer(InputStream in, Class<T> type) throws IOException;
+
+    /**
+     * De-serializes only the service name and the environment of a
+     * {@link Container Container}. The other sections of the payload are
+     * skipped, where the format allows it.
+     *
+     * @param <T> the type of the container.
+     * @param in the stream to read from.
+     * @param type the class of the container.
+     * @return a container with only the service name and the environment set.
+     * @throws IOException in case of error.
+     */
+    public <T extends Container> T decodeContainerEnv(InputStream in, Class<T> type) throws IOException;
+
+    /**
+     * Writes a serialized {@link Container Container} as xml.
+     *
+     * @param in the stream to read from.
+     * @param type the class of the container.
+     * @param out the stream to write to. It is not closed.
+     * @throws IOException in case of error.
+     */
+    public void writeContainerXml(InputStream in, Class<? extends Container> type, OutputStream out) throws IOException;
+
+    /**
+     * De-serializes a {@link ZkConf ZkConf}.
+     *
+     * @param in the stream to read from.
+     * @return the object.
+     * @throws IOException in case of error.
+     */
+    public ZkConf decodeZkConf(InputStream in) throws IOException;
+
+    /**
+     * De-serializes a {@link ZkNamingServiceNode ZkNamingServiceNode}.
+     *
+     * @param in the stream to read from.
+     * @return the object.
+     * @throws IOException in case of error.
+     */
+    public ZkNamingServiceNode decodeServiceNode(InputStream in) throws IOException;
+
+    /**
+     * Converts a payload body to readable text, for logging.
+     *
+     * @param in the stream to read from.
+     * @return the text.
+     * @throws IOException in case of error.
+     */
+    public String toText(InputStream in) throws IOException;
+}
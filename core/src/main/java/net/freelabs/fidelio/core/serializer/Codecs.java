@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import net.freelabs.fidelio.core.schema.Container;
+import net.freelabs.fidelio.core.zookeeper.ZkConf;
+import net.freelabs.fidelio.core.zookeeper.ZkNamingServiceNode;
+
+/**
+ * <p>
+ * Class that serializes and de-serializes the objects stored to zookeeper with
+ * the available {@link Codec codecs}.
+ * <p>
+ * Payloads start with a format tag: the {@link #TAG TAG} byte and the id of
+ * the codec of the body. Payloads are encoded with the codec given by the
+ * caller, or with {@link #XML XML}, and decoded with the codec of their tag, so
+ * data written with any codec can always be read. There is no global codec
+ * setting, so commands executed at the same time can use different codecs.
+ * Payloads without a tag were written by older versions and are decoded as
+ * binary service nodes, if they start with the {@link ServiceNodeCodec#MAGIC
+ * MAGIC} byte, or as xml.
+ */
+public final class Codecs {
+
+    /**
+     * The first byte of a tagged payload. Can never start an xml document or a
+     * legacy binary service node.
+     */
+    public static final byte TAG = (byte) 0xFC;
+    /**
+     * The size (bytes) of the format tag.
+     */
+    private static final int TAG_SIZE = 2;
+    /**
+     * Codec for xml, with JAXB.
+     */
+    public static final Codec XML = new XmlCodec();
+    /**
+     * Codec for compact binary payloads.
+     */
+    public static final Codec BINARY = new BinaryCodec();
+    /**
+     * Holds the json codec. Jackson is loaded only when json is used, so
+     * the other codecs work without it.
+     */
+    private static final class JsonHolder {
+
+        private static final Codec JSON = new JsonCodec();
+    }
+
+    /**
+     * Interface for writing an object to a stream.
+     */
+    @FunctionalInterface
+    private interface BodyWriter {
+
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Private constructor. Class has only static methods.
+     */
+    private Codecs() {
+    }
+
+    /**
+     * @param name the name of a codec.
+     * @return the codec or NULL if no codec has this name.
+     */
+    public static Codec forName(String name) {
+        String trimmed = name.trim();
+        if (XML.getName().equalsIgnoreCase(trimmed)) {
+            return XML;
+        } else if (BINARY.getName().equalsIgnoreCase(trimmed)) {
+            return BINARY;
+        } else if (JsonCodec.NAME.equalsIgnoreCase(trimmed)) {
+            return json();
+        }
+        return null;
+    }
+
+    /**
+     * @return the codec for json, with Jackson.
+     */
+    public static Codec json() {
+        return JsonHolder.JSON;
+    }
+
+    /**
+     * Serializes a {@link Container Container}.
+     *
+     * @param codec the codec to serialize with.
+     * @param con the object to serialize.
+     * @return the tagged payload.
+     * @throws IOException in case of error.
+     */
+    public static byte[] encode(Codec codec, Container con) throws IOException {
+        return tagged(codec, (out) -> codec.encode(con, out));
+    }
+
+    /**
+     * Serializes a {@link ZkConf ZkConf}.
+     *
+     * @param codec the codec to serialize with.
+     * @param zkConf the object to serialize.
+     * @return the tagged payload.
+     * @throws IOException in case of error.
+     */
+    public static byte[] encode(Codec codec, ZkConf zkConf) throws IOException {
+        return tagged(codec, (out) -> codec.encode(zkConf, out));
+    }
+
+    /**
+     * Serializes a {@link ZkNamingServiceNode ZkNamingServiceNode}.
+     *
+     * @param codec the codec to serialize with.
+     * @param node the object to serialize.
+     * @return the tagged payload.
+     * @throws IOException in case of error.
+     */
+    public static byte[] encode(Codec codec, ZkNamingServiceNode node) throws IOException {
+        return tagged(codec, (out) -> codec.encode(node, out));
+    }
+
+    /**
+     * Writes the format tag and the body of a payload.
+     *
+     * @param codec the codec of the body.
+     * @param writer writes the body.
+     * @return the tagged payload.
+     * @throws IOException in case of error.
+     */
+    private static byte[] tagged(Codec codec, BodyWriter writer) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+        baos.write(TAG);
+        baos.write(codec.getId());
+        writer.write(baos);
+        return baos.toByteArray();
+    }
+
+    /**
+     * De-serializes a {@link Container Container}.
+     *
+     * @param <T> the type of the container.
+     * @param data the payload.
+     * @param type the class of the container.
+     * @return the container.
+     * @throws IOException in case of error.
+     */
+    public static <T extends Container> T decodeContainer(byte[] data, Class<T> type) throws IOException {
+        return codecOf(data).decodeContainer(body(data), type);
+    }
+
+    /**
+     * De-serializes only the service name and the environment of a
+     * {@link Container Container}, skipping the other sections.
+     *
+     * @param <T> the type of the container.
+     * @param data the payload.
+     * @param type the class of the container.
+     * @return a container with only the service name and the environment set.
+     * @throws IOException in case of error.
+     */
+    public static <T extends Container> T decodeContainerEnv(byte[] data, Class<T> type) throws IOException {
+        return codecOf(data).decodeContainerEnv(body(data), type);
+    }
+
+    /**
+     * Writes a serialized {@link Container Container} as xml. The payload is
+     * de-serialized only if its codec is not xml based.
+     *
+     * @param data the payload.
+     * @param type the class of the container.
+     * @param out the stream to write to. It is not closed.
+     * @throws IOException in case of error.
+     */
+    public static void writeContainerXml(byte[] data, Class<? extends Container> type, OutputStream out) throws IOException {
+        codecOf(data).writeContainerXml(body(data), type, out);
+    }
+
+    /**
+     * De-serializes a {@link ZkConf ZkConf}.
+     *
+     * @param data the payload.
+     * @return the object.
+     * @throws IOException in case of error.
+     */
+    public static ZkConf decodeZkConf(byte[] data) throws IOException {
+        return codecOf(data).decodeZkConf(body(data));
+    }
+
+    /**
+     * De-serializes a {@link ZkNamingServiceNode ZkNamingServiceNode}.
+     *
+     * @param data the payload.
+     * @return the object.
+     * @throws IOException in case of error.
+     */
+    public static ZkNamingServiceNode decodeServiceNode(byte[] data) throws IOException {
+        return codecOf(data).decodeServiceNode(body(data));
+    }
+
+    /**
+     * Converts a payload to readable text, for logging.
+     *
+     * @param data the payload.
+     * @return the text, or a description of the error if the payload cannot
+     * be read.
+     */
+    public static String toString(byte[] data) {
+        try {
+            return codecOf(data).toText(body(data));
+        } catch (IOException ex) {
+            return "Unreadable payload: " + ex.getMessage();
+        }
+    }
+
+    /**
+     * Finds the codec of a payload.
+     *
+     * @param data the payload.
+     * @return the codec of the payload.
+     * @throws IOException if the format tag has an unknown codec id.
+     */
+    public static Codec codecOf(byte[] data) throws IOException {
+        if (isTagged(data)) {
+            if (data[1] == XML.getId()) {
+                return XML;
+            } else if (data[1] == BINARY.getId()) {
+                return BINARY;
+            } else if (data[1] == JsonCodec.ID) {
+                return json();
+            }
+            throw new IOException("Unknown payload format: " + data[1]);
+        }
+        // legacy payloads
+        return ServiceNodeCodec.isBinary(data) ? BINARY : XML;
+    }
+
+    /**
+     * @param data a payload.
+     * @return true if the payload starts with a format tag.
+     */
+    private static boolean isTagged(byte[] data) {
+        return data.length >= TAG_SIZE && data[0] == TAG;
+    }
+
+    /**
+     * @param data a payload.
+     * @return a stream with the body of the payload.
+     */
+    private static InputStream body(byte[] data) {
+        int offset = isTagged(data) ? TAG_SIZE : 0;
+        return new ByteArrayInputStream(data, offset, data.length - offset);
+    }
+}
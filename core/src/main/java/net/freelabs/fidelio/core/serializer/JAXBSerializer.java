@@ -21,6 +21,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
@@ -28,11 +30,17 @@ import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
 import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.stream.StreamSource;
 import net.freelabs.fidelio.core.schema.BusinessContainer;
 import net.freelabs.fidelio.core.schema.Container;
+import net.freelabs.fidelio.core.schema.ContainerEnvironment;
 import net.freelabs.fidelio.core.schema.DataContainer;
 import net.freelabs.fidelio.core.schema.ObjectFactory;
+import net.freelabs.fidelio.core.schema.WebApp;
 import net.freelabs.fidelio.core.schema.WebContainer;
 import net.freelabs.fidelio.core.zookeeper.ZkConf;
 import net.freelabs.fidelio.core.zookeeper.ZkNamingServiceNode;
@@ -40,59 +48,251 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- *
+ * <p>
  * Class that defines methods to serializes and de-serialize object from/to byte
  * arrays.
+ * <p>
+ * Class is thread-safe. All threads share one {@link JAXBContext JAXBContext};
+ * every thread uses its own marshaller, un-marshaller and output buffer, so
+ * calls from different threads never wait for each other.
  */
 public final class JAXBSerializer {
 
     /**
-     * De-serializes objects.
+     * A Logger object.
      */
-    private static final Unmarshaller unmarshaller = initUnmarshaller();
+    private static final Logger LOG = LoggerFactory.getLogger(JAXBSerializer.class);
     /**
-     * Serializes objects.
+     * The initial size (bytes) of a buffer.
      */
-    private static final Marshaller marshaller = initMarshaller();
+    private static final int BUFFER_SIZE = 4 * 1024;
     /**
-     * A Logger object.
+     * The maximum size (bytes) of a buffer kept for reuse. Larger buffers are
+     * released, so that a large object does not pin memory to a thread.
      */
-    private static final Logger LOG = LoggerFactory.getLogger(JAXBSerializer.class);
+    private static final int MAX_BUFFER_SIZE = 256 * 1024;
+    /**
+     * Creates the readers for streamed xml. Thread-safe once configured.
+     */
+    private static final XMLInputFactory XML_INPUT = initXmlInputFactory();
+    /**
+     * The JAXB context, shared by all threads. A context is thread-safe and
+     * expensive to create.
+     */
+    private static final JAXBContext CONTEXT = initContext();
+    /**
+     * Serializes objects. Marshallers are not thread-safe, so every thread
+     * uses its own.
+     */
+    private static final ThreadLocal<Marshaller> MARSHALLER = new ThreadLocal<>();
+    /**
+     * De-serializes objects. Un-marshallers are not thread-safe, so every
+     * thread uses its own.
+     */
+    private static final ThreadLocal<Unmarshaller> UNMARSHALLER = new ThreadLocal<>();
+    /**
+     * Buffer that serialized objects are written to, reused by every thread.
+     */
+    private static final ThreadLocal<ByteArrayOutputStream> BUFFER = ThreadLocal.withInitial(() -> new ByteArrayOutputStream(BUFFER_SIZE));
 
     /**
-     * Initializes the marshaler that will handle serialization.
+     * Initializes the factory of the readers for streamed xml.
      *
-     * @return an initialized {@link Marshaller Marshaller} instance.
+     * @return the {@link XMLInputFactory XMLInputFactory}.
+     */
+    private static XMLInputFactory initXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    }
+
+    /**
+     * Initializes the JAXB context for the classes that are serialized.
+     *
+     * @return the {@link JAXBContext JAXBContext} or NULL in case of error.
      */
-    private static Marshaller initMarshaller() {
-        Marshaller marshall = null;
+    private static JAXBContext initContext() {
+        JAXBContext jaxbContext = null;
         try {
-            JAXBContext jaxbContext = JAXBContext.newInstance(ObjectFactory.class, ZkConf.class, ZkNamingServiceNode.class);
-            marshall = jaxbContext.createMarshaller();
-            marshall.setProperty(Marshaller.JAXB_ENCODING, StandardCharsets.UTF_8.name());
-            marshall.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+            jaxbContext = JAXBContext.newInstance(ObjectFactory.class, ZkConf.class, ZkNamingServiceNode.class);
         } catch (JAXBException ex) {
             LOG.error("Something went wrong: {}", ex.getMessage());
         }
+        return jaxbContext;
+    }
+
+    /**
+     * @return the JAXB context.
+     * @throws JAXBException if the context could not be initialized.
+     */
+    private static JAXBContext context() throws JAXBException {
+        if (CONTEXT == null) {
+            throw new JAXBException("JAXB context NOT initialized.");
+        }
+        return CONTEXT;
+    }
+
+    /**
+     * Returns the marshaller of the calling thread, creating it on first use.
+     *
+     * @return an initialized {@link Marshaller Marshaller} instance.
+     * @throws JAXBException in case of error.
+     */
+    private static Marshaller marshaller() throws JAXBException {
+        Marshaller marshall = MARSHALLER.get();
+        if (marshall == null) {
+            marshall = context().createMarshaller();
+            marshall.setProperty(Marshaller.JAXB_ENCODING, StandardCharsets.UTF_8.name());
+            marshall.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+            MARSHALLER.set(marshall);
+        }
         return marshall;
     }
 
     /**
-     * Initializes the un-marshaler that will handle de-serialization.
+     * Returns the un-marshaller of the calling thread, creating it on first
+     * use.
      *
      * @return an initialized {@link Unmarshaller Unmarshaller} instance.
+     * @throws JAXBException in case of error.
      */
-    private static Unmarshaller initUnmarshaller() {
-        Unmarshaller unmarshall = null;
-        try {
-            JAXBContext jaxbContext = JAXBContext.newInstance(ObjectFactory.class, ZkConf.class, ZkNamingServiceNode.class);
-            unmarshall = jaxbContext.createUnmarshaller();
-        } catch (JAXBException ex) {
-            LOG.error("Something went wrong: {}", ex.getMessage());
+    private static Unmarshaller unmarshaller() throws JAXBException {
+        Unmarshaller unmarshall = UNMARSHALLER.get();
+        if (unmarshall == null) {
+            unmarshall = context().createUnmarshaller();
+            UNMARSHALLER.set(unmarshall);
         }
         return unmarshall;
     }
 
+    /**
+     * Serializes an element to byte array, through the buffer of the calling
+     * thread.
+     *
+     * @param jaxbElem the element to serialize.
+     * @return byte array of the element.
+     * @throws JAXBException in case of error.
+     */
+    private static byte[] marshal(JAXBElement<?> jaxbElem) throws JAXBException {
+        ByteArrayOutputStream baos = BUFFER.get();
+        baos.reset();
+        try {
+            marshaller().marshal(jaxbElem, baos);
+            return baos.toByteArray();
+        } finally {
+            if (baos.size() > MAX_BUFFER_SIZE) {
+                BUFFER.remove();
+            }
+        }
+    }
+
+    /**
+     * Serializes an element to a stream, with the marshaller of the calling
+     * thread.
+     *
+     * @param jaxbElem the element to serialize.
+     * @param out the stream to write to.
+     * @param formatted true to indent the xml, false for compact xml.
+     * @throws JAXBException in case of error.
+     */
+    static void marshal(JAXBElement<?> jaxbElem, OutputStream out, boolean formatted) throws JAXBException {
+        Marshaller marshall = marshaller();
+        if (!formatted) {
+            marshall.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.FALSE);
+        }
+        try {
+            marshall.marshal(jaxbElem, out);
+        } finally {
+            if (!formatted) {
+                marshall.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+            }
+        }
+    }
+
+    /**
+     * De-serializes a stream, with the un-marshaller of the calling thread.
+     *
+     * @param <T> the type of the object.
+     * @param in the stream to read from.
+     * @param type the class of the object.
+     * @return the de-serialized object.
+     * @throws JAXBException in case of error.
+     */
+    static <T> T unmarshal(InputStream in, Class<T> type) throws JAXBException {
+        return unmarshaller().unmarshal(new StreamSource(in), type).getValue();
+    }
+
+    /**
+     * <p>
+     * De-serializes only the service name and the environment of a container
+     * from a stream with xml.
+     * <p>
+     * The xml is streamed: the elements before the environment are skipped
+     * without being de-serialized and the rest of the stream is not read.
+     *
+     * @param <T> the type of the container.
+     * @param in the stream to read from.
+     * @param type the class of the container.
+     * @return a container with only the service name and the environment set.
+     * @throws JAXBException in case of error.
+     */
+    static <T extends Container> T unmarshalEnv(InputStream in, Class<T> type) throws JAXBException {
+        XMLStreamReader reader = null;
+        try {
+            T con = type.newInstance();
+            reader = XML_INPUT.createXMLStreamReader(in);
+            // move to the root element
+            reader.nextTag();
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    // end of root element
+                    break;
+                } else if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (name.equals("serviceName")) {
+                        con.setConSrvName(reader.getElementText().trim());
+                    } else if (name.equals("env")) {
+                        con.setEnv(unmarshaller().unmarshal(reader, ContainerEnvironment.class).getValue());
+                        break;
+                    } else {
+                        skipElement(reader);
+                    }
+                }
+            }
+            return con;
+        } catch (XMLStreamException | InstantiationException | IllegalAccessException ex) {
+            throw new JAXBException(ex.toString(), ex);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ex) {
+                    LOG.warn("Something went wrong: {}", ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the reader to the end of the current element.
+     *
+     * @param reader a reader positioned at the start of an element.
+     * @throws XMLStreamException in case of error.
+     */
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
     /**
      * Serializes a {@link Container container} object to byte array.
      *
@@ -102,11 +302,7 @@ public final class JAXBSerializer {
      */
     public static byte[] serialize(Container con) throws JAXBException {
         JAXBElement<Container> jaxbElem = new JAXBElement<>(new QName(Container.class.getSimpleName()), Container.class, con);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        synchronized (JAXBSerializer.class) {
-            marshaller.marshal(jaxbElem, baos);
-        }
-        return baos.toByteArray();
+        return marshal(jaxbElem);
     }
 
     /**
@@ -118,12 +314,7 @@ public final class JAXBSerializer {
      */
     public static byte[] serialize(ZkConf zkConf) throws JAXBException {
         JAXBElement<ZkConf> jaxbElem = new JAXBElement<>(new QName(ZkConf.class.getSimpleName()), ZkConf.class, zkConf);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        synchronized (JAXBSerializer.class) {
-            marshaller.marshal(jaxbElem, baos);
-        }
-
-        return baos.toByteArray();
+        return marshal(jaxbElem);
     }
 
     /**
@@ -136,11 +327,7 @@ public final class JAXBSerializer {
      */
     public static byte[] serialize(ZkNamingServiceNode node) throws JAXBException {
         JAXBElement<ZkNamingServiceNode> jaxbElem = new JAXBElement<>(new QName(ZkConf.class.getSimpleName()), ZkNamingServiceNode.class, node);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        synchronized (JAXBSerializer.class) {
-            marshaller.marshal(jaxbElem, baos);
-        }
-        return baos.toByteArray();
+        return marshal(jaxbElem);
     }
 
     /**
@@ -153,10 +340,7 @@ public final class JAXBSerializer {
      */
     public static ZkNamingServiceNode deserializeToServiceNode(byte[] data) throws JAXBException {
         ByteArrayInputStream bais = new ByteArrayInputStream(data);
-        JAXBElement<ZkNamingServiceNode> jaxbElemUnmar;
-        synchronized (JAXBSerializer.class) {
-            jaxbElemUnmar = unmarshaller.unmarshal(new StreamSource(bais), ZkNamingServiceNode.class);
-        }
+        JAXBElement<ZkNamingServiceNode> jaxbElemUnmar = unmarshaller().unmarshal(new StreamSource(bais), ZkNamingServiceNode.class);
         return jaxbElemUnmar.getValue();
     }
 
@@ -169,10 +353,7 @@ public final class JAXBSerializer {
      */
     public static ZkConf deserializeToZkConf(byte[] data) throws JAXBException {
         ByteArrayInputStream bais = new ByteArrayInputStream(data);
-        JAXBElement<ZkConf> jaxbElemUnmar;
-        synchronized (JAXBSerializer.class) {
-            jaxbElemUnmar = unmarshaller.unmarshal(new StreamSource(bais), ZkConf.class);
-        }
+        JAXBElement<ZkConf> jaxbElemUnmar = unmarshaller().unmarshal(new StreamSource(bais), ZkConf.class);
         return jaxbElemUnmar.getValue();
     }
 
@@ -186,10 +367,7 @@ public final class JAXBSerializer {
      */
     public static DataContainer deserializeToDataContainer(byte[] data) throws JAXBException {
         ByteArrayInputStream bais = new ByteArrayInputStream(data);
-        JAXBElement<DataContainer> jaxbElemUnmar;
-        synchronized (JAXBSerializer.class) {
-            jaxbElemUnmar = unmarshaller.unmarshal(new StreamSource(bais), DataContainer.class);
-        }
+        JAXBElement<DataContainer> jaxbElemUnmar = unmarshaller().unmarshal(new StreamSource(bais), DataContainer.class);
         return jaxbElemUnmar.getValue();
     }
 
@@ -203,10 +381,7 @@ public final class JAXBSerializer {
      */
     public static WebContainer deserializeToWebContainer(byte[] data) throws JAXBException {
         ByteArrayInputStream bais = new ByteArrayInputStream(data);
-        JAXBElement<WebContainer> jaxbElemUnmar;
-        synchronized (JAXBSerializer.class) {
-            jaxbElemUnmar = unmarshaller.unmarshal(new StreamSource(bais), WebContainer.class);
-        }
+        JAXBElement<WebContainer> jaxbElemUnmar = unmarshaller().unmarshal(new StreamSource(bais), WebContainer.class);
         return jaxbElemUnmar.getValue();
     }
 
@@ -220,13 +395,36 @@ public final class JAXBSerializer {
      */
     public static BusinessContainer deserializeToBusinessContainer(byte[] data) throws JAXBException {
         ByteArrayInputStream bais = new ByteArrayInputStream(data);
-        JAXBElement<BusinessContainer> jaxbElemUnmar;
-        synchronized (JAXBSerializer.class) {
-            jaxbElemUnmar = unmarshaller.unmarshal(new StreamSource(bais), BusinessContainer.class);
-        }
+        JAXBElement<BusinessContainer> jaxbElemUnmar = unmarshaller().unmarshal(new StreamSource(bais), BusinessContainer.class);
         return jaxbElemUnmar.getValue();
     }
 
+    /**
+     * Serializes a {@link WebApp WebApp} object to byte array, as compact xml.
+     *
+     * @param webApp the object to serialize.
+     * @return byte array of the object.
+     * @throws JAXBException in case of error.
+     */
+    public static byte[] serialize(WebApp webApp) throws JAXBException {
+        JAXBElement<WebApp> jaxbElem = new JAXBElement<>(new QName("webApp"), WebApp.class, webApp);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(BUFFER_SIZE);
+        marshal(jaxbElem, baos, false);
+        return baos.toByteArray();
+    }
+
+    /**
+     * De-serializes a byte array to a {@link WebApp WebApp} instance. The
+     * data are not validated against the xml schema.
+     *
+     * @param data byte array to de-serialize.
+     * @return an instance of {@link WebApp WebApp}.
+     * @throws JAXBException in case of error.
+     */
+    public static WebApp deserializeToWebApp(byte[] data) throws JAXBException {
+        return unmarshal(new ByteArrayInputStream(data), WebApp.class);
+    }
+
     /**
      * De-serializes a byte array to String.
      *
@@ -250,9 +448,7 @@ public final class JAXBSerializer {
         // create parent directories if they do not exist, so that the writer doesn't fail.
         newFile.getParentFile().mkdirs();
         // writeas xml to file
-        synchronized (JAXBSerializer.class) {
-            marshaller.marshal(jaxbElem, newFile);
-        }
+        marshaller().marshal(jaxbElem, newFile);
     }
 
     /**
@@ -266,10 +462,7 @@ public final class JAXBSerializer {
      * NOT TESTED YET
      */
     public static Container readFromFile(File file) throws FileNotFoundException, JAXBException {
-        JAXBElement<Container> jaxbElemUnmar;
-        synchronized (JAXBSerializer.class) {
-            jaxbElemUnmar = unmarshaller.unmarshal(new StreamSource(file), Container.class);
-        }
+        JAXBElement<Container> jaxbElemUnmar = unmarshaller().unmarshal(new StreamSource(file), Container.class);
         return jaxbElemUnmar.getValue();
     }
 
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.serializer;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationModule;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import net.freelabs.fidelio.core.schema.Container;
+import net.freelabs.fidelio.core.zookeeper.ZkConf;
+import net.freelabs.fidelio.core.zookeeper.ZkNamingServiceNode;
+
+/**
+ * Codec that serializes objects to json, with Jackson. The JAXB annotations of
+ * the classes are honored, so the json has the same fields as the xml.
+ */
+final class JsonCodec implements Codec {
+
+    /**
+     * The id of the codec.
+     */
+    static final byte ID = 2;
+    /**
+     * The name of the codec.
+     */
+    static final String NAME = "json";
+    /**
+     * Maps objects to json. Thread-safe once configured.
+     */
+    private static final ObjectMapper MAPPER = initObjMapper();
+
+    /**
+     * Initializes the object mapper.
+     *
+     * @return the configured {@link ObjectMapper ObjectMapper}.
+     */
+    private static ObjectMapper initObjMapper() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JaxbAnnotationModule());
+        mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+        // newer versions may add fields
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        return mapper;
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void encode(Container con, OutputStream out) throws IOException {
+        MAPPER.writeValue(out, con);
+    }
+
+    @Override
+    public void encode(ZkConf zkConf, OutputStream out) throws IOException {
+        MAPPER.writeValue(out, zkConf);
+    }
+
+    @Override
+    public void encode(ZkNamingServiceNode node, OutputStream out) throws IOException {
+        MAPPER.writeValue(out, node);
+    }
+
+    @Override
+    public <T extends Container> T decodeContainer(InputStream in, Class<T> type) throws IOException {
+        return MAPPER.readValue(in, type);
+    }
+
+    @Override
+    public <T extends Container> T decodeContainerEnv(InputStream in, Class<T> type) throws IOException {
+        // fields are bound by name, the full object is read
+        return decodeContainer(in, type);
+    }
+
+    @Override
+    public void writeContainerXml(InputStream in, Class<? extends Container> type, OutputStream out) throws IOException {
+        Codecs.XML.encode(decodeContainer(in, type), out);
+    }
+
+    @Override
+    public ZkConf decodeZkConf(InputStream in) throws IOException {
+        return MAPPER.readValue(in, ZkConf.class);
+    }
+
+    @Override
+    public ZkNamingServiceNode decodeServiceNode(InputStream in) throws IOException {
+        return MAPPER.readValue(in, ZkNamingServiceNode.class);
+    }
+
+    @Override
+    public String toText(InputStream in) throws IOException {
+        return XmlCodec.readText(in);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import javax.xml.bind.JAXBException;
+import net.freelabs.fidelio.core.zookeeper.ZkNamingServiceNode;
+import net.freelabs.fidelio.core.zookeeper.ZkNamingServiceNode.SRV_STATE_STATUS;
+
+/**
+ * <p>
+ * Class that encodes and decodes {@link ZkNamingServiceNode
+ * ZkNamingServiceNode} objects to and from a compact binary format, without
+ * JAXB.
+ * <p>
+ * Format: {@link #MAGIC MAGIC} byte, {@link #VERSION VERSION} byte, status
+ * code byte, flags byte, and the zNode path of the container as modified
+ * UTF-8 if the path flag is set.
+ * <p>
+ * Payloads that do not start with the magic byte are legacy xml payloads and
+ * are decoded with the {@link JAXBSerializer JAXBSerializer}. The magic byte
+ * can never start an xml document.
+ * <p>
+ * The format is used by the {@link Codecs#BINARY binary codec} for service
+ * nodes.
+ */
+public final class ServiceNodeCodec {
+
+    /**
+     * The first byte of a binary payload.
+     */
+    public static final byte MAGIC = (byte) 0xF5;
+    /**
+     * The version of the binary format.
+     */
+    public static final byte VERSION = 1;
+    /**
+     * Flag set if the payload contains the zNode path of the container.
+     */
+    private static final int FLAG_PATH = 0x01;
+    /**
+     * The statuses, indexed by their code. The codes are part of the format,
+     * new statuses must be appended.
+     */
+    private static final SRV_STATE_STATUS[] STATUSES = {
+        SRV_STATE_STATUS.INITIALIZED,
+        SRV_STATE_STATUS.NOT_INITIALIZED,
+        SRV_STATE_STATUS.NOT_RUNNING,
+        SRV_STATE_STATUS.UPDATED
+    };
+
+    /**
+     * Private constructor. Class has only static methods.
+     */
+    private ServiceNodeCodec() {
+    }
+
+    /**
+     * Encodes a service node.
+     *
+     * @param node the service node to encode.
+     * @return the binary payload.
+     * @throws IOException in case of error.
+     */
+    public static byte[] encode(ZkNamingServiceNode node) throws IOException {
+        String path = node.getZkContainerPath();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(path == null ? 4 : path.length() + 6);
+        write(node, baos);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Encodes a service node to a stream.
+     *
+     * @param node the service node to encode.
+     * @param os the stream to write to. It is not closed.
+     * @throws IOException in case of error.
+     */
+    public static void write(ZkNamingServiceNode node, OutputStream os) throws IOException {
+        String path = node.getZkContainerPath();
+        DataOutputStream out = new DataOutputStream(os);
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(statusCode(node.getStatus()));
+        out.writeByte(path == null ? 0 : FLAG_PATH);
+        if (path != null) {
+            out.writeUTF(path);
+        }
+        out.flush();
+    }
+
+    /**
+     * Decodes a service node from a binary or a legacy xml payload.
+     *
+     * @param data the payload to decode.
+     * @return the service node.
+     * @throws IOException if a binary payload is malformed or of an unknown
+     * version.
+     * @throws JAXBException if a legacy xml payload cannot be de-serialized.
+     */
+    public static ZkNamingServiceNode decode(byte[] data) throws IOException, JAXBException {
+        if (!isBinary(data)) {
+            return JAXBSerializer.deserializeToServiceNode(data);
+        }
+        return read(new ByteArrayInputStream(data));
+    }
+
+    /**
+     * Decodes a service node from a stream with a binary payload.
+     *
+     * @param is the stream to read from.
+     * @return the service node.
+     * @throws IOException if the payload is malformed or of an unknown
+     * version.
+     */
+    public static ZkNamingServiceNode read(InputStream is) throws IOException {
+        DataInputStream in = new DataInputStream(is);
+        if (in.readByte() != MAGIC) {
+            throw new IOException("Not a binary service node payload.");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported service node version: " + version);
+        }
+        SRV_STATE_STATUS status = status(in.readUnsignedByte());
+        int flags = in.readUnsignedByte();
+        String path = (flags & FLAG_PATH) != 0 ? in.readUTF() : null;
+
+        ZkNamingServiceNode node = new ZkNamingServiceNode(path);
+        setStatus(node, status);
+        return node;
+    }
+
+    /**
+     * @param data a payload.
+     * @return true if the payload is in the binary format.
+     */
+    public static boolean isBinary(byte[] data) {
+        return data != null && data.length > 0 && data[0] == MAGIC;
+    }
+
+    /**
+     * @param status a service status.
+     * @return the code of the status in the binary formats.
+     */
+    public static int statusCode(SRV_STATE_STATUS status) {
+        for (int i = 0; i < STATUSES.length; i++) {
+            if (STATUSES[i] == status) {
+                return i;
+            }
+        }
+        // a node without status is not running
+        return statusCode(SRV_STATE_STATUS.NOT_RUNNING);
+    }
+
+    /**
+     * @param code the code of a status in the binary formats.
+     * @return the status.
+     * @throws IOException if the code is unknown.
+     */
+    public static SRV_STATE_STATUS status(int code) throws IOException {
+        if (code < 0 || code >= STATUSES.length) {
+            throw new IOException("Unknown service status code: " + code);
+        }
+        return STATUSES[code];
+    }
+
+    /**
+     * Sets the status of a service node.
+     *
+     * @param node the service node.
+     * @param status the status to set.
+     */
+    private static void setStatus(ZkNamingServiceNode node, SRV_STATE_STATUS status) {
+        switch (status) {
+            case INITIALIZED:
+                node.setStatusInitialized();
+                break;
+            case NOT_INITIALIZED:
+                node.setStatusNotInitialized();
+                break;
+            case UPDATED:
+                node.setStatusUpdasted();
+                break;
+            default:
+                node.setStatusNotRunning();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.serializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.namespace.QName;
+import net.freelabs.fidelio.core.schema.Container;
+import net.freelabs.fidelio.core.zookeeper.ZkConf;
+import net.freelabs.fidelio.core.zookeeper.ZkNamingServiceNode;
+
+/**
+ * Codec that serializes objects to xml, with the {@link JAXBSerializer
+ * JAXBSerializer}. The body of a payload is the same as the data stored by
+ * the versions without format tags.
+ */
+final class XmlCodec implements Codec {
+
+    /**
+     * The id of the codec.
+     */
+    static final byte ID = 1;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "xml";
+    }
+
+    @Override
+    public void encode(Container con, OutputStream out) throws IOException {
+        marshal(new JAXBElement<>(new QName(Container.class.getSimpleName()), Container.class, con), out);
+    }
+
+    @Override
+    public void encode(ZkConf zkConf, OutputStream out) throws IOException {
+        marshal(new JAXBElement<>(new QName(ZkConf.class.getSimpleName()), ZkConf.class, zkConf), out);
+    }
+
+    @Override
+    public void encode(ZkNamingServiceNode node, OutputStream out) throws IOException {
+        marshal(new JAXBElement<>(new QName(ZkNamingServiceNode.class.getSimpleName()), ZkNamingServiceNode.class, node), out);
+    }
+
+    @Override
+    public <T extends Container> T decodeContainer(InputStream in, Class<T> type) throws IOException {
+        return unmarshal(in, type);
+    }
+
+    @Override
+    public <T extends Container> T decodeContainerEnv(InputStream in, Class<T> type) throws IOException {
+        return unmarshalEnv(in, type);
+    }
+
+    @Override
+    public void writeContainerXml(InputStream in, Class<? extends Container> type, OutputStream out) throws IOException {
+        // already xml
+        copy(in, out);
+    }
+
+    @Override
+    public ZkConf decodeZkConf(InputStream in) throws IOException {
+        return unmarshal(in, ZkConf.class);
+    }
+
+    @Override
+    public ZkNamingServiceNode decodeServiceNode(InputStream in) throws IOException {
+        return unmarshal(in, ZkNamingServiceNode.class);
+    }
+
+    @Override
+    public String toText(InputStream in) throws IOException {
+        return readText(in);
+    }
+
+    /**
+     * Serializes an element to formatted xml.
+     *
+     * @param jaxbElem the element to serialize.
+     * @param out the stream to write to.
+     * @throws IOException in case of error.
+     */
+    private static void marshal(JAXBElement<?> jaxbElem, OutputStream out) throws IOException {
+        try {
+            JAXBSerializer.marshal(jaxbElem, out, true);
+        } catch (JAXBException ex) {
+            throw new IOException("xml serialization FAILED: " + ex, ex);
+        }
+    }
+
+    /**
+     * De-serializes xml.
+     *
+     * @param <T> the type of the object.
+     * @param in the stream to read from.
+     * @param type the class of the object.
+     * @return the object.
+     * @throws IOException in case of error.
+     */
+    private static <T> T unmarshal(InputStream in, Class<T> type) throws IOException {
+        try {
+            return JAXBSerializer.unmarshal(in, type);
+        } catch (JAXBException ex) {
+            throw new IOException("xml de-serialization FAILED: " + ex, ex);
+        }
+    }
+
+    /**
+     * De-serializes only the service name and the environment of a container
+     * from xml.
+     *
+     * @param <T> the type of the container.
+     * @param in the stream to read from.
+     * @param type the class of the container.
+     * @return a container with only the service name and the environment set.
+     * @throws IOException in case of error.
+     */
+    static <T extends Container> T unmarshalEnv(InputStream in, Class<T> type) throws IOException {
+        try {
+            return JAXBSerializer.unmarshalEnv(in, type);
+        } catch (JAXBException ex) {
+            throw new IOException("xml de-serialization FAILED: " + ex, ex);
+        }
+    }
+
+    /**
+     * Copies a stream.
+     *
+     * @param in the stream to read from.
+     * @param out the stream to write to.
+     * @throws IOException in case of error.
+     */
+    static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buf = new byte[4096];
+        int read;
+        while ((read = in.read(buf)) != -1) {
+            out.write(buf, 0, read);
+        }
+    }
+
+    /**
+     * Reads a stream of UTF-8 text.
+     *
+     * @param in the stream to read from.
+     * @return the text.
+     * @throws IOException in case of error.
+     */
+    static String readText(InputStream in) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        copy(in, baos);
+        return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -17,13 +17,24 @@
 package net.freelabs.fidelio.core.utils;
 
 import java.io.Console;
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,6 +48,11 @@ public class Utils {
      * A Logger object.
      */
     private static final Logger LOG = LoggerFactory.getLogger(Utils.class);
+    /**
+     * The name of the per-user directory of the program, under the home
+     * directory of the user.
+     */
+    private static final String USER_DIR_NAME = ".fidelio";
 
     /**
      * Gets the declared fields of a class and its superclass, recursively
@@ -178,4 +194,99 @@ public class Utils {
         }
     }
 
+    /**
+     * @param name the name of a directory.
+     * @return the path of the directory under the per-user directory of the
+     * program, in the home directory of the user.
+     */
+    public static final Path getUserDir(String name) {
+        return Paths.get(System.getProperty("user.home"), USER_DIR_NAME, name);
+    }
+
+    /**
+     * <p>
+     * Creates a directory, if it does not exist, that only the current user
+     * can access, and checks that it is safe to keep private data in it.
+     * <p>
+     * The directory is safe if it is not a symbolic link, it is owned by the
+     * current user and no other user can write to it. On file systems without
+     * POSIX permissions only the symbolic link is checked.
+     *
+     * @param dir the directory.
+     * @return true if the directory exists and is safe.
+     */
+    public static final boolean createPrivateDir(Path dir) {
+        try {
+            if (Files.notExists(dir, LinkOption.NOFOLLOW_LINKS)) {
+                Path parent = dir.toAbsolutePath().getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                try {
+                    Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+                } catch (UnsupportedOperationException ex) {
+                    Files.createDirectory(dir);
+                } catch (FileAlreadyExistsException ex) {
+                    // created at the same time, checked below
+                }
+            }
+            if (Files.isSymbolicLink(dir) || !Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+                LOG.error("{} is not a directory.", dir);
+                return false;
+            }
+            return isOwnedPrivately(dir);
+        } catch (IOException ex) {
+            LOG.error("FAILED to create directory {}. Something went wrong: {}", dir, ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Checks that a regular file is safe to read private data from: it is not
+     * a symbolic link, it is owned by the current user and no other user can
+     * write to it. On file systems without POSIX permissions only the symbolic
+     * link is checked.
+     *
+     * @param file the file.
+     * @return true if the file exists and is safe.
+     */
+    public static final boolean isPrivateFile(Path file) {
+        if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+            LOG.error("{} is not a regular file.", file);
+            return false;
+        }
+        try {
+            return isOwnedPrivately(file);
+        } catch (IOException ex) {
+            LOG.error("FAILED to read attributes of {}. Something went wrong: {}", file, ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @param path a path, that is not a symbolic link.
+     * @return true if the path is owned by the current user and no other user
+     * can write to it, or if the file system has no POSIX permissions.
+     * @throws IOException if the attributes of the path cannot be read.
+     */
+    private static boolean isOwnedPrivately(Path path) throws IOException {
+        PosixFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(path, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (UnsupportedOperationException ex) {
+            return true;
+        }
+        UserPrincipal user = path.getFileSystem().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+        if (!attrs.owner().equals(user)) {
+            LOG.error("{} is owned by {}, not by the current user.", path, attrs.owner().getName());
+            return false;
+        }
+        Set<PosixFilePermission> perms = attrs.permissions();
+        if (perms.contains(PosixFilePermission.GROUP_WRITE) || perms.contains(PosixFilePermission.OTHERS_WRITE)) {
+            LOG.error("{} is writable by other users.", path);
+            return false;
+        }
+        return true;
+    }
 }
@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.xml;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.xml.bind.JAXBException;
+import net.freelabs.fidelio.core.boot.ProgramConf;
+import net.freelabs.fidelio.core.schema.WebApp;
+import net.freelabs.fidelio.core.serializer.JAXBSerializer;
+import net.freelabs.fidelio.core.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Class that caches on disk the parsed and checked application descriptions.
+ * <p>
+ * An entry holds the application description, after the analysis has
+ * populated the dependents of every container, and the serialized description
+ * of every container, as stored to zookeeper. Entries are keyed by a hash of
+ * the content of the xml file and of the xml schema, the name of the codec and
+ * the program version, so that an entry is never used for a different input.
+ * Redeploying an unchanged description skips validation, un-marshalling,
+ * analysis and serialization of the containers. Entries not used for
+ * {@link #MAX_AGE_DAYS MAX_AGE_DAYS} days are removed.
+ * <p>
+ * Entries that cannot be read are removed and treated as missing.
+ * <p>
+ * The cache directory, and every entry loaded from it, must be owned by the
+ * current user and not writable by other users, so that no other user can
+ * plant an entry. If the cache directory is not such a directory, caching is
+ * disabled.
+ */
+public final class DescriptorCache {
+
+    /**
+     * A Logger object.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(DescriptorCache.class);
+    /**
+     * The name of the default cache directory, under the per-user directory of
+     * the program.
+     */
+    private static final String DEFAULT_DIR_NAME = "descriptor-cache";
+    /**
+     * The extension of cached entries.
+     */
+    private static final String ENTRY_EXT = ".desc.gz";
+    /**
+     * The version of the entry format.
+     */
+    private static final byte VERSION = 1;
+    /**
+     * The number of days an unused entry is kept.
+     */
+    private static final long MAX_AGE_DAYS = 7;
+    /**
+     * The size of the buffer to read files while hashing.
+     */
+    private static final int BUFFER_SIZE = 16 * 1024;
+    /**
+     * The directory of the cached entries. NULL if caching is disabled.
+     */
+    private final Path cacheDir;
+
+    /**
+     * A cached application description.
+     */
+    public static final class Entry {
+
+        /**
+         * The application description.
+         */
+        private final WebApp webApp;
+        /**
+         * Map with the serialized description of every container, with the
+         * service name as key, in declaration order.
+         */
+        private final Map<String, byte[]> conData;
+
+        /**
+         * Constructor.
+         *
+         * @param webApp the application description.
+         * @param conData the serialized description of every container.
+         */
+        private Entry(WebApp webApp, Map<String, byte[]> conData) {
+            this.webApp = webApp;
+            this.conData = conData;
+        }
+
+        /**
+         * @return the application description.
+         */
+        public WebApp getWebApp() {
+            return webApp;
+        }
+
+        /**
+         * @return map with the serialized description of every container, with
+         * the service name as key.
+         */
+        public Map<String, byte[]> getConData() {
+            return Collections.unmodifiableMap(conData);
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param cacheDir the directory of the cached entries. If NULL or empty, a
+     * directory under the per-user directory of the program is used.
+     */
+    public DescriptorCache(String cacheDir) {
+        Path dir;
+        if (cacheDir == null || cacheDir.trim().isEmpty()) {
+            dir = Utils.getUserDir(DEFAULT_DIR_NAME);
+        } else {
+            dir = Paths.get(cacheDir.trim());
+        }
+        if (Utils.createPrivateDir(dir)) {
+            this.cacheDir = dir;
+            removeExpired();
+        } else {
+            LOG.warn("Description cache directory {} cannot be trusted. Descriptions will not be cached.", dir);
+            this.cacheDir = null;
+        }
+    }
+
+    /**
+     * Computes the key of the entry for an application description.
+     *
+     * @param schemaPath the path to the xml schema.
+     * @param xmlFilePath the path to the xml file.
+     * @param codecName the name of the codec of the serialized containers.
+     * @return the key as a hex string or NULL in case of error.
+     */
+    public String computeKey(String schemaPath, String xmlFilePath, String codecName) {
+        try {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IOException(ex);
+            }
+            digest.update((ProgramConf.getVERSION() + ":" + codecName + "\0").getBytes(StandardCharsets.UTF_8));
+            hashFile(digest, Paths.get(schemaPath));
+            hashFile(digest, Paths.get(xmlFilePath));
+
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (IOException ex) {
+            LOG.warn("FAILED to hash application description. Something went wrong: {}", ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Adds the content of a file to a hash.
+     *
+     * @param digest the hash.
+     * @param file the file.
+     * @throws IOException if the file cannot be read.
+     */
+    private static void hashFile(MessageDigest digest, Path file) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Loads a cached entry.
+     *
+     * @param key the key of the entry.
+     * @return the entry or NULL if there is no usable entry.
+     */
+    public Entry load(String key) {
+        if (cacheDir == null) {
+            return null;
+        }
+        Path file = cacheDir.resolve(key + ENTRY_EXT);
+        if (Files.notExists(file, LinkOption.NOFOLLOW_LINKS)) {
+            return null;
+        }
+        if (!Utils.isPrivateFile(file)) {
+            LOG.warn("Ignoring cached description {} that cannot be trusted.", file);
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported entry version: " + version);
+            }
+            WebApp webApp = JAXBSerializer.deserializeToWebApp(readBytes(in));
+            int size = in.readInt();
+            Map<String, byte[]> conData = new LinkedHashMap<>();
+            for (int i = 0; i < size; i++) {
+                String name = in.readUTF();
+                conData.put(name, readBytes(in));
+            }
+            // mark as recently used
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return new Entry(webApp, conData);
+        } catch (IOException | JAXBException ex) {
+            LOG.warn("Removing unreadable cached description {}: {}", file, ex.getMessage());
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ioex) {
+                LOG.warn("FAILED to remove {}. Something went wrong: {}", file, ioex.getMessage());
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Stores an entry. Errors are logged and the entry is not stored.
+     *
+     * @param key the key of the entry.
+     * @param webApp the application description.
+     * @param conData map with the serialized description of every container,
+     * with the service name as key.
+     */
+    public void store(String key, WebApp webApp, Map<String, byte[]> conData) {
+        if (cacheDir == null) {
+            return;
+        }
+        try {
+            byte[] data = JAXBSerializer.serialize(webApp);
+            // write under a temp name, so that a partial entry is never used
+            Path tmp = Files.createTempFile(cacheDir, key, ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(Files.newOutputStream(tmp), BUFFER_SIZE))) {
+                    out.writeByte(VERSION);
+                    writeBytes(out, data);
+                    out.writeInt(conData.size());
+                    for (Map.Entry<String, byte[]> entry : conData.entrySet()) {
+                        out.writeUTF(entry.getKey());
+                        writeBytes(out, entry.getValue());
+                    }
+                }
+                Files.move(tmp, cacheDir.resolve(key + ENTRY_EXT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            LOG.debug("Cached application description {}.", key);
+        } catch (IOException | JAXBException ex) {
+            LOG.warn("FAILED to cache application description. Something went wrong: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Writes a byte array, preceded by its length.
+     *
+     * @param out the stream to write to.
+     * @param data the data to write.
+     * @throws IOException in case of error.
+     */
+    private static void writeBytes(DataOutputStream out, byte[] data) throws IOException {
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    /**
+     * Reads a byte array written with {@link #writeBytes(DataOutputStream,
+     * byte[]) writeBytes}.
+     *
+     * @param in the stream to read from.
+     * @return the data.
+     * @throws IOException if the data are malformed.
+     */
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid length: " + length);
+        }
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return data;
+    }
+
+    /**
+     * Removes cached entries that were not used for {@link #MAX_AGE_DAYS
+     * MAX_AGE_DAYS} days.
+     */
+    private void removeExpired() {
+        long oldest = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(MAX_AGE_DAYS);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(cacheDir, "*" + ENTRY_EXT)) {
+            for (Path entry : stream) {
+                if (Files.getLastModifiedTime(entry).toMillis() < oldest) {
+                    Files.deleteIfExists(entry);
+                    LOG.debug("Removed expired description {}.", entry);
+                }
+            }
+        } catch (IOException ex) {
+            LOG.warn("FAILED to clean description cache. Something went wrong: {}", ex.getMessage());
+        }
+    }
+}
@@ -16,20 +16,38 @@
  */
 package net.freelabs.fidelio.core.xml;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import static javax.xml.XMLConstants.W3C_XML_SCHEMA_NS_URI;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.ValidationEvent;
 import javax.xml.bind.ValidationEventLocator;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import org.slf4j.LoggerFactory;
 import org.slf4j.Logger;
 
 /**
+ * <p>
  * Class that provides methods to un-marshal (bind) xml to java objects.
+ * <p>
+ * The compiled xml schema and the JAXBContext are expensive to create and are
+ * cached, keyed by the package and the schema path. A cached schema is
+ * compiled again if the schema file was modified. The xml file is validated
+ * and un-marshalled in a single streaming pass and all validation errors are
+ * reported together.
  */
 public class XmlProcessor {
 
@@ -37,6 +55,59 @@ public class XmlProcessor {
      * A Logger object.
      */
     private static final Logger LOG = LoggerFactory.getLogger(XmlProcessor.class);
+    /**
+     * Cache with the compiled schemas, with the package name and the schema
+     * path as key.
+     */
+    private static final Map<String, CompiledSchema> CACHE = new ConcurrentHashMap<>();
+    /**
+     * Creates the readers for the xml files. Thread-safe once configured.
+     */
+    private static final XMLInputFactory XML_INPUT = initXmlInputFactory();
+
+    /**
+     * A compiled xml schema and the JAXBContext of its package.
+     */
+    private static final class CompiledSchema {
+
+        /**
+         * The JAXBContext for the classes of the package.
+         */
+        private final JAXBContext context;
+        /**
+         * The compiled xml schema.
+         */
+        private final Schema schema;
+        /**
+         * The time the schema file was last modified when compiled.
+         */
+        private final long lastModified;
+
+        /**
+         * Constructor.
+         *
+         * @param context the JAXBContext for the classes of the package.
+         * @param schema the compiled xml schema.
+         * @param lastModified the time the schema file was last modified.
+         */
+        private CompiledSchema(JAXBContext context, Schema schema, long lastModified) {
+            this.context = context;
+            this.schema = schema;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Initializes the factory of the readers for the xml files.
+     *
+     * @return the {@link XMLInputFactory XMLInputFactory}.
+     */
+    private static XMLInputFactory initXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    }
 
     /**
      * Unmarshals an xml document to java objects (binding) and validates the
@@ -55,64 +126,98 @@ public class XmlProcessor {
         LOG.info("Unmarshalling application description xml file...");
         Object unmarshalled = null;
         try {
-            // create a JAXBContext capable of handling classes generated into
-            // the specified package
-            JAXBContext jc = JAXBContext.newInstance(packageName);
-
-            /* For DEBUGGING.
-             To verify that you created JAXBContext correctly, call JAXBContext.
-             toString(). It will output the list of classes it knows. If a 
-             class is not in this list, the unmarshaller will never return an
-             instance of that class. Make you see all the classes you expect 
-             to be returned from the unmarshaller in the list. If you noticed 
-             that a class is missing, explicitly specify that to JAXBContext.newInstance.
-             If you are binding classes that are generated from XJC, then the 
-             easiest way to include all the classes is to specify the generated
-             ObjectFactory class(es).
-             System.out.println(jc.toString());
-             */
-            // create an Unmarshaller
-            Unmarshaller u = jc.createUnmarshaller();
-
-            /* If you want to validate your document before it is unmarshalled, 
-             JAXB lets you request validation by passing an object of the class 
-             javax.xml.validation.Schema to the Unmarshaller object. First, you
-             create this schema object by setting up a schema factory for the 
-             schema language of your choice. Then you create the Schema object
-             by calling the factory's method newSchema:
-             */
-            SchemaFactory sf = SchemaFactory.newInstance(W3C_XML_SCHEMA_NS_URI);
-            Schema schema = sf.newSchema(new File(schemaPath));
-
-            // After the Unmarshaller object has been established, you pass it the schema.
-            u.setSchema(schema);
-
-            // Set a custom event handler to bypass WARNINGS
-            // DO NOT allow unmarshalling to continue if there are errors
+            // get the compiled schema and context, compile if needed
+            CompiledSchema compiled = getCompiledSchema(packageName, schemaPath);
+            // create an Unmarshaller, cheap compared to the context
+            Unmarshaller u = compiled.context.createUnmarshaller();
+            // validate while unmarshalling
+            u.setSchema(compiled.schema);
+
+            // Show warnings but don't halt. Collect errors and continue, so
+            // that all errors are reported. JAXB reports schema violations as
+            // fatal, malformed xml halts the parser anyway.
+            List<String> errors = new ArrayList<>();
             u.setEventHandler((ValidationEvent ve) -> {
-                // show  warnings but don't halt
+                ValidationEventLocator vel = ve.getLocator();
+                String msg = String.format("[Line: %d, Col: %d]: %s", vel.getLineNumber(),
+                        vel.getColumnNumber(), ve.getMessage());
                 if (ve.getSeverity() == ValidationEvent.WARNING) {
-                    ValidationEventLocator vel = ve.getLocator();
-                    LOG.warn("[Line: {}, Col: {}]: {}", vel.getLineNumber(),
-                            vel.getColumnNumber(), ve.getMessage());
+                    LOG.warn(msg);
                     return true;
-                } else {
-                    return false;
+                }
+                errors.add(msg);
+                return true;
+            });
+
+            // Do the unmarshalling, streaming the xml file
+            try (InputStream in = new BufferedInputStream(new FileInputStream(xmlFilePath))) {
+                XMLStreamReader reader = XML_INPUT.createXMLStreamReader(in);
+                try {
+                    unmarshalled = u.unmarshal(reader);
+                } catch (JAXBException ex) {
+                    if (errors.isEmpty()) {
+                        throw ex;
+                    }
+                } finally {
+                    reader.close();
                 }
             }
-            );
 
-            // Do the unmarshalling
-            unmarshalled = u.unmarshal(new File(xmlFilePath));
+            if (!errors.isEmpty()) {
+                LOG.error("Xml file is NOT valid. Found {} error(s):", errors.size());
+                errors.stream().forEach((error) -> {
+                    LOG.error(error);
+                });
+                unmarshalled = null;
+            }
         } catch (org.xml.sax.SAXException se) {
             LOG.error("Unable to validate due to the following error: {}", se.getMessage());
-            return unmarshalled;
+            return null;
         } catch (JAXBException ex) {
             LOG.error("Something went wrong: {}", ex.toString());
             LOG.trace("Something went wrong: {}", ex);
-            return unmarshalled;
+            return null;
+        } catch (IOException | XMLStreamException ex) {
+            LOG.error("Something went wrong: {}", ex.toString());
+            return null;
         }
 
         return unmarshalled;
     }
+
+    /**
+     * Returns the compiled schema and the JAXBContext of a package, from the
+     * cache. They are created if not cached or if the schema file was
+     * modified since they were created.
+     *
+     * @param packageName the name of the package that contains the classes for
+     * the binding.
+     * @param schemaPath the path of the xml schema.
+     * @return the compiled schema and the JAXBContext.
+     * @throws JAXBException if the context cannot be created.
+     * @throws org.xml.sax.SAXException if the schema cannot be compiled.
+     */
+    private static CompiledSchema getCompiledSchema(String packageName, String schemaPath) throws JAXBException, org.xml.sax.SAXException {
+        File schemaFile = new File(schemaPath);
+        long lastModified = schemaFile.lastModified();
+        String key = packageName + ":" + schemaFile.getAbsolutePath();
+
+        CompiledSchema compiled = CACHE.get(key);
+        if (compiled != null && compiled.lastModified == lastModified) {
+            LOG.debug("Using cached xml schema: {}", schemaPath);
+            return compiled;
+        }
+
+        // create a JAXBContext capable of handling classes generated into
+        // the specified package
+        JAXBContext jc = JAXBContext.newInstance(packageName);
+        // compile the schema, to validate the document while it is unmarshalled
+        SchemaFactory sf = SchemaFactory.newInstance(W3C_XML_SCHEMA_NS_URI);
+        Schema schema = sf.newSchema(schemaFile);
+
+        compiled = new CompiledSchema(jc, schema, lastModified);
+        CACHE.put(key, compiled);
+        LOG.debug("Compiled xml schema: {}", schemaPath);
+        return compiled;
+    }
 }
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.zookeeper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import net.freelabs.fidelio.core.serializer.ServiceNodeCodec;
+import net.freelabs.fidelio.core.zookeeper.ZkNamingServiceNode.SRV_STATE_STATUS;
+
+/**
+ * <p>
+ * Class that holds the status summary of an application: the status of every
+ * service and the time it was set.
+ * <p>
+ * The summary is stored to the {@link #NODE_NAME status} zNode of the
+ * application, so that the status of all services is read with a single
+ * request. Format: {@link ServiceNodeCodec#MAGIC MAGIC} byte, {@link #VERSION
+ * VERSION} byte, time of last update, number of services and, for every
+ * service, the name as modified UTF-8, the status code and the time the
+ * status was set.
+ * <p>
+ * Class is not thread-safe.
+ */
+public final class AppStatus {
+
+    /**
+     * The name of the status zNode, under the root zNode of the application.
+     */
+    public static final String NODE_NAME = "status";
+    /**
+     * The version of the format.
+     */
+    private static final byte VERSION = 1;
+    /**
+     * Map with the status of every service, with the service name as key.
+     */
+    private final Map<String, Entry> services = new TreeMap<>();
+    /**
+     * The time (milliseconds since epoch) of the last update.
+     */
+    private long updated;
+
+    /**
+     * The status of a service and the time it was set.
+     */
+    public static final class Entry {
+
+        /**
+         * The status of the service.
+         */
+        private final SRV_STATE_STATUS status;
+        /**
+         * The time (milliseconds since epoch) the status was set.
+         */
+        private final long since;
+
+        /**
+         * Constructor.
+         *
+         * @param status the status of the service.
+         * @param since the time the status was set.
+         */
+        private Entry(SRV_STATE_STATUS status, long since) {
+            this.status = status;
+            this.since = since;
+        }
+
+        /**
+         * @return the status of the service.
+         */
+        public SRV_STATE_STATUS getStatus() {
+            return status;
+        }
+
+        /**
+         * @return the time (milliseconds since epoch) the status was set.
+         */
+        public long getSince() {
+            return since;
+        }
+    }
+
+    /**
+     * Creates the initial summary of an application, with all services
+     * NOT_RUNNING.
+     *
+     * @param srvNames the names of the services.
+     * @return the summary.
+     */
+    public static AppStatus initial(Collection<String> srvNames) {
+        AppStatus appStatus = new AppStatus();
+        long now = System.currentTimeMillis();
+        srvNames.stream().forEach((srvName) -> {
+            appStatus.set(srvName, SRV_STATE_STATUS.NOT_RUNNING, now);
+        });
+        return appStatus;
+    }
+
+    /**
+     * Sets the status of a service. The time the status was set is kept if
+     * the status does not change.
+     *
+     * @param srvName the name of the service.
+     * @param status the status.
+     * @param time the time (milliseconds since epoch) of the update.
+     * @return true if the status changed.
+     */
+    public boolean set(String srvName, SRV_STATE_STATUS status, long time) {
+        updated = Math.max(updated, time);
+        Entry entry = services.get(srvName);
+        if (entry != null && entry.status == status) {
+            return false;
+        }
+        services.put(srvName, new Entry(status, time));
+        return true;
+    }
+
+    /**
+     * @return map with the status of every service, sorted by service name.
+     */
+    public Map<String, Entry> getServices() {
+        return Collections.unmodifiableMap(services);
+    }
+
+    /**
+     * @return the time (milliseconds since epoch) of the last update.
+     */
+    public long getUpdated() {
+        return updated;
+    }
+
+    /**
+     * Encodes the summary.
+     *
+     * @return the encoded summary.
+     * @throws IOException in case of error.
+     */
+    public byte[] encode() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(16 + services.size() * 32);
+        try (DataOutputStream out = new DataOutputStream(baos)) {
+            out.writeByte(ServiceNodeCodec.MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(updated);
+            out.writeInt(services.size());
+            for (Map.Entry<String, Entry> entry : services.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeByte(ServiceNodeCodec.statusCode(entry.getValue().status));
+                out.writeLong(entry.getValue().since);
+            }
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Decodes a summary. Data that are not an encoded summary, like the
+     * initial data of a zNode, are decoded to an empty summary.
+     *
+     * @param data the data to decode.
+     * @return the summary.
+     * @throws IOException if the summary is malformed or of an unknown
+     * version.
+     */
+    public static AppStatus decode(byte[] data) throws IOException {
+        AppStatus appStatus = new AppStatus();
+        if (!ServiceNodeCodec.isBinary(data)) {
+            return appStatus;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            in.readByte();
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported application status version: " + version);
+            }
+            appStatus.updated = in.readLong();
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                String srvName = in.readUTF();
+                SRV_STATE_STATUS status = ServiceNodeCodec.status(in.readUnsignedByte());
+                long since = in.readLong();
+                appStatus.services.put(srvName, new Entry(status, since));
+            }
+        }
+        return appStatus;
+    }
+}
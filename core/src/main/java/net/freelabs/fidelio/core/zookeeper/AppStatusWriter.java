@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.zookeeper;
+
+import java.io.IOException;
+import java.util.Map;
+import net.freelabs.fidelio.core.zookeeper.ZkNamingServiceNode.SRV_STATE_STATUS;
+import org.apache.zookeeper.AsyncCallback.DataCallback;
+import org.apache.zookeeper.AsyncCallback.StatCallback;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Class that applies service status changes to the {@link AppStatus
+ * AppStatus} zNode of an application.
+ * <p>
+ * The zNode is shared by all the brokers and the master process of an
+ * application. Changes are applied with read-modify-write cycles, where the
+ * write is conditioned on the version read, so that concurrent changes are
+ * never lost. On a version conflict the cycle is repeated.
+ * <p>
+ * Uses the asynchronous API, so it may be called from the zookeeper event
+ * thread. One cycle runs at a time; changes made meanwhile are merged and
+ * applied with the next cycle, in order.
+ */
+public final class AppStatusWriter {
+
+    /**
+     * A Logger object.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(AppStatusWriter.class);
+    /**
+     * The zookeeper client.
+     */
+    private final ZooKeeper zk;
+    /**
+     * The path of the status zNode.
+     */
+    private final String path;
+    /**
+     * Decides when operations that failed due to connection loss are retried.
+     */
+    private final ZkRetryPolicy retryPolicy;
+    /**
+     * The changes not yet applied.
+     */
+    private AppStatus pending = new AppStatus();
+    /**
+     * The changes being applied, NULL if no cycle runs.
+     */
+    private AppStatus inFlight;
+
+    /**
+     * Constructor.
+     *
+     * @param zk the zookeeper client.
+     * @param path the path of the status zNode.
+     * @param retryPolicy decides when operations that failed due to
+     * connection loss are retried.
+     */
+    public AppStatusWriter(ZooKeeper zk, String path, ZkRetryPolicy retryPolicy) {
+        this.zk = zk;
+        this.path = path;
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Resolves the path of the status zNode of an application.
+     *
+     * @param servicesPath the path of the services zNode of the application.
+     * @return the path of the status zNode.
+     */
+    public static String resolvePath(String servicesPath) {
+        return servicesPath.substring(0, servicesPath.lastIndexOf('/')) + "/" + AppStatus.NODE_NAME;
+    }
+
+    /**
+     * Sets the status of a service.
+     *
+     * @param srvName the name of the service.
+     * @param status the new status.
+     */
+    public synchronized void update(String srvName, SRV_STATE_STATUS status) {
+        pending.set(srvName, status, System.currentTimeMillis());
+        if (inFlight == null) {
+            applyNext();
+        }
+    }
+
+    /**
+     * Starts a cycle for the pending changes, if any. Must be called holding
+     * the lock.
+     */
+    private void applyNext() {
+        if (pending.getServices().isEmpty()) {
+            inFlight = null;
+            return;
+        }
+        inFlight = pending;
+        pending = new AppStatus();
+        read();
+    }
+
+    /**
+     * Ends a cycle and starts the next one.
+     */
+    private synchronized void complete() {
+        applyNext();
+    }
+
+    /**
+     * Reads the status zNode.
+     */
+    private void read() {
+        zk.getData(path, false, readCallback, null);
+    }
+
+    /**
+     * Schedules a retry of {@link #read() read}, or ends the cycle if the
+     * retry budget is exhausted.
+     */
+    private void retryRead() {
+        if (!retryPolicy.retryLater("readAppStatus:" + path, this::read)) {
+            complete();
+        }
+    }
+
+    /**
+     * Callback to be used with {@link #read() read} method.
+     */
+    private final DataCallback readCallback = (int rc, String path, Object ctx, byte[] data, Stat stat) -> {
+        switch (KeeperException.Code.get(rc)) {
+            case CONNECTIONLOSS:
+                LOG.warn("Connection loss was detected. Retrying...");
+                retryRead();
+                break;
+            case NONODE:
+                // application deployed by a version without status node
+                LOG.debug("Application status node does NOT exist: {}", path);
+                complete();
+                break;
+            case OK:
+                write(data, stat.getVersion());
+                break;
+            default:
+                LOG.error("Something went wrong: ",
+                        KeeperException.create(KeeperException.Code.get(rc), path));
+                complete();
+        }
+    };
+
+    /**
+     * Applies the changes of the cycle to the status read and writes it, if
+     * the version of the zNode has not changed.
+     *
+     * @param data the data of the status zNode.
+     * @param version the version of the status zNode.
+     */
+    private void write(byte[] data, int version) {
+        byte[] updated;
+        try {
+            AppStatus appStatus = AppStatus.decode(data);
+            boolean changed = false;
+            for (Map.Entry<String, AppStatus.Entry> entry : inFlight.getServices().entrySet()) {
+                changed |= appStatus.set(entry.getKey(), entry.getValue().getStatus(), entry.getValue().getSince());
+            }
+            if (!changed) {
+                complete();
+                return;
+            }
+            updated = appStatus.encode();
+        } catch (IOException ex) {
+            LOG.error("FAILED to update application status. Something went wrong: {}", ex.getMessage());
+            complete();
+            return;
+        }
+        zk.setData(path, updated, version, writeCallback, null);
+    }
+
+    /**
+     * Callback to be used with {@link #write(byte[], int) write} method.
+     */
+    private final StatCallback writeCallback = (int rc, String path, Object ctx, Stat stat) -> {
+        switch (KeeperException.Code.get(rc)) {
+            case CONNECTIONLOSS:
+                LOG.warn("Connection loss was detected. Retrying...");
+                // the write may have been applied, read again
+                retryRead();
+                break;
+            case BADVERSION:
+                // updated concurrently, apply the changes to the new version
+                read();
+                break;
+            case NONODE:
+                LOG.debug("Application status node does NOT exist: {}", path);
+                complete();
+                break;
+            case OK:
+                LOG.debug("Updated application status: {}", path);
+                complete();
+                break;
+            default:
+                LOG.error("Something went wrong: ",
+                        KeeperException.create(KeeperException.Code.get(rc), path));
+                complete();
+        }
+    };
+}
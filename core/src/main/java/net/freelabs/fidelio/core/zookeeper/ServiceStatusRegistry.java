@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.zookeeper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import net.freelabs.fidelio.core.zookeeper.ZkNamingServiceNode.SRV_STATE_STATUS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Class that keeps the status of the services of an application in memory.
+ * <p>
+ * The registry is fed by the watches set on the service zNodes. Every status
+ * is stored with the data version of the zNode it was read from, so that
+ * stale or duplicate notifications are dropped before the zNode data is
+ * de-serialized. A service whose zNode is deleted is NOT_RUNNING.
+ * <p>
+ * Callers may wait until all services reach a status or register listeners to
+ * be notified of status changes. Class is thread-safe.
+ */
+public final class ServiceStatusRegistry {
+
+    /**
+     * A Logger object.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ServiceStatusRegistry.class);
+    /**
+     * The version of a service that has no zNode.
+     */
+    private static final int NO_VERSION = -1;
+    /**
+     * Map with the status of every service, with the service path as key.
+     */
+    private final Map<String, Entry> services = new LinkedHashMap<>();
+    /**
+     * The number of services in every status.
+     */
+    private final Map<SRV_STATE_STATUS, Integer> counts = new EnumMap<>(SRV_STATE_STATUS.class);
+    /**
+     * The listeners notified of status changes.
+     */
+    private final List<StatusListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Listener notified when the status of a service changes.
+     */
+    public interface StatusListener {
+
+        /**
+         * Invoked when the status of a service changes. Invoked from the
+         * zookeeper event thread, must not block.
+         *
+         * @param srvPath the zNode path of the service.
+         * @param oldStatus the previous status.
+         * @param newStatus the new status.
+         */
+        void statusChanged(String srvPath, SRV_STATE_STATUS oldStatus, SRV_STATE_STATUS newStatus);
+    }
+
+    /**
+     * The status of a service along with the zNode version it was read from.
+     */
+    private static final class Entry {
+
+        /**
+         * The status of the service.
+         */
+        private SRV_STATE_STATUS status = SRV_STATE_STATUS.NOT_RUNNING;
+        /**
+         * The data version of the service zNode.
+         */
+        private int version = NO_VERSION;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param srvPaths the zNode paths of the services of the application. All
+     * services are initially NOT_RUNNING.
+     */
+    public ServiceStatusRegistry(Collection<String> srvPaths) {
+        srvPaths.stream().forEach((srvPath) -> {
+            services.put(srvPath, new Entry());
+        });
+        counts.put(SRV_STATE_STATUS.NOT_RUNNING, services.size());
+    }
+
+    /**
+     * Checks if the zNode data of a service with the given version is already
+     * known, in order to skip processing it.
+     *
+     * @param srvPath the zNode path of the service.
+     * @param version the data version of the service zNode.
+     * @return true if the version is older than or equal to the known one.
+     */
+    public synchronized boolean isStale(String srvPath, int version) {
+        Entry entry = services.get(srvPath);
+        return entry != null && version <= entry.version;
+    }
+
+    /**
+     * Updates the status of a service, unless a newer version is already
+     * known.
+     *
+     * @param srvPath the zNode path of the service.
+     * @param status the status read from the service zNode.
+     * @param version the data version of the service zNode.
+     * @return true if the update was applied.
+     */
+    public boolean update(String srvPath, SRV_STATE_STATUS status, int version) {
+        SRV_STATE_STATUS oldStatus;
+        synchronized (this) {
+            Entry entry = services.get(srvPath);
+            if (entry == null) {
+                // a service not declared in the application description
+                entry = new Entry();
+                services.put(srvPath, entry);
+                counts.merge(entry.status, 1, Integer::sum);
+            } else if (version <= entry.version) {
+                LOG.debug("Dropped stale status of {}, version {}.", srvPath, version);
+                return false;
+            }
+            oldStatus = setStatus(entry, status, version);
+        }
+        fireStatusChanged(srvPath, oldStatus, status);
+        return true;
+    }
+
+    /**
+     * Marks a service as NOT_RUNNING, after its zNode was deleted. A zNode
+     * created later for the service is accepted regardless of its version.
+     *
+     * @param srvPath the zNode path of the service.
+     */
+    public void remove(String srvPath) {
+        SRV_STATE_STATUS oldStatus;
+        synchronized (this) {
+            Entry entry = services.get(srvPath);
+            if (entry == null || entry.version == NO_VERSION) {
+                return;
+            }
+            oldStatus = setStatus(entry, SRV_STATE_STATUS.NOT_RUNNING, NO_VERSION);
+        }
+        fireStatusChanged(srvPath, oldStatus, SRV_STATE_STATUS.NOT_RUNNING);
+    }
+
+    /**
+     * Sets the status of a service, updates the counters and wakes up any
+     * waiting threads. Must be called holding the lock.
+     *
+     * @param entry the entry of the service.
+     * @param status the new status.
+     * @param version the new version.
+     * @return the previous status.
+     */
+    private SRV_STATE_STATUS setStatus(Entry entry, SRV_STATE_STATUS status, int version) {
+        SRV_STATE_STATUS oldStatus = entry.status;
+        entry.status = status;
+        entry.version = version;
+        counts.merge(oldStatus, -1, Integer::sum);
+        counts.merge(status, 1, Integer::sum);
+        notifyAll();
+        return oldStatus;
+    }
+
+    /**
+     * Notifies the listeners of a status change.
+     *
+     * @param srvPath the zNode path of the service.
+     * @param oldStatus the previous status.
+     * @param newStatus the new status.
+     */
+    private void fireStatusChanged(String srvPath, SRV_STATE_STATUS oldStatus, SRV_STATE_STATUS newStatus) {
+        if (oldStatus == newStatus) {
+            return;
+        }
+        listeners.stream().forEach((listener) -> {
+            try {
+                listener.statusChanged(srvPath, oldStatus, newStatus);
+            } catch (RuntimeException ex) {
+                LOG.error("Something went wrong: {}", ex.getMessage());
+            }
+        });
+    }
+
+    /**
+     * <p>
+     * Waits until all services have the given status or a timeout occurs,
+     * whichever happens first.
+     * <p>
+     * Method blocks.
+     *
+     * @param status the status to wait for.
+     * @param timeout the maximum time to wait.
+     * @param timeUnit the time unit of the timeout argument.
+     * @return true if all services have the status, false if the timeout
+     * elapsed or the thread was interrupted.
+     */
+    public boolean awaitAll(SRV_STATE_STATUS status, long timeout, TimeUnit timeUnit) {
+        return awaitAll(EnumSet.of(status), timeout, timeUnit);
+    }
+
+    /**
+     * <p>
+     * Waits until all services have one of the given statuses or a timeout
+     * occurs, whichever happens first.
+     * <p>
+     * Method blocks.
+     *
+     * @param statuses the statuses to wait for.
+     * @param timeout the maximum time to wait.
+     * @param timeUnit the time unit of the timeout argument.
+     * @return true if all services have one of the statuses, false if the
+     * timeout elapsed or the thread was interrupted.
+     */
+    public synchronized boolean awaitAll(Set<SRV_STATE_STATUS> statuses, long timeout, TimeUnit timeUnit) {
+        long deadline = System.nanoTime() + timeUnit.toNanos(timeout);
+        try {
+            while (count(statuses) < services.size()) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+            return true;
+        } catch (InterruptedException ex) {
+            // log the event
+            LOG.warn("Thread Interrupted. Stopping");
+            // set the interrupt status
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Counts the services in some statuses. Must be called holding the lock.
+     *
+     * @param statuses the statuses.
+     * @return the number of services in any of the statuses.
+     */
+    private int count(Set<SRV_STATE_STATUS> statuses) {
+        int sum = 0;
+        for (SRV_STATE_STATUS status : statuses) {
+            sum += counts.getOrDefault(status, 0);
+        }
+        return sum;
+    }
+
+    /**
+     * @param srvPath the zNode path of a service.
+     * @return the status of the service or NULL if the service is unknown.
+     */
+    public synchronized SRV_STATE_STATUS getStatus(String srvPath) {
+        Entry entry = services.get(srvPath);
+        return entry == null ? null : entry.status;
+    }
+
+    /**
+     * @return map with the status of every service, with the service path as
+     * key.
+     */
+    public synchronized Map<String, SRV_STATE_STATUS> getStatuses() {
+        Map<String, SRV_STATE_STATUS> statuses = new LinkedHashMap<>();
+        services.entrySet().stream().forEach((entry) -> {
+            statuses.put(entry.getKey(), entry.getValue().status);
+        });
+        return statuses;
+    }
+
+    /**
+     * @param statuses the statuses.
+     * @return the paths of the services that are in none of the statuses.
+     */
+    public synchronized List<String> listNotIn(Set<SRV_STATE_STATUS> statuses) {
+        List<String> srvPaths = new ArrayList<>();
+        services.entrySet().stream().filter((entry) -> (!statuses.contains(entry.getValue().status))).forEach((entry) -> {
+            srvPaths.add(entry.getKey());
+        });
+        return srvPaths;
+    }
+
+    /**
+     * @param statuses the statuses.
+     * @return the number of services in any of the statuses.
+     */
+    public synchronized int countIn(Set<SRV_STATE_STATUS> statuses) {
+        return count(statuses);
+    }
+
+    /**
+     * @return the number of services.
+     */
+    public synchronized int size() {
+        return services.size();
+    }
+
+    /**
+     * Registers a listener to be notified of status changes.
+     *
+     * @param listener the listener.
+     */
+    public void addListener(StatusListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener the listener.
+     */
+    public void removeListener(StatusListener listener) {
+        listeners.remove(listener);
+    }
+}
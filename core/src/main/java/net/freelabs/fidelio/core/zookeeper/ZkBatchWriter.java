@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.zookeeper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.ConnectionLossException;
+import org.apache.zookeeper.KeeperException.NoNodeException;
+import org.apache.zookeeper.KeeperException.NodeExistsException;
+import org.apache.zookeeper.Op;
+import static org.apache.zookeeper.ZooDefs.Ids.OPEN_ACL_UNSAFE;
+import org.apache.zookeeper.ZooKeeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Class that creates a set of zNodes with zookeeper multi-op transactions.
+ * <p>
+ * The zNodes are grouped in batches that stay under the zookeeper request size
+ * limit and every batch is committed with a single round trip. Every batch is
+ * applied atomically. If a batch fails, the batches already committed are
+ * removed, so that either all zNodes are created or none.
+ */
+public final class ZkBatchWriter {
+
+    /**
+     * A Logger object.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ZkBatchWriter.class);
+    /**
+     * The maximum size (bytes) of a batch. Kept well under the default 1MB
+     * limit (jute.maxbuffer) of a zookeeper request.
+     */
+    private static final int MAX_BATCH_BYTES = 512 * 1024;
+    /**
+     * Estimated size (bytes) of an operation, excluding path and data.
+     */
+    private static final int OP_OVERHEAD_BYTES = 64;
+    /**
+     * The zookeeper client.
+     */
+    private final ZooKeeper zk;
+    /**
+     * Decides when operations that failed due to connection loss are retried.
+     */
+    private final ZkRetryPolicy retryPolicy;
+
+    /**
+     * Constructor.
+     *
+     * @param zk the zookeeper client.
+     * @param retryPolicy decides when operations that failed due to
+     * connection loss are retried.
+     */
+    public ZkBatchWriter(ZooKeeper zk, ZkRetryPolicy retryPolicy) {
+        this.zk = zk;
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * <p>
+     * Creates zNodes in batches.
+     * <p>
+     * The zNodes must be ordered so that parents come before their children.
+     * <p>
+     * Method blocks.
+     *
+     * @param nodes the zNodes to create.
+     * @param mode mode for creating the zNodes, persistent, ephemeral etc.
+     * @return true if all zNodes were created. If false, none of the zNodes
+     * was left in zookeeper, unless removal of committed batches also failed.
+     */
+    public boolean createAll(List<ZkNode> nodes, CreateMode mode) {
+        List<List<ZkNode>> batches = createBatches(nodes);
+        List<List<ZkNode>> committed = new ArrayList<>();
+        LOG.debug("Creating {} zNodes in {} batches.", nodes.size(), batches.size());
+
+        for (List<ZkNode> batch : batches) {
+            if (commit(batch, mode)) {
+                committed.add(batch);
+            } else {
+                // remove committed batches to leave no partial namespace
+                rollback(committed);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Groups zNodes in batches, preserving their order, so that the estimated
+     * size of every batch does not exceed {@link #MAX_BATCH_BYTES
+     * MAX_BATCH_BYTES}. A zNode larger than the limit forms a batch of its
+     * own.
+     *
+     * @param nodes the zNodes to group.
+     * @return the batches.
+     */
+    private static List<List<ZkNode>> createBatches(List<ZkNode> nodes) {
+        List<List<ZkNode>> batches = new ArrayList<>();
+        List<ZkNode> batch = new ArrayList<>();
+        int batchSize = 0;
+
+        for (ZkNode node : nodes) {
+            int size = estimateSize(node);
+            if (!batch.isEmpty() && batchSize + size > MAX_BATCH_BYTES) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchSize = 0;
+            }
+            batch.add(node);
+            batchSize += size;
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    /**
+     * @param node a zNode.
+     * @return the estimated size (bytes) of the operation that creates the
+     * zNode.
+     */
+    private static int estimateSize(ZkNode node) {
+        int dataSize = node.getData() == null ? 0 : node.getData().length;
+        return node.getPath().getBytes(StandardCharsets.UTF_8).length + dataSize + OP_OVERHEAD_BYTES;
+    }
+
+    /**
+     * Commits a batch of zNodes as a single transaction. On connection loss,
+     * the first zNode of the batch is checked to find out if the transaction
+     * was applied, since a transaction is applied as a whole or not at all.
+     *
+     * @param batch the zNodes to create.
+     * @param mode mode for creating the zNodes.
+     * @return true if the transaction was applied.
+     */
+    private boolean commit(List<ZkNode> batch, CreateMode mode) {
+        List<Op> ops = new ArrayList<>();
+        batch.stream().forEach((node) -> {
+            ops.add(Op.create(node.getPath(), node.getData(), OPEN_ACL_UNSAFE, mode));
+        });
+
+        ZkRetryPolicy.Retry retry = retryPolicy.newRetry();
+        while (true) {
+            try {
+                zk.multi(ops);
+                LOG.debug("Created batch of {} zNodes.", batch.size());
+                return true;
+            } catch (NodeExistsException ex) {
+                // node exists while shoudln't
+                LOG.error("Node exists: " + ex.getPath());
+                return false;
+            } catch (ConnectionLossException ex) {
+                LOG.warn("Connection loss was detected. Retrying...");
+                if (!retry.backoff()) {
+                    return false;
+                }
+                // check if the transaction was applied
+                Boolean applied = isCreated(batch.get(0));
+                if (applied == null) {
+                    return false;
+                } else if (applied) {
+                    return true;
+                }
+            } catch (KeeperException ex) {
+                LOG.error("Something went wrong: ", ex);
+                return false;
+            } catch (InterruptedException ex) {
+                // log the event
+                LOG.warn("Thread Interruped. Stopping.");
+                // set the interrupt status
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Checks if a zNode was created by this client, by comparing its stored
+     * data with the initialization data for that zNode.
+     *
+     * @param node the zNode to check.
+     * @return true if the zNode was created by this client, false if it does
+     * not exist and NULL in case of error or if the zNode was created by
+     * another client.
+     */
+    private Boolean isCreated(ZkNode node) {
+        ZkRetryPolicy.Retry retry = retryPolicy.newRetry();
+        while (true) {
+            try {
+                byte[] data = zk.getData(node.getPath(), false, null);
+                if (Arrays.equals(data, node.getData())) {
+                    return true;
+                }
+                LOG.error("ΖkNode exists but was NOT created by this client: " + node.getPath());
+                return null;
+            } catch (NoNodeException ex) {
+                return false;
+            } catch (ConnectionLossException ex) {
+                LOG.warn("Connection loss was detected. Retrying...");
+                if (!retry.backoff()) {
+                    return null;
+                }
+            } catch (KeeperException ex) {
+                LOG.error("Something went wrong: ", ex);
+                return null;
+            } catch (InterruptedException ex) {
+                // log the event
+                LOG.warn("Thread Interruped. Stopping.");
+                // set the interrupt status
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Removes committed batches, in reverse order so that children are removed
+     * before their parents.
+     *
+     * @param committed the committed batches.
+     */
+    private void rollback(List<List<ZkNode>> committed) {
+        for (int i = committed.size() - 1; i >= 0; i--) {
+            List<ZkNode> batch = committed.get(i);
+            List<Op> ops = new ArrayList<>();
+            for (int j = batch.size() - 1; j >= 0; j--) {
+                ops.add(Op.delete(batch.get(j).getPath(), -1));
+            }
+
+            ZkRetryPolicy.Retry retry = retryPolicy.newRetry();
+            while (true) {
+                try {
+                    zk.multi(ops);
+                    LOG.debug("Removed batch of {} zNodes.", batch.size());
+                    break;
+                } catch (NoNodeException ex) {
+                    // batch was removed before connection loss
+                    break;
+                } catch (ConnectionLossException ex) {
+                    LOG.warn("Connection loss was detected. Retrying...");
+                    if (!retry.backoff()) {
+                        return;
+                    }
+                } catch (KeeperException ex) {
+                    LOG.error("FAILED to remove created zNodes. Something went wrong: ", ex);
+                    return;
+                } catch (InterruptedException ex) {
+                    // log the event
+                    LOG.warn("Thread Interruped. Stopping.");
+                    // set the interrupt status
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -64,6 +64,10 @@ public final class ZkConf {
      * application deployment to zookeeper service.
      */
     private ZkNode zkConf;
+    /**
+     * The zkNode with the status summary of the application services.
+     */
+    private ZkNode appStatus;
     /**
      * The application description.
      */
@@ -177,6 +181,11 @@ public final class ZkConf {
         name = "zkConf";
         zkConf = new ZkNode(path, suffix.getBytes(), name, "");
         zkAppNamespace.add(zkConf);
+        // create zkNode for the status summary
+        path = rootPath + "/" + AppStatus.NODE_NAME;
+        name = AppStatus.NODE_NAME;
+        appStatus = new ZkNode(path, suffix.getBytes(), name, "");
+        zkAppNamespace.add(appStatus);
         // create Lists-Maps
         containerTypes = new ArrayList<>();
         containers = new HashMap<>();
@@ -285,6 +294,10 @@ public final class ZkConf {
         return zkConf;
     }
 
+    public ZkNode getAppStatus() {
+        return appStatus;
+    }
+
     public List<ZkNode> getContainerTypes() {
         return containerTypes;
     }
@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.zookeeper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.zookeeper.AsyncCallback.DataCallback;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Class that stores the serialized {@link ZkConf ZkConf} of an application to
+ * zookeeper, compressed and split in chunks.
+ * <p>
+ * The zkConf zNode holds a manifest: {@link #MAGIC MAGIC} byte, {@link
+ * #VERSION VERSION} byte, the size of the serialized configuration, the size
+ * of the compressed configuration, the number of chunks and a CRC32 checksum
+ * of the compressed configuration. The compressed configuration is stored to
+ * the children of the zkConf zNode, every child holding up to {@link
+ * #CHUNK_SIZE CHUNK_SIZE} bytes.
+ * <p>
+ * The chunks are downloaded with pipelined requests and reassembled. A zkConf
+ * zNode that does not hold a manifest holds the legacy xml configuration and
+ * is returned as is.
+ */
+public final class ZkConfStore {
+
+    /**
+     * A Logger object.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ZkConfStore.class);
+    /**
+     * The first byte of a manifest.
+     */
+    private static final byte MAGIC = (byte) 0xF5;
+    /**
+     * The version of the manifest format.
+     */
+    private static final byte VERSION = 1;
+    /**
+     * The maximum size (bytes) of a chunk.
+     */
+    private static final int CHUNK_SIZE = 256 * 1024;
+    /**
+     * The name prefix of the chunk zNodes.
+     */
+    private static final String CHUNK_PREFIX = "chunk-";
+    /**
+     * The time (seconds) to wait for the chunks to be downloaded.
+     */
+    private static final long DOWNLOAD_TIMEOUT = 60;
+
+    /**
+     * Private constructor. Class has only static methods.
+     */
+    private ZkConfStore() {
+    }
+
+    /**
+     * <p>
+     * Prepares the zkConf zNode and its chunk zNodes for a serialized
+     * configuration.
+     * <p>
+     * Sets the manifest as data of the zkConf zNode and adds the chunk zNodes
+     * to the namespace of the application, after the zkConf zNode.
+     *
+     * @param zkConf the configuration of the application.
+     * @param data the serialized configuration.
+     * @throws IOException if compression fails.
+     */
+    public static void store(ZkConf zkConf, byte[] data) throws IOException {
+        // compress
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(baos)) {
+            gzip.write(data);
+        }
+        byte[] compressed = baos.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(compressed);
+        int chunks = Math.max(1, (compressed.length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+
+        // create manifest
+        ZkNode zkConfNode = zkConf.getZkConf();
+        ByteArrayOutputStream manifest = new ByteArrayOutputStream(32);
+        try (DataOutputStream out = new DataOutputStream(manifest)) {
+            out.writeByte(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(data.length);
+            out.writeInt(compressed.length);
+            out.writeInt(chunks);
+            out.writeLong(crc.getValue());
+        }
+        zkConfNode.setData(manifest.toByteArray());
+
+        // create chunks
+        for (int i = 0; i < chunks; i++) {
+            int from = i * CHUNK_SIZE;
+            int to = Math.min(from + CHUNK_SIZE, compressed.length);
+            byte[] chunk = new byte[to - from];
+            System.arraycopy(compressed, from, chunk, 0, chunk.length);
+            String name = chunkName(i);
+            zkConf.getZkAppNamespace().add(new ZkNode(zkConfNode.getPath() + "/" + name, chunk, name, ""));
+        }
+        LOG.debug("Application configuration: {} bytes, {} compressed, {} chunks.", data.length, compressed.length, chunks);
+    }
+
+    /**
+     * <p>
+     * Downloads the serialized configuration of an application.
+     * <p>
+     * Method blocks.
+     *
+     * @param master the master process, connected to zookeeper.
+     * @param path the path of the zkConf zNode.
+     * @return the serialized configuration, or NULL in case of error.
+     */
+    public static byte[] load(ZkMaster master, String path) {
+        byte[] manifest = master.nodeData(path, null);
+        if (manifest == null) {
+            return null;
+        }
+        return load(manifest, (chunks) -> downloadChunks(master, path, chunks));
+    }
+
+    /**
+     * Reassembles the serialized configuration of an application from its
+     * chunks and verifies it against the manifest.
+     *
+     * @param manifest the data of the zkConf zNode.
+     * @param download downloads the given number of chunks and returns them in
+     * order, or NULL in case of error.
+     * @return the serialized configuration, or NULL in case of error.
+     */
+    static byte[] load(byte[] manifest, IntFunction<byte[][]> download) {
+        if (manifest.length == 0 || manifest[0] != MAGIC) {
+            // legacy configuration, stored as a whole
+            return manifest;
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(manifest))) {
+            in.readByte();
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                LOG.error("Unsupported application configuration version: {}", version);
+                return null;
+            }
+            int size = in.readInt();
+            int compressedSize = in.readInt();
+            int chunks = in.readInt();
+            long checksum = in.readLong();
+            if (size < 0 || compressedSize < 0 || chunks < 1) {
+                LOG.error("Application configuration is corrupted. Invalid manifest.");
+                return null;
+            }
+
+            // download chunks
+            byte[][] parts = download.apply(chunks);
+            if (parts == null) {
+                return null;
+            }
+            // reassemble and verify
+            byte[] compressed = new byte[compressedSize];
+            int offset = 0;
+            for (byte[] part : parts) {
+                if (offset + part.length > compressedSize) {
+                    LOG.error("Application configuration is corrupted. Chunks exceed the size in manifest.");
+                    return null;
+                }
+                System.arraycopy(part, 0, compressed, offset, part.length);
+                offset += part.length;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(compressed, 0, offset);
+            if (offset != compressedSize || crc.getValue() != checksum) {
+                LOG.error("Application configuration is corrupted. Checksum mismatch.");
+                return null;
+            }
+            // decompress
+            return decompress(compressed, size);
+        } catch (IOException ex) {
+            LOG.error("FAILED to read application configuration. Something went wrong: {}", ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Downloads the chunks of the configuration. The requests are sent
+     * without waiting for the responses.
+     *
+     * @param master the master process, connected to zookeeper.
+     * @param path the path of the zkConf zNode.
+     * @param chunks the number of chunks.
+     * @return the chunks, in order, or NULL in case of error.
+     */
+    private static byte[][] downloadChunks(ZkMaster master, String path, int chunks) {
+        byte[][] parts = new byte[chunks][];
+        CountDownLatch done = new CountDownLatch(chunks);
+        AtomicBoolean error = new AtomicBoolean();
+
+        DataCallback cb = new DataCallback() {
+            @Override
+            public void processResult(int rc, String chunkPath, Object ctx, byte[] data, Stat stat) {
+                switch (KeeperException.Code.get(rc)) {
+                    case CONNECTIONLOSS:
+                        LOG.warn("Connection loss was detected. Retrying...");
+                        if (master.getRetryPolicy().retryLater("getChunk:" + chunkPath, () -> master.getDataAsync(chunkPath, false, this, ctx))) {
+                            return;
+                        }
+                        error.set(true);
+                        break;
+                    case OK:
+                        parts[(Integer) ctx] = data;
+                        break;
+                    default:
+                        error.set(true);
+                        LOG.error("Something went wrong: ",
+                                KeeperException.create(KeeperException.Code.get(rc), chunkPath));
+                }
+                done.countDown();
+            }
+        };
+
+        for (int i = 0; i < chunks; i++) {
+            master.getDataAsync(path + "/" + chunkName(i), false, cb, i);
+        }
+        try {
+            if (!done.await(DOWNLOAD_TIMEOUT, TimeUnit.SECONDS)) {
+                LOG.error("Application configuration download timed out.");
+                return null;
+            }
+        } catch (InterruptedException ex) {
+            // log the event
+            LOG.warn("Thread Interrupted. Stopping");
+            // set the interrupt status
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        return error.get() ? null : parts;
+    }
+
+    /**
+     * Decompresses the configuration.
+     *
+     * @param compressed the compressed configuration.
+     * @param size the size of the decompressed configuration.
+     * @return the decompressed configuration.
+     * @throws IOException if decompression fails or the size does not match.
+     */
+    private static byte[] decompress(byte[] compressed, int size) throws IOException {
+        byte[] data = new byte[size];
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            int offset = 0;
+            int read;
+            while (offset < size && (read = in.read(data, offset, size - offset)) != -1) {
+                offset += read;
+            }
+            if (offset != size || in.read() != -1) {
+                throw new IOException("Size of application configuration does not match manifest.");
+            }
+        }
+        return data;
+    }
+
+    /**
+     * @param index the index of a chunk.
+     * @return the name of the chunk zNode.
+     */
+    private static String chunkName(int index) {
+        return String.format("%s%04d", CHUNK_PREFIX, index);
+    }
+}
@@ -35,6 +35,10 @@ public class ZkConnectionWatcher implements Watcher {
      * A zookeeper handle.
      */
     protected ZooKeeper zk;
+    /**
+     * Decides when operations that failed due to connection loss are retried.
+     */
+    protected final ZkRetryPolicy retryPolicy = new ZkRetryPolicy();
     /**
      * The zookeeper host:port list.
      */
@@ -117,6 +121,18 @@ public class ZkConnectionWatcher implements Watcher {
      * @throws java.lang.InterruptedException if thread is interrupted.
      */
     public void closeSession() throws InterruptedException {
-        zk.close();
+        LOG.debug("Zookeeper session closed. Connection loss {}.", retryPolicy);
+        // no session if the client could not be created
+        if (zk != null) {
+            zk.close();
+        }
+    }
+
+    /**
+     * @return the retry policy for operations that failed due to connection
+     * loss.
+     */
+    public ZkRetryPolicy getRetryPolicy() {
+        return retryPolicy;
     }
 }
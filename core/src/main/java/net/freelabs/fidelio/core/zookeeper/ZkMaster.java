@@ -19,10 +19,13 @@ package net.freelabs.fidelio.core.zookeeper;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import net.freelabs.fidelio.core.zookeeper.ZkNamingServiceNode.SRV_STATE_STATUS;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import org.apache.zookeeper.AsyncCallback.DataCallback;
@@ -41,6 +44,7 @@ import org.apache.zookeeper.Watcher;
 import static org.apache.zookeeper.Watcher.Event.EventType.NodeChildrenChanged;
 import static org.apache.zookeeper.Watcher.Event.EventType.NodeCreated;
 import static org.apache.zookeeper.Watcher.Event.EventType.NodeDataChanged;
+import static org.apache.zookeeper.Watcher.Event.EventType.NodeDeleted;
 import static org.apache.zookeeper.ZooDefs.Ids.OPEN_ACL_UNSAFE;
 import org.apache.zookeeper.ZooKeeper;
 import org.apache.zookeeper.data.ACL;
@@ -80,11 +84,26 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
      * Indicates if there was an error during initialization of the Master
      * process. If so, then the master process is not properly initialized.
      */
-    private boolean masterError;
+    private volatile boolean masterError;
     /**
-     * List of running services.
+     * Set of running services, as last read from the services zNode. The set
+     * is replaced, never modified, on every change.
      */
-    private volatile List<String> servicesCache;
+    private volatile Set<String> servicesCache;
+    /**
+     * The number of running services when the watch on the services zNode was
+     * set.
+     */
+    private volatile int servicesTotal;
+    /**
+     * The status of the application services, fed by the watches set on the
+     * service zNodes.
+     */
+    private final ServiceStatusRegistry srvRegistry;
+    /**
+     * Applies status changes to the status summary of the application.
+     */
+    private AppStatusWriter appStatusWriter;
     /**
      * A Logger object.
      */
@@ -101,7 +120,8 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
         // initialize sub-class
         this.zkConf = zkConf;
         this.ns = new ZkNamingService(zkConf.getServices().getPath());
-        servicesCache = new ArrayList<>();
+        servicesCache = Collections.emptySet();
+        srvRegistry = new ServiceStatusRegistry(ns.resolveServicePaths(new ArrayList<>(zkConf.getContainers().keySet())));
     }
 
     @Override
@@ -129,6 +149,7 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
 
         if (!masterError) {
             // set watch for services
+            setSrvWatch();
             // notify callers that master finished processing
             masterInitSignal.countDown();
             // wait until it's time for shutdown
@@ -161,13 +182,15 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
 
     /**
      * Creates the zookeeper hierarchical namespace defined for the application.
+     * The namespace is created with multi-op transactions, as a whole or not
+     * at all.
      */
     private void createZkNamespace() {
         LOG.info("Creating application namespace in zookeeper...");
-        for (ZkNode node : zkConf.getZkAppNamespace()) {
-            if (!masterError) {
-                createNode(node.getPath(), node.getData(), PERSISTENT);
-            }
+        ZkBatchWriter writer = new ZkBatchWriter(zk, retryPolicy);
+        boolean created = writer.createAll(zkConf.getZkAppNamespace(), PERSISTENT);
+        if (!created) {
+            masterError = true;
         }
     }
 
@@ -179,6 +202,7 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
      */
     private String createNode(String zkPath, byte[] data, CreateMode mode) {
         String nodePath = null;
+        ZkRetryPolicy.Retry retry = retryPolicy.newRetry();
         while (!masterError) {
             try {
                 nodePath = zk.create(zkPath, data, OPEN_ACL_UNSAFE, mode);
@@ -190,6 +214,10 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
                 masterError = true;
             } catch (ConnectionLossException e) {
                 LOG.warn("Connection loss was detected. Retrying...");
+                if (!retry.backoff()) {
+                    masterError = true;
+                    break;
+                }
             } catch (KeeperException ex) {
                 LOG.error("Something went wrong: ", ex);
                 masterError = true;
@@ -217,6 +245,7 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
      * @param data the data of the zNode.
      */
     private boolean checkNode(String zkPath, byte[] setData) {
+        ZkRetryPolicy.Retry retry = retryPolicy.newRetry();
         while (true) {
             try {
                 Stat stat = new Stat();
@@ -235,6 +264,10 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
                 break;
             } catch (ConnectionLossException e) {
                 LOG.warn("Connection loss was detected. Retrying...");
+                if (!retry.backoff()) {
+                    masterError = true;
+                    break;
+                }
             } catch (KeeperException ex) {
                 LOG.error("Something went wrong: ", ex);
                 masterError = true;
@@ -307,6 +340,7 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
      * @return true if zNode exists.
      */
     public boolean nodeExists(String path) {
+        ZkRetryPolicy.Retry retry = retryPolicy.newRetry();
         while (true) {
             try {
                 Stat stat = zk.exists(path, null);
@@ -318,6 +352,10 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
                 }
             } catch (ConnectionLossException e) {
                 LOG.warn("Connection loss was detected. Retrying...");
+                if (!retry.backoff()) {
+                    masterError = true;
+                    break;
+                }
             } catch (KeeperException ex) {
                 LOG.error("Something went wrong: ", ex);
                 masterError = true;
@@ -343,8 +381,27 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
      * in case there are no children, NULL if an error occurred.
      */
     public List<String> watchServices() {
+        List<String> children = getServicesWithWatch();
+        if (children != null) {
+            // the set against which changes are diffed
+            servicesCache = Collections.unmodifiableSet(new HashSet<>(children));
+            servicesTotal = children.size();
+        }
+        return children;
+    }
+
+    /**
+     * Gets the children of application services node and registers the
+     * {@link #childrenWatcher childrenWatcher}. If an error occurs, the {@link
+     * #masterError masterError} flag is set to true.
+     *
+     * @return the list of children of application services node. An empty list
+     * in case there are no children, NULL if an error occurred.
+     */
+    private List<String> getServicesWithWatch() {
         // make a get children call to leave watch for node's children
         List<String> children = null;
+        ZkRetryPolicy.Retry retry = retryPolicy.newRetry();
         while (true) {
             try {
                 children = zk.getChildren(zkConf.getServices().getPath(), childrenWatcher);
@@ -358,6 +415,10 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
                 break;
             } catch (ConnectionLossException ex) {
                 LOG.warn("Connection loss was detected! Retrying...");
+                if (!retry.backoff()) {
+                    masterError = true;
+                    break;
+                }
             } catch (NoNodeException ex) {
                 masterError = true;
                 LOG.error("Node does NOT exist: {}", ex.getMessage());
@@ -380,6 +441,7 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
     public List<String> getRunningServices() {
         // make a get children call to leave watch for node's children
         List<String> children = null;
+        ZkRetryPolicy.Retry retry = retryPolicy.newRetry();
         while (true) {
             try {
                 children = zk.getChildren(zkConf.getServices().getPath(), null);
@@ -392,6 +454,9 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
                 break;
             } catch (ConnectionLossException ex) {
                 LOG.warn("Connection loss was detected! Retrying...");
+                if (!retry.backoff()) {
+                    break;
+                }
             } catch (NoNodeException ex) {
                 LOG.error("Node does NOT exist: {}", ex.getMessage());
                 break;
@@ -409,21 +474,19 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
     public final Watcher childrenWatcher = (WatchedEvent event) -> {
         LOG.debug(event.getType() + ", " + event.getPath());
         // re-set watch
-        List<String> children = watchServices();
+        List<String> children = getServicesWithWatch();
 
         // if no error
         if (children != null) {
             if (event.getType() == NodeChildrenChanged) {
+                // check which service(s) started or stopped
+                Set<String> running = diffServices(servicesCache, children);
+                servicesCache = running;
                 // if no children exist
-                if (children.isEmpty()) {
-                    printStoppedSrvs(children, servicesCache);
+                if (running.isEmpty()) {
                     LOG.info("All services stopped.");
                     servicesStopped.countDown();
-                } else {
-                    // services still exist, check which service(s) stopped
-                    printStoppedSrvs(children, servicesCache);
                 }
-                servicesCache = children;
             }
         } else {
             LOG.error("Received INVALID list of running services.");
@@ -432,36 +495,57 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
     };
 
     /**
-     * Prints stopped services. The method accepts two lists. The srcList is
-     * checked against the trgList. If srcList has less elements than the
-     * trgList, them the elements of trgList that are not included in srcList
-     * are printed.
+     * Diffs the running services against the previously known ones and logs
+     * the services that stopped or started. Runs in time linear to the
+     * number of services.
      *
-     * @param srcList the list of elements to check.
-     * @param trgList the list of elements to check against.
-     */
-    private void printStoppedSrvs(List<String> srcList, List<String> trgList) {
-        // if there are nodes not included in srcList
-        if (!srcList.containsAll(trgList)) {
-            // create the difference of lists
-            List<String> diff = trgList;
-            // get the difference of two lists
-            diff.removeAll(srcList);
-            // print diff
-            for (String srv : diff) {
-                String[] tokens = srv.split("/");
-                int size = tokens.length;
-                String name = tokens[size - 1];
-                LOG.info("Service {} stopped.", name);
+     * @param previous the previously known running services.
+     * @param children the children of application services node.
+     * @return the set of running services.
+     */
+    private Set<String> diffServices(Set<String> previous, List<String> children) {
+        Set<String> running = new HashSet<>(children);
+        // services stopped
+        int stopped = 0;
+        for (String srv : previous) {
+            if (!running.contains(srv)) {
+                stopped++;
+                LOG.info("Service {} stopped.", ns.resolveSrvPath(srv));
+                // a stopped service may not have updated its status
+                getAppStatusWriter().update(ns.resolveSrvPath(srv), SRV_STATE_STATUS.NOT_RUNNING);
             }
         }
+        // services started
+        for (String srv : running) {
+            if (!previous.contains(srv)) {
+                LOG.info("Service {} started.", ns.resolveSrvPath(srv));
+            }
+        }
+        if (stopped > 0) {
+            LOG.info("Services running: {} of {}.", running.size(), Math.max(servicesTotal, running.size()));
+        }
+        return Collections.unmodifiableSet(running);
+    }
+
+    /**
+     * @return the names of the running services, as last read from the
+     * services zNode.
+     */
+    public List<String> getRunningServicesCache() {
+        List<String> names = new ArrayList<>();
+        servicesCache.stream().forEach((srv) -> {
+            names.add(ns.resolveSrvPath(srv));
+        });
+        Collections.sort(names);
+        return names;
     }
 
     /**
      * Waits until all application services have stopped or a timeout occurs,
      * whichever happens first.
      *
-     * @param services list of services to wait to closeSession.
+     * @param services list of services to wait to stop, as returned by
+     * {@link #watchServices() watchServices}.
      * @param timeout the maximum time to wait
      * @param timeUnit the time unit of the timeout argument
      * @return true if all services stopped. False in case an error occurred.
@@ -469,15 +553,14 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
     public boolean waitServicesToStop(List<String> services, long timeout, TimeUnit timeUnit) {
         boolean stopped = false;
         LOG.info("Stopping services...");
-        // get services running
-        servicesCache = services;
+        // the running services are tracked since the watch was set
 
-        if (servicesCache != null) {
-            if (!servicesCache.isEmpty()) {
+        if (services != null) {
+            if (!services.isEmpty()) {
                 try {
                     stopped = servicesStopped.await(timeout, timeUnit);
                     if (!stopped) {
-                        LOG.warn("Some services are still running!");
+                        LOG.warn("Some services are still running: {}", getRunningServicesCache());
                     } else {
                         // sleep for 1s cause if containers's state is checked immediately
                         // state of the last one may be found running but it will have terminated
@@ -510,6 +593,7 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
      * @return data of the zNode. Null in case of error.
      */
     public byte[] nodeData(String path, Stat stat) {
+        ZkRetryPolicy.Retry retry = retryPolicy.newRetry();
         while (true) {
             try {
                 byte[] data = zk.getData(path, false, stat);
@@ -519,6 +603,10 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
                 break;
             } catch (ConnectionLossException e) {
                 LOG.warn("Connection loss was detected. Retrying...");
+                if (!retry.backoff()) {
+                    masterError = true;
+                    break;
+                }
             } catch (KeeperException ex) {
                 LOG.error("Something went wrong: ", ex);
                 masterError = true;
@@ -535,6 +623,41 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
         return null;
     }
 
+    /**
+     * Gets data from a zNode and leaves a watch on it.
+     *
+     * @param path the path of the zNode to get data.
+     * @param watcher the watcher to leave on the zNode, NULL for no watch.
+     * @return data of the zNode. Null if the zNode does not exist or in case
+     * of error.
+     */
+    public byte[] watchNodeData(String path, Watcher watcher) {
+        ZkRetryPolicy.Retry retry = retryPolicy.newRetry();
+        while (true) {
+            try {
+                return zk.getData(path, watcher, null);
+            } catch (NoNodeException e) {
+                LOG.error("Node does NOT exist: {}", path);
+                break;
+            } catch (ConnectionLossException e) {
+                LOG.warn("Connection loss was detected. Retrying...");
+                if (!retry.backoff()) {
+                    break;
+                }
+            } catch (KeeperException ex) {
+                LOG.error("Something went wrong: ", ex);
+                break;
+            } catch (InterruptedException ex) {
+                // log the event
+                LOG.warn("Thread Interruped. Stopping.");
+                // set the interrupt status
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return null;
+    }
+
     /**
      * Sets watch for services.
      */
@@ -548,6 +671,21 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
         }
     }
 
+    /**
+     * Schedules a retry of an asynchronous operation that failed due to
+     * connection loss. If the retry budget of the operation is exhausted, the
+     * {@link #masterError masterError} flag is set to true.
+     *
+     * @param key identifies the operation to the retry policy.
+     * @param op the operation to retry.
+     */
+    private void retryOrFail(String key, Runnable op) {
+        if (!retryPolicy.retryLater(key, op)) {
+            LOG.error("Gave up retrying {}. Zookeeper is unreachable.", key);
+            masterError = true;
+        }
+    }
+
     /**
      * Initiates a zk exists operation on a service zNode.
      *
@@ -563,14 +701,15 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
     private final StatCallback srvExistsCallback = (int rc, String path, Object ctx, Stat stat) -> {
         switch (KeeperException.Code.get(rc)) {
             case CONNECTIONLOSS:
-                srvExists(path);
+                LOG.warn("Connection loss was detected. Retrying...");
+                retryOrFail("srvExists:" + path, () -> srvExists(path));
                 break;
             case NONODE:
-                LOG.info("Watch registered on: " + path);
+                LOG.debug("Watch registered on: " + path);
                 break;
             case OK:
-                LOG.error("Node exists: " + path);
-                masterError = true;
+                // service already registered, get its status
+                getSrvData(path);
                 break;
             default:
                 LOG.error("Something went wrong: ",
@@ -582,7 +721,7 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
      * A watcher to process a watch notification for shutdown node.
      */
     private final Watcher srvExistsnWatcher = (WatchedEvent event) -> {
-        LOG.info(event.getType() + ", " + event.getPath());
+        LOG.debug(event.getType() + ", " + event.getPath());
 
         if (event.getType() == NodeCreated) {
             getSrvData(event.getPath());
@@ -606,14 +745,21 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
         switch (KeeperException.Code.get(rc)) {
             case CONNECTIONLOSS:
                 LOG.warn("Connection loss was detected");
-                getSrvData(path);
+                retryOrFail("getSrvData:" + path, () -> getSrvData(path));
                 break;
             case NONODE:
-                LOG.error("No service: " + path);
+                // service zNode deleted, wait for it to be re-created
+                getSrvRegistry().remove(path);
+                srvExists(path);
                 break;
             case OK:
-                // process retrieved data from requested service zNode
-                processSrvData(data, path);
+                // skip notifications for data already processed
+                if (getSrvRegistry().isStale(path, stat.getVersion())) {
+                    LOG.debug("Dropped stale service update: {}, version {}", path, stat.getVersion());
+                } else {
+                    // process retrieved data from requested service zNode
+                    processSrvData(data, path, stat.getVersion());
+                }
                 break;
             default:
                 LOG.error("Something went wrong: ",
@@ -629,12 +775,19 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
      * offering that service.
      *
      * @param data the data from a service zNode to process.
-     * @param path the path of the service zNode.
+     * @param srvPath the path of the service zNode.
+     * @param version the data version of the service zNode.
      */
-    private void processSrvData(byte[] data, String srvPath) {
+    private void processSrvData(byte[] data, String srvPath, int version) {
         // de-serialize service node
         ZkNamingServiceNode node = ns.deserializeZkSrvNode(srvPath, data);
-        LOG.info("Service update: {}\tStatus: {}", srvPath, node.getStatus().toString());
+        if (node == null) {
+            return;
+        }
+        // update the status of the service
+        if (srvRegistry.update(srvPath, node.getStatus(), version)) {
+            LOG.info("Service update: {}\tStatus: {}", srvPath, node.getStatus().toString());
+        }
     }
 
     /**
@@ -644,82 +797,28 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
     private final Watcher getSrvDataWatcher = (WatchedEvent event) -> {
         if (event.getType() == NodeDataChanged) {
             getSrvData(event.getPath());
+        } else if (event.getType() == NodeDeleted) {
+            // service stopped, wait for it to be re-created
+            getSrvRegistry().remove(event.getPath());
+            srvExists(event.getPath());
         }
     };
 
-    /**
-     * <p>
-     * Returns a list of all the nodes of a zookeeper namespace hierarchy.
-     * <p>
-     * The method is called with a rootNode argument and returns a list of all
-     * the nodes under this rootNode (including rootNode). The children of every
-     * node are returned first!
-     *
-     * @param node the root node of the zookeeper namespace for the app to
-     * populate hierarchy.
-     * @return a list of all the nodes of the hierarchy defined under the param
-     * rootNode (including rootNode).
-     */
-    private List<String> getAllNodes(String node) {
-        // a list to hold the returned nodes
-        List<String> allNodes = new ArrayList<>();
-        // get the children of the node
-        List<String> children = null;
-        while (true) {
-            try {
-                children = zk.getChildren(node, false);
-                break;
-            } catch (InterruptedException ex) {
-                // log event
-                LOG.warn("Interrupted. Stopping");
-                // set interupt flag
-                Thread.currentThread().interrupt();
-                masterError = true;
-                break;
-            } catch (ConnectionLossException ex) {
-                LOG.warn("Connection loss was detected! Retrying...");
-            } catch (NoNodeException ex) {
-                LOG.info("Node already deleted: {}", ex.getMessage());
-                break;
-            } catch (KeeperException ex) {
-                LOG.error("Something went wrong", ex);
-                masterError = true;
-                break;
-            }
-        }
-        // if node has children, for every child recurse and add returned node to list
-        if (children != null) {
-            if (!children.isEmpty()) {
-                for (String child : children) {
-                    List<String> tmpList = getAllNodes(node + "/" + child);
-                    if (tmpList != null) {
-                        allNodes.addAll(tmpList);
-                    }
-                }
-            }
-            // add the node with wich the method was called to the list
-            allNodes.add(node);
-        }
-        return allNodes;
-    }
-
     /**
      * Cleans the zookeeper namespace from all the nodes created by the
-     * application.
+     * application. The application subtree is deleted bottom up, with
+     * pipelined requests and multi-op transactions.
      *
      * @return true if operation completed without errors.
      */
     public boolean cleanZkNamespace() {
         LOG.info("Cleaning zookeeper namespace...");
-
-        List<String> nodesToDelete = getAllNodes(zkConf.getRoot().getPath());
-        ListIterator<String> iter = nodesToDelete.listIterator();
-
-        while (iter.hasNext()) {
-            // get a node
-            String node = iter.next();
-            // delete the node, don't check for version
-            deleteNode(node, -1);
+        ZkSubtreeDeleter deleter = new ZkSubtreeDeleter(zk, retryPolicy);
+        boolean deleted = deleter.delete(zkConf.getRoot().getPath());
+        if (deleted) {
+            LOG.info("Deleted {} zNodes in {} ms.", deleter.getNodesDeleted(), deleter.getElapsedMillis());
+        } else {
+            masterError = true;
         }
         return !masterError;
     }
@@ -731,6 +830,7 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
      * @param version the data version of the zNode.
      */
     public void deleteNode(String path, int version) {
+        ZkRetryPolicy.Retry retry = retryPolicy.newRetry();
         while (true) {
             try {
                 zk.delete(path, version);
@@ -745,6 +845,10 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
                 break;
             } catch (ConnectionLossException ex) {
                 LOG.warn("Connection loss was detected. Retrying...");
+                if (!retry.backoff()) {
+                    masterError = true;
+                    break;
+                }
             } catch (NoNodeException ex) {
                 LOG.info("Node already deleted: {}", path);
                 break;
@@ -789,7 +893,7 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
         switch (Code.get(rc)) {
             case CONNECTIONLOSS:
                 LOG.warn("Connection loss was detected. Retrying...");
-                setNodeDataAsync(path, (byte[]) ctx);
+                retryOrFail("setNodeDataAsync:" + path, () -> setNodeDataAsync(path, (byte[]) ctx));
                 break;
             case NONODE:
                 LOG.error("Znode does not exist: " + path);
@@ -806,6 +910,7 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
 
     public boolean setNodeDataSync(String path, byte[] data) {
         boolean success = false;
+        ZkRetryPolicy.Retry retry = retryPolicy.newRetry();
         while (true) {
             try {
                 zk.setData(path, data, -1);
@@ -819,6 +924,9 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
                 break;
             } catch (ConnectionLossException ex) {
                 LOG.warn("Connection loss was detected! Retrying...");
+                if (!retry.backoff()) {
+                    break;
+                }
             } catch (NoNodeException ex) {
                 LOG.info("No zNode {} to set data.", path);
                 break;
@@ -953,4 +1061,22 @@ public final class ZkMaster extends ZkConnectionWatcher implements Runnable {
     public ZooKeeper getZk() {
         return this.zk;
     }
+
+    /**
+     * @return the writer of the status summary of the application.
+     */
+    public synchronized AppStatusWriter getAppStatusWriter() {
+        if (appStatusWriter == null) {
+            appStatusWriter = new AppStatusWriter(zk, zkConf.getAppStatus().getPath(), retryPolicy);
+        }
+        return appStatusWriter;
+    }
+
+    /**
+     * @return the status of the application services, fed by the watches set
+     * on the service zNodes.
+     */
+    public ServiceStatusRegistry getSrvRegistry() {
+        return srvRegistry;
+    }
 }
@@ -16,12 +16,13 @@
  */
 package net.freelabs.fidelio.core.zookeeper;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import javax.xml.bind.JAXBException;
-import net.freelabs.fidelio.core.serializer.JAXBSerializer;
+import net.freelabs.fidelio.core.serializer.Codec;
+import net.freelabs.fidelio.core.serializer.Codecs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -81,14 +82,15 @@ public class ZkNamingService {
      *
      * @param path the zNode path of the service.
      * @param node the service node to serialize.
+     * @param codec the codec to serialize with.
      * @return a byte array representing the serialized node.
      */
-    public byte[] serializeZkSrvNode(String path, ZkNamingServiceNode node) {
+    public byte[] serializeZkSrvNode(String path, ZkNamingServiceNode node, Codec codec) {
         byte[] data = null;
         try {
-            data = JAXBSerializer.serialize(node);
-            LOG.info("Serialized service node: {}", path);
-        } catch (JAXBException ex) {
+            data = Codecs.encode(codec, node);
+            LOG.debug("Serialized service node: {}", path);
+        } catch (IOException ex) {
             LOG.error("Service node Serialization FAILED: " + ex);
         }
         return data;
@@ -96,7 +98,7 @@ public class ZkNamingService {
 
     /**
      * De-serializes a {@link ZkNamingServiceNode ZkNamingServiceNode} that is
-     * stored as a byte array.
+     * stored as a byte array, with the codec of the payload.
      *
      * @param path the zNode path of the service.
      * @param data the data to de-serialize.
@@ -106,9 +108,9 @@ public class ZkNamingService {
     public ZkNamingServiceNode deserializeZkSrvNode(String path, byte[] data) {
         ZkNamingServiceNode node = null;
         try {
-            node = JAXBSerializer.deserializeToServiceNode(data);
-            LOG.info("De-serialized service node: {}", path);
-        } catch (JAXBException ex) {
+            node = Codecs.decodeServiceNode(data);
+            LOG.debug("De-serialized service node: {}", path);
+        } catch (IOException ex) {
             LOG.error("Service node de-serialization FAILED! " + ex);
         }
         return node;
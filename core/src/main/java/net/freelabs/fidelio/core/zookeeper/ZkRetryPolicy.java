@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.zookeeper;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Class that decides when a zookeeper operation that failed due to connection
+ * loss is retried.
+ * <p>
+ * Retries are delayed with exponential backoff and jitter, so that clients do
+ * not flood the ensemble while it elects a leader. An operation is retried
+ * until the time since its first failure exceeds the max-elapsed budget.
+ * <p>
+ * Synchronous operations use a {@link Retry Retry}, created per operation,
+ * that sleeps between attempts. Asynchronous operations are re-issued from
+ * their callbacks with {@link #retryLater(String, Runnable) retryLater}, which
+ * schedules the retry instead of re-issuing it immediately.
+ * <p>
+ * Class is thread-safe. Every instance keeps counters of the retries.
+ */
+public final class ZkRetryPolicy {
+
+    /**
+     * A Logger object.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ZkRetryPolicy.class);
+    /**
+     * The default delay (milliseconds) before the first retry.
+     */
+    public static final long DEFAULT_BASE_DELAY = 100;
+    /**
+     * The default maximum delay (milliseconds) between retries.
+     */
+    public static final long DEFAULT_MAX_DELAY = 5000;
+    /**
+     * The default time (milliseconds) an operation is retried, from its
+     * first failure.
+     */
+    public static final long DEFAULT_MAX_ELAPSED = 120000;
+    /**
+     * The number of pending asynchronous retries above which stale entries
+     * are removed.
+     */
+    private static final int PRUNE_THRESHOLD = 256;
+    /**
+     * Schedules asynchronous retries.
+     */
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor((r) -> {
+        Thread thread = new Thread(r, "ZK-Retry-Timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * The delay (nanoseconds) before the first retry.
+     */
+    private final long baseDelay;
+    /**
+     * The maximum delay (nanoseconds) between retries.
+     */
+    private final long maxDelay;
+    /**
+     * The time (nanoseconds) an operation is retried.
+     */
+    private final long maxElapsed;
+    /**
+     * The state of the asynchronous operations being retried, with the key of
+     * the operation as key.
+     */
+    private final Map<String, Retry> pending = new ConcurrentHashMap<>();
+    /**
+     * The number of retries.
+     */
+    private final AtomicLong retries = new AtomicLong();
+    /**
+     * The number of operations that exhausted their budget.
+     */
+    private final AtomicLong exhausted = new AtomicLong();
+    /**
+     * The total time (milliseconds) spent waiting before retries.
+     */
+    private final AtomicLong delayMillis = new AtomicLong();
+
+    /**
+     * Constructor. Uses the default delays and budget.
+     */
+    public ZkRetryPolicy() {
+        this(DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY, DEFAULT_MAX_ELAPSED, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param baseDelay the delay before the first retry.
+     * @param maxDelay the maximum delay between retries.
+     * @param maxElapsed the time an operation is retried, from its first
+     * failure.
+     * @param unit the time unit of the arguments.
+     */
+    public ZkRetryPolicy(long baseDelay, long maxDelay, long maxElapsed, TimeUnit unit) {
+        this.baseDelay = unit.toNanos(baseDelay);
+        this.maxDelay = unit.toNanos(maxDelay);
+        this.maxElapsed = unit.toNanos(maxElapsed);
+    }
+
+    /**
+     * @return a new retry state for a synchronous operation.
+     */
+    public Retry newRetry() {
+        return new Retry();
+    }
+
+    /**
+     * <p>
+     * Schedules the retry of an asynchronous operation that failed due to
+     * connection loss. To be called from the callback of the operation.
+     * <p>
+     * Consecutive failures of the same operation are identified by the key.
+     * The state of an operation is reset when it has not failed for longer
+     * than twice the maximum delay.
+     *
+     * @param key identifies the operation, e.g. the operation name and path.
+     * @param op the operation to re-issue.
+     * @return true if the retry was scheduled, false if the operation
+     * exhausted its budget.
+     */
+    public boolean retryLater(String key, Runnable op) {
+        if (pending.size() > PRUNE_THRESHOLD) {
+            pending.values().removeIf(Retry::isStale);
+        }
+        Retry retry = pending.compute(key, (k, current) -> {
+            return current == null || current.isStale() ? new Retry() : current;
+        });
+        long delay = retry.nextDelay();
+        if (delay < 0) {
+            pending.remove(key, retry);
+            LOG.error("Giving up on {} after {} retries.", key, retry.getAttempts());
+            return false;
+        }
+        TIMER.schedule(op, delay, TimeUnit.NANOSECONDS);
+        return true;
+    }
+
+    /**
+     * Clears the state of an asynchronous operation. Optional, to be called
+     * when the operation completes.
+     *
+     * @param key identifies the operation.
+     */
+    public void done(String key) {
+        pending.remove(key);
+    }
+
+    /**
+     * @return the number of retries.
+     */
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * @return the number of operations that exhausted their budget.
+     */
+    public long getExhausted() {
+        return exhausted.get();
+    }
+
+    /**
+     * @return the total time (milliseconds) spent waiting before retries.
+     */
+    public long getDelayMillis() {
+        return delayMillis.get();
+    }
+
+    @Override
+    public String toString() {
+        return "retries=" + retries.get() + ", exhausted=" + exhausted.get() + ", delay=" + delayMillis.get() + " ms";
+    }
+
+    /**
+     * The retry state of an operation.
+     */
+    public final class Retry {
+
+        /**
+         * The time (nanoseconds) of the first failure.
+         */
+        private long firstFailure;
+        /**
+         * The time (nanoseconds) of the last failure.
+         */
+        private long lastFailure;
+        /**
+         * The number of retries so far.
+         */
+        private int attempts;
+
+        /**
+         * Private constructor. Created by the policy.
+         */
+        private Retry() {
+        }
+
+        /**
+         * Computes the delay before the next retry and updates the counters.
+         *
+         * @return the delay (nanoseconds), or -1 if the budget is exhausted.
+         */
+        private synchronized long nextDelay() {
+            long now = System.nanoTime();
+            if (attempts == 0) {
+                firstFailure = now;
+            }
+            lastFailure = now;
+            if (now - firstFailure > maxElapsed) {
+                exhausted.incrementAndGet();
+                return -1;
+            }
+            // exponential backoff, capped, with equal jitter
+            long cap = baseDelay << Math.min(attempts, 30);
+            cap = cap <= 0 || cap > maxDelay ? maxDelay : cap;
+            long delay = cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+            attempts++;
+            retries.incrementAndGet();
+            delayMillis.addAndGet(TimeUnit.NANOSECONDS.toMillis(delay));
+            return delay;
+        }
+
+        /**
+         * @return true if the operation has not failed for longer than twice
+         * the maximum delay, i.e. the previous outage is over.
+         */
+        private synchronized boolean isStale() {
+            return attempts > 0 && System.nanoTime() - lastFailure > 2 * maxDelay;
+        }
+
+        /**
+         * <p>
+         * Waits before the next retry of a synchronous operation.
+         * <p>
+         * Method blocks.
+         *
+         * @return true if the operation must be retried, false if the budget
+         * is exhausted or the thread was interrupted.
+         */
+        public boolean backoff() {
+            long delay = nextDelay();
+            if (delay < 0) {
+                LOG.error("Giving up after {} retries.", getAttempts());
+                return false;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(delay);
+                return true;
+            } catch (InterruptedException ex) {
+                // log the event
+                LOG.warn("Thread Interrupted. Stopping");
+                // set the interrupt status
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        /**
+         * @return the number of retries so far.
+         */
+        public synchronized int getAttempts() {
+            return attempts;
+        }
+    }
+}
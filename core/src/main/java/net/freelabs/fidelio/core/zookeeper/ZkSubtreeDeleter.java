@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.zookeeper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.zookeeper.AsyncCallback.ChildrenCallback;
+import org.apache.zookeeper.AsyncCallback.VoidCallback;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.ConnectionLossException;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.ZooKeeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Class that deletes a zookeeper subtree.
+ * <p>
+ * The subtree is discovered level by level. The getChildren requests of a
+ * level are pipelined with the async API. The levels are then deleted bottom
+ * up, and the zNodes of a level are batched into multi-op transactions. A
+ * batch that cannot be applied as a whole, e.g. because a zNode was removed
+ * concurrently, falls back to pipelined async deletes.
+ * <p>
+ * Every instance keeps the counts and elapsed time of its last run.
+ */
+public final class ZkSubtreeDeleter {
+
+    /**
+     * A Logger object.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ZkSubtreeDeleter.class);
+    /**
+     * The maximum number of delete operations in a transaction.
+     */
+    private static final int MAX_BATCH_OPS = 500;
+    /**
+     * The zookeeper client.
+     */
+    private final ZooKeeper zk;
+    /**
+     * Decides when operations that failed due to connection loss are retried.
+     */
+    private final ZkRetryPolicy retryPolicy;
+    /**
+     * Indicates if there was an error during deletion.
+     */
+    private final AtomicBoolean error = new AtomicBoolean();
+    /**
+     * The number of zNodes found in the subtree.
+     */
+    private int nodesFound;
+    /**
+     * The number of zNodes deleted.
+     */
+    private final AtomicInteger nodesDeleted = new AtomicInteger();
+    /**
+     * The number of transactions committed.
+     */
+    private int batches;
+    /**
+     * The elapsed time (milliseconds) of the last run.
+     */
+    private long elapsedMillis;
+
+    /**
+     * Constructor.
+     *
+     * @param zk the zookeeper client.
+     * @param retryPolicy decides when operations that failed due to
+     * connection loss are retried.
+     */
+    public ZkSubtreeDeleter(ZooKeeper zk, ZkRetryPolicy retryPolicy) {
+        this.zk = zk;
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * <p>
+     * Deletes a zNode and all of its descendants.
+     * <p>
+     * Method blocks.
+     *
+     * @param root the path of the root of the subtree.
+     * @return true if operation completed without errors. A subtree that does
+     * not exist is not an error.
+     */
+    public boolean delete(String root) {
+        long start = System.nanoTime();
+        error.set(false);
+        nodesDeleted.set(0);
+        nodesFound = 0;
+        batches = 0;
+        // discover the subtree, a list of paths per level
+        List<List<String>> levels = new ArrayList<>();
+        List<String> level = Collections.singletonList(root);
+        while (!level.isEmpty() && !error.get()) {
+            levels.add(level);
+            nodesFound += level.size();
+            level = getChildren(level);
+        }
+        // delete bottom up
+        for (int i = levels.size() - 1; i >= 0 && !error.get(); i--) {
+            deleteLevel(levels.get(i));
+        }
+        elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        LOG.debug("Deleted {} of {} zNodes in {} transactions, {} ms.", nodesDeleted.get(), nodesFound, batches, elapsedMillis);
+        return !error.get();
+    }
+
+    /**
+     * Gets the children of all the zNodes of a level. The requests are sent
+     * without waiting for the responses.
+     *
+     * @param level the paths of the zNodes of a level.
+     * @return the paths of the children, i.e. the next level.
+     */
+    private List<String> getChildren(List<String> level) {
+        List<String> next = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(level.size());
+
+        ChildrenCallback cb = new ChildrenCallback() {
+            @Override
+            public void processResult(int rc, String path, Object ctx, List<String> children) {
+                switch (KeeperException.Code.get(rc)) {
+                    case CONNECTIONLOSS:
+                        LOG.warn("Connection loss was detected. Retrying...");
+                        if (retryPolicy.retryLater("getChildren:" + path, () -> zk.getChildren(path, false, this, ctx))) {
+                            return;
+                        }
+                        error.set(true);
+                        break;
+                    case NONODE:
+                        LOG.info("Node already deleted: {}", path);
+                        break;
+                    case OK:
+                        children.stream().forEach((child) -> {
+                            next.add(path + "/" + child);
+                        });
+                        break;
+                    default:
+                        error.set(true);
+                        LOG.error("Something went wrong: ",
+                                KeeperException.create(KeeperException.Code.get(rc), path));
+                }
+                done.countDown();
+            }
+        };
+
+        level.stream().forEach((path) -> {
+            zk.getChildren(path, false, cb, null);
+        });
+        await(done);
+        return next;
+    }
+
+    /**
+     * Deletes the zNodes of a level in transactions of at most {@link
+     * #MAX_BATCH_OPS MAX_BATCH_OPS} operations.
+     *
+     * @param level the paths of the zNodes of a level.
+     */
+    private void deleteLevel(List<String> level) {
+        for (int from = 0; from < level.size() && !error.get(); from += MAX_BATCH_OPS) {
+            List<String> batch = level.subList(from, Math.min(from + MAX_BATCH_OPS, level.size()));
+            List<Op> ops = new ArrayList<>();
+            batch.stream().forEach((path) -> {
+                ops.add(Op.delete(path, -1));
+            });
+
+            try {
+                zk.multi(ops);
+                batches++;
+                nodesDeleted.addAndGet(batch.size());
+            } catch (ConnectionLossException ex) {
+                LOG.warn("Connection loss was detected. Retrying...");
+                deleteEach(batch);
+            } catch (KeeperException ex) {
+                // a zNode changed concurrently, delete one by one
+                LOG.debug("Batch delete failed: {}. Deleting zNodes one by one.", ex.getMessage());
+                deleteEach(batch);
+            } catch (InterruptedException ex) {
+                error.set(true);
+                // log event
+                LOG.warn("Interrupted. Stopping.");
+                // set interupt flag
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Deletes zNodes one by one. The requests are sent without waiting for the
+     * responses.
+     *
+     * @param paths the paths of the zNodes to delete.
+     */
+    private void deleteEach(List<String> paths) {
+        CountDownLatch done = new CountDownLatch(paths.size());
+
+        VoidCallback cb = new VoidCallback() {
+            @Override
+            public void processResult(int rc, String path, Object ctx) {
+                switch (KeeperException.Code.get(rc)) {
+                    case CONNECTIONLOSS:
+                        LOG.warn("Connection loss was detected. Retrying...");
+                        if (retryPolicy.retryLater("delete:" + path, () -> zk.delete(path, -1, this, ctx))) {
+                            return;
+                        }
+                        error.set(true);
+                        break;
+                    case NONODE:
+                        LOG.info("Node already deleted: {}", path);
+                        break;
+                    case OK:
+                        LOG.debug("Deleted node: {}", path);
+                        nodesDeleted.incrementAndGet();
+                        break;
+                    default:
+                        error.set(true);
+                        LOG.error("Something went wrong: ",
+                                KeeperException.create(KeeperException.Code.get(rc), path));
+                }
+                done.countDown();
+            }
+        };
+
+        paths.stream().forEach((path) -> {
+            zk.delete(path, -1, cb, null);
+        });
+        await(done);
+    }
+
+    /**
+     * Waits for the callbacks of pipelined requests.
+     *
+     * @param done the latch released by the callbacks.
+     */
+    private void await(CountDownLatch done) {
+        try {
+            done.await();
+        } catch (InterruptedException ex) {
+            error.set(true);
+            // log event
+            LOG.warn("Interrupted. Stopping.");
+            // set interupt flag
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of zNodes found in the subtree during the last run.
+     */
+    public int getNodesFound() {
+        return nodesFound;
+    }
+
+    /**
+     * @return the number of zNodes deleted during the last run.
+     */
+    public int getNodesDeleted() {
+        return nodesDeleted.get();
+    }
+
+    /**
+     * @return the number of transactions committed during the last run.
+     */
+    public int getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return the elapsed time (milliseconds) of the last run.
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+}
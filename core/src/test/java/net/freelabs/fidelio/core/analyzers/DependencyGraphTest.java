@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.analyzers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import net.freelabs.fidelio.core.schema.Container;
+import net.freelabs.fidelio.core.schema.WebContainer;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link DependencyGraph DependencyGraph}.
+ */
+public class DependencyGraphTest {
+
+    /**
+     * The number of services of the deep chains.
+     */
+    private static final int CHAIN_LENGTH = 10000;
+
+    /**
+     * @param name the service name.
+     * @param requires the required services.
+     * @return a container.
+     */
+    static Container con(String name, String... requires) {
+        WebContainer con = new WebContainer();
+        con.setConSrvName(name);
+        con.getRequires().addAll(Arrays.asList(requires));
+        return con;
+    }
+
+    @Test
+    public void diamondHasNoCycles() {
+        DependencyGraph graph = new DependencyGraph(Arrays.asList(
+                con("a", "b", "c"),
+                con("b", "d"),
+                con("c", "d"),
+                con("d")));
+
+        assertTrue(graph.findCycles().isEmpty());
+        assertTrue(graph.getUndefinedDependencies().isEmpty());
+    }
+
+    @Test
+    public void selfLoopIsCycle() {
+        DependencyGraph graph = new DependencyGraph(Arrays.asList(
+                con("a", "b"),
+                con("b", "b")));
+
+        assertEquals(Collections.singletonList(Arrays.asList("b")), graph.findCycles());
+    }
+
+    @Test
+    public void findsDisjointCycles() {
+        DependencyGraph graph = new DependencyGraph(Arrays.asList(
+                con("a", "b"),
+                con("b", "a"),
+                con("c", "d"),
+                con("d", "e"),
+                con("e", "c"),
+                con("f", "a", "c"),
+                con("g", "g")));
+
+        List<List<String>> cycles = graph.findCycles();
+        assertEquals(3, cycles.size());
+        assertEquals(new HashSet<>(Arrays.asList(
+                Arrays.asList("a", "b"),
+                Arrays.asList("c", "d", "e"),
+                Arrays.asList("g"))), new HashSet<>(cycles));
+    }
+
+    @Test
+    public void listsCycleInDeclarationOrder() {
+        DependencyGraph graph = new DependencyGraph(Arrays.asList(
+                con("x", "z"),
+                con("y", "x"),
+                con("z", "y")));
+
+        assertEquals(Collections.singletonList(Arrays.asList("x", "y", "z")), graph.findCycles());
+    }
+
+    @Test
+    public void reportsUndefinedDependencies() {
+        DependencyGraph graph = new DependencyGraph(Arrays.asList(
+                con("a", "x", "b", "y"),
+                con("b"),
+                con("c", "z")));
+
+        Map<String, List<String>> undefined = graph.getUndefinedDependencies();
+        assertEquals(2, undefined.size());
+        assertEquals(Arrays.asList("x", "y"), undefined.get("a"));
+        assertEquals(Arrays.asList("z"), undefined.get("c"));
+        assertTrue(graph.findCycles().isEmpty());
+    }
+
+    @Test
+    public void usesFirstDeclarationOfDuplicateName() {
+        DependencyGraph graph = new DependencyGraph(Arrays.asList(
+                con("a", "b"),
+                con("b"),
+                con("b", "a")));
+
+        assertTrue(graph.findCycles().isEmpty());
+    }
+
+    @Test
+    public void handlesDeepChain() {
+        List<Container> containers = chain(CHAIN_LENGTH);
+
+        assertTrue(new DependencyGraph(containers).findCycles().isEmpty());
+    }
+
+    @Test
+    public void findsCycleOfDeepChain() {
+        List<Container> containers = chain(CHAIN_LENGTH);
+        // close the chain
+        containers.get(CHAIN_LENGTH - 1).getRequires().add("s0");
+
+        List<List<String>> cycles = new DependencyGraph(containers).findCycles();
+        assertEquals(1, cycles.size());
+        assertEquals(CHAIN_LENGTH, cycles.get(0).size());
+        assertEquals("s0", cycles.get(0).get(0));
+    }
+
+    /**
+     * @param length the number of services.
+     * @return a chain of services, every service requiring the next one.
+     */
+    private static List<Container> chain(int length) {
+        List<Container> containers = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            containers.add(i < length - 1 ? con("s" + i, "s" + (i + 1)) : con("s" + i));
+        }
+        return containers;
+    }
+}
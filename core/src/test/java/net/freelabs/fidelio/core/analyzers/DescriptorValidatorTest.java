@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.analyzers;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import net.freelabs.fidelio.core.schema.Container;
+import net.freelabs.fidelio.core.schema.Docker;
+import net.freelabs.fidelio.core.schema.Protocol;
+import net.freelabs.fidelio.core.schema.PublishPort;
+import org.junit.Test;
+import static net.freelabs.fidelio.core.analyzers.DependencyGraphTest.con;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link DescriptorValidator DescriptorValidator}.
+ */
+public class DescriptorValidatorTest {
+
+    @Test
+    public void acceptsValidDescription() {
+        Container web = publish(con("web", "db"), null, 80, Protocol.TCP);
+        Container db = publish(con("db"), null, 5432, Protocol.TCP);
+        volumesFrom(db, "data:ro");
+
+        assertNoErrors(validator(Collections.singleton("data"), web, db));
+    }
+
+    @Test
+    public void detectsEmptyAndDuplicateNames() {
+        DescriptorValidator validator = validator(null, con("a"), con("a"), con(" "));
+
+        assertErrors(validator, "DUPLICATE container name found: a", "Container with EMPTY service name found.");
+    }
+
+    @Test
+    public void detectsUndefinedAndCircularDependencies() {
+        DescriptorValidator validator = validator(null, con("a", "b", "x"), con("b", "a"));
+
+        assertErrors(validator,
+                "Container 'a' requires UNDEFINED service(s): [x]",
+                "CIRCULAR DEPENDENCY found between services: [a, b]");
+    }
+
+    @Test
+    public void detectsHostPortBoundTwice() {
+        DescriptorValidator validator = validator(null,
+                publish(con("a"), null, 8080, Protocol.TCP),
+                publish(con("b"), "10.0.0.1", 8080, Protocol.TCP));
+
+        assertErrors(validator, "Host port tcp/8080 is published by both 'a' and 'b'.");
+    }
+
+    @Test
+    public void allowsSamePortOnOtherAddressOrProtocol() {
+        DescriptorValidator validator = validator(null,
+                publish(con("a"), "10.0.0.1", 53, Protocol.TCP),
+                publish(con("b"), "10.0.0.2", 53, Protocol.TCP),
+                publish(con("c"), "", 53, Protocol.UDP),
+                publish(con("d"), null, null, Protocol.TCP),
+                publish(con("e"), null, null, Protocol.TCP));
+
+        assertNoErrors(validator);
+    }
+
+    @Test
+    public void treatsAnyAddressAsAllAddresses() {
+        DescriptorValidator validator = validator(null,
+                publish(con("a"), "0.0.0.0", 443, Protocol.TCP),
+                publish(con("b"), "10.0.0.1", 443, Protocol.TCP));
+
+        assertErrors(validator, "Host port tcp/443 is published by both 'a' and 'b'.");
+    }
+
+    @Test
+    public void detectsVolumesFromServiceOrUnknownContainer() {
+        Container a = volumesFrom(con("a"), "b:rw");
+        Container b = volumesFrom(con("b"), "missing");
+
+        assertErrors(validator(Collections.emptySet(), a, b),
+                "Container 'a' shares volumes from service 'b' of the application. Only existing containers can be used.",
+                "Container 'b' shares volumes from UNKNOWN container 'missing'.");
+    }
+
+    @Test
+    public void skipsExistingContainersCheckIfNotGiven() {
+        assertNoErrors(validator(null, volumesFrom(con("a"), "missing")));
+    }
+
+    /**
+     * @param existing the containers existing on the docker host.
+     * @param containers the containers of the description.
+     * @return a validator of the containers.
+     */
+    private static DescriptorValidator validator(Set<String> existing, Container... containers) {
+        return new DescriptorValidator(Arrays.asList(containers), existing);
+    }
+
+    /**
+     * Publishes a port of a container.
+     *
+     * @param con the container.
+     * @param hostIp the host address.
+     * @param hostPort the host port.
+     * @param protocol the protocol.
+     * @return the container.
+     */
+    private static Container publish(Container con, String hostIp, Integer hostPort, Protocol protocol) {
+        PublishPort port = new PublishPort();
+        port.setHostIp(hostIp);
+        port.setHostPort(hostPort);
+        port.setContainerPort(hostPort == null ? 80 : hostPort);
+        port.setProtocol(protocol);
+        docker(con).getPublishPort().add(port);
+        return con;
+    }
+
+    /**
+     * Shares volumes from a container.
+     *
+     * @param con the container.
+     * @param source the container to share volumes from.
+     * @return the container.
+     */
+    private static Container volumesFrom(Container con, String source) {
+        docker(con).getVolumesFrom().add(source);
+        return con;
+    }
+
+    /**
+     * @param con a container.
+     * @return the docker section of the container, created if missing.
+     */
+    private static Docker docker(Container con) {
+        if (con.getDocker() == null) {
+            con.setDocker(new Docker());
+        }
+        return con.getDocker();
+    }
+
+    /**
+     * Asserts that the validation finds no errors.
+     *
+     * @param validator the validator.
+     */
+    private static void assertNoErrors(DescriptorValidator validator) {
+        assertFalse(validator.detectErrors());
+        assertTrue(validator.getErrors().isEmpty());
+    }
+
+    /**
+     * Asserts that the validation finds exactly the given errors.
+     *
+     * @param validator the validator.
+     * @param expected the expected errors, in any order.
+     */
+    private static void assertErrors(DescriptorValidator validator, String... expected) {
+        assertTrue(validator.detectErrors());
+        List<String> errors = validator.getErrors();
+        assertEquals(expected.length, errors.size());
+        assertEquals(new HashSet<>(Arrays.asList(expected)), new HashSet<>(errors));
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link ImagePuller ImagePuller} against a stub docker daemon, an HTTP
+ * server that answers the image inspect and image pull requests.
+ */
+public class ImagePullerTest {
+
+    /**
+     * The time (millis) a pull takes on the stub daemon.
+     */
+    private static final long PULL_MILLIS = 300;
+    /**
+     * The time (millis) a slow pull takes on the stub daemon.
+     */
+    private static final long SLOW_PULL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    /**
+     * The stub docker daemon.
+     */
+    private HttpServer server;
+    /**
+     * The executor of the stub docker daemon.
+     */
+    private ExecutorService serverExecutor;
+    /**
+     * The docker client connected to the stub docker daemon.
+     */
+    private DockerClient docker;
+    /**
+     * Images that exist on the stub docker daemon.
+     */
+    private final Set<String> present = ConcurrentHashMap.newKeySet();
+    /**
+     * Images that do not exist in the registry.
+     */
+    private final Set<String> unknown = ConcurrentHashMap.newKeySet();
+    /**
+     * Images that take {@link #SLOW_PULL_MILLIS SLOW_PULL_MILLIS} to pull.
+     */
+    private final Set<String> slow = ConcurrentHashMap.newKeySet();
+    /**
+     * Number of inspect requests per image.
+     */
+    private final Map<String, AtomicInteger> inspects = new ConcurrentHashMap<>();
+    /**
+     * Number of pull requests per image.
+     */
+    private final Map<String, AtomicInteger> pulls = new ConcurrentHashMap<>();
+    /**
+     * Number of pulls in progress.
+     */
+    private final AtomicInteger running = new AtomicInteger();
+    /**
+     * Maximum number of pulls in progress at the same time.
+     */
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.createContext("/", this::handle);
+        server.start();
+        String host = "tcp://localhost:" + server.getAddress().getPort();
+        docker = new DockerInitializer(host, "false", "", "", "1.21", "", "", "", "").getDockerClient();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        docker.close();
+        server.stop(0);
+        // interrupt slow pulls
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void checksAndPullsEveryImageOnce() {
+        present.add("c");
+        ImagePuller puller = new ImagePuller(docker, 4);
+
+        assertTrue(puller.pullMissing(Arrays.asList("a", "b", "a", "c", "b", "c")));
+        for (String img : Arrays.asList("a", "b", "c")) {
+            assertEquals("inspects of " + img, 1, count(inspects, img));
+        }
+        assertEquals(1, count(pulls, "a"));
+        assertEquals(1, count(pulls, "b"));
+        assertEquals(0, count(pulls, "c"));
+    }
+
+    @Test
+    public void pullsNothingIfAllImagesExist() {
+        present.addAll(Arrays.asList("a", "b"));
+        ImagePuller puller = new ImagePuller(docker, 4);
+
+        assertTrue(puller.pullMissing(Arrays.asList("a", "b")));
+        assertTrue(pulls.isEmpty());
+    }
+
+    @Test
+    public void limitsConcurrentPulls() {
+        ImagePuller puller = new ImagePuller(docker, 1);
+
+        assertTrue(puller.pullMissing(Arrays.asList("a", "b", "c", "d")));
+        assertEquals(4, pulls.size());
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    public void stopsOnFirstFailedPull() {
+        unknown.add("bad");
+        slow.addAll(Arrays.asList("slow1", "slow2"));
+        ImagePuller puller = new ImagePuller(docker, 2);
+
+        long start = System.nanoTime();
+        assertFalse(puller.pullMissing(Arrays.asList("slow1", "bad", "slow2")));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("returned after " + elapsed + " ms", elapsed < SLOW_PULL_MILLIS / 2);
+        // a missing image is not retried
+        assertEquals(1, count(pulls, "bad"));
+    }
+
+    /**
+     * @param counts map with a counter per image.
+     * @param img the image.
+     * @return the counter of the image.
+     */
+    private static int count(Map<String, AtomicInteger> counts, String img) {
+        AtomicInteger count = counts.get(img);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Handles a request to the stub docker daemon.
+     *
+     * @param exchange the request and the response.
+     * @throws IOException in case of error.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            if (path.endsWith("/images/create")) {
+                handlePull(exchange);
+            } else if (path.contains("/images/") && path.endsWith("/json")) {
+                String img = path.substring(path.indexOf("/images/") + "/images/".length(), path.length() - "/json".length());
+                inspects.computeIfAbsent(img, (k) -> new AtomicInteger()).incrementAndGet();
+                if (present.contains(img)) {
+                    respond(exchange, 200, "{\"Id\":\"sha256:" + img + "\"}");
+                } else {
+                    respond(exchange, 404, "{\"message\":\"No such image: " + img + "\"}");
+                }
+            } else {
+                respond(exchange, 404, "{\"message\":\"Unexpected request: " + path + "\"}");
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Handles an image pull request.
+     *
+     * @param exchange the request and the response.
+     * @throws IOException in case of error.
+     */
+    private void handlePull(HttpExchange exchange) throws IOException {
+        String img = getQueryParam(exchange, "fromImage");
+        pulls.computeIfAbsent(img, (k) -> new AtomicInteger()).incrementAndGet();
+        int now = running.incrementAndGet();
+        maxRunning.accumulateAndGet(now, Math::max);
+        try {
+            Thread.sleep(slow.contains(img) ? SLOW_PULL_MILLIS : PULL_MILLIS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            running.decrementAndGet();
+        }
+        if (unknown.contains(img)) {
+            respond(exchange, 404, "{\"message\":\"image " + img + " not found\"}");
+        } else {
+            respond(exchange, 200, "{\"status\":\"Pulling from library/" + img + "\"}\r\n"
+                    + "{\"status\":\"Downloaded newer image for " + img + ":latest\"}\r\n");
+        }
+    }
+
+    /**
+     * @param exchange a request.
+     * @param name the name of a query parameter.
+     * @return the value of the query parameter or NULL if not present.
+     */
+    private static String getQueryParam(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getQuery();
+        if (query != null) {
+            for (String param : query.split("&")) {
+                if (param.startsWith(name + "=")) {
+                    return param.substring(name.length() + 1);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sends a json response.
+     *
+     * @param exchange the request and the response.
+     * @param code the status code.
+     * @param body the body of the response.
+     * @throws IOException in case of error.
+     */
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] data = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, data.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(data);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.serializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import javax.xml.bind.JAXBException;
+import net.freelabs.fidelio.core.schema.ContainerEnvironment;
+import net.freelabs.fidelio.core.schema.Docker;
+import net.freelabs.fidelio.core.schema.WebContainer;
+import net.freelabs.fidelio.core.zookeeper.ZkConf;
+import net.freelabs.fidelio.core.zookeeper.ZkNamingServiceNode;
+import net.freelabs.fidelio.core.zookeeper.ZkNamingServiceNode.SRV_STATE_STATUS;
+import org.junit.Test;
+import static net.freelabs.fidelio.core.serializer.ServiceNodeCodecTest.node;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link Codecs Codecs}: round trips with every codec and the detection
+ * of the codec of tagged and legacy payloads.
+ */
+public class CodecsTest {
+
+    /**
+     * All the codecs.
+     */
+    private static final List<Codec> CODECS = Arrays.asList(Codecs.XML, Codecs.BINARY, Codecs.json());
+
+    @Test
+    public void findsCodecsByName() {
+        assertSame(Codecs.XML, Codecs.forName("xml"));
+        assertSame(Codecs.BINARY, Codecs.forName(" BINARY "));
+        assertSame(Codecs.json(), Codecs.forName("Json"));
+        assertNull(Codecs.forName("yaml"));
+    }
+
+    @Test
+    public void roundTripsContainers() throws IOException {
+        for (Codec codec : CODECS) {
+            byte[] data = Codecs.encode(codec, container());
+
+            assertSame(codec, Codecs.codecOf(data));
+            WebContainer decoded = Codecs.decodeContainer(data, WebContainer.class);
+            assertEquals(codec.getName(), "web", decoded.getConSrvName());
+            assertEquals(codec.getName(), Arrays.asList("db", "cache"), decoded.getRequires());
+            assertEquals(codec.getName(), "httpd:2.4", decoded.getDocker().getImage());
+            assertEquals(codec.getName(), 8080, decoded.getEnv().getHost_Port());
+        }
+    }
+
+    @Test
+    public void decodesContainerEnvironment() throws IOException {
+        for (Codec codec : CODECS) {
+            WebContainer decoded = Codecs.decodeContainerEnv(Codecs.encode(codec, container()), WebContainer.class);
+
+            assertEquals(codec.getName(), "web", decoded.getConSrvName());
+            assertEquals(codec.getName(), "10.0.0.2", decoded.getEnv().getHost_IP());
+            assertEquals(codec.getName(), 8080, decoded.getEnv().getHost_Port());
+        }
+    }
+
+    @Test
+    public void writesContainersAsXml() throws IOException, JAXBException {
+        for (Codec codec : CODECS) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Codecs.writeContainerXml(Codecs.encode(codec, container()), WebContainer.class, out);
+
+            WebContainer decoded = JAXBSerializer.deserializeToWebContainer(out.toByteArray());
+            assertEquals(codec.getName(), "web", decoded.getConSrvName());
+            assertEquals(codec.getName(), "httpd:2.4", decoded.getDocker().getImage());
+        }
+    }
+
+    @Test
+    public void roundTripsZkConf() throws IOException {
+        for (Codec codec : CODECS) {
+            ZkConf zkConf = new ZkConf("fidelio-0000000042", "localhost:2181", 5000);
+            ZkConf decoded = Codecs.decodeZkConf(Codecs.encode(codec, zkConf));
+
+            assertEquals(codec.getName(), "/fidelio-0000000042", decoded.getRoot().getPath());
+            assertEquals(codec.getName(), "/fidelio-0000000042/services", decoded.getServices().getPath());
+            assertEquals(codec.getName(), "/fidelio-0000000042/zkConf", decoded.getZkConf().getPath());
+            assertEquals(codec.getName(), "0000000042", decoded.getSuffix());
+        }
+    }
+
+    @Test
+    public void roundTripsServiceNodes() throws IOException {
+        for (Codec codec : CODECS) {
+            byte[] data = Codecs.encode(codec, node("/fidelio-1/conf/web", SRV_STATE_STATUS.INITIALIZED));
+            ZkNamingServiceNode decoded = Codecs.decodeServiceNode(data);
+
+            assertEquals(codec.getName(), SRV_STATE_STATUS.INITIALIZED, decoded.getStatus());
+            assertEquals(codec.getName(), "/fidelio-1/conf/web", decoded.getZkContainerPath());
+        }
+    }
+
+    @Test
+    public void decodesLegacyXmlPayloads() throws IOException, JAXBException {
+        byte[] node = JAXBSerializer.serialize(node("/fidelio-1/conf/db", SRV_STATE_STATUS.UPDATED));
+        byte[] con = JAXBSerializer.serialize(container());
+
+        assertSame(Codecs.XML, Codecs.codecOf(node));
+        assertEquals(SRV_STATE_STATUS.UPDATED, Codecs.decodeServiceNode(node).getStatus());
+        assertSame(Codecs.XML, Codecs.codecOf(con));
+        assertEquals("web", Codecs.decodeContainer(con, WebContainer.class).getConSrvName());
+    }
+
+    @Test
+    public void decodesLegacyBinaryServiceNodes() throws IOException {
+        byte[] data = ServiceNodeCodec.encode(node("/fidelio-1/conf/web", SRV_STATE_STATUS.NOT_INITIALIZED));
+
+        assertSame(Codecs.BINARY, Codecs.codecOf(data));
+        assertEquals(SRV_STATE_STATUS.NOT_INITIALIZED, Codecs.decodeServiceNode(data).getStatus());
+    }
+
+    @Test
+    public void rejectsUnknownCodecId() {
+        try {
+            Codecs.codecOf(new byte[]{Codecs.TAG, 99, 0});
+            fail("Accepted unknown codec id.");
+        } catch (IOException ex) {
+            // expected
+        }
+        assertTrue(Codecs.toString(new byte[]{Codecs.TAG, 99}).startsWith("Unreadable payload"));
+    }
+
+    /**
+     * @return a container with a service name, dependencies, a docker section
+     * and an environment.
+     */
+    private static WebContainer container() {
+        WebContainer con = new WebContainer();
+        con.setConSrvName("web");
+        con.getRequires().addAll(Arrays.asList("db", "cache"));
+        Docker docker = new Docker();
+        docker.setImage("httpd:2.4");
+        con.setDocker(docker);
+        ContainerEnvironment env = new ContainerEnvironment();
+        env.setHost_IP("10.0.0.2");
+        env.setHost_Port(8080);
+        con.setEnv(env);
+        return con;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.serializer;
+
+import java.io.IOException;
+import javax.xml.bind.JAXBException;
+import net.freelabs.fidelio.core.zookeeper.ZkNamingServiceNode;
+import net.freelabs.fidelio.core.zookeeper.ZkNamingServiceNode.SRV_STATE_STATUS;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link ServiceNodeCodec ServiceNodeCodec}.
+ */
+public class ServiceNodeCodecTest {
+
+    @Test
+    public void roundTripsEveryStatus() throws IOException, JAXBException {
+        for (SRV_STATE_STATUS status : SRV_STATE_STATUS.values()) {
+            ZkNamingServiceNode decoded = ServiceNodeCodec.decode(ServiceNodeCodec.encode(node("/fidelio-1/conf/web", status)));
+            assertEquals(status, decoded.getStatus());
+            assertEquals("/fidelio-1/conf/web", decoded.getZkContainerPath());
+        }
+    }
+
+    @Test
+    public void roundTripsNodeWithoutPath() throws IOException, JAXBException {
+        byte[] data = ServiceNodeCodec.encode(node(null, SRV_STATE_STATUS.INITIALIZED));
+
+        ZkNamingServiceNode decoded = ServiceNodeCodec.decode(data);
+        assertNull(decoded.getZkContainerPath());
+        assertEquals(SRV_STATE_STATUS.INITIALIZED, decoded.getStatus());
+        // magic, version, status and flags
+        assertEquals(4, data.length);
+    }
+
+    @Test
+    public void decodesLegacyXml() throws IOException, JAXBException {
+        byte[] xml = JAXBSerializer.serialize(node("/fidelio-1/conf/db", SRV_STATE_STATUS.UPDATED));
+
+        assertFalse(ServiceNodeCodec.isBinary(xml));
+        ZkNamingServiceNode decoded = ServiceNodeCodec.decode(xml);
+        assertEquals(SRV_STATE_STATUS.UPDATED, decoded.getStatus());
+        assertEquals("/fidelio-1/conf/db", decoded.getZkContainerPath());
+    }
+
+    @Test
+    public void detectsBinaryPayloads() throws IOException {
+        assertTrue(ServiceNodeCodec.isBinary(ServiceNodeCodec.encode(node("/a", SRV_STATE_STATUS.NOT_RUNNING))));
+        assertFalse(ServiceNodeCodec.isBinary(null));
+        assertFalse(ServiceNodeCodec.isBinary(new byte[0]));
+    }
+
+    @Test
+    public void rejectsUnknownVersion() throws JAXBException {
+        assertRejected(new byte[]{ServiceNodeCodec.MAGIC, ServiceNodeCodec.VERSION + 1, 0, 0});
+    }
+
+    @Test
+    public void rejectsUnknownStatus() throws JAXBException {
+        assertRejected(new byte[]{ServiceNodeCodec.MAGIC, ServiceNodeCodec.VERSION, 42, 0});
+    }
+
+    @Test
+    public void rejectsTruncatedPayload() throws JAXBException {
+        assertRejected(new byte[]{ServiceNodeCodec.MAGIC, ServiceNodeCodec.VERSION, 0, 1, 0, 9});
+    }
+
+    /**
+     * @param path the zNode path of the container.
+     * @param status the status of the service.
+     * @return a service node.
+     */
+    static ZkNamingServiceNode node(String path, SRV_STATE_STATUS status) {
+        ZkNamingServiceNode node = new ZkNamingServiceNode(path);
+        switch (status) {
+            case INITIALIZED:
+                node.setStatusInitialized();
+                break;
+            case NOT_INITIALIZED:
+                node.setStatusNotInitialized();
+                break;
+            case UPDATED:
+                node.setStatusUpdasted();
+                break;
+            default:
+                node.setStatusNotRunning();
+        }
+        return node;
+    }
+
+    /**
+     * Asserts that a binary payload cannot be decoded.
+     *
+     * @param data the payload.
+     * @throws JAXBException never, the payload is binary.
+     */
+    private static void assertRejected(byte[] data) throws JAXBException {
+        try {
+            ServiceNodeCodec.decode(data);
+            fail("Decoded malformed payload.");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.zookeeper;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import net.freelabs.fidelio.core.serializer.ServiceNodeCodec;
+import net.freelabs.fidelio.core.zookeeper.ZkNamingServiceNode.SRV_STATE_STATUS;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link AppStatus AppStatus}.
+ */
+public class AppStatusTest {
+
+    @Test
+    public void startsWithAllServicesNotRunning() {
+        AppStatus appStatus = AppStatus.initial(Arrays.asList("web", "db"));
+
+        assertEquals(2, appStatus.getServices().size());
+        for (AppStatus.Entry entry : appStatus.getServices().values()) {
+            assertEquals(SRV_STATE_STATUS.NOT_RUNNING, entry.getStatus());
+        }
+    }
+
+    @Test
+    public void keepsTimeOfUnchangedStatus() {
+        AppStatus appStatus = new AppStatus();
+
+        assertTrue(appStatus.set("web", SRV_STATE_STATUS.INITIALIZED, 100));
+        assertFalse(appStatus.set("web", SRV_STATE_STATUS.INITIALIZED, 200));
+        assertEquals(100, appStatus.getServices().get("web").getSince());
+        assertEquals(200, appStatus.getUpdated());
+        assertTrue(appStatus.set("web", SRV_STATE_STATUS.UPDATED, 300));
+        assertEquals(300, appStatus.getServices().get("web").getSince());
+    }
+
+    @Test
+    public void roundTrips() throws IOException {
+        AppStatus appStatus = new AppStatus();
+        appStatus.set("web", SRV_STATE_STATUS.INITIALIZED, 1000);
+        appStatus.set("db", SRV_STATE_STATUS.NOT_INITIALIZED, 2000);
+        appStatus.set("cache", SRV_STATE_STATUS.UPDATED, 1500);
+        appStatus.set("proxy", SRV_STATE_STATUS.NOT_RUNNING, 500);
+
+        AppStatus decoded = AppStatus.decode(appStatus.encode());
+        assertEquals(2000, decoded.getUpdated());
+        Map<String, AppStatus.Entry> services = decoded.getServices();
+        // sorted by service name
+        assertEquals(Arrays.asList("cache", "db", "proxy", "web"), Arrays.asList(services.keySet().toArray()));
+        for (Map.Entry<String, AppStatus.Entry> entry : appStatus.getServices().entrySet()) {
+            AppStatus.Entry other = services.get(entry.getKey());
+            assertEquals(entry.getValue().getStatus(), other.getStatus());
+            assertEquals(entry.getValue().getSince(), other.getSince());
+        }
+    }
+
+    @Test
+    public void decodesInitialNodeDataToEmptySummary() throws IOException {
+        assertTrue(AppStatus.decode(new byte[0]).getServices().isEmpty());
+        assertTrue(AppStatus.decode("0000000042".getBytes("UTF-8")).getServices().isEmpty());
+    }
+
+    @Test
+    public void rejectsUnknownVersion() throws IOException {
+        byte[] data = AppStatus.initial(Arrays.asList("web")).encode();
+        data[1] = 99;
+
+        assertRejected(data);
+    }
+
+    @Test
+    public void rejectsTruncatedSummary() throws IOException {
+        byte[] data = AppStatus.initial(Arrays.asList("web", "db")).encode();
+
+        assertRejected(Arrays.copyOf(data, data.length - 3));
+    }
+
+    @Test
+    public void rejectsUnknownStatusCode() throws IOException {
+        byte[] data = AppStatus.initial(Arrays.asList("web")).encode();
+        // magic, version, updated, size, name length, name, then the status
+        data[1 + 1 + 8 + 4 + 2 + "web".length()] = 42;
+
+        assertRejected(data);
+    }
+
+    /**
+     * Asserts that an encoded summary cannot be decoded.
+     *
+     * @param data the encoded summary.
+     */
+    private static void assertRejected(byte[] data) {
+        assertTrue(ServiceNodeCodec.isBinary(data));
+        try {
+            AppStatus.decode(data);
+            fail("Decoded malformed summary.");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+}
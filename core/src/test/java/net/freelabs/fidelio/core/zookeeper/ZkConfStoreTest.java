@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2015-2016 Dionysis Lappas <dio@freelabs.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.freelabs.fidelio.core.zookeeper;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests {@link ZkConfStore ZkConfStore}: the zNodes created for a
+ * configuration are loaded back, without zookeeper.
+ */
+public class ZkConfStoreTest {
+
+    /**
+     * The maximum size (bytes) of a chunk, as in {@link ZkConfStore
+     * ZkConfStore}.
+     */
+    private static final int CHUNK_SIZE = 256 * 1024;
+    /**
+     * The configuration of the application.
+     */
+    private ZkConf zkConf;
+    /**
+     * The zNodes to create, with the path as key.
+     */
+    private final Map<String, byte[]> zNodes = new HashMap<>();
+    /**
+     * The number of chunks requested by the last load.
+     */
+    private final AtomicInteger requested = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        zkConf = new ZkConf("fidelio-0000000007", "localhost:2181", 5000);
+    }
+
+    @Test
+    public void roundTripsSmallConfiguration() throws IOException {
+        byte[] data = "<ZkConf>small</ZkConf>".getBytes("UTF-8");
+
+        assertEquals(1, store(data));
+        assertArrayEquals(data, load());
+    }
+
+    @Test
+    public void roundTripsConfigurationOfManyChunks() throws IOException {
+        // random data do not compress
+        byte[] data = new byte[CHUNK_SIZE * 2 + 1000];
+        new Random(42).nextBytes(data);
+
+        assertEquals(3, store(data));
+        assertArrayEquals(data, load());
+    }
+
+    @Test
+    public void roundTripsEmptyConfiguration() throws IOException {
+        assertEquals(1, store(new byte[0]));
+        assertArrayEquals(new byte[0], load());
+    }
+
+    @Test
+    public void returnsLegacyConfigurationAsIs() {
+        byte[] legacy = "<?xml version=\"1.0\"?><ZkConf/>".getBytes();
+        zNodes.put(zkConf.getZkConf().getPath(), legacy);
+
+        assertArrayEquals(legacy, load());
+    }
+
+    @Test
+    public void detectsCorruptedChunk() throws IOException {
+        byte[] data = new byte[CHUNK_SIZE + 1000];
+        new Random(7).nextBytes(data);
+        store(data);
+        zNodes.get(chunkPath(1))[10] ^= 1;
+
+        assertNull(load());
+    }
+
+    @Test
+    public void detectsTruncatedChunk() throws IOException {
+        byte[] data = new byte[CHUNK_SIZE + 1000];
+        new Random(7).nextBytes(data);
+        store(data);
+        byte[] chunk = zNodes.get(chunkPath(1));
+        zNodes.put(chunkPath(1), Arrays.copyOf(chunk, chunk.length - 1));
+
+        assertNull(load());
+    }
+
+    @Test
+    public void detectsMissingChunk() throws IOException {
+        byte[] data = new byte[CHUNK_SIZE + 1000];
+        new Random(7).nextBytes(data);
+        store(data);
+        zNodes.remove(chunkPath(1));
+
+        assertNull(load());
+    }
+
+    @Test
+    public void rejectsUnknownManifestVersion() throws IOException {
+        store("<ZkConf/>".getBytes("UTF-8"));
+        byte[] manifest = zNodes.get(zkConf.getZkConf().getPath());
+        manifest[1] = 99;
+
+        assertNull(load());
+    }
+
+    @Test
+    public void rejectsInvalidManifest() throws IOException {
+        store("<ZkConf/>".getBytes("UTF-8"));
+        byte[] manifest = zNodes.get(zkConf.getZkConf().getPath());
+        // the number of chunks
+        Arrays.fill(manifest, 1 + 1 + 4 + 4, 1 + 1 + 4 + 4 + 4, (byte) 0xFF);
+
+        assertNull(load());
+        assertEquals(0, requested.get());
+    }
+
+    @Test
+    public void requestsEveryChunk() throws IOException {
+        byte[] data = new byte[CHUNK_SIZE * 3];
+        new Random(1).nextBytes(data);
+
+        assertEquals(4, store(data));
+        load();
+        assertEquals(4, requested.get());
+    }
+
+    /**
+     * Stores a configuration and copies the zNodes to create to
+     * {@link #zNodes zNodes}.
+     *
+     * @param data the serialized configuration.
+     * @return the number of chunks.
+     * @throws IOException in case of error.
+     */
+    private int store(byte[] data) throws IOException {
+        ZkConfStore.store(zkConf, data);
+        String prefix = zkConf.getZkConf().getPath() + "/";
+        int chunks = 0;
+        for (ZkNode node : zkConf.getZkAppNamespace()) {
+            zNodes.put(node.getPath(), node.getData());
+            if (node.getPath().startsWith(prefix)) {
+                chunks++;
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * @return the configuration loaded from {@link #zNodes zNodes}. A missing
+     * chunk fails the download, as on zookeeper.
+     */
+    private byte[] load() {
+        byte[] manifest = zNodes.get(zkConf.getZkConf().getPath());
+        return ZkConfStore.load(manifest, (chunks) -> {
+            requested.set(chunks);
+            byte[][] parts = new byte[chunks][];
+            for (int i = 0; i < chunks; i++) {
+                parts[i] = zNodes.get(chunkPath(i));
+                if (parts[i] == null) {
+                    return null;
+                }
+            }
+            return parts;
+        });
+    }
+
+    /**
+     * @param index the index of a chunk.
+     * @return the path of the chunk zNode.
+     */
+    private String chunkPath(int index) {
+        return String.format("%s/chunk-%04d", zkConf.getZkConf().getPath(), index);
+    }
+}